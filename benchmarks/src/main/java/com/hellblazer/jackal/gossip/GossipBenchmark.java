@@ -0,0 +1,228 @@
+/** (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.gossip;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.smartfrog.services.anubis.partition.util.Identity;
+
+/**
+ * Measures a single gossip round of a member which knows of a large number of
+ * endpoints, and the handling of the digests gossiped by a peer with the same
+ * view. The communications are stubbed out, so the benchmark measures the cost
+ * of selecting the gossip partners, building the digests and checking the
+ * status of the endpoints, and of sorting and examining the received digests.
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GossipBenchmark {
+
+    private static class NullCommunications implements GossipCommunications {
+        private final InetSocketAddress localAddress;
+
+        NullCommunications(InetSocketAddress localAddress) {
+            this.localAddress = localAddress;
+        }
+
+        @Override
+        public void connect(InetSocketAddress address, Endpoint endpoint,
+                            Runnable connectAction) {
+            endpoint.setCommunications(new NullHandler());
+            connectAction.run();
+        }
+
+        @Override
+        public void forget(InetSocketAddress address) {
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            return localAddress;
+        }
+
+        @Override
+        public void send(HeartbeatState state, InetSocketAddress address) {
+        }
+
+        @Override
+        public void setGossip(Gossip gossip) {
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void terminate() {
+        }
+    }
+
+    private static class NullHandler implements GossipMessages {
+        @Override
+        public void ack(int nonce) {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void gossip(List<Digest> digests) {
+        }
+
+        @Override
+        public void ping(int nonce) {
+        }
+
+        @Override
+        public void pingRequest(InetSocketAddress suspect, int nonce) {
+        }
+
+        @Override
+        public void reply(List<Digest> digests, List<HeartbeatState> states) {
+        }
+
+        @Override
+        public void requestConnection(Identity node) {
+        }
+
+        @Override
+        public void summarize(DigestSummary summary, List<Digest> digests) {
+        }
+
+        @Override
+        public void update(List<HeartbeatState> deltaState) {
+        }
+    }
+
+    private static class TrustingFailureDetector implements FailureDetector {
+        @Override
+        public long earliestConviction() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public void record(long now, long delay) {
+        }
+
+        @Override
+        public boolean shouldConvict(long now) {
+            return false;
+        }
+    }
+
+    private static InetSocketAddress address(int i)
+                                                   throws UnknownHostException {
+        return new InetSocketAddress(
+                                     InetAddress.getByAddress(new byte[] { 10,
+                                             (byte) (i >>> 16),
+                                             (byte) (i >>> 8), (byte) i }),
+                                     1000 + i % 7);
+    }
+
+    @Param({ "1000", "2000", "5000", "10000" })
+    public int           members;
+
+    private Gossip       gossip;
+    private NullHandler  handler;
+    private List<Digest> received;
+
+    @Benchmark
+    public void gossip() {
+        gossip.gossip();
+    }
+
+    @Benchmark
+    public void receive() {
+        gossip.gossip(received, handler);
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        InetSocketAddress localAddress = address(0);
+        List<InetSocketAddress> seeds = new ArrayList<InetSocketAddress>();
+        for (int i = 1; i <= 5; i++) {
+            seeds.add(address(i * members / 5));
+        }
+        SystemView view = new SystemView(new Random(666), localAddress, seeds,
+                                         5000, 500000);
+        gossip = new Gossip(view, new Random(666),
+                            new NullCommunications(localAddress), 1,
+                            TimeUnit.HOURS, new FailureDetectorFactory() {
+                                @Override
+                                public FailureDetector create() {
+                                    return new TrustingFailureDetector();
+                                }
+                            }, new Identity(0, 0, 0));
+        gossip.start(new HeartbeatState(localAddress, 0, new Identity(0, 0, 0)));
+
+        // discovery only states are not delivered to the partition manager
+        List<HeartbeatState> states = new ArrayList<HeartbeatState>();
+        for (int i = 1; i <= members; i++) {
+            states.add(new HeartbeatState(address(i), 0,
+                                          new Identity(0, i % (Identity.MAX_ID + 1), 0)));
+        }
+        Collections.shuffle(states, new Random(666));
+        gossip.update(states);
+
+        // a tenth of the members are unreachable
+        for (int i = 1; i <= members; i += 10) {
+            view.markDead(address(i), 0);
+        }
+        view.cullQuarantined(Long.MAX_VALUE);
+
+        // the peer is ahead of, behind and level with the member's view
+        handler = new NullHandler();
+        received = new DigestList(members);
+        for (int i = 1; i <= members; i++) {
+            received.add(new Digest(address(i), i % 4 - 1));
+        }
+        Collections.shuffle(received, new Random(666));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        gossip.terminate();
+    }
+}
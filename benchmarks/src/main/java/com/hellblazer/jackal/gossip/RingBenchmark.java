@@ -0,0 +1,125 @@
+/** 
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.gossip;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.smartfrog.services.anubis.partition.util.Identity;
+import org.smartfrog.services.anubis.partition.util.NodeIdSet;
+
+/**
+ * Measures the resolution of the neighbors of the {@link Ring}, which the
+ * gossip makes on every heartbeat it sends, against the linear scan of the
+ * endpoints it replaces.
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RingBenchmark {
+
+    @Param({ "1000", "4000" })
+    public int                     endpoints;
+
+    @Param({ "1", "10" })
+    public int                     fanout;
+
+    private List<Endpoint>         members;
+    private Map<Integer, Endpoint> identities;
+    private NodeIdSet              view;
+    private Ring                   ring;
+    private int                    id;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        members = new ArrayList<Endpoint>(endpoints);
+        identities = new ConcurrentHashMap<Integer, Endpoint>();
+        view = new NodeIdSet();
+        for (int i = 0; i < endpoints; i++) {
+            Endpoint endpoint = new Endpoint(
+                                             new HeartbeatState(
+                                                                new Identity(
+                                                                             666,
+                                                                             0,
+                                                                             0),
+                                                                false,
+                                                                new InetSocketAddress(
+                                                                                      "127.0.0.1",
+                                                                                      1024 + i),
+                                                                new NodeIdSet(),
+                                                                true,
+                                                                new Identity(
+                                                                             666,
+                                                                             i,
+                                                                             1),
+                                                                null, false,
+                                                                null,
+                                                                new NodeIdSet(),
+                                                                0, 0), null);
+            members.add(endpoint);
+            identities.put(i, endpoint);
+            view.add(i);
+        }
+        id = endpoints / 2;
+        ring = new Ring(id, null);
+        ring.setFanout(fanout);
+    }
+
+    /**
+     * The resolution of the left neighbor by the scan of every endpoint
+     */
+    @Benchmark
+    public InetSocketAddress linearScan() {
+        int n = view.leftNeighborOf(id);
+        for (Endpoint endpoint : members) {
+            Identity identity = endpoint.getId();
+            if (identity != null && identity.id == n) {
+                return endpoint.getState().getHeartbeatAddress();
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public Ring update() {
+        ring.update(view, identities);
+        return ring;
+    }
+}
@@ -0,0 +1,118 @@
+/** 
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.gossip.fd;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hellblazer.jackal.gossip.FailureDetector;
+
+/**
+ * Measures the throughput of recording heartbeats and of checking for
+ * conviction for each of the {@link FailureDetectors}, alone and with a
+ * heartbeat recording thread contending with three checking threads, as the
+ * dispatching threads and the gossip thread do. The heartbeats are replayed
+ * from a synthetic trace.
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FailureDetectorBenchmark {
+
+    private static final long EXPECTED_INTERVAL = 1000L;
+
+    @Param({ "phi", "phi-median", "adaptive", "timed", "timeout",
+            "lock-free-phi", "lock-free-phi-median", "lock-free-adaptive" })
+    public String             detector;
+
+    @Param({ "100", "1000" })
+    public int                window;
+
+    private FailureDetector   failureDetector;
+    private long[]            intervals;
+    private int               next;
+    private volatile long     now;
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public boolean check() {
+        return failureDetector.shouldConvict(now + EXPECTED_INTERVAL / 2);
+    }
+
+    @Benchmark
+    @Group("uncontended")
+    public boolean convict() {
+        return failureDetector.shouldConvict(now + EXPECTED_INTERVAL / 2);
+    }
+
+    @Benchmark
+    @Group("uncontended_record")
+    public long record() {
+        return heartbeat();
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public long recordContended() {
+        return heartbeat();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        HeartbeatTrace trace = HeartbeatTrace.gamma(new Random(666), 10.0,
+                                                    EXPECTED_INTERVAL, 4096);
+        intervals = trace.getIntervals();
+        failureDetector = FailureDetectors.create(detector, EXPECTED_INTERVAL,
+                                                  window).create();
+        now = System.currentTimeMillis();
+        // fill the window
+        for (int i = 0; i < window; i++) {
+            heartbeat();
+        }
+    }
+
+    private long heartbeat() {
+        long time = now + intervals[next++ & intervals.length - 1];
+        failureDetector.record(time, 0L);
+        now = time;
+        return time;
+    }
+}
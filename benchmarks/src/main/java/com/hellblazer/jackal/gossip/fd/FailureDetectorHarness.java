@@ -0,0 +1,222 @@
+/** 
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.gossip.fd;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.hellblazer.jackal.gossip.FailureDetector;
+import com.hellblazer.jackal.gossip.FailureDetectorFactory;
+
+/**
+ * Replays heartbeat traces through each of the {@link FailureDetectors}, and
+ * reports for each:
+ * <ul>
+ * <li>the false positive rate: the fraction of the intervals between
+ * heartbeats in which the detector convicted before the next heartbeat
+ * arrived. The detector is probed every PROBE_STEP milliseconds of each
+ * interval.</li>
+ * <li>the detection latency: the mean time from the last heartbeat of a trace,
+ * when the member crashes, until the detector convicts</li>
+ * <li>the cost of the record and conviction check, in nanoseconds and bytes
+ * allocated per call</li>
+ * </ul>
+ * The traces are named on the command line, each by the directory and prefix
+ * of a {@link com.hellblazer.jackal.gossip.HeartbeatCapture}, such as
+ * /var/capture/heartbeats. If none are named, synthetic traces of gamma
+ * distributed inter arrival times are replayed.
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public class FailureDetectorHarness {
+
+    /**
+     * The measurements of a failure detector over a set of traces
+     */
+    public static class Result {
+        private long allocated;
+        private int  convictChecks;
+        private long convictNanos;
+        private int  crashes;
+        private int  detected;
+        private int  falsePositives;
+        private int  intervals;
+        private long latency;
+        private int  records;
+        private long recordNanos;
+
+        public double bytesPerCall() {
+            return (double) allocated / Math.max(1, records + convictChecks);
+        }
+
+        public double falsePositiveRate() {
+            return (double) falsePositives / Math.max(1, intervals);
+        }
+
+        /**
+         * Answer the mean detection latency of the crashes which were detected
+         */
+        public double meanLatency() {
+            return (double) latency / Math.max(1, detected);
+        }
+
+        public double nanosPerConvictCheck() {
+            return (double) convictNanos / Math.max(1, convictChecks);
+        }
+
+        public double nanosPerRecord() {
+            return (double) recordNanos / Math.max(1, records);
+        }
+
+        /**
+         * Answer the number of crashes which were not detected within the
+         * maximum wait
+         */
+        public int undetected() {
+            return crashes - detected;
+        }
+    }
+
+    /**
+     * The maximum wait for the detection of a crash, in mean intervals of the
+     * trace
+     */
+    public static final int  MAX_WAIT   = 100;
+    /**
+     * The resolution of the conviction checks, in milliseconds
+     */
+    public static final long PROBE_STEP = 10;
+    public static final int  WINDOW     = 1000;
+
+    public static void main(String[] args) throws IOException {
+        List<HeartbeatTrace> traces = new ArrayList<HeartbeatTrace>();
+        if (args.length == 0) {
+            Random random = new Random(666);
+            traces.add(HeartbeatTrace.gamma(random, 1.0, 1000.0, 10000));
+            traces.add(HeartbeatTrace.gamma(random, 10.0, 1000.0, 10000));
+            traces.add(HeartbeatTrace.gamma(random, 100.0, 1000.0, 10000));
+        } else {
+            for (String arg : args) {
+                File file = new File(arg);
+                traces.addAll(HeartbeatTrace.capture(file.getAbsoluteFile().getParentFile(),
+                                                     file.getName()));
+            }
+        }
+        for (HeartbeatTrace trace : traces) {
+            System.out.println(trace);
+        }
+        System.out.println();
+        System.out.println(String.format("%-22s %10s %12s %10s %12s %12s %10s",
+                                         "detector", "fp rate",
+                                         "latency ms", "missed",
+                                         "ns/record", "ns/convict",
+                                         "bytes/op"));
+        for (String name : FailureDetectors.NAMES) {
+            Result result = new Result();
+            for (HeartbeatTrace trace : traces) {
+                long expected = Math.max(1L, Math.round(trace.mean()));
+                replay(FailureDetectors.create(name, expected, WINDOW), trace,
+                       result);
+            }
+            System.out.println(String.format("%-22s %10.5f %12.1f %10d %12.1f %12.1f %10.1f",
+                                             name,
+                                             result.falsePositiveRate(),
+                                             result.meanLatency(),
+                                             result.undetected(),
+                                             result.nanosPerRecord(),
+                                             result.nanosPerConvictCheck(),
+                                             result.bytesPerCall()));
+        }
+    }
+
+    /**
+     * Replay the trace through a failure detector of the factory, and
+     * accumulate the measurements into the result
+     * 
+     * @param factory
+     * @param trace
+     * @param result
+     */
+    public static void replay(FailureDetectorFactory factory,
+                              HeartbeatTrace trace, Result result) {
+        FailureDetector detector = factory.create();
+        long allocatedBefore = allocatedBytes();
+        // the detectors start their clock at creation
+        long time = System.currentTimeMillis();
+        for (long interval : trace.getIntervals()) {
+            long next = time + interval;
+            for (long probe = time + PROBE_STEP; probe < next; probe += PROBE_STEP) {
+                long start = System.nanoTime();
+                boolean convict = detector.shouldConvict(probe);
+                result.convictNanos += System.nanoTime() - start;
+                result.convictChecks++;
+                if (convict) {
+                    result.falsePositives++;
+                    break;
+                }
+            }
+            result.intervals++;
+            time = next;
+            long start = System.nanoTime();
+            detector.record(time, 0L);
+            result.recordNanos += System.nanoTime() - start;
+            result.records++;
+        }
+
+        // the member crashes after the last heartbeat of the trace
+        result.crashes++;
+        long limit = time + MAX_WAIT * Math.max(1L, Math.round(trace.mean()));
+        for (long probe = time + PROBE_STEP; probe <= limit; probe += PROBE_STEP) {
+            long start = System.nanoTime();
+            boolean convict = detector.shouldConvict(probe);
+            result.convictNanos += System.nanoTime() - start;
+            result.convictChecks++;
+            if (convict) {
+                result.detected++;
+                result.latency += probe - time;
+                break;
+            }
+        }
+        long allocatedAfter = allocatedBytes();
+        if (allocatedBefore >= 0 && allocatedAfter >= 0) {
+            result.allocated += allocatedAfter - allocatedBefore;
+        }
+    }
+
+    /**
+     * Answer the bytes allocated by the current thread, or -1 if the virtual
+     * machine does not measure them
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) threads;
+            if (sun.isThreadAllocatedMemorySupported()
+                && sun.isThreadAllocatedMemoryEnabled()) {
+                return sun.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1L;
+    }
+}
@@ -0,0 +1,104 @@
+/** 
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.gossip.fd;
+
+import com.hellblazer.jackal.gossip.FailureDetectorFactory;
+
+/**
+ * The failure detector factories measured by the harness and the benchmarks,
+ * by name. The factories are parameterized by the expected interval of the
+ * heartbeats and the window of samples. The conviction thresholds are the
+ * constants below, which are what is being tuned.
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public final class FailureDetectors {
+    public static final double   ADAPTIVE_SCALE     = 0.9;
+    public static final double   ADAPTIVE_THRESHOLD = 0.99;
+    public static final double   MINIMUM_INTERVAL   = 1.0;
+    public static final String[] NAMES              = { "phi", "phi-median",
+            "adaptive", "timed", "timeout", "lock-free-phi",
+            "lock-free-phi-median", "lock-free-adaptive" };
+    public static final double   PHI_THRESHOLD      = 8.0;
+    /**
+     * The multiple of the expected interval after which the timeout detectors
+     * convict
+     */
+    public static final int      TIMEOUT_INTERVALS  = 5;
+
+    /**
+     * Answer the named failure detector factory
+     * 
+     * @param name
+     *            - the name of the factory, one of the NAMES
+     * @param expectedInterval
+     *            - the expected interval of the heartbeats, in milliseconds
+     * @param windowSize
+     *            - the number of samples of the windowed detectors
+     * @return the named factory
+     */
+    public static FailureDetectorFactory create(String name,
+                                                long expectedInterval,
+                                                int windowSize) {
+        if ("phi".equals(name)) {
+            return new PhiFailureDetectorFactory(PHI_THRESHOLD, windowSize,
+                                                 expectedInterval, 0,
+                                                 MINIMUM_INTERVAL, false);
+        } else if ("phi-median".equals(name)) {
+            return new PhiFailureDetectorFactory(PHI_THRESHOLD, windowSize,
+                                                 expectedInterval, 0,
+                                                 MINIMUM_INTERVAL, true);
+        } else if ("adaptive".equals(name)) {
+            return new AdaptiveFailureDetectorFactory(ADAPTIVE_THRESHOLD,
+                                                      windowSize,
+                                                      ADAPTIVE_SCALE,
+                                                      expectedInterval, 0,
+                                                      MINIMUM_INTERVAL);
+        } else if ("timed".equals(name)) {
+            return new TimedFailureDetectorFactory(TIMEOUT_INTERVALS
+                                                   * expectedInterval);
+        } else if ("timeout".equals(name)) {
+            return new SimpleTimeoutFailureDetectorFactory(TIMEOUT_INTERVALS
+                                                           * expectedInterval);
+        } else if ("lock-free-phi".equals(name)) {
+            return new LockFreePhiFailureDetectorFactory(PHI_THRESHOLD,
+                                                         windowSize,
+                                                         expectedInterval, 0,
+                                                         MINIMUM_INTERVAL,
+                                                         false);
+        } else if ("lock-free-phi-median".equals(name)) {
+            return new LockFreePhiFailureDetectorFactory(PHI_THRESHOLD,
+                                                         windowSize,
+                                                         expectedInterval, 0,
+                                                         MINIMUM_INTERVAL, true);
+        } else if ("lock-free-adaptive".equals(name)) {
+            return new LockFreeAdaptiveFailureDetectorFactory(
+                                                              ADAPTIVE_THRESHOLD,
+                                                              windowSize,
+                                                              ADAPTIVE_SCALE,
+                                                              expectedInterval,
+                                                              0,
+                                                              MINIMUM_INTERVAL);
+        }
+        throw new IllegalArgumentException("Unknown failure detector: " + name);
+    }
+
+    private FailureDetectors() {
+    }
+}
@@ -0,0 +1,158 @@
+/** 
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.gossip.fd;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import com.hellblazer.jackal.gossip.HeartbeatCapture;
+import com.hellblazer.jackal.gossip.HeartbeatCaptureReader;
+import com.hellblazer.jackal.util.GammaDistribution;
+
+/**
+ * A trace of the inter arrival times, in milliseconds, of the heartbeats of a
+ * member. Traces are either synthetic, or read from a {@link HeartbeatCapture}.
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public class HeartbeatTrace {
+
+    /**
+     * Read the heartbeats captured by a {@link HeartbeatCapture}, one trace
+     * per endpoint id. The inter arrival times are those of the heartbeat
+     * times, which are what the failure detectors record.
+     * 
+     * @param directory
+     *            - the directory of the capture
+     * @param prefix
+     *            - the prefix of the segment file names
+     * @return the traces of the capture
+     * @throws IOException
+     */
+    public static List<HeartbeatTrace> capture(File directory, String prefix)
+                                                                             throws IOException {
+        Map<Integer, List<Long>> timestamps = new TreeMap<Integer, List<Long>>();
+        HeartbeatCaptureReader reader = new HeartbeatCaptureReader(directory,
+                                                                   prefix);
+        while (reader.next()) {
+            add(timestamps, reader.getId(), reader.getHeartbeatTime());
+        }
+        return traces(prefix, timestamps);
+    }
+
+    /**
+     * Answer a synthetic trace of gamma distributed inter arrival times. A
+     * shape of 1 gives the exponential distribution, and the larger the shape,
+     * the more regular the heartbeats.
+     * 
+     * @param random
+     *            - the source of entropy
+     * @param shape
+     *            - the shape of the gamma distribution
+     * @param mean
+     *            - the mean inter arrival time
+     * @param heartbeats
+     *            - the number of heartbeats of the trace
+     * @return the synthetic trace
+     */
+    public static HeartbeatTrace gamma(Random random, double shape,
+                                       double mean, int heartbeats) {
+        GammaDistribution gamma = new GammaDistribution(random, shape, mean
+                                                                       / shape);
+        long[] intervals = new long[heartbeats];
+        for (int i = 0; i < heartbeats; i++) {
+            intervals[i] = Math.max(1L, Math.round(gamma.nextGamma()));
+        }
+        return new HeartbeatTrace(String.format("gamma(%s, %s)", shape, mean),
+                                  intervals);
+    }
+
+    private static void add(Map<Integer, List<Long>> timestamps, int id,
+                            long time) {
+        List<Long> times = timestamps.get(id);
+        if (times == null) {
+            times = new ArrayList<Long>();
+            timestamps.put(id, times);
+        }
+        times.add(time);
+    }
+
+    private static List<HeartbeatTrace> traces(String name,
+                                               Map<Integer, List<Long>> timestamps) {
+        List<HeartbeatTrace> traces = new ArrayList<HeartbeatTrace>();
+        for (Map.Entry<Integer, List<Long>> entry : timestamps.entrySet()) {
+            List<Long> times = entry.getValue();
+            if (times.size() < 2) {
+                continue;
+            }
+            long[] intervals = new long[times.size() - 1];
+            for (int i = 1; i < times.size(); i++) {
+                intervals[i - 1] = times.get(i) - times.get(i - 1);
+            }
+            traces.add(new HeartbeatTrace(name + "#" + entry.getKey(),
+                                          intervals));
+        }
+        return traces;
+    }
+
+    private final long[] intervals;
+    private final String name;
+
+    public HeartbeatTrace(String name, long[] intervals) {
+        this.name = name;
+        this.intervals = intervals;
+    }
+
+    public long[] getIntervals() {
+        return intervals;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Answer the mean inter arrival time of the trace
+     */
+    public double mean() {
+        if (intervals.length == 0) {
+            return 0.0;
+        }
+        double sum = 0.0;
+        for (long interval : intervals) {
+            sum += interval;
+        }
+        return sum / intervals.length;
+    }
+
+    public int size() {
+        return intervals.length;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %s heartbeats, mean interval %.1f ms", name,
+                             intervals.length, mean());
+    }
+}
@@ -0,0 +1,204 @@
+/** 
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.partition.comms;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smartfrog.services.anubis.partition.wire.security.NoSecurityImpl;
+
+import com.hellblazer.pinkie.CommunicationsHandler;
+import com.hellblazer.pinkie.CommunicationsHandlerFactory;
+import com.hellblazer.pinkie.ServerSocketChannelHandler;
+import com.hellblazer.pinkie.SocketChannelHandler;
+import com.hellblazer.pinkie.SocketOptions;
+
+/**
+ * Measures the throughput of the framed message writes of the message
+ * handlers over a loopback connection, for small and large objects. The
+ * sender keeps a bounded window of bytes in flight, so the benchmark measures
+ * the sustained rate of the gathering writes rather than the growth of the
+ * write queue.
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageHandlerBenchmark {
+
+    private static class Receiver extends AbstractMessageHandler {
+        final AtomicLong received = new AtomicLong();
+
+        Receiver() {
+            super(new NoSecurityImpl());
+        }
+
+        @Override
+        public void accept(SocketChannelHandler handler) {
+            this.handler = handler;
+            handler.selectForRead();
+        }
+
+        @Override
+        public void closing() {
+        }
+
+        @Override
+        public void connect(SocketChannelHandler handler) {
+        }
+
+        @Override
+        protected void deliverObject(long order, ByteBuffer readBuffer) {
+            received.incrementAndGet();
+        }
+
+        @Override
+        protected Logger getLog() {
+            return log;
+        }
+    }
+
+    private static class Sender extends AbstractMessageHandler {
+        final CountDownLatch connected = new CountDownLatch(1);
+        long                 sequence;
+
+        Sender() {
+            super(new NoSecurityImpl());
+        }
+
+        @Override
+        public void accept(SocketChannelHandler handler) {
+        }
+
+        @Override
+        public void closing() {
+        }
+
+        @Override
+        public void connect(SocketChannelHandler handler) {
+            this.handler = handler;
+            connected.countDown();
+        }
+
+        void send(ByteBuffer payload) {
+            ByteBuffer buffer = bufferPool.allocate(payload.remaining());
+            buffer.put(payload.duplicate());
+            buffer.flip();
+            sendObject(buffer);
+        }
+
+        @Override
+        protected void deliverObject(long order, ByteBuffer readBuffer) {
+        }
+
+        @Override
+        protected Logger getLog() {
+            return log;
+        }
+
+        @Override
+        protected long nextSequence() {
+            return sequence++;
+        }
+    }
+
+    private static final int    WINDOW_BYTES = 4 * 1024 * 1024;
+    private static final Logger log          = LoggerFactory.getLogger(MessageHandlerBenchmark.class);
+
+    @Param({ "100", "65536" })
+    public int                         size;
+
+    private ExecutorService            executor;
+    private ServerSocketChannelHandler handler;
+    private ByteBuffer                 payload;
+    private volatile Receiver          receiver;
+    private Sender                     sender;
+    private long                       sent;
+    private long                       window;
+
+    @Benchmark
+    public void send() {
+        while (sent - receiver.received.get() >= window) {
+            Thread.yield();
+        }
+        sender.send(payload);
+        sent++;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        payload = ByteBuffer.allocate(size);
+        window = Math.max(1, WINDOW_BYTES / size);
+        executor = Executors.newCachedThreadPool();
+        handler = new ServerSocketChannelHandler(
+                                                 "Message handler benchmark",
+                                                 new SocketOptions(),
+                                                 new InetSocketAddress(
+                                                                       "127.0.0.1",
+                                                                       0),
+                                                 executor,
+                                                 new CommunicationsHandlerFactory() {
+                                                     @Override
+                                                     public CommunicationsHandler createCommunicationsHandler(SocketChannel channel) {
+                                                         receiver = new Receiver();
+                                                         return receiver;
+                                                     }
+                                                 });
+        handler.start();
+        sender = new Sender();
+        handler.connectTo(handler.getLocalAddress(), sender);
+        if (!sender.connected.await(10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Sender did not connect");
+        }
+        while (receiver == null) {
+            Thread.sleep(10);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        handler.terminate();
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,113 @@
+/** 
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the allocate/free cycle of the locked {@link ByteBufferPool} with
+ * the heap and direct variants of the {@link StripedByteBufferPool}, for a
+ * single size and for the mix of sizes seen by the wire messages, under
+ * contention.
+ * 
+ * @author hhildebrand
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class ByteBufferPoolBenchmark {
+
+    /**
+     * The per thread sequence of mixed sizes
+     */
+    @State(Scope.Thread)
+    public static class Sizes {
+        private static final int[] MIX = { 64, 200, 620, 1500, 1500, 4096,
+                                           1500, 100 };
+        private int                next;
+
+        public int next() {
+            return MIX[next++ & MIX.length - 1];
+        }
+    }
+
+    @Param({ "locked", "striped", "striped-direct" })
+    public String pool;
+
+    @Param({ "64", "1500", "65536" })
+    public int    size;
+
+    private BufferPool bufferPool;
+
+    @Benchmark
+    public int fixed() {
+        return cycle(size);
+    }
+
+    @Benchmark
+    public int mixed(Sizes sizes) {
+        return cycle(sizes.next());
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        if ("locked".equals(pool)) {
+            bufferPool = new ByteBufferPool("benchmark", 100);
+        } else if ("striped".equals(pool)) {
+            bufferPool = new StripedByteBufferPool("benchmark", 100);
+        } else if ("striped-direct".equals(pool)) {
+            bufferPool = new StripedByteBufferPool("benchmark", 100, true);
+        } else {
+            throw new IllegalArgumentException("Unknown pool: " + pool);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.println(bufferPool);
+    }
+
+    private int cycle(int capacity) {
+        ByteBuffer buffer = bufferPool.allocate(capacity);
+        buffer.putInt(capacity);
+        int remaining = buffer.remaining();
+        bufferPool.free(buffer);
+        return remaining;
+    }
+}
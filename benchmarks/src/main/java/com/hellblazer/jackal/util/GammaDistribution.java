@@ -2,12 +2,17 @@ package com.hellblazer.jackal.util;
 
 import java.util.Random;
 
+/**
+ * Samples of the gamma distribution with the shape alpha and the scale beta.
+ * With alpha = 1, this is the exponential distribution.
+ * 
+ */
 public class GammaDistribution {
     private final Random random;
     private final double alpha;
     private final double beta;
 
-    GammaDistribution(Random random, double alpha, double beta) {
+    public GammaDistribution(Random random, double alpha, double beta) {
         if (alpha <= 0 || beta <= 0) {
             throw new IllegalArgumentException(
                                                "alpha and beta must be strictly positive.");
@@ -0,0 +1,111 @@
+/** 
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.util;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hellblazer.jackal.gossip.fd.AdaptiveFailureDetector;
+
+/**
+ * Measures the rank and quantile queries of the {@link SkipList} over a full
+ * window of inter arrival times, the sliding of the window, and the conviction
+ * check of the {@link AdaptiveFailureDetector} which the gossip makes for
+ * every endpoint on every round.
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SkipListBenchmark {
+
+    private static final long INTERVAL = 1000L;
+
+    @Param({ "100", "1000", "10000" })
+    public int                window;
+
+    private AdaptiveFailureDetector detector;
+    private SkipList                list;
+    private double[]                probes;
+    private int                     next;
+    private double[]                samples;
+    private long                    now;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(666);
+        list = new SkipList();
+        samples = new double[window];
+        for (int i = 0; i < window; i++) {
+            samples[i] = INTERVAL + random.nextGaussian() * 100.0;
+            list.add(samples[i]);
+        }
+        probes = new double[1024];
+        for (int i = 0; i < probes.length; i++) {
+            probes[i] = INTERVAL + random.nextGaussian() * 150.0;
+        }
+        detector = new AdaptiveFailureDetector(0.9, window, 0.9, INTERVAL,
+                                               window, 1.0);
+        now = System.currentTimeMillis();
+    }
+
+    @Benchmark
+    public double quantile() {
+        return list.quantile((next++ & 1023) / 1024.0);
+    }
+
+    @Benchmark
+    public int rank() {
+        return list.rank(probes[next++ & 1023]);
+    }
+
+    @Benchmark
+    public boolean shouldConvict() {
+        return detector.shouldConvict(now + (long) probes[next++ & 1023]);
+    }
+
+    /**
+     * Replace the oldest sample with a new one, as the windowed detectors do
+     * on every heartbeat
+     */
+    @Benchmark
+    public boolean slide() {
+        int i = next++ % window;
+        list.remove(samples[i]);
+        samples[i] = probes[next & 1023];
+        return list.add(samples[i]);
+    }
+}
@@ -0,0 +1,128 @@
+/** 
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.smartfrog.services.anubis.partition.wire.msg;
+
+import java.io.ByteArrayInputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.smartfrog.services.anubis.locator.ValueData;
+import org.smartfrog.services.anubis.locator.msg.RegisterMsg;
+import org.smartfrog.services.anubis.locator.names.ProviderInstance;
+import org.smartfrog.services.anubis.partition.util.Identity;
+import org.smartfrog.services.anubis.partition.wire.Wire;
+
+import com.hellblazer.jackal.util.BufferPool;
+import com.hellblazer.jackal.util.ByteBufferOutputStream;
+import com.hellblazer.jackal.util.StripedByteBufferPool;
+
+/**
+ * Compares the encoding and decoding of a locator register message by its
+ * message codec with its encoding by Java serialization, the fallback of
+ * objects without a codec. The timings of the codec include the framing of
+ * the message message, which the timings of the serialization do not.
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageCodecBenchmark {
+    private final BufferPool bufferPool = new StripedByteBufferPool(
+                                                                    "Message codec benchmark",
+                                                                    16);
+    private ByteBuffer       encoded;
+    private RegisterMsg      msg;
+    private byte[]           serialized;
+    private final Identity   sender     = new Identity(0x1638, 1, 0);
+
+    @Benchmark
+    public Object decodeCodec() throws Exception {
+        encoded.rewind();
+        return ((MessageMsg) Wire.fromWire(encoded)).getMessageObject();
+    }
+
+    @Benchmark
+    public Object decodeSerialized() throws Exception {
+        ObjectInputStream ois = new ObjectInputStream(
+                                                      new ByteArrayInputStream(
+                                                                               serialized));
+        return ois.readObject();
+    }
+
+    @Benchmark
+    public int encodeCodec() throws Exception {
+        ByteBuffer wireForm = new MessageMsg(sender, msg).toWire(bufferPool);
+        int size = wireForm.remaining();
+        bufferPool.free(wireForm);
+        return size;
+    }
+
+    @Benchmark
+    public int encodeSerialized() throws Exception {
+        ByteBufferOutputStream bbos = new ByteBufferOutputStream(bufferPool);
+        ObjectOutputStream oos = new ObjectOutputStream(bbos);
+        oos.writeObject(msg);
+        oos.flush();
+        ByteBuffer wireForm = bbos.toByteBuffer();
+        int size = wireForm.limit();
+        bufferPool.free(wireForm);
+        return size;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        msg = RegisterMsg.providerValue(new ProviderInstance(
+                                                             "anubis.benchmark.provider",
+                                                             "instance-1",
+                                                             1,
+                                                             System.currentTimeMillis(),
+                                                             ValueData.newValue("the provider value")));
+        MessageCodecs.setEnabled(true);
+        if (MessageCodecs.forObject(msg) == null) {
+            throw new IllegalStateException("No codec registered for "
+                                            + msg.getClass());
+        }
+        encoded = new MessageMsg(sender, msg).toWire(bufferPool);
+        ByteBufferOutputStream bbos = new ByteBufferOutputStream(bufferPool);
+        ObjectOutputStream oos = new ObjectOutputStream(bbos);
+        oos.writeObject(msg);
+        oos.flush();
+        ByteBuffer wireForm = bbos.toByteBuffer();
+        wireForm.rewind();
+        serialized = new byte[wireForm.remaining()];
+        wireForm.get(serialized);
+    }
+}
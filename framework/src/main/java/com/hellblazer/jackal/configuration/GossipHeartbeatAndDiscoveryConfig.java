@@ -35,10 +35,14 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 
 import com.hellblazer.jackal.configuration.JackalConfig.HeartbeatConfiguration;
+import com.hellblazer.jackal.gossip.AdaptiveGossipPolicy;
 import com.hellblazer.jackal.gossip.FailureDetectorFactory;
+import com.hellblazer.jackal.gossip.FixedGossipPolicy;
 import com.hellblazer.jackal.gossip.Gossip;
 import com.hellblazer.jackal.gossip.GossipCommunications;
 import com.hellblazer.jackal.gossip.GossipHeartbeatProtocolFactory;
+import com.hellblazer.jackal.gossip.GossipPolicy;
+import com.hellblazer.jackal.gossip.LocalHealth;
 import com.hellblazer.jackal.gossip.SystemView;
 import com.hellblazer.jackal.gossip.fd.SimpleTimeoutFailureDetectorFactory;
 import com.hellblazer.jackal.gossip.udp.UdpCommunications;
@@ -51,17 +55,41 @@ import com.hellblazer.jackal.gossip.udp.UdpCommunications;
 public class GossipHeartbeatAndDiscoveryConfig {
     public static class GossipConfiguration {
         public final int      interval;
+        public final int      maxFanout;
+        public final int      maxInterval;
         public final int      quarantineDelay;
         public final TimeUnit unit;
         public final int      unreachableNodeDelay;
 
         public GossipConfiguration(int interval, TimeUnit unit,
                                    int quarantineDelay, int unreachableNodeDelay) {
+            this(interval, interval, 1, unit, quarantineDelay,
+                 unreachableNodeDelay);
+        }
+
+        /**
+         * The configuration of an adaptive gossip, which gossips with up to
+         * the maximum fan out of live members at the interval while the view
+         * is changing, and backs off to a single member at the maximum
+         * interval while the view is stable
+         */
+        public GossipConfiguration(int interval, int maxInterval,
+                                   int maxFanout, TimeUnit unit,
+                                   int quarantineDelay, int unreachableNodeDelay) {
             this.interval = interval;
+            this.maxInterval = maxInterval;
+            this.maxFanout = maxFanout;
             this.unit = unit;
             this.quarantineDelay = quarantineDelay;
             this.unreachableNodeDelay = unreachableNodeDelay;
         }
+
+        public GossipPolicy policy() {
+            if (maxInterval == interval && maxFanout == 1) {
+                return new FixedGossipPolicy(interval);
+            }
+            return new AdaptiveGossipPolicy(interval, maxInterval, maxFanout);
+        }
     }
 
     @Autowired
@@ -98,10 +126,13 @@ public class GossipHeartbeatAndDiscoveryConfig {
     @Bean
     @Primary
     public Gossip gossip() throws IOException {
-        return new Gossip(systemView(), new SecureRandom(), communications(),
-                          gossipConfiguration.interval,
-                          gossipConfiguration.unit, failureDetectorFactory,
-                          partitionIdentity);
+        Gossip gossip = new Gossip(systemView(), new SecureRandom(),
+                                   communications(),
+                                   gossipConfiguration.policy(),
+                                   gossipConfiguration.unit,
+                                   failureDetectorFactory, partitionIdentity);
+        gossip.setLocalHealth(localHealth());
+        return gossip;
     }
 
     @Bean
@@ -123,6 +154,19 @@ public class GossipHeartbeatAndDiscoveryConfig {
         return new GossipHeartbeatProtocolFactory(gossip());
     }
 
+    /**
+     * The health of the local member, which tolerates a round of the gossip
+     * late by up to a full interval, and delays the convictions by at most
+     * nine times the timeouts of the failure detectors
+     */
+    @Bean
+    @Primary
+    public LocalHealth localHealth() {
+        return new LocalHealth(
+                               gossipConfiguration.unit.toMillis(gossipConfiguration.interval),
+                               8);
+    }
+
     @Bean
     @Primary
     public SystemView systemView() throws IOException {
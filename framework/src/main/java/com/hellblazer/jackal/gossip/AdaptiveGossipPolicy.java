@@ -0,0 +1,110 @@
+/** 
+ * (C) Copyright 2010 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.gossip;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A policy which gossips quickly and widely while the view is changing, and
+ * backs off while it is stable.
+ * <p>
+ * Changes are counted as the membership of the system view changes, and as
+ * heartbeat states are delivered which carry an unstable partition view -
+ * that is, while the partition is forming in response to a change in
+ * membership. After each round, the changes counted during the round are
+ * added to the churn of the view, which halves with every round. The fan out
+ * of the next round is one more than the churn, up to the maximum fan out. If
+ * there were any changes during the round, the interval is reset to the
+ * minimum interval; otherwise it doubles, up to the maximum interval. The
+ * gossip starts at the minimum interval, and changes during a long interval
+ * are acted on no later than the maximum interval.
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public class AdaptiveGossipPolicy implements GossipPolicy {
+    private final AtomicInteger changes = new AtomicInteger();
+    private volatile int        churn;
+    private volatile long       interval;
+    private final int           maxFanout;
+    private final long          maxInterval;
+    private final long          minInterval;
+
+    /**
+     * @param minInterval
+     *            - the interval between the rounds while the view is changing
+     * @param maxInterval
+     *            - the interval the rounds back off to while the view is
+     *            stable
+     * @param maxFanout
+     *            - the maximum number of live members to gossip with in a
+     *            round
+     */
+    public AdaptiveGossipPolicy(long minInterval, long maxInterval,
+                                int maxFanout) {
+        if (minInterval <= 0 || maxInterval < minInterval) {
+            throw new IllegalArgumentException(
+                                               String.format("Invalid intervals: %s, %s",
+                                                             minInterval,
+                                                             maxInterval));
+        }
+        if (maxFanout < 1) {
+            throw new IllegalArgumentException("Invalid maximum fan out: "
+                                               + maxFanout);
+        }
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+        this.maxFanout = maxFanout;
+    }
+
+    @Override
+    public int fanout() {
+        return Math.min(maxFanout, churn + 1);
+    }
+
+    @Override
+    public long interval() {
+        int recent = changes.getAndSet(0);
+        churn = (churn >> 1) + Math.min(recent, maxFanout);
+        if (recent > 0) {
+            interval = minInterval;
+        } else {
+            interval = Math.max(minInterval,
+                                Math.min(maxInterval, interval << 1));
+        }
+        return interval;
+    }
+
+    @Override
+    public void membershipChanged() {
+        changes.incrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveGossipPolicy [fanout=" + fanout() + ", interval="
+               + interval + "]";
+    }
+
+    @Override
+    public void updated(HeartbeatState state) {
+        if (!state.isStable()) {
+            changes.incrementAndGet();
+        }
+    }
+}
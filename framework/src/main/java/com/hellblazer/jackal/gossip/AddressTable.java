@@ -0,0 +1,234 @@
+/**
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.gossip;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The interning table of the IPv4 socket addresses of the members of a view.
+ * The decoding of a digest or heartbeat state answers the canonical address of
+ * a member without allocating, and as the canonical addresses are the keys of
+ * the endpoints, the views and the digests, their lookups succeed on the
+ * identity of the key. Only the addresses of members are interned; decoding
+ * never inserts, so the table is not fed by the addresses of stray datagrams.
+ * <p>
+ * Lookups are lock free. Insertions and removals are made in place under the
+ * lock of the table, and the table is rehashed only when its load doubles, or
+ * when the removed entries have accumulated, so the cost of an insertion is
+ * amortized constant.
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public final class AddressTable {
+    private static class Entry {
+        final InetSocketAddress address;
+        final long              key;
+
+        Entry(long key, InetSocketAddress address) {
+            this.key = key;
+            this.address = address;
+        }
+    }
+
+    private static final int   INITIAL_CAPACITY = 64;
+    // keys are 48 bits, so the key of the removed marker matches no address
+    private static final Entry REMOVED          = new Entry(-1L, null);
+
+    /**
+     * Answer a new socket address of the IPv4 wire form
+     * 
+     * @param ip
+     *            - the IPv4 address, in network byte order
+     * @param port
+     * @return the socket address
+     * @throws UnknownHostException
+     */
+    public static InetSocketAddress address(int ip, int port)
+                                                             throws UnknownHostException {
+        byte[] bytes = new byte[] { (byte) (ip >>> 24), (byte) (ip >>> 16),
+                (byte) (ip >>> 8), (byte) ip };
+        return new InetSocketAddress(InetAddress.getByAddress(bytes), port);
+    }
+
+    /**
+     * Answer the IPv4 address of the bytes, in network byte order
+     */
+    public static int ip(byte b0, byte b1, byte b2, byte b3) {
+        return (b0 & 0xFF) << 24 | (b1 & 0xFF) << 16 | (b2 & 0xFF) << 8 | b3
+                                                                         & 0xFF;
+    }
+
+    private static long key(InetSocketAddress address) {
+        byte[] bytes = address.getAddress().getAddress();
+        return key(ip(bytes[0], bytes[1], bytes[2], bytes[3]),
+                   address.getPort());
+    }
+
+    private static long key(int ip, int port) {
+        return (ip & 0xFFFFFFFFL) << 16 | port;
+    }
+
+    private static int slot(long key, int mask) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ hash >>> 32) & mask;
+    }
+
+    private volatile AtomicReferenceArray<Entry> entries = new AtomicReferenceArray<Entry>(
+                                                                                           INITIAL_CAPACITY);
+    private int                                  size;
+    private int                                  used;
+
+    /**
+     * Answer the canonical socket address of the IPv4 wire form, if the
+     * address is interned, or a new socket address if it is not
+     * 
+     * @param ip
+     *            - the IPv4 address, in network byte order
+     * @param port
+     * @return the socket address
+     * @throws UnknownHostException
+     */
+    public InetSocketAddress get(int ip, int port) throws UnknownHostException {
+        if (port < 0 || port > 0xFFFF) {
+            throw new IllegalArgumentException("port out of range: " + port);
+        }
+        InetSocketAddress address = get(entries, key(ip, port));
+        if (address != null) {
+            return address;
+        }
+        return address(ip, port);
+    }
+
+    /**
+     * Answer the canonical instance of the socket address of a member,
+     * interning the address if it is not already. Addresses which are
+     * unresolved, or are not IPv4, are answered as is.
+     * 
+     * @param address
+     * @return the canonical socket address
+     */
+    public InetSocketAddress intern(InetSocketAddress address) {
+        if (address == null || !(address.getAddress() instanceof Inet4Address)) {
+            return address;
+        }
+        long key = key(address);
+        InetSocketAddress canonical = get(entries, key);
+        if (canonical != null) {
+            return canonical;
+        }
+        return insert(key, address);
+    }
+
+    /**
+     * Remove the address of a departed member
+     * 
+     * @param address
+     * @return true if the address was interned
+     */
+    public synchronized boolean remove(InetSocketAddress address) {
+        if (address == null || !(address.getAddress() instanceof Inet4Address)) {
+            return false;
+        }
+        long key = key(address);
+        AtomicReferenceArray<Entry> current = entries;
+        int mask = current.length() - 1;
+        for (int i = slot(key, mask);; i = i + 1 & mask) {
+            Entry entry = current.get(i);
+            if (entry == null) {
+                return false;
+            }
+            if (entry.key == key) {
+                current.set(i, REMOVED);
+                size--;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return the number of interned addresses
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private InetSocketAddress get(AtomicReferenceArray<Entry> current, long key) {
+        int mask = current.length() - 1;
+        for (int i = slot(key, mask);; i = i + 1 & mask) {
+            Entry entry = current.get(i);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.key == key) {
+                return entry.address;
+            }
+        }
+    }
+
+    private synchronized InetSocketAddress insert(long key,
+                                                  InetSocketAddress address) {
+        InetSocketAddress canonical = get(entries, key);
+        if (canonical != null) {
+            return canonical;
+        }
+        if (used + 1 > entries.length() >> 1) {
+            rehash();
+        }
+        put(entries, key, address);
+        size++;
+        used++;
+        return address;
+    }
+
+    private void put(AtomicReferenceArray<Entry> current, long key,
+                     InetSocketAddress address) {
+        int mask = current.length() - 1;
+        int i = slot(key, mask);
+        while (current.get(i) != null) {
+            i = i + 1 & mask;
+        }
+        current.set(i, new Entry(key, address));
+    }
+
+    /**
+     * Rehash the live entries into a table sized for twice their number,
+     * dropping the removed entries
+     */
+    private void rehash() {
+        AtomicReferenceArray<Entry> current = entries;
+        int capacity = INITIAL_CAPACITY;
+        while (size + 1 > capacity >> 2) {
+            capacity <<= 1;
+        }
+        AtomicReferenceArray<Entry> next = new AtomicReferenceArray<Entry>(
+                                                                           capacity);
+        for (int i = 0; i < current.length(); i++) {
+            Entry entry = current.get(i);
+            if (entry != null && entry != REMOVED) {
+                put(next, entry.key, entry.address);
+            }
+        }
+        used = size;
+        entries = next;
+    }
+}
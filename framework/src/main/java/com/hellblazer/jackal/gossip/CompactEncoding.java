@@ -0,0 +1,311 @@
+/** (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.gossip;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.smartfrog.services.anubis.partition.util.Identity;
+import org.smartfrog.services.anubis.partition.util.NodeIdSet;
+
+/**
+ * The compact encoding of the contents of a single gossip datagram. Integers
+ * are written as variable length quantities, times as zig zag encoded deltas
+ * from the previous time in the datagram, host addresses as indices into a
+ * table of the hosts previously written to the datagram and node id sets as
+ * either a sparse list of id gaps or a trimmed bitmap, whichever is smaller.
+ * <p>
+ * As the encoding carries state from one element to the next, the elements of
+ * a datagram must be decoded in the order they were written, using a fresh
+ * instance per datagram.
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public class CompactEncoding {
+    private static final int MAX_VAR_INT_BYTES  = 5;
+    private static final int MAX_VAR_LONG_BYTES = 10;
+
+    public static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static long unzigzag(long value) {
+        return value >>> 1 ^ -(value & 1);
+    }
+
+    private static long zigzag(long value) {
+        return value << 1 ^ value >> 63;
+    }
+
+    private final AddressTable      addresses;
+    private final ByteBuffer        buffer;
+    private final List<InetAddress> hosts = new ArrayList<InetAddress>();
+    private int[]                   ips;
+    private int                     markHosts;
+    private int                     markPosition;
+    private long                    markTime;
+    private long                    time;
+
+    public CompactEncoding(ByteBuffer buffer) {
+        this(buffer, null);
+    }
+
+    /**
+     * @param buffer
+     * @param addresses
+     *            - the interned addresses of the members, answered when
+     *            decoding their addresses, or null
+     */
+    public CompactEncoding(ByteBuffer buffer, AddressTable addresses) {
+        this.buffer = buffer;
+        this.addresses = addresses;
+    }
+
+    public byte get() {
+        return buffer.get();
+    }
+
+    public InetSocketAddress getAddress() throws UnknownHostException {
+        int ref = getVarInt();
+        if (ref == 0) {
+            return null;
+        }
+        int index = ref - 1;
+        if (index == hosts.size()) {
+            int length = buffer.get();
+            if (length == 4) {
+                // IPv4 hosts are kept as integers, so that the canonical
+                // addresses of known members are answered without allocation
+                if (ips == null) {
+                    ips = new int[Math.max(4, index + 1)];
+                } else if (index >= ips.length) {
+                    ips = Arrays.copyOf(ips, Math.max(index + 1,
+                                                      ips.length * 2));
+                }
+                ips[index] = AddressTable.ip(buffer.get(), buffer.get(),
+                                             buffer.get(), buffer.get());
+                hosts.add(null);
+            } else {
+                byte[] address = new byte[length];
+                buffer.get(address);
+                hosts.add(InetAddress.getByAddress(address));
+            }
+        } else if (index > hosts.size()) {
+            throw new IllegalStateException("Invalid host index: " + index);
+        }
+        InetAddress host = hosts.get(index);
+        if (host == null) {
+            int port = getVarInt();
+            return addresses == null ? AddressTable.address(ips[index], port)
+                                    : addresses.get(ips[index], port);
+        }
+        return new InetSocketAddress(host, getVarInt());
+    }
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public Identity getIdentity() {
+        int magic = (int) unzigzag(getVarInt() & 0xFFFFFFFFL);
+        int id = (int) unzigzag(getVarInt() & 0xFFFFFFFFL);
+        long epoch = unzigzag(getVarLong());
+        return new Identity(magic, id, epoch);
+    }
+
+    public NodeIdSet getNodeIdSet() {
+        int header = getVarInt();
+        int length = header >>> 1;
+        if ((header & 1) != 0) {
+            NodeIdSet set = new NodeIdSet();
+            int id = -1;
+            for (int i = 0; i < length; i++) {
+                id += getVarInt() + 1;
+                if (id < 0 || id > Identity.MAX_ID) {
+                    throw new IllegalStateException("Invalid node id: " + id);
+                }
+                set.add(id);
+            }
+            return set;
+        }
+        if (length * 8 > Identity.MAX_ID + 1) {
+            throw new IllegalStateException("Invalid node id set length: "
+                                            + length);
+        }
+        NodeIdSet set = new NodeIdSet(length * 8);
+        for (int i = 0; i < length; i++) {
+            byte bits = buffer.get();
+            for (int j = 0; j < 8; j++) {
+                if ((bits & 1 << j) != 0) {
+                    set.add(i * 8 + j);
+                }
+            }
+        }
+        return set;
+    }
+
+    /**
+     * @return the next time, decoded from the delta with the previous time
+     */
+    public long getTime() {
+        time += unzigzag(getVarLong());
+        return time;
+    }
+
+    public int getVarInt() {
+        int value = 0;
+        for (int i = 0; i < MAX_VAR_INT_BYTES; i++) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << i * 7;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed variable length integer");
+    }
+
+    public long getVarLong() {
+        long value = 0;
+        for (int i = 0; i < MAX_VAR_LONG_BYTES; i++) {
+            byte b = buffer.get();
+            value |= (b & 0x7FL) << i * 7;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed variable length long");
+    }
+
+    /**
+     * Mark the current state of the encoding, so that a partially written
+     * element may be abandoned
+     */
+    public void mark() {
+        markPosition = buffer.position();
+        markHosts = hosts.size();
+        markTime = time;
+    }
+
+    public void put(byte b) {
+        buffer.put(b);
+    }
+
+    public void putAddress(InetSocketAddress address) {
+        if (address == null) {
+            putVarInt(0);
+            return;
+        }
+        InetAddress host = address.getAddress();
+        int index = hosts.indexOf(host);
+        if (index < 0) {
+            putVarInt(hosts.size() + 1);
+            byte[] bytes = host.getAddress();
+            buffer.put((byte) bytes.length);
+            buffer.put(bytes);
+            hosts.add(host);
+        } else {
+            putVarInt(index + 1);
+        }
+        putVarInt(address.getPort());
+    }
+
+    public void putIdentity(Identity identity) {
+        putVarInt((int) zigzag(identity.magic));
+        putVarInt((int) zigzag(identity.id));
+        putVarLong(zigzag(identity.epoch));
+    }
+
+    public void putNodeIdSet(NodeIdSet set) {
+        byte[] bits = set.getBytes();
+        int length = bits.length;
+        while (length > 0 && bits[length - 1] == 0) {
+            length--;
+        }
+        int count = 0;
+        int sparseSize = 0;
+        int last = -1;
+        for (int i = 0; i < length * 8; i++) {
+            if ((bits[i / 8] & 1 << i % 8) != 0) {
+                sparseSize += varIntSize(i - last - 1);
+                last = i;
+                count++;
+            }
+        }
+        if (varIntSize(count << 1 | 1) + sparseSize < varIntSize(length << 1)
+                                                      + length) {
+            putVarInt(count << 1 | 1);
+            last = -1;
+            for (int i = 0; i < length * 8; i++) {
+                if ((bits[i / 8] & 1 << i % 8) != 0) {
+                    putVarInt(i - last - 1);
+                    last = i;
+                }
+            }
+        } else {
+            putVarInt(length << 1);
+            buffer.put(bits, 0, length);
+        }
+    }
+
+    /**
+     * Write the time as the delta with the previous time
+     * 
+     * @param t
+     */
+    public void putTime(long t) {
+        putVarLong(zigzag(t - time));
+        time = t;
+    }
+
+    public void putVarInt(int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    public void putVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Reset the encoding to the last mark
+     */
+    public void reset() {
+        buffer.position(markPosition);
+        while (hosts.size() > markHosts) {
+            hosts.remove(hosts.size() - 1);
+        }
+        time = markTime;
+    }
+}
@@ -37,7 +37,9 @@ public class Digest {
 
         @Override
         public int compare(Digest digest1, Digest digest2) {
-            return (int) (digest1.time - digest2.time);
+            long time1 = digest1.time;
+            long time2 = digest2.time;
+            return time1 < time2 ? -1 : time1 == time2 ? 0 : 1;
         }
     }
 
@@ -45,11 +47,22 @@ public class Digest {
     private final long              time;
 
     public Digest(ByteBuffer msg) throws UnknownHostException {
-        address = HeartbeatState.readInetAddress(msg);
+        this(msg, null);
+    }
+
+    public Digest(ByteBuffer msg, AddressTable addresses)
+                                                         throws UnknownHostException {
+        address = HeartbeatState.readInetAddress(msg, addresses);
         assert address != null : "Null digest address";
         time = msg.getLong();
     }
 
+    public Digest(CompactEncoding msg) throws UnknownHostException {
+        address = msg.getAddress();
+        assert address != null : "Null digest address";
+        time = msg.getTime();
+    }
+
     public Digest(HeartbeatState state) {
         address = state.getHeartbeatAddress();
         assert address != null : "Null heartbeat state address";
@@ -118,6 +131,11 @@ public class Digest {
         return sb.toString();
     }
 
+    public void writeTo(CompactEncoding msg) {
+        msg.putAddress(address);
+        msg.putTime(time);
+    }
+
     public void writeTo(ByteBuffer buffer) {
         HeartbeatState.writeInetAddress(address, buffer);
         buffer.putLong(time);
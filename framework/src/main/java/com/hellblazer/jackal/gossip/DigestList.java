@@ -0,0 +1,232 @@
+/** (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.gossip;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.RandomAccess;
+
+/**
+ * A list of digests, held as parallel arrays of addresses and times rather
+ * than as digest objects. The list may be cleared and refilled without
+ * allocation, and the digests may be shuffled, sorted and written to the wire
+ * without materializing them. Digest objects are only created when an element
+ * is retrieved through the List interface.
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public class DigestList extends AbstractList<Digest> implements RandomAccess {
+
+    /**
+     * Answer the digests as a digest list, copying them only if required
+     * 
+     * @param digests
+     * @return the digest list
+     */
+    public static DigestList of(List<Digest> digests) {
+        if (digests instanceof DigestList) {
+            return (DigestList) digests;
+        }
+        return new DigestList(digests);
+    }
+
+    /**
+     * A stable merge sort of the range, by descending key. On entry, the source
+     * and destination arrays hold the same entries in the range; on exit, the
+     * destination holds them in sorted order.
+     */
+    private static void mergeSort(long[] srcKeys,
+                                  InetSocketAddress[] srcAddresses,
+                                  long[] srcTimes, long[] dstKeys,
+                                  InetSocketAddress[] dstAddresses,
+                                  long[] dstTimes, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(dstKeys, dstAddresses, dstTimes, srcKeys, srcAddresses,
+                  srcTimes, from, middle);
+        mergeSort(dstKeys, dstAddresses, dstTimes, srcKeys, srcAddresses,
+                  srcTimes, middle, to);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            int source;
+            if (right >= to || left < middle
+                && srcKeys[left] >= srcKeys[right]) {
+                source = left++;
+            } else {
+                source = right++;
+            }
+            dstKeys[i] = srcKeys[source];
+            dstAddresses[i] = srcAddresses[source];
+            dstTimes[i] = srcTimes[source];
+        }
+    }
+
+    private InetSocketAddress[] addresses;
+    private int                 size;
+    private long[]              times;
+
+    public DigestList() {
+        this(16);
+    }
+
+    public DigestList(int initialCapacity) {
+        addresses = new InetSocketAddress[Math.max(1, initialCapacity)];
+        times = new long[addresses.length];
+    }
+
+    /**
+     * Construct a list holding a copy of the digests, with room for one more
+     * 
+     * @param digests
+     */
+    public DigestList(List<Digest> digests) {
+        this(digests.size() + 1);
+        if (digests instanceof DigestList) {
+            DigestList list = (DigestList) digests;
+            System.arraycopy(list.addresses, 0, addresses, 0, list.size);
+            System.arraycopy(list.times, 0, times, 0, list.size);
+            size = list.size;
+        } else {
+            for (Digest digest : digests) {
+                add(digest.getAddress(), digest.getTime());
+            }
+        }
+    }
+
+    @Override
+    public boolean add(Digest digest) {
+        add(digest.getAddress(), digest.getTime());
+        return true;
+    }
+
+    public void add(InetSocketAddress address, long time) {
+        if (size == addresses.length) {
+            int capacity = size + (size >> 1) + 1;
+            addresses = Arrays.copyOf(addresses, capacity);
+            times = Arrays.copyOf(times, capacity);
+        }
+        addresses[size] = address;
+        times[size] = time;
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(addresses, 0, size, null);
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public Digest get(int index) {
+        checkIndex(index);
+        return new Digest(addresses[index], times[index]);
+    }
+
+    public InetSocketAddress getAddress(int index) {
+        checkIndex(index);
+        return addresses[index];
+    }
+
+    public long getTime(int index) {
+        checkIndex(index);
+        return times[index];
+    }
+
+    @Override
+    public Digest set(int index, Digest digest) {
+        Digest previous = get(index);
+        addresses[index] = digest.getAddress();
+        times[index] = digest.getTime();
+        return previous;
+    }
+
+    /**
+     * Randomly permute the digests
+     * 
+     * @param entropy
+     *            - the source of entropy
+     */
+    public void shuffle(Random entropy) {
+        for (int i = size; i > 1; i--) {
+            swap(i - 1, entropy.nextInt(i));
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Sort the digests by the supplied keys, largest key first. The sort is
+     * stable; digests with equal keys retain their relative order.
+     * 
+     * @param keys
+     *            - the sort key of each digest, which are permuted along with
+     *            the digests
+     */
+    public void sortDescending(long[] keys) {
+        if (keys.length < size) {
+            throw new IllegalArgumentException(
+                                               String.format("Need %s keys, have %s",
+                                                             size, keys.length));
+        }
+        if (size < 2) {
+            return;
+        }
+        mergeSort(Arrays.copyOf(keys, size), Arrays.copyOf(addresses, size),
+                  Arrays.copyOf(times, size), keys, addresses, times, 0, size);
+    }
+
+    public void writeTo(int index, ByteBuffer buffer) {
+        checkIndex(index);
+        HeartbeatState.writeInetAddress(addresses[index], buffer);
+        buffer.putLong(times[index]);
+    }
+
+    public void writeTo(int index, CompactEncoding msg) {
+        checkIndex(index);
+        msg.putAddress(addresses[index]);
+        msg.putTime(times[index]);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+                                                + size);
+        }
+    }
+
+    private void swap(int i, int j) {
+        InetSocketAddress address = addresses[i];
+        addresses[i] = addresses[j];
+        addresses[j] = address;
+        long time = times[i];
+        times[i] = times[j];
+        times[j] = time;
+    }
+}
@@ -0,0 +1,196 @@
+/** (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.gossip;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A fixed size summary of a set of digests, used to find the digests two
+ * members disagree on without exchanging them. The digests are partitioned
+ * into buckets by the hash of their address, and each bucket is summarized by
+ * the sum of the hashes of its (address, time) pairs - the leaves of a single
+ * level hash tree. Members with the same view of a bucket have the same bucket
+ * hash, regardless of the order of the digests; only the digests of the
+ * buckets whose hashes differ need be exchanged.
+ * <p>
+ * On the wire, the summary is a bitmap of the non empty buckets, followed by
+ * the hash of each non empty bucket, and so always fits in a single datagram.
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public class DigestSummary {
+    public static final int   BUCKET_BITS   = 7;
+    public static final int   BUCKETS       = 1 << BUCKET_BITS;
+    public static final int   MAX_BYTE_SIZE = BUCKETS / 8 + BUCKETS * 8;
+    private static final long GOLDEN_GAMMA  = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Answer the bucket of the address
+     * 
+     * @param address
+     * @return the bucket, in [0, BUCKETS)
+     */
+    public static int bucket(InetSocketAddress address) {
+        return bucket(hash(address));
+    }
+
+    private static int bucket(long addressHash) {
+        return (int) (addressHash >>> 64 - BUCKET_BITS);
+    }
+
+    /**
+     * Answer the hash of the address, which must be the same on every member,
+     * and so is computed from the bytes of the host address and the port
+     * rather than from the hash codes of the address objects
+     */
+    private static long hash(InetSocketAddress address) {
+        long hash = address.getPort();
+        InetAddress host = address.getAddress();
+        if (host == null) {
+            hash = hash * 31 + address.getHostName().hashCode();
+        } else {
+            for (byte b : host.getAddress()) {
+                hash = hash * 31 + (b & 0xFF);
+            }
+        }
+        return mix(hash);
+    }
+
+    private static long hash(long addressHash, long time) {
+        return mix(addressHash + time * GOLDEN_GAMMA);
+    }
+
+    /**
+     * The finalizer of the 64 bit murmur hash
+     */
+    private static long mix(long value) {
+        value = (value ^ value >>> 33) * 0xFF51AFD7ED558CCDL;
+        value = (value ^ value >>> 33) * 0xC4CEB9FE1A85EC53L;
+        return value ^ value >>> 33;
+    }
+
+    private final long[] hashes = new long[BUCKETS];
+
+    /**
+     * Read the summary from the buffer
+     * 
+     * @param buffer
+     */
+    public DigestSummary(ByteBuffer buffer) {
+        long[] occupied = new long[BUCKETS / 64];
+        for (int i = 0; i < occupied.length; i++) {
+            occupied[i] = buffer.getLong();
+        }
+        for (int i = 0; i < BUCKETS; i++) {
+            if ((occupied[i >>> 6] & 1L << i) != 0) {
+                hashes[i] = buffer.getLong();
+            }
+        }
+    }
+
+    /**
+     * Summarize the digests
+     * 
+     * @param digests
+     */
+    public DigestSummary(DigestList digests) {
+        for (int i = 0; i < digests.size(); i++) {
+            long addressHash = hash(digests.getAddress(i));
+            hashes[bucket(addressHash)] += hash(addressHash,
+                                                digests.getTime(i));
+        }
+    }
+
+    /**
+     * Answer the digests in the buckets in which this summary differs from the
+     * other summary
+     * 
+     * @param digests
+     *            - the digests this summary was computed from
+     * @param other
+     *            - the summary to compare against
+     * @return the digests of the differing buckets, empty if the summaries are
+     *         equal
+     */
+    public DigestList difference(DigestList digests, DigestSummary other) {
+        DigestList difference = new DigestList();
+        if (equals(other)) {
+            return difference;
+        }
+        for (int i = 0; i < digests.size(); i++) {
+            InetSocketAddress address = digests.getAddress(i);
+            int bucket = bucket(address);
+            if (hashes[bucket] != other.hashes[bucket]) {
+                difference.add(address, digests.getTime(i));
+            }
+        }
+        return difference;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        return Arrays.equals(hashes, ((DigestSummary) obj).hashes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(hashes);
+    }
+
+    @Override
+    public String toString() {
+        int occupied = 0;
+        for (long hash : hashes) {
+            if (hash != 0) {
+                occupied++;
+            }
+        }
+        return "DigestSummary [buckets=" + occupied + "/" + BUCKETS + "]";
+    }
+
+    /**
+     * Write the summary to the buffer
+     * 
+     * @param buffer
+     */
+    public void writeTo(ByteBuffer buffer) {
+        long[] occupied = new long[BUCKETS / 64];
+        for (int i = 0; i < BUCKETS; i++) {
+            if (hashes[i] != 0) {
+                occupied[i >>> 6] |= 1L << i;
+            }
+        }
+        for (long bits : occupied) {
+            buffer.putLong(bits);
+        }
+        for (long hash : hashes) {
+            if (hash != 0) {
+                buffer.putLong(hash);
+            }
+        }
+    }
+}
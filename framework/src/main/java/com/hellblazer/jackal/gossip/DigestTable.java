@@ -0,0 +1,103 @@
+/** (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.gossip;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The table of connected endpoints the gossip digests are generated from, held
+ * as parallel arrays of addresses and endpoints. The table is maintained as
+ * endpoints are connected and removed, so that the digests of a gossip round
+ * are produced by a single pass over the arrays, reading the current time of
+ * each endpoint, without allocation.
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+class DigestTable {
+    private InetSocketAddress[]                   addresses = new InetSocketAddress[16];
+    private Endpoint[]                            endpoints = new Endpoint[16];
+    private int                                   size;
+    private final Map<InetSocketAddress, Integer> slots     = new HashMap<InetSocketAddress, Integer>();
+
+    /**
+     * Add the endpoint to the table, replacing any endpoint previously
+     * recorded for the address
+     * 
+     * @param address
+     * @param endpoint
+     */
+    synchronized void add(InetSocketAddress address, Endpoint endpoint) {
+        Integer slot = slots.get(address);
+        if (slot != null) {
+            endpoints[slot] = endpoint;
+            return;
+        }
+        if (size == addresses.length) {
+            int capacity = size << 1;
+            addresses = Arrays.copyOf(addresses, capacity);
+            endpoints = Arrays.copyOf(endpoints, capacity);
+        }
+        addresses[size] = address;
+        endpoints[size] = endpoint;
+        slots.put(address, size);
+        size++;
+    }
+
+    /**
+     * Fill the list with the current digests of the endpoints in the table
+     * 
+     * @param digests
+     */
+    synchronized void fill(DigestList digests) {
+        digests.clear();
+        for (int i = 0; i < size; i++) {
+            digests.add(addresses[i], endpoints[i].getTime());
+        }
+    }
+
+    /**
+     * Remove the endpoint from the table. The endpoint is only removed if it is
+     * the endpoint currently recorded for the address, so that the removal of
+     * a dead endpoint does not remove its replacement.
+     * 
+     * @param address
+     * @param endpoint
+     */
+    synchronized void remove(InetSocketAddress address, Endpoint endpoint) {
+        Integer slot = slots.get(address);
+        if (slot == null || endpoints[slot] != endpoint) {
+            return;
+        }
+        slots.remove(address);
+        int last = --size;
+        if (slot != last) {
+            addresses[slot] = addresses[last];
+            endpoints[slot] = endpoints[last];
+            slots.put(addresses[slot], slot);
+        }
+        addresses[last] = null;
+        endpoints[last] = null;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+}
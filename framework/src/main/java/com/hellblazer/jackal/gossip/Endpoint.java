@@ -36,6 +36,7 @@ public class Endpoint {
     private volatile GossipMessages handler;
     private volatile HeartbeatState heartbeat;
     private volatile boolean        isAlive = true;
+    private volatile long           lastArrival;
 
     public Endpoint() {
         fd = null;
@@ -45,6 +46,21 @@ public class Endpoint {
                     FailureDetector failureDetector) {
         heartbeat = heartBeatState;
         fd = failureDetector;
+        lastArrival = System.currentTimeMillis();
+    }
+
+    /**
+     * Answer the earliest time at which the endpoint could be convicted, if no
+     * further heartbeats are recorded. Discovery only endpoints are not
+     * convicted, but may not remain so, and are always due for a check.
+     * 
+     * @return the earliest time of conviction
+     */
+    public long earliestConviction() {
+        if (heartbeat.isDiscoveryOnly()) {
+            return Long.MIN_VALUE;
+        }
+        return fd.earliestConviction();
     }
 
     public long getEpoch() {
@@ -86,7 +102,9 @@ public class Endpoint {
     public void record(HeartbeatState newHbState) {
         if (heartbeat != newHbState) {
             heartbeat = newHbState;
-            fd.record(heartbeat.getTime(), System.currentTimeMillis());
+            long now = System.currentTimeMillis();
+            lastArrival = now;
+            fd.record(heartbeat.getTime(), now);
         }
     }
 
@@ -107,6 +125,28 @@ public class Endpoint {
         return !heartbeat.isDiscoveryOnly() && fd.shouldConvict(now);
     }
 
+    /**
+     * Answer true if the endpoint should be convicted when the silence since
+     * the arrival of its last heartbeat is stretched by the multiplier. The
+     * failure detector is consulted at the time which stands to the last
+     * arrival as the silence divided by the multiplier, so the timeouts of the
+     * detector are in effect multiplied.
+     * 
+     * @param now
+     *            - the time at which to base the measurement
+     * @param multiplier
+     *            - the multiplier of the conviction timeouts
+     * @return true if the suspicion level of the failure detector, at the
+     *         scaled time, is greater than the conviction threshold
+     */
+    public boolean shouldConvict(long now, int multiplier) {
+        if (multiplier <= 1) {
+            return shouldConvict(now);
+        }
+        long arrival = lastArrival;
+        return shouldConvict(arrival + (now - arrival) / multiplier);
+    }
+
     @Override
     public String toString() {
         return "Endpoint " + getMemberString();
@@ -26,6 +26,17 @@ package com.hellblazer.jackal.gossip;
  */
 public interface FailureDetector {
 
+    /**
+     * Answer the earliest time at which the suspicion level of the detector
+     * could exceed the conviction threshold, if no further heartbeats are
+     * recorded. The answer may be early, but must never be late: the detector
+     * must not convict before this time.
+     * 
+     * @return the earliest time of conviction, or Long.MAX_VALUE if the
+     *         detector cannot convict without further heartbeats
+     */
+    public abstract long earliestConviction();
+
     /**
      * Record the arrival time of a heartbeat.
      * 
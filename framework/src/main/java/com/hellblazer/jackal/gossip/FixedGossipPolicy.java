@@ -0,0 +1,57 @@
+/** 
+ * (C) Copyright 2010 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.gossip;
+
+/**
+ * The policy of gossiping with a single live member at a fixed interval,
+ * regardless of the changes in the view.
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public class FixedGossipPolicy implements GossipPolicy {
+    private final long interval;
+
+    /**
+     * @param interval
+     *            - the interval between the gossip rounds
+     */
+    public FixedGossipPolicy(long interval) {
+        this.interval = interval;
+    }
+
+    @Override
+    public int fanout() {
+        return 1;
+    }
+
+    @Override
+    public long interval() {
+        return interval;
+    }
+
+    @Override
+    public void membershipChanged() {
+        // fixed
+    }
+
+    @Override
+    public void updated(HeartbeatState state) {
+        // fixed
+    }
+}
@@ -23,23 +23,24 @@ import java.io.IOException;
 import java.lang.Thread.UncaughtExceptionHandler;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Queue;
 import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
@@ -51,7 +52,7 @@ import org.smartfrog.services.anubis.partition.util.Identity;
 import org.smartfrog.services.anubis.partition.views.View;
 import org.smartfrog.services.anubis.partition.wire.msg.Heartbeat;
 
-import com.hellblazer.jackal.gossip.Digest.DigestComparator;
+import com.hellblazer.jackal.util.TimingWheel;
 
 /**
  * The embodiment of the gossip protocol. This protocol replicates the Anubis
@@ -75,23 +76,91 @@ import com.hellblazer.jackal.gossip.Digest.DigestComparator;
  * 
  */
 public class Gossip implements HeartbeatCommsIntf, HeartbeatCommsFactory {
-    private final static Logger                              log        = LoggerFactory.getLogger(Gossip.class);
+    /**
+     * The indirect probe of a suspected endpoint
+     */
+    private static class Probe {
+        volatile boolean                    acked;
+        final long                          deadline;
+        final long                          heartbeat;
+        final int                           nonce;
+        final Collection<InetSocketAddress> responders;
+
+        Probe(int nonce, long deadline, long heartbeat,
+              Collection<InetSocketAddress> responders) {
+            this.nonce = nonce;
+            this.deadline = deadline;
+            this.heartbeat = heartbeat;
+            this.responders = responders;
+        }
+    }
+
+    /**
+     * The probe of a suspect made on behalf of another member, whose
+     * acknowledgement is forwarded to that member
+     */
+    private static class Relay {
+        final long              expiry;
+        final int               nonce;
+        final GossipMessages    requester;
+        final InetSocketAddress suspect;
+
+        Relay(GossipMessages requester, int nonce, InetSocketAddress suspect,
+              long expiry) {
+            this.requester = requester;
+            this.nonce = nonce;
+            this.suspect = suspect;
+            this.expiry = expiry;
+        }
+    }
+
+    private final static Logger                              log              = LoggerFactory.getLogger(Gossip.class);
+    /**
+     * The slots and the tick, in milliseconds, of the conviction schedule: a
+     * revolution of about 10 seconds
+     */
+    private final static int                                 CONVICTION_SLOTS = 1024;
+    private final static long                                CONVICTION_TICK  = 10;
+    /**
+     * The time, in milliseconds, for which the acknowledgement of a probe made
+     * on behalf of another member is forwarded
+     */
+    private final static long                                RELAY_TIMEOUT    = 10 * 1000L;
 
     private final GossipCommunications                       communications;
-    private final ConcurrentMap<InetSocketAddress, Endpoint> endpoints  = new ConcurrentHashMap<InetSocketAddress, Endpoint>();
+    private final DigestTable                                digestTable      = new DigestTable();
+    private final ConcurrentMap<InetSocketAddress, Endpoint> endpoints        = new ConcurrentHashMap<InetSocketAddress, Endpoint>();
+    private final ConcurrentMap<Integer, Endpoint>           identities       = new ConcurrentHashMap<Integer, Endpoint>();
     private final Random                                     entropy;
-    private final AtomicReference<HeartbeatState>            localState = new AtomicReference<HeartbeatState>();
+    private final AtomicReference<HeartbeatState>            localState       = new AtomicReference<HeartbeatState>();
     private final SystemView                                 view;
-    private ScheduledFuture<?>                               gossipTask;
-    private final int                                        interval;
+    private volatile ScheduledFuture<?>                      gossipTask;
+    private final GossipPolicy                               policy;
     private final TimeUnit                                   intervalUnit;
     private final ScheduledExecutorService                   scheduler;
     private final ExecutorService                            dispatcher;
     private ConnectionManager                                receiver;
-    private final AtomicReference<View>                      ignoring   = new AtomicReference<View>();
-    private final AtomicBoolean                              running    = new AtomicBoolean();
+    private volatile HeartbeatDelivery                       delivery;
+    private final AtomicReference<View>                      ignoring         = new AtomicReference<View>();
+    private final DigestList                                 roundDigests     = new DigestList();
+    private InetSocketAddress[]                              roundMembers     = new InetSocketAddress[1];
+    private final AtomicBoolean                              running          = new AtomicBoolean();
     private final FailureDetectorFactory                     fdFactory;
     private final Ring                                       ring;
+    private volatile int                                     summaryThreshold = Integer.MAX_VALUE;
+    private volatile HeartbeatCapture                        capture;
+    private volatile LocalHealth                             health;
+    private volatile long                                    expectedRound;
+    private volatile long                                    roundInterval;
+    private final Queue<InetSocketAddress>                   connected        = new ConcurrentLinkedQueue<InetSocketAddress>();
+    private final TimingWheel<InetSocketAddress>             convictions      = new TimingWheel<InetSocketAddress>(CONVICTION_SLOTS, CONVICTION_TICK, System.currentTimeMillis());
+    private final List<InetSocketAddress>                    due              = new ArrayList<InetSocketAddress>();
+    private volatile int                                     probeFanout;
+    private volatile long                                    probeTimeout;
+    private final AtomicInteger                              nonces           = new AtomicInteger();
+    private final ConcurrentMap<InetSocketAddress, Probe>    probes           = new ConcurrentHashMap<InetSocketAddress, Probe>();
+    private final ConcurrentMap<Integer, Probe>              acks             = new ConcurrentHashMap<Integer, Probe>();
+    private final ConcurrentMap<Integer, Relay>              relays           = new ConcurrentHashMap<Integer, Relay>();
 
     /**
      * 
@@ -115,11 +184,39 @@ public class Gossip implements HeartbeatCommsIntf, HeartbeatCommsFactory {
                   GossipCommunications communicationsService,
                   int gossipInterval, TimeUnit unit,
                   FailureDetectorFactory failureDetectorFactory, Identity id) {
+        this(systemView, random, communicationsService,
+             new FixedGossipPolicy(gossipInterval), unit,
+             failureDetectorFactory, id);
+    }
+
+    /**
+     * 
+     * @param systemView
+     *            - the system management view of the member state
+     * @param random
+     *            - a source of entropy
+     * @param communicationsService
+     *            - the service which creates outbound connections to other
+     *            members
+     * @param gossipPolicy
+     *            - the policy governing the fan out and interval of the
+     *            random gossiping
+     * @param unit
+     *            - time unit for the gossip interval
+     * @param failureDetectorFactory
+     *            - the factory producing instances of the failure detector
+     * @param heartbeatReceiver
+     *            - the reciever of newly acquired heartbeat state
+     */
+    public Gossip(SystemView systemView, Random random,
+                  GossipCommunications communicationsService,
+                  GossipPolicy gossipPolicy, TimeUnit unit,
+                  FailureDetectorFactory failureDetectorFactory, Identity id) {
         communications = communicationsService;
         communications.setGossip(this);
         entropy = random;
         view = systemView;
-        interval = gossipInterval;
+        policy = gossipPolicy;
         intervalUnit = unit;
         fdFactory = failureDetectorFactory;
         ring = new Ring(id.id, communications);
@@ -160,35 +257,67 @@ public class Gossip implements HeartbeatCommsIntf, HeartbeatCommsFactory {
         });
     }
 
+    /**
+     * The acknowledgement of a probe, either of our own probe of a suspect or
+     * of a probe made on behalf of another member. Only the acknowledgements
+     * of the members which were asked to respond to the probe are accepted.
+     * 
+     * @param nonce
+     *            - the nonce of the probe
+     * @param sender
+     *            - the address of the acknowledging member
+     */
+    public void ack(int nonce, InetSocketAddress sender) {
+        Relay relay = relays.get(nonce);
+        if (relay != null) {
+            if (relay.suspect.equals(sender) && relays.remove(nonce, relay)) {
+                relay.requester.ack(relay.nonce);
+            }
+            return;
+        }
+        Probe probe = acks.get(nonce);
+        if (probe != null && probe.responders.contains(sender)) {
+            probe.acked = true;
+        } else if (log.isDebugEnabled()) {
+            log.debug(format("Ignoring the acknowledgement of %s from %s",
+                             nonce, sender));
+        }
+    }
+
+    /**
+     * Check the status of the living. Only the endpoints whose earliest
+     * conviction time has passed are examined. An endpoint which is not
+     * convicted is rescheduled at its new earliest conviction time, so the
+     * heartbeats recorded in the mean time need not touch the schedule.
+     */
     public void checkStatus() {
         long now = System.currentTimeMillis();
         if (log.isTraceEnabled()) {
             log.trace("Checking the status of the living...");
         }
-        for (Iterator<Entry<InetSocketAddress, Endpoint>> iterator = endpoints.entrySet().iterator(); iterator.hasNext();) {
-            Entry<InetSocketAddress, Endpoint> entry = iterator.next();
-            InetSocketAddress endpoint = entry.getKey();
-            if (endpoint.equals(view.getLocalAddress())) {
-                continue;
+        synchronized (convictions) {
+            for (InetSocketAddress address = connected.poll(); address != null; address = connected.poll()) {
+                convictions.schedule(address, now);
             }
-
-            Endpoint state = entry.getValue();
-            if (state.isAlive() && state.shouldConvict(now)) {
-                iterator.remove();
-                state.markDead();
-                view.markDead(endpoint, now);
-                if (log.isDebugEnabled()) {
-                    log.debug(format("Endpoint %s is now DEAD on node: %s",
-                                     state.getMemberString(),
-                                     localState.get().getMemberString()));
-                }
+            convictions.advance(now, due);
+            int multiplier = multiplier();
+            for (int i = 0; i < due.size(); i++) {
+                checkStatus(due.get(i), now, multiplier);
             }
+            due.clear();
         }
         if (log.isTraceEnabled()) {
             log.trace("Culling the quarantined and unreachable...");
         }
         view.cullQuarantined(now);
-        view.cullUnreachable(now);
+        for (InetSocketAddress culled : view.cullUnreachable(now)) {
+            communications.forget(culled);
+        }
+        for (Iterator<Relay> i = relays.values().iterator(); i.hasNext();) {
+            if (i.next().expiry < now) {
+                i.remove();
+            }
+        }
     }
 
     public void connectTo(Identity peer) {
@@ -202,9 +331,17 @@ public class Gossip implements HeartbeatCommsIntf, HeartbeatCommsFactory {
     @Override
     public HeartbeatCommsIntf create(ConnectionManager hbReceiver) {
         receiver = hbReceiver;
+        delivery = new HeartbeatDelivery(hbReceiver, dispatcher);
         return this;
     }
 
+    /**
+     * @return the interned addresses of the members of the view
+     */
+    public AddressTable getAddressTable() {
+        return view.getAddressTable();
+    }
+
     public InetSocketAddress getLocalAddress() {
         return view.getLocalAddress();
     }
@@ -215,7 +352,8 @@ public class Gossip implements HeartbeatCommsIntf, HeartbeatCommsFactory {
     }
 
     /**
-     * Perform the periodic gossip.
+     * Perform the periodic gossip. The digests are gossiped with as many
+     * distinct random live members as the fan out of the gossip policy.
      * 
      * @param communications
      *            - the mechanism to send the gossip message to a peer
@@ -223,7 +361,20 @@ public class Gossip implements HeartbeatCommsIntf, HeartbeatCommsFactory {
     public void gossip() {
         List<Digest> digests = randomDigests();
         if (digests.size() > 0) {
-            InetSocketAddress member = gossipWithTheLiving(digests);
+            int fanout = policy.fanout();
+            if (roundMembers.length != fanout) {
+                roundMembers = new InetSocketAddress[fanout];
+            }
+            int count = view.getRandomLiveMembers(roundMembers);
+            InetSocketAddress member = null;
+            for (int i = 0; i < count; i++) {
+                InetSocketAddress gossiped = gossipWithTheLiving(roundMembers[i],
+                                                                 digests);
+                if (member == null) {
+                    member = gossiped;
+                }
+                roundMembers[i] = null;
+            }
             gossipWithTheDead(digests);
             gossipWithSeeds(digests, member);
         }
@@ -266,6 +417,42 @@ public class Gossip implements HeartbeatCommsIntf, HeartbeatCommsFactory {
         return isIgnoring(endpoint.getState().getSender());
     }
 
+    /**
+     * Answer the probe of the local member
+     * 
+     * @param nonce
+     *            - the nonce of the probe
+     * @param handler
+     *            - the handler to send the acknowledgement
+     */
+    public void ping(int nonce, GossipMessages handler) {
+        handler.ack(nonce);
+    }
+
+    /**
+     * Probe the suspect on behalf of the requesting member, forwarding the
+     * acknowledgement of the suspect to the requester. A suspect which has no
+     * endpoint here is not probed.
+     * 
+     * @param suspect
+     *            - the address of the suspected endpoint
+     * @param nonce
+     *            - the nonce of the requester's probe
+     * @param requester
+     *            - the handler to forward the acknowledgement
+     */
+    public void pingRequest(InetSocketAddress suspect, int nonce,
+                            GossipMessages requester) {
+        Endpoint endpoint = endpoints.get(suspect);
+        if (endpoint == null || endpoint.getHandler() == null) {
+            return;
+        }
+        int relay = nonces.incrementAndGet();
+        relays.put(relay, new Relay(requester, nonce, suspect,
+                                    System.currentTimeMillis() + RELAY_TIMEOUT));
+        endpoint.getHandler().ping(relay);
+    }
+
     /**
      * The second message in the gossip protocol. This message is sent in reply
      * to the initial gossip message sent by this node. The response is a list
@@ -291,9 +478,9 @@ public class Gossip implements HeartbeatCommsIntf, HeartbeatCommsFactory {
         apply(remoteStates);
 
         List<HeartbeatState> deltaState = new ArrayList<HeartbeatState>();
-        for (Digest digest : digests) {
-            InetSocketAddress addr = digest.getAddress();
-            addUpdatedState(deltaState, addr, digest.getTime());
+        DigestList list = DigestList.of(digests);
+        for (int i = 0; i < list.size(); i++) {
+            addUpdatedState(deltaState, list.getAddress(i), list.getTime(i));
         }
         if (!deltaState.isEmpty()) {
             if (log.isTraceEnabled()) {
@@ -339,19 +526,94 @@ public class Gossip implements HeartbeatCommsIntf, HeartbeatCommsFactory {
         final HeartbeatState heartbeatState = HeartbeatState.toHeartbeatState(heartbeat,
                                                                               view.getLocalAddress());
         localState.set(heartbeatState);
-        ring.update(heartbeatState.getMembers(), endpoints.values());
+        ring.update(heartbeatState.getMembers(), identities);
         ring.send(heartbeatState);
     }
 
+    /**
+     * Capture the arrival of the heartbeats of the endpoints, for offline
+     * analysis and the tuning of the failure detectors. Capturing does not
+     * block or allocate.
+     * 
+     * @param heartbeatCapture
+     *            - the capture of the heartbeats, or null to stop capturing
+     */
+    public void setCapture(HeartbeatCapture heartbeatCapture) {
+        capture = heartbeatCapture;
+    }
+
     @Override
     public void setIgnoring(View ignoringUpdate) {
         ignoring.set(ignoringUpdate);
     }
 
+    /**
+     * Configure the indirect probing of the suspected endpoints. Before an
+     * endpoint is convicted, it is pinged directly, and the fan out number of
+     * random live members are asked to ping it on our behalf. The endpoint is
+     * convicted only if no acknowledgement arrives within the timeout, so the
+     * loss of the packets of a single link does not change the view. An
+     * acknowledged suspect is only probed again, rather than convicted, if a
+     * fresh heartbeat of the suspect has arrived since it was probed.
+     * 
+     * @param fanout
+     *            - the number of members asked to probe the suspect. The
+     *            default, 0, disables the indirect probing.
+     * @param timeout
+     *            - the time, in milliseconds, to await the acknowledgement of
+     *            the probe
+     */
+    public void setIndirectProbes(int fanout, long timeout) {
+        probeTimeout = timeout;
+        probeFanout = fanout;
+    }
+
+    /**
+     * Delay the conviction of the endpoints while the local member is
+     * unhealthy. The health is scored by the timeliness of the rounds of the
+     * gossip.
+     * 
+     * @param localHealth
+     *            - the health of the local member, or null to convict at the
+     *            unscaled timeouts of the failure detectors
+     */
+    public void setLocalHealth(LocalHealth localHealth) {
+        health = localHealth;
+    }
+
+    /**
+     * Set the number of neighbors on the ring the heartbeats are sent to.
+     * 
+     * @param fanout
+     *            - the number of neighbors, 1 by default
+     * @see Ring#setFanout(int)
+     */
+    public void setRingFanout(int fanout) {
+        ring.setFanout(fanout);
+    }
+
+    /**
+     * Configure the summary first gossip with the live members. When the view
+     * holds at least the threshold number of digests, the gossip with a live
+     * member opens with a summary of the digests, rather than the digests
+     * themselves, and only the digests of the buckets in which the two views
+     * differ are exchanged. The gossip with seeds and unreachable members
+     * always carries the digests. Every member of the cluster must understand
+     * the summary before it is enabled.
+     * 
+     * @param threshold
+     *            - the minimum number of digests for which the summary is
+     *            used. The default, Integer.MAX_VALUE, disables the summary.
+     */
+    public void setSummaryThreshold(int threshold) {
+        summaryThreshold = threshold;
+    }
+
     public boolean shouldConvict(InetSocketAddress address, long now) {
         Endpoint endpoint = endpoints.get(address);
         return endpoint == null || isIgnoring(endpoint.getState().getSender())
-               || endpoint.shouldConvict(now);
+               || endpoint.shouldConvict(now, multiplier())
+               && !probes.containsKey(address);
     }
 
     @Override
@@ -361,9 +623,35 @@ public class Gossip implements HeartbeatCommsIntf, HeartbeatCommsFactory {
                                                                             view.getLocalAddress());
             localState.set(heartbeatState);
             communications.start();
-            gossipTask = scheduler.scheduleWithFixedDelay(gossipTask(),
-                                                          interval, interval,
-                                                          intervalUnit);
+            schedule(gossipTask());
+        }
+    }
+
+    /**
+     * The first message of the summary first gossip protocol. The gossiping
+     * node sends a summary of its view of the heartbeat state. The receiver
+     * gossips the digests of its own view in the buckets which differ from the
+     * summary, and the exchange continues as the gossip protocol, with the
+     * roles of the gossiper and receiver reversed.
+     * 
+     * @param summary
+     *            - the summary of the gossiper's digests
+     * @param gossipHandler
+     *            - the handler to send the gossip of the differing digests
+     */
+    public void summarize(DigestSummary summary, GossipMessages gossipHandler) {
+        DigestList digests = new DigestList(digestTable.size() + 1);
+        digestTable.fill(digests);
+        HeartbeatState local = localState.get();
+        digests.add(local.getHeartbeatAddress(), local.getTime());
+        DigestList difference = new DigestSummary(digests).difference(digests,
+                                                                      summary);
+        if (log.isTraceEnabled()) {
+            log.trace(String.format("Member: %s receiving summary: %s, #differing digests: %s",
+                                    getId(), summary, difference.size()));
+        }
+        if (!difference.isEmpty()) {
+            gossipHandler.gossip(difference);
         }
     }
 
@@ -446,6 +734,14 @@ public class Gossip implements HeartbeatCommsIntf, HeartbeatCommsFactory {
                 if (remoteState.getTime() > local.getTime()) {
                     long oldTime = local.getTime();
                     local.record(remoteState);
+                    index(remoteState.getSender(), local);
+                    HeartbeatCapture heartbeats = capture;
+                    if (heartbeats != null) {
+                        Identity sender = remoteState.getSender();
+                        heartbeats.capture(sender == null ? -1 : sender.id,
+                                           remoteState.getTime(),
+                                           System.currentTimeMillis());
+                    }
                     notifyUpdate(local.getState());
                     if (log.isTraceEnabled()) {
                         log.trace(format("Updating heartbeat state time stamp to %s from %s for %s",
@@ -495,6 +791,10 @@ public class Gossip implements HeartbeatCommsIntf, HeartbeatCommsFactory {
                                         final List<Digest> digests) {
         final Endpoint newEndpoint = new Endpoint(new HeartbeatState(address),
                                                   fdFactory.create());
+        // the digests of the round are reused, and the connection is
+        // asynchronous
+        final DigestList newDigests = new DigestList(digests);
+        newDigests.add(address, -1);
         Runnable connectAction = new Runnable() {
             @Override
             public void run() {
@@ -507,13 +807,14 @@ public class Gossip implements HeartbeatCommsIntf, HeartbeatCommsFactory {
                     }
                     return;
                 }
+                digestTable.add(address, newEndpoint);
                 view.markAlive(address);
+                connected.add(address);
+                policy.membershipChanged();
                 if (log.isDebugEnabled()) {
                     log.debug(format("Member %s is now CONNECTED",
                                      newEndpoint.getMemberString()));
                 }
-                List<Digest> newDigests = new ArrayList<Digest>(digests);
-                newDigests.add(new Digest(address, -1));
                 newEndpoint.getHandler().gossip(newDigests);
             }
         };
@@ -545,7 +846,11 @@ public class Gossip implements HeartbeatCommsIntf, HeartbeatCommsFactory {
                     }
                     return;
                 }
+                digestTable.add(address, endpoint);
+                index(state.getSender(), endpoint);
                 view.markAlive(address);
+                connected.add(address);
+                policy.membershipChanged();
                 if (log.isDebugEnabled()) {
                     log.debug(format("Member %s is now UP",
                                      endpoint.getMemberString()));
@@ -562,26 +867,28 @@ public class Gossip implements HeartbeatCommsIntf, HeartbeatCommsFactory {
             log.trace(String.format("Member: %s receiving gossip digests: %s",
                                     getId(), digests));
         }
-        List<Digest> deltaDigests = new ArrayList<Digest>();
+        DigestList list = DigestList.of(digests);
+        DigestList deltaDigests = new DigestList();
         List<HeartbeatState> deltaState = new ArrayList<HeartbeatState>();
-        for (Digest digest : digests) {
-            long remoteTime = digest.getTime();
-            Endpoint state = endpoints.get(digest.getAddress());
+        for (int i = 0; i < list.size(); i++) {
+            InetSocketAddress address = list.getAddress(i);
+            long remoteTime = list.getTime(i);
+            Endpoint state = endpoints.get(address);
             if (state != null) {
                 long localTime = state.getTime();
                 if (remoteTime == localTime) {
                     continue;
                 }
                 if (remoteTime > localTime) {
-                    deltaDigests.add(new Digest(digest.getAddress(), localTime));
+                    deltaDigests.add(address, localTime);
                 } else if (remoteTime < localTime) {
-                    addUpdatedState(deltaState, digest.getAddress(), remoteTime);
+                    addUpdatedState(deltaState, address, remoteTime);
                 }
             } else {
-                if (view.getLocalAddress().equals(digest.getAddress())) {
-                    addUpdatedState(deltaState, digest.getAddress(), remoteTime);
+                if (view.getLocalAddress().equals(address)) {
+                    addUpdatedState(deltaState, address, remoteTime);
                 } else {
-                    deltaDigests.add(new Digest(digest.getAddress(), -1));
+                    deltaDigests.add(address, -1);
                 }
             }
         }
@@ -606,11 +913,17 @@ public class Gossip implements HeartbeatCommsIntf, HeartbeatCommsFactory {
         return new Runnable() {
             @Override
             public void run() {
+                LocalHealth localHealth = health;
+                if (localHealth != null) {
+                    localHealth.tick(expectedRound, roundInterval,
+                                     System.currentTimeMillis());
+                }
                 try {
                     gossip();
                 } catch (Throwable e) {
                     log.warn("Exception while performing gossip", e);
                 }
+                schedule(this);
             }
         };
     }
@@ -657,15 +970,14 @@ public class Gossip implements HeartbeatCommsIntf, HeartbeatCommsFactory {
     /**
      * Gossip with a live member of the view.
      * 
+     * @param address
+     *            - the address of the live member
      * @param digests
      *            - the digests of interest
      * @return the address of the member contacted
      */
-    protected InetSocketAddress gossipWithTheLiving(List<Digest> digests) {
-        InetSocketAddress address = view.getRandomLiveMember();
-        if (address == null) {
-            return null;
-        }
+    protected InetSocketAddress gossipWithTheLiving(InetSocketAddress address,
+                                                    List<Digest> digests) {
         Endpoint endpoint = endpoints.get(address);
         if (endpoint != null) {
             if (log.isTraceEnabled()) {
@@ -673,7 +985,13 @@ public class Gossip implements HeartbeatCommsIntf, HeartbeatCommsFactory {
                                  getId(), endpoint.getState().getSender(),
                                  digests.size()));
             }
-            endpoint.getHandler().gossip(digests);
+            if (digests.size() >= summaryThreshold) {
+                endpoint.getHandler().summarize(new DigestSummary(
+                                                                  DigestList.of(digests)),
+                                                digests);
+            } else {
+                endpoint.getHandler().gossip(digests);
+            }
             return address;
         }
         if (log.isWarnEnabled()) {
@@ -684,8 +1002,9 @@ public class Gossip implements HeartbeatCommsIntf, HeartbeatCommsFactory {
         return null;
     }
 
-    protected void notifyUpdate(final HeartbeatState state) {
+    protected void notifyUpdate(HeartbeatState state) {
         assert state != null;
+        policy.updated(state);
         if (state.isDiscoveryOnly() || isIgnoring(state.getSender())) {
             if (log.isDebugEnabled()) {
                 log.debug(String.format("Member: %s discarding notification of: %s",
@@ -697,51 +1016,224 @@ public class Gossip implements HeartbeatCommsIntf, HeartbeatCommsFactory {
             log.debug(String.format("Member: %s notifying update of: %s",
                                     getId(), state));
         }
-        dispatcher.execute(new Runnable() {
-            @Override
-            public void run() {
-                receiver.receiveHeartbeat(state);
-            }
-        });
+        delivery.offer(state);
         ring.send(state);
     }
 
+    /**
+     * Answer the digests of the endpoints and of the local state, in random
+     * order. The digests are held in a list which is reused by every gossip
+     * round, and so are only valid until the next round.
+     * 
+     * @return the digests of the round
+     */
     protected List<Digest> randomDigests() {
-        ArrayList<Digest> digests = new ArrayList<Digest>(endpoints.size() + 1);
-        for (Entry<InetSocketAddress, Endpoint> entry : endpoints.entrySet()) {
-            digests.add(new Digest(entry.getKey(), entry.getValue()));
-        }
-        digests.add(new Digest(localState.get()));
-        Collections.shuffle(digests, entropy);
+        digestTable.fill(roundDigests);
+        HeartbeatState local = localState.get();
+        assert local.getHeartbeatAddress() != null : "Null heartbeat state address";
+        roundDigests.add(local.getHeartbeatAddress(), local.getTime());
+        roundDigests.shuffle(entropy);
         if (log.isTraceEnabled()) {
-            log.trace(format("Gossip digests are : %s", digests));
+            log.trace(format("Gossip digests are : %s", roundDigests));
         }
-        return digests;
+        return roundDigests;
     }
 
+    /**
+     * Sort the digests by the difference between their time and the time of
+     * the local state of the endpoint, largest difference first
+     * 
+     * @param digests
+     */
     protected void sort(List<Digest> digests) {
-        Map<InetSocketAddress, Digest> endpoint2digest = new HashMap<InetSocketAddress, Digest>();
-        for (Digest digest : digests) {
-            endpoint2digest.put(digest.getAddress(), digest);
-        }
-
-        Digest[] diffDigests = new Digest[digests.size()];
-        int i = 0;
-        for (Digest gDigest : digests) {
-            InetSocketAddress ep = gDigest.getAddress();
-            Endpoint state = endpoints.get(ep);
+        DigestList list = DigestList.of(digests);
+        long[] deltas = new long[list.size()];
+        for (int i = 0; i < deltas.length; i++) {
+            Endpoint state = endpoints.get(list.getAddress(i));
             long time = state != null ? state.getTime() : -1;
-            long diffTime = Math.abs(time - gDigest.getTime());
-            diffDigests[i++] = new Digest(ep, diffTime);
+            deltas[i] = Math.abs(time - list.getTime(i));
         }
-
-        Arrays.sort(diffDigests, new DigestComparator());
-        i = 0;
-        for (int j = diffDigests.length - 1; j >= 0; --j) {
-            digests.set(i++, endpoint2digest.get(diffDigests[j].getAddress()));
+        list.sortDescending(deltas);
+        if (list != digests) {
+            for (int i = 0; i < deltas.length; i++) {
+                digests.set(i, list.get(i));
+            }
         }
         if (log.isTraceEnabled()) {
             log.trace(format("Sorted gossip digests are : %s", digests));
         }
     }
+
+    /**
+     * Check the status of the endpoint whose earliest conviction time has
+     * passed, and convict it or reschedule the check
+     * 
+     * @param address
+     *            - the address of the endpoint
+     * @param now
+     *            - the time at which to base the measurement
+     * @param multiplier
+     *            - the multiplier of the conviction timeouts
+     */
+    private void checkStatus(InetSocketAddress address, long now,
+                             int multiplier) {
+        if (address.equals(view.getLocalAddress())) {
+            return;
+        }
+        Endpoint state = endpoints.get(address);
+        if (state == null) {
+            return;
+        }
+        if (state.isAlive() && state.shouldConvict(now, multiplier)) {
+            Probe probe = probeFanout > 0 ? probe(address, state, now) : null;
+            if (probe != null) {
+                convictions.schedule(address, probe.deadline);
+                return;
+            }
+            endpoints.remove(address, state);
+            digestTable.remove(address, state);
+            Identity identity = state.getId();
+            if (identity != null) {
+                identities.remove(identity.id, state);
+            }
+            state.markDead();
+            view.markDead(address, now);
+            communications.forget(address);
+            policy.membershipChanged();
+            if (log.isDebugEnabled()) {
+                log.debug(format("Endpoint %s is now DEAD on node: %s",
+                                 state.getMemberString(),
+                                 localState.get().getMemberString()));
+            }
+            return;
+        }
+        Probe probe = probes.remove(address);
+        if (probe != null) {
+            acks.remove(probe.nonce);
+        }
+        long next = state.earliestConviction();
+        if (next == Long.MAX_VALUE) {
+            // the detector has yet to record a heartbeat, so the endpoint is
+            // examined again after a round rather than parked forever
+            next = now + Math.max(roundInterval, CONVICTION_TICK);
+        }
+        convictions.schedule(address, Math.max(next, now + 1));
+    }
+
+    /**
+     * Index the endpoint by the id of its member, once the member is known
+     * 
+     * @param identity
+     *            - the identity of the member, from its heartbeat state
+     * @param endpoint
+     */
+    private void index(Identity identity, Endpoint endpoint) {
+        if (identity != null && identity.id >= 0
+            && identities.get(identity.id) != endpoint) {
+            identities.put(identity.id, endpoint);
+        }
+    }
+
+    /**
+     * Answer the multiplier of the conviction timeouts, from the health of
+     * the local member
+     */
+    private int multiplier() {
+        LocalHealth localHealth = health;
+        return localHealth == null ? 1 : localHealth.multiplier();
+    }
+
+    /**
+     * Probe the suspected endpoint, directly and indirectly through random
+     * live members. While a probe is pending, the conviction is deferred. When
+     * the probe is acknowledged, the suspect is probed anew, but only if a
+     * fresh heartbeat of the suspect has arrived since the acknowledged probe,
+     * so that acknowledgements alone cannot defer the conviction forever.
+     * 
+     * @param address
+     *            - the address of the suspect
+     * @param state
+     *            - the endpoint of the suspect
+     * @param now
+     * @return the pending probe of the suspect, or null if the suspect is to
+     *         be convicted
+     */
+    private Probe probe(InetSocketAddress address, Endpoint state, long now) {
+        Probe probe = probes.get(address);
+        if (probe != null) {
+            if (now < probe.deadline) {
+                return probe;
+            }
+            probes.remove(address);
+            acks.remove(probe.nonce);
+            if (!probe.acked) {
+                if (log.isDebugEnabled()) {
+                    log.debug(format("No acknowledgement of the probe of %s on node: %s",
+                                     state.getMemberString(),
+                                     localState.get().getMemberString()));
+                }
+                return null;
+            }
+            if (state.getTime() <= probe.heartbeat) {
+                if (log.isDebugEnabled()) {
+                    log.debug(format("No heartbeat since the acknowledged probe of %s on node: %s",
+                                     state.getMemberString(),
+                                     localState.get().getMemberString()));
+                }
+                return null;
+            }
+        }
+        List<InetSocketAddress> intermediaries = new ArrayList<InetSocketAddress>();
+        for (InetSocketAddress member : view.getLiveMembers()) {
+            Endpoint endpoint = endpoints.get(member);
+            if (!member.equals(address) && endpoint != null
+                && endpoint.getHandler() != null) {
+                intermediaries.add(member);
+            }
+        }
+        GossipMessages handler = state.getHandler();
+        if (handler == null && intermediaries.isEmpty()) {
+            return null;
+        }
+        Collections.shuffle(intermediaries, entropy);
+        int fanout = Math.min(probeFanout, intermediaries.size());
+        List<InetSocketAddress> responders = new ArrayList<InetSocketAddress>(
+                                                                              fanout + 1);
+        responders.add(address);
+        responders.addAll(intermediaries.subList(0, fanout));
+        probe = new Probe(nonces.incrementAndGet(), now + probeTimeout,
+                          state.getTime(), responders);
+        probes.put(address, probe);
+        acks.put(probe.nonce, probe);
+        if (handler != null) {
+            handler.ping(probe.nonce);
+        }
+        for (int i = 1; i < responders.size(); i++) {
+            Endpoint endpoint = endpoints.get(responders.get(i));
+            if (endpoint != null && endpoint.getHandler() != null) {
+                endpoint.getHandler().pingRequest(address, probe.nonce);
+            }
+        }
+        return probe;
+    }
+
+    /**
+     * Schedule the next round of the gossip, at the interval of the gossip
+     * policy
+     * 
+     * @param task
+     */
+    private void schedule(Runnable task) {
+        if (!running.get()) {
+            return;
+        }
+        long interval = policy.interval();
+        roundInterval = intervalUnit.toMillis(interval);
+        expectedRound = System.currentTimeMillis() + roundInterval;
+        try {
+            gossipTask = scheduler.schedule(task, interval, intervalUnit);
+        } catch (RejectedExecutionException e) {
+            // terminated
+        }
+    }
 }
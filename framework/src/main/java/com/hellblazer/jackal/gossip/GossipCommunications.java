@@ -48,6 +48,15 @@ public interface GossipCommunications {
     void connect(InetSocketAddress address, Endpoint endpoint,
                  Runnable connectAction) throws IOException;
 
+    /**
+     * Forget the state held for the member at the address, which has been
+     * convicted or culled from the view
+     * 
+     * @param address
+     *            - the address of the member
+     */
+    void forget(InetSocketAddress address);
+
     /**
      * Answer the local address of the communcations endpoint
      * 
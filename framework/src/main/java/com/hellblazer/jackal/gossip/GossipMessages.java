@@ -17,6 +17,7 @@
  */
 package com.hellblazer.jackal.gossip;
 
+import java.net.InetSocketAddress;
 import java.util.List;
 
 import org.smartfrog.services.anubis.partition.util.Identity;
@@ -32,6 +33,11 @@ public interface GossipMessages {
     byte REPLY                      = 1;
     byte UPDATE                     = 2;
     byte CONNECT_TO                 = 3;
+    byte VERSION                    = 4;
+    byte SUMMARY                    = 5;
+    byte PING                       = 6;
+    byte PING_REQUEST               = 7;
+    byte ACK                        = 8;
     int  INET_ADDRESS_V6_BYTE_SIZE  = 16;
     int  INET_ADDRESS_MAX_BYTE_SIZE = INET_ADDRESS_V6_BYTE_SIZE // address
                                     + 1 // addressLength
@@ -53,6 +59,14 @@ public interface GossipMessages {
     int  DIGEST_BYTE_SIZE           = INET_ADDRESS_MAX_BYTE_SIZE // address
                                     + 8;  // timestamp
 
+    /**
+     * Acknowledge the probe of the node this handler represents
+     * 
+     * @param nonce
+     *            - the nonce of the probe
+     */
+    void ack(int nonce);
+
     /**
      * Close the communications connection
      */
@@ -67,6 +81,27 @@ public interface GossipMessages {
      */
     void gossip(List<Digest> digests);
 
+    /**
+     * Probe the node this handler represents, which answers with the
+     * acknowledgement of the nonce
+     * 
+     * @param nonce
+     *            - the nonce of the probe
+     */
+    void ping(int nonce);
+
+    /**
+     * Request that the node this handler represents probe the suspect on our
+     * behalf, and forward the acknowledgement of the nonce if the suspect
+     * answers
+     * 
+     * @param suspect
+     *            - the address of the suspected endpoint
+     * @param nonce
+     *            - the nonce of the probe
+     */
+    void pingRequest(InetSocketAddress suspect, int nonce);
+
     /**
      * The second message in the gossip protocol. Send a list of digests the
      * node this handler represents, that would like heartbeat state updates
@@ -89,6 +124,20 @@ public interface GossipMessages {
      */
     void requestConnection(Identity node);
 
+    /**
+     * The first message of the summary first gossip protocol. Send the summary
+     * of the digests of the receiver's view of the endpoint state. The node
+     * this handler represents answers with the gossip of its digests in the
+     * buckets which differ from the summary. Handlers which cannot send the
+     * summary to the node send the gossip of the digests instead.
+     * 
+     * @param summary
+     *            - the summary of the digests
+     * @param digests
+     *            - the digests summarized
+     */
+    void summarize(DigestSummary summary, List<Digest> digests);
+
     /**
      * The third message of the gossip protocol. Send a list of updated
      * heartbeat states to the node this handler represents, which is requesting
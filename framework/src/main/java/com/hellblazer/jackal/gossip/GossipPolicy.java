@@ -0,0 +1,62 @@
+/** 
+ * (C) Copyright 2010 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.gossip;
+
+/**
+ * The policy governing the rate of the gossip: the number of live members
+ * gossiped with in each round, and the interval between the rounds. The
+ * policy is informed of the changes in the membership of the system view and
+ * of the updated heartbeat states delivered to the partition, and may adapt
+ * the rate of the gossip to them.
+ * <p>
+ * The fan out and the interval are requested by the gossip thread, once per
+ * round; the notifications arrive on any thread.
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public interface GossipPolicy {
+    /**
+     * Answer the number of live members to gossip with in the current round
+     * 
+     * @return the fan out, at least 1
+     */
+    int fanout();
+
+    /**
+     * Answer the interval until the next round, in the time unit of the
+     * gossip. Called at the start of the gossip and after each round.
+     * 
+     * @return the interval until the next round
+     */
+    long interval();
+
+    /**
+     * Note a change in the membership of the system view: an endpoint has
+     * connected, or has been convicted
+     */
+    void membershipChanged();
+
+    /**
+     * Note the delivery of updated heartbeat state to the partition
+     * 
+     * @param state
+     *            - the updated state
+     */
+    void updated(HeartbeatState state);
+}
@@ -0,0 +1,328 @@
+/** 
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.gossip;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.Thread.UncaughtExceptionHandler;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Captures the arrival of heartbeats to an append log of memory mapped
+ * segment files, for offline analysis and the replay of the heartbeats through
+ * the failure detectors. Each heartbeat is captured as a fixed size record of
+ * the endpoint id, the time of the heartbeat, the local time of its arrival,
+ * and the delay between the two.
+ * <p>
+ * Capturing a heartbeat neither allocates nor blocks. The writers claim their
+ * record in the current segment with an atomic add. The next segment is mapped
+ * ahead of time by a background thread, so a full segment is rotated by
+ * swapping in the next. If the next segment has not been mapped yet, the
+ * heartbeat is dropped, and counted. Once the number of segments exceeds the
+ * maximum, the oldest segment is deleted.
+ * <p>
+ * A segment file starts with a header of the magic number, the version and the
+ * record size. The records follow, each of which is terminated by a commit
+ * marker which is written last. The mapped file is zero filled, so the first
+ * record without the marker ends the segment.
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public class HeartbeatCapture implements Closeable {
+
+    private static class Segment {
+        private final MappedByteBuffer buffer;
+        private final int              capacity;
+        private final File             file;
+        private final AtomicInteger    position = new AtomicInteger(HEADER_SIZE);
+
+        private Segment(File file, MappedByteBuffer buffer, int capacity) {
+            this.file = file;
+            this.buffer = buffer;
+            this.capacity = capacity;
+        }
+
+        private boolean isFull() {
+            return position.get() >= capacity;
+        }
+    }
+
+    public static final int     ARRIVAL_OFFSET   = 8;
+    public static final int     COMMITTED        = 1;
+    public static final int     DELAY_OFFSET     = 16;
+    public static final int     HEADER_SIZE      = 16;
+    public static final int     HEARTBEAT_OFFSET = 0;
+    public static final int     ID_OFFSET        = 24;
+    public static final int     MAGIC            = 0x4A484243;
+    public static final int     MARKER_OFFSET    = 28;
+    public static final int     RECORD_SIZE      = 32;
+    public static final String  SUFFIX           = ".hbc";
+    public static final int     VERSION          = 1;
+    private static final Logger log              = LoggerFactory.getLogger(HeartbeatCapture.class);
+
+    /**
+     * Answer the segment files of the capture, in the order they were written
+     * 
+     * @param directory
+     *            - the directory of the capture
+     * @param prefix
+     *            - the prefix of the segment file names
+     * @return the segment files, oldest first
+     */
+    public static File[] segments(File directory, final String prefix) {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(prefix + "-") && name.endsWith(SUFFIX);
+            }
+        });
+        if (files == null) {
+            return new File[0];
+        }
+        // the sequence numbers are zero padded
+        Arrays.sort(files);
+        return files;
+    }
+
+    private final AtomicBoolean             closed  = new AtomicBoolean();
+    private final AtomicReference<Segment> current = new AtomicReference<Segment>();
+    private final File                     directory;
+    private final AtomicLong               dropped = new AtomicLong();
+    private final Runnable                 mapNext = new Runnable() {
+                                                       @Override
+                                                       public void run() {
+                                                           prepareNext();
+                                                       }
+                                                   };
+    private final int                      maxSegments;
+    private final AtomicReference<Segment> next    = new AtomicReference<Segment>();
+    private final String                   prefix;
+    private final ExecutorService          rotator;
+    private final int                      segmentSize;
+    private long                           sequence;
+    private final Deque<File>              written = new ArrayDeque<File>();
+
+    /**
+     * 
+     * @param directory
+     *            - the directory of the segment files
+     * @param prefix
+     *            - the prefix of the segment file names
+     * @param segmentSize
+     *            - the size of a segment file, in bytes
+     * @param maxSegments
+     *            - the maximum number of segment files retained, or 0 to
+     *            retain them all
+     * @throws IOException
+     */
+    public HeartbeatCapture(File directory, String prefix, int segmentSize,
+                            int maxSegments) throws IOException {
+        if (segmentSize < HEADER_SIZE + RECORD_SIZE) {
+            throw new IllegalArgumentException("Invalid segment size: "
+                                               + segmentSize);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create the capture directory: "
+                                  + directory);
+        }
+        this.directory = directory;
+        this.prefix = prefix;
+        this.segmentSize = HEADER_SIZE
+                           + (segmentSize - HEADER_SIZE) / RECORD_SIZE
+                           * RECORD_SIZE;
+        this.maxSegments = maxSegments;
+        File[] existing = segments(directory, prefix);
+        if (existing.length > 0) {
+            String last = existing[existing.length - 1].getName();
+            sequence = Long.parseLong(last.substring(prefix.length() + 1,
+                                                     last.length()
+                                                             - SUFFIX.length())) + 1;
+        }
+        current.set(map());
+        next.set(map());
+        rotator = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread daemon = new Thread(r, "Heartbeat capture rotation");
+                daemon.setDaemon(true);
+                daemon.setUncaughtExceptionHandler(new UncaughtExceptionHandler() {
+                    @Override
+                    public void uncaughtException(Thread t, Throwable e) {
+                        log.warn("Uncaught exception", e);
+                    }
+                });
+                return daemon;
+            }
+        });
+    }
+
+    /**
+     * Capture the arrival of a heartbeat
+     * 
+     * @param id
+     *            - the id of the endpoint
+     * @param heartbeatTime
+     *            - the time of the heartbeat
+     * @param arrivalTime
+     *            - the local time of the arrival of the heartbeat
+     */
+    public void capture(int id, long heartbeatTime, long arrivalTime) {
+        if (closed.get()) {
+            return;
+        }
+        Segment segment = current.get();
+        int position = segment.position.getAndAdd(RECORD_SIZE);
+        if (position + RECORD_SIZE > segment.capacity) {
+            rotate(segment);
+            segment = current.get();
+            position = segment.position.getAndAdd(RECORD_SIZE);
+            if (position + RECORD_SIZE > segment.capacity) {
+                dropped.incrementAndGet();
+                return;
+            }
+        }
+        MappedByteBuffer buffer = segment.buffer;
+        buffer.putLong(position + HEARTBEAT_OFFSET, heartbeatTime);
+        buffer.putLong(position + ARRIVAL_OFFSET, arrivalTime);
+        buffer.putLong(position + DELAY_OFFSET, arrivalTime - heartbeatTime);
+        buffer.putInt(position + ID_OFFSET, id);
+        buffer.putInt(position + MARKER_OFFSET, COMMITTED);
+    }
+
+    /**
+     * Stop capturing, and flush the current segment to the file. The segment
+     * which was mapped ahead of time, and never written, is deleted.
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        rotator.shutdown();
+        current.get().buffer.force();
+        Segment unused = next.getAndSet(null);
+        if (unused != null && !unused.file.delete()) {
+            log.warn(String.format("Unable to delete unused capture segment %s",
+                                   unused.file));
+        }
+    }
+
+    /**
+     * Answer the number of heartbeats dropped because the next segment was not
+     * yet mapped when the current segment filled
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Map a new segment file, and delete the oldest segments beyond the
+     * maximum. Called from the constructor, and then only from the rotation
+     * thread.
+     */
+    private Segment map() throws IOException {
+        File file = new File(directory, String.format("%s-%012d%s", prefix,
+                                                      sequence++, SUFFIX));
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        MappedByteBuffer buffer;
+        try {
+            raf.setLength(segmentSize);
+            buffer = raf.getChannel().map(MapMode.READ_WRITE, 0, segmentSize);
+        } finally {
+            // the mapping remains valid once the channel is closed
+            raf.close();
+        }
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, RECORD_SIZE);
+        written.addLast(file);
+        while (maxSegments > 0 && written.size() > maxSegments) {
+            File oldest = written.removeFirst();
+            if (!oldest.delete()) {
+                log.warn(String.format("Unable to delete capture segment %s",
+                                       oldest));
+            }
+        }
+        return new Segment(file, buffer, segmentSize);
+    }
+
+    /**
+     * Map the next segment, and rotate it in if the current segment has filled
+     * in the mean time
+     */
+    private void prepareNext() {
+        if (closed.get()) {
+            return;
+        }
+        Segment segment;
+        try {
+            segment = map();
+        } catch (IOException e) {
+            log.warn("Unable to map the next capture segment", e);
+            return;
+        }
+        next.set(segment);
+        Segment full = current.get();
+        if (full.isFull()) {
+            rotate(full);
+        }
+    }
+
+    /**
+     * Replace the full segment with the segment mapped ahead of time, and map
+     * another
+     */
+    private void rotate(Segment full) {
+        if (current.get() != full) {
+            return;
+        }
+        Segment replacement = next.getAndSet(null);
+        if (replacement == null) {
+            // the rotation thread rotates it in once mapped
+            return;
+        }
+        if (!current.compareAndSet(full, replacement)) {
+            next.set(replacement);
+            return;
+        }
+        try {
+            rotator.execute(mapNext);
+        } catch (RejectedExecutionException e) {
+            // closed
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/** 
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.gossip;
+
+import static com.hellblazer.jackal.gossip.HeartbeatCapture.ARRIVAL_OFFSET;
+import static com.hellblazer.jackal.gossip.HeartbeatCapture.COMMITTED;
+import static com.hellblazer.jackal.gossip.HeartbeatCapture.DELAY_OFFSET;
+import static com.hellblazer.jackal.gossip.HeartbeatCapture.HEADER_SIZE;
+import static com.hellblazer.jackal.gossip.HeartbeatCapture.HEARTBEAT_OFFSET;
+import static com.hellblazer.jackal.gossip.HeartbeatCapture.ID_OFFSET;
+import static com.hellblazer.jackal.gossip.HeartbeatCapture.MAGIC;
+import static com.hellblazer.jackal.gossip.HeartbeatCapture.MARKER_OFFSET;
+import static com.hellblazer.jackal.gossip.HeartbeatCapture.RECORD_SIZE;
+import static com.hellblazer.jackal.gossip.HeartbeatCapture.VERSION;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Iterates over the heartbeats captured by a {@link HeartbeatCapture}, in the
+ * order of the segments and of the records within them. The reader is a
+ * cursor: {@link #next()} advances to the next heartbeat, whose fields are
+ * then answered by the accessors.
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public class HeartbeatCaptureReader {
+    private MappedByteBuffer buffer;
+    private int              position;
+    private int              segment = -1;
+    private final File[]     segments;
+
+    /**
+     * 
+     * @param directory
+     *            - the directory of the capture
+     * @param prefix
+     *            - the prefix of the segment file names
+     */
+    public HeartbeatCaptureReader(File directory, String prefix) {
+        segments = HeartbeatCapture.segments(directory, prefix);
+    }
+
+    /**
+     * Answer the local time of the arrival of the current heartbeat
+     */
+    public long getArrivalTime() {
+        return buffer.getLong(position + ARRIVAL_OFFSET);
+    }
+
+    /**
+     * Answer the delay between the time of the current heartbeat and its
+     * arrival
+     */
+    public long getDelay() {
+        return buffer.getLong(position + DELAY_OFFSET);
+    }
+
+    /**
+     * Answer the time of the current heartbeat
+     */
+    public long getHeartbeatTime() {
+        return buffer.getLong(position + HEARTBEAT_OFFSET);
+    }
+
+    /**
+     * Answer the id of the endpoint of the current heartbeat
+     */
+    public int getId() {
+        return buffer.getInt(position + ID_OFFSET);
+    }
+
+    /**
+     * Advance to the next captured heartbeat
+     * 
+     * @return true if there is a next heartbeat, false if all have been read
+     * @throws IOException
+     *             - if a segment cannot be read, or is not a capture segment
+     */
+    public boolean next() throws IOException {
+        if (buffer != null) {
+            position += RECORD_SIZE;
+            if (committed()) {
+                return true;
+            }
+        }
+        while (++segment < segments.length) {
+            open(segments[segment]);
+            if (committed()) {
+                return true;
+            }
+        }
+        buffer = null;
+        return false;
+    }
+
+    private boolean committed() {
+        return position + RECORD_SIZE <= buffer.limit()
+               && buffer.getInt(position + MARKER_OFFSET) == COMMITTED;
+    }
+
+    private void open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            buffer = raf.getChannel().map(MapMode.READ_ONLY, 0, raf.length());
+        } finally {
+            raf.close();
+        }
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a heartbeat capture segment: " + file);
+        }
+        if (buffer.getInt(4) != VERSION || buffer.getInt(8) != RECORD_SIZE) {
+            throw new IOException(
+                                  String.format("Unsupported heartbeat capture segment version %s: %s",
+                                                buffer.getInt(4), file));
+        }
+        position = HEADER_SIZE;
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.gossip;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smartfrog.services.anubis.partition.protocols.partitionmanager.ConnectionManager;
+
+/**
+ * The delivery of the updated heartbeat states to the connection manager. The
+ * states are coalesced, keeping only the newest state of each member, and are
+ * delivered in batches by a single consumer. The batch is delivered while
+ * holding the monitor of the connection manager, which the connection set
+ * acquires on every heartbeat, so the monitor is contended once per batch
+ * rather than by a thread per heartbeat.
+ *
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ *
+ */
+public class HeartbeatDelivery implements Runnable {
+    private final static Logger                                    log       = LoggerFactory.getLogger(HeartbeatDelivery.class);
+
+    private final List<HeartbeatState>                             batch     = new ArrayList<HeartbeatState>();
+    private final Executor                                         executor;
+    private final ConcurrentMap<InetSocketAddress, HeartbeatState> pending   = new ConcurrentHashMap<InetSocketAddress, HeartbeatState>();
+    private final ConnectionManager                                receiver;
+    private final AtomicBoolean                                    scheduled = new AtomicBoolean();
+
+    /**
+     * @param receiver
+     *            - the connection manager receiving the heartbeats
+     * @param executor
+     *            - the executor running the consumer
+     */
+    public HeartbeatDelivery(ConnectionManager receiver, Executor executor) {
+        this.receiver = receiver;
+        this.executor = executor;
+    }
+
+    /**
+     * Queue the heartbeat state for delivery, replacing any older state of the
+     * same member which has yet to be delivered
+     *
+     * @param state
+     */
+    public void offer(HeartbeatState state) {
+        InetSocketAddress address = state.getHeartbeatAddress();
+        HeartbeatState previous = pending.putIfAbsent(address, state);
+        while (previous != null && previous.getTime() <= state.getTime()
+               && !pending.replace(address, previous, state)) {
+            previous = pending.putIfAbsent(address, state);
+        }
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Deliver the pending heartbeat states, until none remain
+     */
+    @Override
+    public void run() {
+        do {
+            for (Iterator<Map.Entry<InetSocketAddress, HeartbeatState>> i = pending.entrySet().iterator(); i.hasNext();) {
+                Map.Entry<InetSocketAddress, HeartbeatState> entry = i.next();
+                if (pending.remove(entry.getKey(), entry.getValue())) {
+                    batch.add(entry.getValue());
+                }
+            }
+            try {
+                deliver();
+            } finally {
+                batch.clear();
+                scheduled.set(false);
+            }
+        } while (!pending.isEmpty() && scheduled.compareAndSet(false, true));
+    }
+
+    private void deliver() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (log.isTraceEnabled()) {
+            log.trace(String.format("Delivering %s heartbeats", batch.size()));
+        }
+        synchronized (receiver) {
+            for (int i = 0; i < batch.size(); i++) {
+                try {
+                    receiver.receiveHeartbeat(batch.get(i));
+                } catch (Throwable e) {
+                    log.warn("Exception delivering heartbeat", e);
+                }
+            }
+        }
+    }
+}
@@ -39,13 +39,38 @@ import org.smartfrog.services.anubis.partition.wire.msg.HeartbeatMsg;
  * 
  */
 public class HeartbeatState implements Heartbeat, Cloneable {
+    private static final byte DISCOVERY_ONLY = 1;
+    private static final byte PREFERRED      = 2;
+    private static final byte STABLE         = 4;
 
     public static InetSocketAddress readInetAddress(ByteBuffer msg)
                                                                    throws UnknownHostException {
+        return readInetAddress(msg, null);
+    }
+
+    /**
+     * Read the socket address, answering the canonical address of a member
+     * from the table of addresses
+     * 
+     * @param msg
+     * @param addresses
+     *            - the interned addresses of the members, or null
+     * @return the socket address
+     * @throws UnknownHostException
+     */
+    public static InetSocketAddress readInetAddress(ByteBuffer msg,
+                                                    AddressTable addresses)
+                                                                           throws UnknownHostException {
         int length = msg.get();
         if (length == 0) {
             return null;
         }
+        if (length == 4) {
+            int ip = AddressTable.ip(msg.get(), msg.get(), msg.get(), msg.get());
+            int port = msg.getInt();
+            return addresses == null ? AddressTable.address(ip, port)
+                                    : addresses.get(ip, port);
+        }
 
         byte[] address = new byte[length];
         msg.get(address);
@@ -93,25 +118,47 @@ public class HeartbeatState implements Heartbeat, Cloneable {
     private volatile byte[]            binaryCache;
 
     public HeartbeatState(ByteBuffer buffer) throws UnknownHostException {
+        this(buffer, null);
+    }
+
+    public HeartbeatState(ByteBuffer buffer, AddressTable addresses)
+                                                                    throws UnknownHostException {
         binaryCache = new byte[GossipMessages.HEARTBEAT_STATE_BYTE_SIZE];
         buffer.get(binaryCache);
         ByteBuffer msg = ByteBuffer.wrap(binaryCache);
 
         candidate = new Identity(msg);
         discoveryOnly = msg.get() > 0 ? true : false;
-        heartbeatAddress = HeartbeatState.readInetAddress(msg);
+        heartbeatAddress = HeartbeatState.readInetAddress(msg, addresses);
         time = msg.getLong();
         msgLinks = new NodeIdSet(msg);
         preferred = msg.get() > 0 ? true : false;
         sender = new Identity(msg);
-        senderAddress = HeartbeatState.readInetAddress(msg);
+        senderAddress = HeartbeatState.readInetAddress(msg, addresses);
         stable.set(msg.get() > 0 ? true : false);
-        controllInterface = HeartbeatState.readInetAddress(msg);
+        controllInterface = HeartbeatState.readInetAddress(msg, addresses);
         view.copyFrom(new NodeIdSet(msg));
         viewNumber.set(msg.getLong());
         viewTimeStamp = msg.getLong();
     }
 
+    public HeartbeatState(CompactEncoding msg) throws UnknownHostException {
+        byte flags = msg.get();
+        discoveryOnly = (flags & DISCOVERY_ONLY) != 0;
+        preferred = (flags & PREFERRED) != 0;
+        stable.set((flags & STABLE) != 0);
+        candidate = msg.getIdentity();
+        heartbeatAddress = msg.getAddress();
+        time = msg.getTime();
+        msgLinks = msg.getNodeIdSet();
+        sender = msg.getIdentity();
+        senderAddress = msg.getAddress();
+        controllInterface = msg.getAddress();
+        view.copyFrom(msg.getNodeIdSet());
+        viewNumber.set(msg.getVarLong());
+        viewTimeStamp = msg.getTime();
+    }
+
     public HeartbeatState(Heartbeat heartbeat, InetSocketAddress hbAddress) {
         discoveryOnly = false;
         candidate = heartbeat.getCandidate();
@@ -343,6 +390,13 @@ public class HeartbeatState implements Heartbeat, Cloneable {
         return preferred;
     }
 
+    /**
+     * @return true if the partition view of the state is stable
+     */
+    public boolean isStable() {
+        return stable.get();
+    }
+
     @Override
     public void setCandidate(Identity id) {
         candidate = id;
@@ -398,6 +452,35 @@ public class HeartbeatState implements Heartbeat, Cloneable {
                + ", time=" + time + "]";
     }
 
+    /**
+     * Write the compact encoding of the receiver
+     * 
+     * @param msg
+     */
+    public synchronized void writeTo(CompactEncoding msg) {
+        byte flags = 0;
+        if (discoveryOnly) {
+            flags |= DISCOVERY_ONLY;
+        }
+        if (preferred) {
+            flags |= PREFERRED;
+        }
+        if (stable.get()) {
+            flags |= STABLE;
+        }
+        msg.put(flags);
+        msg.putIdentity(candidate);
+        msg.putAddress(heartbeatAddress);
+        msg.putTime(time);
+        msg.putNodeIdSet(msgLinks);
+        msg.putIdentity(sender);
+        msg.putAddress(senderAddress);
+        msg.putAddress(controllInterface);
+        msg.putNodeIdSet(view);
+        msg.putVarLong(viewNumber.get());
+        msg.putTime(viewTimeStamp);
+    }
+
     public synchronized void writeTo(ByteBuffer buffer) {
         fillCache();
         buffer.put(binaryCache);
@@ -0,0 +1,113 @@
+/**
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.gossip;
+
+/**
+ * The health of the local member, as judged by the timeliness of its own
+ * scheduling. A member which is starved of the processor - by a garbage
+ * collection pause, say - cannot tell its own stall from the silence of the
+ * others, and convicts healthy members once it resumes. The health score rises
+ * by the number of periodic ticks which were missed and falls by one with each
+ * tick on time, and the conviction of the endpoints is delayed by the
+ * multiplier of the score.
+ *
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ *
+ */
+public class LocalHealth {
+    private final int     maxScore;
+    private volatile int  score;
+    private final long    tolerance;
+
+    /**
+     * @param tolerance
+     *            - the delay, in milliseconds, beyond the expected interval
+     *            of a tick which is tolerated before the tick is considered
+     *            missed
+     * @param maxScore
+     *            - the maximum health score, the multiplier of the conviction
+     *            timeouts being at most maxScore + 1
+     */
+    public LocalHealth(long tolerance, int maxScore) {
+        if (tolerance < 0) {
+            throw new IllegalArgumentException("tolerance must not be negative");
+        }
+        if (maxScore < 0) {
+            throw new IllegalArgumentException("maxScore must not be negative");
+        }
+        this.tolerance = tolerance;
+        this.maxScore = maxScore;
+    }
+
+    /**
+     * Report the delay of the scheduling of a periodic tick
+     *
+     * @param delay
+     *            - the delay, in milliseconds, of the tick beyond its
+     *            expected time
+     * @param interval
+     *            - the expected interval, in milliseconds, between the ticks
+     */
+    public synchronized void delayed(long delay, long interval) {
+        if (delay <= tolerance) {
+            if (score > 0) {
+                score--;
+            }
+            return;
+        }
+        long missed = interval > 0 ? delay / interval : maxScore;
+        score = (int) Math.min(maxScore, score + Math.max(1, missed));
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Answer the multiplier of the conviction timeouts
+     *
+     * @return the score + 1
+     */
+    public int multiplier() {
+        return score + 1;
+    }
+
+    public synchronized void reset() {
+        score = 0;
+    }
+
+    /**
+     * Report the time of a periodic tick
+     *
+     * @param expected
+     *            - the time, in milliseconds, at which the tick was expected
+     * @param interval
+     *            - the expected interval, in milliseconds, between the ticks
+     * @param now
+     *            - the time of the tick
+     */
+    public void tick(long expected, long interval, long now) {
+        delayed(Math.max(0, now - expected), interval);
+    }
+
+    @Override
+    public String toString() {
+        return "LocalHealth [score=" + score + ", maxScore=" + maxScore
+               + ", tolerance=" + tolerance + "]";
+    }
+}
@@ -0,0 +1,290 @@
+/** (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.gossip;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * An indexable set of member addresses, kept sorted by address. The members
+ * are held in an array which is replaced on every change, so that reads -
+ * membership tests, iteration and, in particular, the selection of a random
+ * member on every gossip round - never lock and never walk the set. Changes in
+ * membership are far less frequent than gossip rounds, and are serialized.
+ * <p>
+ * The members are searched by a key cached alongside each IPv4 address - the
+ * bytes of the host packed with the port into a long - so that a search does
+ * not copy the bytes of the host addresses on every comparison.
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public class MemberSet extends AbstractSet<InetSocketAddress> {
+    /**
+     * Orders addresses by the raw bytes of the host address, then by port
+     */
+    public static final Comparator<InetSocketAddress> ADDRESS_COMPARATOR = new Comparator<InetSocketAddress>() {
+                                                                             @Override
+                                                                             public int compare(InetSocketAddress addr1,
+                                                                                                InetSocketAddress addr2) {
+                                                                                 int hostCompare = compareHosts(addr1.getAddress(),
+                                                                                                                addr2.getAddress());
+                                                                                 if (hostCompare == 0) {
+                                                                                     int port1 = addr1.getPort();
+                                                                                     int port2 = addr2.getPort();
+                                                                                     if (port1 == port2) {
+                                                                                         return 0;
+                                                                                     }
+                                                                                     if (port1 > port2) {
+                                                                                         return 1;
+                                                                                     }
+                                                                                     return -1;
+                                                                                 }
+                                                                                 return hostCompare;
+                                                                             }
+                                                                         };
+
+    private static class Members {
+        private final InetSocketAddress[] addresses;
+        private final long[]              keys;
+
+        private Members(InetSocketAddress[] addresses, long[] keys) {
+            this.addresses = addresses;
+            this.keys = keys;
+        }
+    }
+
+    private static final Members                      EMPTY              = new Members(
+                                                                                       new InetSocketAddress[0],
+                                                                                       new long[0]);
+
+    private static int compare(long key1, InetSocketAddress addr1, long key2,
+                               InetSocketAddress addr2) {
+        if (key1 < 0 || key2 < 0) {
+            return ADDRESS_COMPARATOR.compare(addr1, addr2);
+        }
+        if (key1 == key2) {
+            return 0;
+        }
+        return key1 < key2 ? -1 : 1;
+    }
+
+    private static int compareHosts(InetAddress host1, InetAddress host2) {
+        if (host1 == host2) {
+            return 0;
+        }
+        if (host1 == null) {
+            return -1;
+        }
+        if (host2 == null) {
+            return 1;
+        }
+        byte[] bytes1 = host1.getAddress();
+        byte[] bytes2 = host2.getAddress();
+        if (bytes1.length != bytes2.length) {
+            return bytes1.length < bytes2.length ? -1 : 1;
+        }
+        for (int i = 0; i < bytes1.length; i++) {
+            int b1 = bytes1[i] & 0xFF;
+            int b2 = bytes2[i] & 0xFF;
+            if (b1 != b2) {
+                return b1 < b2 ? -1 : 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Answer the key of the address, ordered as the address comparator orders
+     * IPv4 addresses, or -1 if the address is not an IPv4 address
+     */
+    private static long key(InetSocketAddress address) {
+        InetAddress host = address.getAddress();
+        if (!(host instanceof Inet4Address)) {
+            return -1;
+        }
+        byte[] bytes = host.getAddress();
+        long ip = (bytes[0] & 0xFF) << 24 | (bytes[1] & 0xFF) << 16
+                  | (bytes[2] & 0xFF) << 8 | bytes[3] & 0xFF;
+        return (ip & 0xFFFFFFFFL) << 16 | address.getPort();
+    }
+
+    private static int search(Members current, InetSocketAddress address,
+                              long key) {
+        int low = 0;
+        int high = current.addresses.length - 1;
+        while (low <= high) {
+            int mid = low + high >>> 1;
+            int cmp = compare(current.keys[mid], current.addresses[mid], key,
+                              address);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private volatile Members members = EMPTY;
+
+    @Override
+    public synchronized boolean add(InetSocketAddress address) {
+        Members current = members;
+        long key = key(address);
+        int index = search(current, address, key);
+        if (index >= 0) {
+            return false;
+        }
+        index = -(index + 1);
+        int length = current.addresses.length;
+        InetSocketAddress[] addresses = new InetSocketAddress[length + 1];
+        long[] keys = new long[length + 1];
+        System.arraycopy(current.addresses, 0, addresses, 0, index);
+        System.arraycopy(current.keys, 0, keys, 0, index);
+        addresses[index] = address;
+        keys[index] = key;
+        System.arraycopy(current.addresses, index, addresses, index + 1, length
+                                                                         - index);
+        System.arraycopy(current.keys, index, keys, index + 1, length - index);
+        members = new Members(addresses, keys);
+        return true;
+    }
+
+    @Override
+    public synchronized void clear() {
+        members = EMPTY;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof InetSocketAddress)) {
+            return false;
+        }
+        InetSocketAddress address = (InetSocketAddress) o;
+        return search(members, address, key(address)) >= 0;
+    }
+
+    /**
+     * Answer the member at the index, in address order
+     * 
+     * @param index
+     * @return the member
+     */
+    public InetSocketAddress get(int index) {
+        return members.addresses[index];
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return members.addresses.length == 0;
+    }
+
+    @Override
+    public Iterator<InetSocketAddress> iterator() {
+        return Arrays.asList(members.addresses).iterator();
+    }
+
+    /**
+     * Answer a random member of the set
+     * 
+     * @param entropy
+     *            - the source of entropy
+     * @return the selected member, or null if the set is empty
+     */
+    public InetSocketAddress random(Random entropy) {
+        InetSocketAddress[] current = members.addresses;
+        switch (current.length) {
+            case 0:
+                return null;
+            case 1:
+                return current[0];
+            default:
+                return current[entropy.nextInt(current.length)];
+        }
+    }
+
+    /**
+     * Answer distinct random members of the set. The members are sampled from
+     * a single snapshot of the set by Floyd's algorithm, the partial
+     * Fisher-Yates shuffle which needs no copy of the members.
+     * 
+     * @param entropy
+     *            - the source of entropy
+     * @param selected
+     *            - the array filled with the selected members
+     * @return the number of members selected: the smaller of the length of
+     *         the array and the size of the set
+     */
+    public int random(Random entropy, InetSocketAddress[] selected) {
+        InetSocketAddress[] current = members.addresses;
+        int count = Math.min(selected.length, current.length);
+        int chosen = 0;
+        for (int j = current.length - count; j < current.length; j++) {
+            InetSocketAddress member = current[entropy.nextInt(j + 1)];
+            for (int i = 0; i < chosen; i++) {
+                if (selected[i] == member) {
+                    member = current[j];
+                    break;
+                }
+            }
+            selected[chosen++] = member;
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized boolean remove(Object o) {
+        if (!(o instanceof InetSocketAddress)) {
+            return false;
+        }
+        Members current = members;
+        InetSocketAddress address = (InetSocketAddress) o;
+        int index = search(current, address, key(address));
+        if (index < 0) {
+            return false;
+        }
+        int length = current.addresses.length;
+        if (length == 1) {
+            members = EMPTY;
+            return true;
+        }
+        InetSocketAddress[] addresses = new InetSocketAddress[length - 1];
+        long[] keys = new long[length - 1];
+        System.arraycopy(current.addresses, 0, addresses, 0, index);
+        System.arraycopy(current.keys, 0, keys, 0, index);
+        System.arraycopy(current.addresses, index + 1, addresses, index,
+                         length - index - 1);
+        System.arraycopy(current.keys, index + 1, keys, index, length - index
+                                                               - 1);
+        members = new Members(addresses, keys);
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return members.addresses.length;
+    }
+}
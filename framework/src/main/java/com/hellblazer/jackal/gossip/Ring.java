@@ -1,19 +1,25 @@
 package com.hellblazer.jackal.gossip;
 
 import java.net.InetSocketAddress;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.smartfrog.services.anubis.partition.util.Identity;
 import org.smartfrog.services.anubis.partition.util.NodeIdSet;
 
 public class Ring {
-    private final GossipCommunications               comms;
-    private final AtomicReference<InetSocketAddress> neighbor = new AtomicReference<InetSocketAddress>();
-    private final int                                id;
-    private static final Logger                      log      = LoggerFactory.getLogger(Ring.class.getCanonicalName());
+    private static final InetSocketAddress[]           NO_NEIGHBORS = new InetSocketAddress[0];
+    private final GossipCommunications                 comms;
+    private final AtomicReference<InetSocketAddress[]> neighbors    = new AtomicReference<InetSocketAddress[]>(
+                                                                                                           NO_NEIGHBORS);
+    private final int                                  id;
+    private volatile int                               fanout       = 1;
+    private NodeIdSet                                  members;
+    private int[]                                      ids;
+    private static final Logger                        log          = LoggerFactory.getLogger(Ring.class.getCanonicalName());
 
     public Ring(int identity, GossipCommunications comms) {
         id = identity;
@@ -21,55 +27,92 @@ public class Ring {
     }
 
     /**
-     * Send the heartbeat around the ring in both directions.
-     * 
+     * Answer the addresses of the neighbors the heartbeats are sent to
+     *
+     * @return the neighbors, empty if the ring has not been formed
+     */
+    public InetSocketAddress[] getNeighbors() {
+        return neighbors.get().clone();
+    }
+
+    /**
+     * Send the heartbeat to the neighbors on the ring.
+     *
      * @param state
      */
     public void send(HeartbeatState state) {
-        InetSocketAddress l = neighbor.get();
-        if (l == null) {
+        InetSocketAddress[] l = neighbors.get();
+        if (l.length == 0) {
             if (log.isTraceEnabled()) {
                 log.trace("Ring has not been formed, not forwarding state");
             }
             return;
         }
-        comms.send(state, l);
+        for (InetSocketAddress neighbor : l) {
+            comms.send(state, neighbor);
+        }
+    }
+
+    /**
+     * Set the number of neighbors the heartbeats are sent to. The neighbors
+     * are the members 1, 2, 4 ... 2^(fanout - 1) places to the left on the
+     * ring, so a heartbeat reaches every member of a view of n members in
+     * O(log n) hops when the fanout is log2(n). Takes effect at the next
+     * update.
+     *
+     * @param fanout
+     *            - the number of neighbors, 1 by default
+     */
+    public void setFanout(int fanout) {
+        if (fanout < 1) {
+            throw new IllegalArgumentException("fanout must be at least 1");
+        }
+        this.fanout = fanout;
     }
 
     /**
      * Update the neighboring members of the id on the ring represented by the
      * members.
-     * 
+     *
      * @param members
      * @param endpoints
+     *            - the endpoints indexed by the id of their members
      */
-    public void update(NodeIdSet members, Collection<Endpoint> endpoints) {
-        int n = members.leftNeighborOf(id);
-        if (n == -1) {
+    public synchronized void update(NodeIdSet members,
+                                    Map<Integer, Endpoint> endpoints) {
+        if (!members.equals(this.members)) {
+            ids = new int[members.cardinality()];
+            int i = 0;
+            for (Iterator<Integer> m = members.iterator(); m.hasNext();) {
+                ids[i++] = m.next();
+            }
+            this.members = members.clone();
+        }
+        int position = Arrays.binarySearch(ids, id);
+        if (position < 0) {
             if (log.isTraceEnabled()) {
                 log.trace(String.format("id {%s} does not have a left neighbor in: %s",
                                         id, members));
             }
             return;
         }
-        InetSocketAddress l = null;
-        for (Endpoint endpoint : endpoints) {
-            Identity identity = endpoint.getId();
-            if (identity != null) {
-                int eid = identity.id;
-                if (eid == n) {
-                    l = endpoint.getState().getHeartbeatAddress();
-                    break;
-                }
+        int k = Math.min(fanout, 31);
+        InetSocketAddress[] l = new InetSocketAddress[k];
+        int count = 0;
+        for (int i = 0; i < k && 1 << i < ids.length; i++) {
+            int neighbor = ids[(position - (1 << i) + ids.length) % ids.length];
+            Endpoint endpoint = endpoints.get(neighbor);
+            if (endpoint != null) {
+                l[count++] = endpoint.getState().getHeartbeatAddress();
             }
         }
-        if (l == null) {
+        if (count == 0) {
             if (log.isTraceEnabled()) {
                 log.trace("Ring has not been formed");
             }
-            neighbor.set(null);
+            neighbors.set(NO_NEIGHBORS);
         } else {
-            neighbor.set(l);
+            neighbors.set(count == k ? l : Arrays.copyOf(l, count));
         }
     }
 }
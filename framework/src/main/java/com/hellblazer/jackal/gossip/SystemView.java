@@ -20,15 +20,14 @@ package com.hellblazer.jackal.gossip;
 import static java.lang.String.format;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentSkipListSet;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,36 +50,17 @@ import org.slf4j.LoggerFactory;
  * 
  */
 public class SystemView {
-    private static final Comparator<InetSocketAddress> ADDRESS_COMPARATOR = new Comparator<InetSocketAddress>() {
-                                                                              @Override
-                                                                              public int compare(InetSocketAddress addr1,
-                                                                                                 InetSocketAddress addr2) {
-                                                                                  int hostCompare = addr1.getAddress().getHostAddress().compareTo(addr2.getAddress().getHostAddress());
-                                                                                  if (hostCompare == 0) {
-                                                                                      int port1 = addr1.getPort();
-                                                                                      int port2 = addr2.getPort();
-                                                                                      if (port1 == port2) {
-                                                                                          return 0;
-                                                                                      }
-                                                                                      if (port1 > port2) {
-                                                                                          return 1;
-                                                                                      }
-                                                                                      return -1;
-                                                                                  }
-                                                                                  return hostCompare;
-                                                                              }
-                                                                          };
-    private static final Logger                        log                = LoggerFactory.getLogger(SystemView.class);
-    private final Random                               entropy;
-    private final Set<InetSocketAddress>               live               = new ConcurrentSkipListSet<InetSocketAddress>(
-                                                                                                                         ADDRESS_COMPARATOR);
-    private final InetSocketAddress                    localAddress;
-    private final Map<InetSocketAddress, Long>         quarantined        = new ConcurrentHashMap<InetSocketAddress, Long>();
-    private final int                                  quarantineInterval;
-    private final Set<InetSocketAddress>               seeds              = new ConcurrentSkipListSet<InetSocketAddress>(
-                                                                                                                         ADDRESS_COMPARATOR);
-    private final Map<InetSocketAddress, Long>         unreachable        = new ConcurrentHashMap<InetSocketAddress, Long>();
-    private final int                                  unreachableInterval;
+    private static final Logger                log                = LoggerFactory.getLogger(SystemView.class);
+    private final AddressTable                 addresses          = new AddressTable();
+    private final Random                       entropy;
+    private final MemberSet                    live               = new MemberSet();
+    private final InetSocketAddress            localAddress;
+    private final Map<InetSocketAddress, Long> quarantined        = new ConcurrentHashMap<InetSocketAddress, Long>();
+    private final int                          quarantineInterval;
+    private final MemberSet                    seeds              = new MemberSet();
+    private final Map<InetSocketAddress, Long> unreachable        = new ConcurrentHashMap<InetSocketAddress, Long>();
+    private final int                          unreachableInterval;
+    private final MemberSet                    unreachableMembers = new MemberSet();
 
     /**
      * 
@@ -103,12 +83,12 @@ public class SystemView {
                       int quarantineDelay, int unreachableDelay) {
         assert validAddresses(seedHosts);
         entropy = random;
-        localAddress = local;
+        localAddress = addresses.intern(local);
         quarantineInterval = quarantineDelay;
         unreachableInterval = unreachableDelay;
         for (InetSocketAddress seed : seedHosts) {
             if (!seed.equals(localAddress)) {
-                seeds.add(seed);
+                seeds.add(addresses.intern(seed));
             }
         }
         log.info(format("System view initialized for: %s, seeds: %s",
@@ -132,6 +112,7 @@ public class SystemView {
                 }
                 iterator.remove();
                 unreachable.put(entry.getKey(), entry.getValue());
+                unreachableMembers.add(entry.getKey());
             }
         }
     }
@@ -142,9 +123,11 @@ public class SystemView {
      * @param now
      *            - the tim to determine the interval the endpoint has been
      *            unreachable
+     * @return the endpoints culled
      */
-    public void cullUnreachable(long now) {
-        for (Iterator<Map.Entry<InetSocketAddress, Long>> iterator = quarantined.entrySet().iterator(); iterator.hasNext();) {
+    public List<InetSocketAddress> cullUnreachable(long now) {
+        List<InetSocketAddress> culled = Collections.emptyList();
+        for (Iterator<Map.Entry<InetSocketAddress, Long>> iterator = unreachable.entrySet().iterator(); iterator.hasNext();) {
             Map.Entry<InetSocketAddress, Long> entry = iterator.next();
             if (now - entry.getValue() > unreachableInterval) {
                 if (log.isTraceEnabled()) {
@@ -152,9 +135,26 @@ public class SystemView {
                                      unreachableInterval, entry.getKey()));
                 }
                 iterator.remove();
-                unreachable.put(entry.getKey(), entry.getValue());
+                unreachableMembers.remove(entry.getKey());
+                if (!seeds.contains(entry.getKey())) {
+                    addresses.remove(entry.getKey());
+                }
+                if (culled.isEmpty()) {
+                    culled = new ArrayList<InetSocketAddress>();
+                }
+                culled.add(entry.getKey());
             }
         }
+        return culled;
+    }
+
+    /**
+     * Answer the interned addresses of the members of the view
+     * 
+     * @return the table of member addresses
+     */
+    public AddressTable getAddressTable() {
+        return addresses;
     }
 
     /**
@@ -199,6 +199,17 @@ public class SystemView {
         return getRandomMember(live);
     }
 
+    /**
+     * Answer distinct random members of the live set.
+     * 
+     * @param selected
+     *            - the array filled with the selected members
+     * @return the number of members selected
+     */
+    public int getRandomLiveMembers(InetSocketAddress[] selected) {
+        return live.random(entropy, selected);
+    }
+
     /**
      * Answer a random member of the seed set. We only return a member of the
      * seed set if the member supplied is null, or if the size of the live
@@ -246,7 +257,7 @@ public class SystemView {
     public InetSocketAddress getRandomUnreachableMember() {
         if (entropy.nextDouble() < unreachable.size()
                                    / ((double) live.size() + 1)) {
-            return getRandomMember(unreachable.keySet());
+            return getRandomMember(unreachableMembers);
         }
         return null;
     }
@@ -257,7 +268,7 @@ public class SystemView {
      * @return the set of unreachable endpoints.
      */
     public Collection<InetSocketAddress> getUnreachableMembers() {
-        return Collections.unmodifiableCollection(unreachable.keySet());
+        return Collections.unmodifiableCollection(unreachableMembers);
     }
 
     /**
@@ -272,14 +283,16 @@ public class SystemView {
     }
 
     /**
-     * Mark the endpoint as live.
+     * Mark the endpoint as live, interning its address.
      * 
      * @param endpoint
      *            - the endpoint to mark as live
      */
     public void markAlive(InetSocketAddress endpoint) {
+        addresses.intern(endpoint);
         live.add(endpoint);
         unreachable.remove(endpoint);
+        unreachableMembers.remove(endpoint);
     }
 
     /**
@@ -302,27 +315,13 @@ public class SystemView {
     }
 
     /**
-     * Answer a random member of the endpoint collection.
+     * Answer a random member of the endpoint set.
      * 
      * @param endpoints
      *            - the endpoints to sample
      * @return the selected member
      */
-    protected InetSocketAddress getRandomMember(Collection<InetSocketAddress> endpoints) {
-        if (endpoints.isEmpty()) {
-            return null;
-        }
-        int size = endpoints.size();
-        int index = size == 1 ? 0 : entropy.nextInt(size);
-        int i = 0;
-        for (InetSocketAddress address : endpoints) {
-            if (i == index) {
-                return address;
-            }
-            i++;
-        }
-        log.info(format("We should have found the selected random member of the supplied endpoint set: %s",
-                        index));
-        return null;
+    protected InetSocketAddress getRandomMember(MemberSet endpoints) {
+        return endpoints.random(entropy);
     }
 }
@@ -32,6 +32,29 @@ import com.hellblazer.jackal.util.SkipList;
 public class AdaptiveFailureDetector extends MultiWindow implements
         FailureDetector {
 
+    /**
+     * Answer the least number of samples <= the scaled delta at which the
+     * fraction of such samples reaches the conviction threshold
+     * 
+     * @param threshold
+     *            - the conviction threshold
+     * @param count
+     *            - the number of samples
+     * @return the conviction rank, which is count + 1 if the threshold cannot
+     *         be reached
+     */
+    static int convictionRank(double threshold, int count) {
+        int rank = (int) Math.ceil(threshold * count);
+        // correct for the rounding of the product
+        while (rank > 0 && (double) (rank - 1) / count >= threshold) {
+            rank--;
+        }
+        while (rank <= count && (double) rank / count < threshold) {
+            rank++;
+        }
+        return rank;
+    }
+
     private double         last        = -1.0;
     private final double   minInterval;
     private final double   scale;
@@ -55,6 +78,21 @@ public class AdaptiveFailureDetector extends MultiWindow implements
         assert last == now;
     }
 
+    @Override
+    public synchronized long earliestConviction() {
+        if (count == 0) {
+            return Long.MAX_VALUE;
+        }
+        int rank = convictionRank(threshold, count);
+        if (rank <= 0) {
+            return Long.MIN_VALUE;
+        }
+        if (rank > count) {
+            return Long.MAX_VALUE;
+        }
+        return (long) Math.floor(last + sorted.get(rank - 1) / scale);
+    }
+
     @Override
     public synchronized void record(long timeStamp, long delay) {
         if (last >= 0.0) {
@@ -77,7 +115,7 @@ public class AdaptiveFailureDetector extends MultiWindow implements
     @Override
     public synchronized boolean shouldConvict(long now) {
         double delta = (now - last) * scale;
-        double countLessThanEqualTo = sorted.countLessThanEqualTo(delta);
+        double countLessThanEqualTo = sorted.rank(delta);
         boolean convict = countLessThanEqualTo / count >= threshold;
         return convict;
     }
@@ -0,0 +1,146 @@
+/** 
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.gossip.fd;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.hellblazer.jackal.gossip.FailureDetector;
+import com.hellblazer.jackal.util.SortedWindow;
+import com.hellblazer.jackal.util.Window;
+
+/**
+ * A variant of the {@link AdaptiveFailureDetector} which does not lock.
+ * Heartbeats are recorded into primitive windows of inter arrival times and
+ * delays by a single writer. The detector convicts when the fraction of the
+ * samples <= the scaled delta reaches the threshold, which is when the scaled
+ * delta reaches the sample of rank ceil(threshold * count) - 1. The writer
+ * publishes this sample and the expected time of the next heartbeat as an
+ * immutable snapshot, the only allocation per sample, through a single
+ * volatile field. The conviction check is a volatile read and a comparison,
+ * and never sees the expected time of one heartbeat with the sample of
+ * another.
+ * <p>
+ * If a heartbeat is recorded while another thread is recording, the recording
+ * is attempted once more, and the heartbeat is then dropped, and counted,
+ * rather than waited for.
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public class LockFreeAdaptiveFailureDetector implements FailureDetector {
+    /**
+     * The expected time of the last heartbeat, and the scaled delta from it at
+     * which the detector convicts
+     */
+    private static final class Snapshot {
+        private final double convictDelta;
+        private final double last;
+
+        private Snapshot(double last, double convictDelta) {
+            this.last = last;
+            this.convictDelta = convictDelta;
+        }
+    }
+
+    private final Window        delays;
+    private final AtomicLong    drops       = new AtomicLong();
+    private final double        minInterval;
+    private final AtomicBoolean recording   = new AtomicBoolean();
+    private final double        scale;
+    private volatile Snapshot   snapshot;
+    private final SortedWindow  sorted;
+    private double              sumOfDelays = 0.0;
+    private final double        threshold;
+
+    public LockFreeAdaptiveFailureDetector(double convictionThreshold,
+                                           int windowSize, double scale,
+                                           long expectedSampleInterval,
+                                           int initialSamples,
+                                           double minimumInterval) {
+        threshold = convictionThreshold;
+        minInterval = minimumInterval;
+        this.scale = scale;
+        sorted = new SortedWindow(windowSize);
+        delays = new Window(windowSize);
+
+        long now = System.currentTimeMillis();
+        snapshot = new Snapshot(now - initialSamples * expectedSampleInterval,
+                                Double.POSITIVE_INFINITY);
+        for (int i = 0; i < initialSamples; i++) {
+            record((long) (snapshot.last + expectedSampleInterval), 0L);
+        }
+        assert snapshot.last == now;
+    }
+
+    @Override
+    public long earliestConviction() {
+        Snapshot current = snapshot;
+        return (long) Math.floor(current.last + current.convictDelta / scale);
+    }
+
+    /**
+     * Answer the number of heartbeats dropped, as they were recorded while
+     * another heartbeat was being recorded
+     */
+    public long getDrops() {
+        return drops.get();
+    }
+
+    @Override
+    public void record(long timeStamp, long delay) {
+        if (!recording.compareAndSet(false, true)
+            && !recording.compareAndSet(false, true)) {
+            drops.incrementAndGet();
+            return;
+        }
+        try {
+            double sample = timeStamp - snapshot.last;
+            if (sample < minInterval) {
+                return;
+            }
+            sorted.sample(sample);
+            sumOfDelays += delay;
+            if (delays.size() == sorted.size()) {
+                sumOfDelays -= delays.removeFirst();
+            }
+            delays.addLast(delay);
+            int count = sorted.size();
+            int rank = AdaptiveFailureDetector.convictionRank(threshold,
+                                                              count);
+            double convictDelta;
+            if (rank <= 0) {
+                convictDelta = Double.NEGATIVE_INFINITY;
+            } else if (rank > count) {
+                convictDelta = Double.POSITIVE_INFINITY;
+            } else {
+                convictDelta = sorted.get(rank - 1);
+            }
+            snapshot = new Snapshot(timeStamp + sumOfDelays / count,
+                                    convictDelta);
+        } finally {
+            recording.set(false);
+        }
+    }
+
+    @Override
+    public boolean shouldConvict(long now) {
+        Snapshot current = snapshot;
+        return (now - current.last) * scale >= current.convictDelta;
+    }
+}
@@ -0,0 +1,138 @@
+/** 
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.gossip.fd;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.hellblazer.jackal.gossip.FailureDetector;
+import com.hellblazer.jackal.util.SortedWindow;
+
+/**
+ * A variant of the {@link PhiAccrualFailureDetector} which does not lock.
+ * Heartbeats are recorded into a primitive window of inter arrival times by a
+ * single writer, which then publishes the time of the last heartbeat and the
+ * delta at which phi crosses the conviction threshold as an immutable snapshot,
+ * through a single volatile field. The conviction check is a volatile read and
+ * a comparison, and never sees the time of one heartbeat with the delta of
+ * another.
+ * <p>
+ * If a heartbeat is recorded while another thread is recording, the recording
+ * is attempted once more, and the heartbeat is then dropped, and counted,
+ * rather than waited for.
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public class LockFreePhiAccrualFailureDetector implements FailureDetector {
+    /**
+     * The time of the last heartbeat, and the delta from it at which the
+     * detector convicts
+     */
+    private static final class Snapshot {
+        private final double convictDelta;
+        private final double last;
+
+        private Snapshot(double last, double convictDelta) {
+            this.last = last;
+            this.convictDelta = convictDelta;
+        }
+    }
+
+    private static final double LN_10     = Math.log(10.0);
+
+    private final AtomicLong    drops     = new AtomicLong();
+    private final double        minInterval;
+    private final AtomicBoolean recording = new AtomicBoolean();
+    private volatile Snapshot   snapshot;
+    private final double        threshold;
+    private final boolean       useMedian;
+    private final SortedWindow  window;
+
+    public LockFreePhiAccrualFailureDetector(double convictThreshold,
+                                             boolean useMedian,
+                                             int windowSize,
+                                             long expectedSampleInterval,
+                                             int initialSamples,
+                                             double minimumInterval) {
+        threshold = convictThreshold;
+        minInterval = minimumInterval;
+        this.useMedian = useMedian;
+        window = new SortedWindow(windowSize);
+        long now = System.currentTimeMillis();
+        snapshot = new Snapshot(now - initialSamples * expectedSampleInterval,
+                                Double.POSITIVE_INFINITY);
+        for (int i = 0; i < initialSamples; i++) {
+            record((long) (snapshot.last + expectedSampleInterval), 0L);
+        }
+        assert snapshot.last == now;
+    }
+
+    /* (non-Javadoc)
+     * @see com.hellblazer.jackal.gossip.FailureDetector#earliestConviction()
+     */
+    @Override
+    public long earliestConviction() {
+        Snapshot current = snapshot;
+        return (long) Math.floor(current.last + current.convictDelta);
+    }
+
+    /**
+     * Answer the number of heartbeats dropped, as they were recorded while
+     * another heartbeat was being recorded
+     */
+    public long getDrops() {
+        return drops.get();
+    }
+
+    /* (non-Javadoc)
+     * @see com.hellblazer.jackal.gossip.FailureDetector#record(long, long)
+     */
+    @Override
+    public void record(long now, long delay) {
+        if (!recording.compareAndSet(false, true)
+            && !recording.compareAndSet(false, true)) {
+            drops.incrementAndGet();
+            return;
+        }
+        try {
+            double interArrivalTime = now - snapshot.last;
+            if (interArrivalTime < minInterval) {
+                return;
+            }
+            window.sample(interArrivalTime);
+            double value = useMedian ? window.median() : window.value();
+            snapshot = new Snapshot(now, threshold * LN_10 * value);
+        } finally {
+            recording.set(false);
+        }
+    }
+
+    /**
+     * With the exponential distribution, phi = delta / (value * ln 10), so phi
+     * exceeds the conviction threshold when delta exceeds threshold * ln 10 *
+     * value. This product is calculated once, when the heartbeat is recorded.
+     * 
+     * @see com.hellblazer.jackal.gossip.FailureDetector#shouldConvict(long)
+     */
+    @Override
+    public boolean shouldConvict(long now) {
+        Snapshot current = snapshot;
+        return now - current.last > current.convictDelta;
+    }
+}
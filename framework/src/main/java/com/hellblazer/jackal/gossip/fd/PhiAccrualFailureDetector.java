@@ -42,6 +42,8 @@ import com.hellblazer.jackal.util.SampledWindow;
  * 
  */
 public class PhiAccrualFailureDetector implements FailureDetector {
+    private static final double LN_10     = Math.log(10.0);
+
     private double              last;
     private final double        minInterval;
     private final ReentrantLock stateLock = new ReentrantLock();
@@ -67,6 +69,30 @@ public class PhiAccrualFailureDetector implements FailureDetector {
         assert last == now;
     }
 
+    /**
+     * Phi exceeds the conviction threshold when delta exceeds threshold * ln 10
+     * * value
+     * 
+     * @see com.hellblazer.jackal.gossip.FailureDetector#earliestConviction()
+     */
+    @Override
+    public long earliestConviction() {
+        final ReentrantLock myLock = stateLock;
+        try {
+            myLock.lockInterruptibly();
+        } catch (InterruptedException e) {
+            return Long.MIN_VALUE;
+        }
+        try {
+            if (window.size() == 0) {
+                return Long.MAX_VALUE;
+            }
+            return (long) Math.floor(last + threshold * LN_10 * window.value());
+        } finally {
+            myLock.unlock();
+        }
+    }
+
     /* (non-Javadoc)
      * @see com.hellblazer.jackal.gossip.FailureDetector#record(long)
      */
@@ -10,6 +10,15 @@ public class SimpleTimeoutFailureDector implements FailureDetector {
         this.timeout = timeout;
     }
 
+    @Override
+    public long earliestConviction() {
+        long last = lastRecord;
+        if (last < 0) {
+            return Long.MAX_VALUE;
+        }
+        return last + timeout + 1;
+    }
+
     @Override
     public void record(long now, long delay) {
         lastRecord = now + delay;
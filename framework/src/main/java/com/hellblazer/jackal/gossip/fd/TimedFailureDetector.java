@@ -32,6 +32,15 @@ public class TimedFailureDetector implements FailureDetector {
         this.maxInterval = maxInterval;
     }
 
+    @Override
+    public long earliestConviction() {
+        long previous = last;
+        if (previous < 0) {
+            return Long.MAX_VALUE;
+        }
+        return previous + maxInterval + 1;
+    }
+
     @Override
     public void record(long now, long delay) {
         last = now;
@@ -0,0 +1,937 @@
+/** (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.gossip.udp;
+
+import static com.hellblazer.jackal.gossip.GossipMessages.ACK;
+import static com.hellblazer.jackal.gossip.GossipMessages.CONNECT_TO;
+import static com.hellblazer.jackal.gossip.GossipMessages.DIGEST_BYTE_SIZE;
+import static com.hellblazer.jackal.gossip.GossipMessages.GOSSIP;
+import static com.hellblazer.jackal.gossip.GossipMessages.PING;
+import static com.hellblazer.jackal.gossip.GossipMessages.PING_REQUEST;
+import static com.hellblazer.jackal.gossip.GossipMessages.REPLY;
+import static com.hellblazer.jackal.gossip.GossipMessages.SUMMARY;
+import static com.hellblazer.jackal.gossip.GossipMessages.UPDATE;
+import static com.hellblazer.jackal.gossip.GossipMessages.VERSION;
+import static java.lang.Math.min;
+import static java.lang.String.format;
+import static java.util.Arrays.asList;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smartfrog.services.anubis.partition.util.Identity;
+
+import com.hellblazer.jackal.gossip.AddressTable;
+import com.hellblazer.jackal.gossip.CompactEncoding;
+import com.hellblazer.jackal.gossip.Digest;
+import com.hellblazer.jackal.gossip.DigestList;
+import com.hellblazer.jackal.gossip.DigestSummary;
+import com.hellblazer.jackal.gossip.Endpoint;
+import com.hellblazer.jackal.gossip.Gossip;
+import com.hellblazer.jackal.gossip.GossipCommunications;
+import com.hellblazer.jackal.gossip.GossipMessages;
+import com.hellblazer.jackal.gossip.HeartbeatState;
+import com.hellblazer.jackal.util.BufferPool;
+import com.hellblazer.jackal.util.HexDump;
+import com.hellblazer.jackal.util.StripedByteBufferPool;
+
+/**
+ * The shared wire protocol of the UDP gossip communications. Subclasses supply
+ * the datagram transport; this class supplies the encoding and decoding of the
+ * gossip messages.
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+abstract public class AbstractUdpCommunications implements
+        GossipCommunications {
+    /**
+     * The advertisements of the compact encoding to a peer which has not been
+     * heard to use it
+     */
+    private static class Advertisement {
+        private final int  attempts;
+        private final long time;
+
+        private Advertisement(long time, int attempts) {
+            this.time = time;
+            this.attempts = attempts;
+        }
+    }
+
+    protected class GossipHandler implements GossipMessages {
+        private final InetSocketAddress target;
+
+        GossipHandler(InetSocketAddress target) {
+            assert target.getPort() != 0 : "Invalid port";
+            this.target = target;
+        }
+
+        @Override
+        public void ack(int nonce) {
+            sendProbe(ACK, nonce, null, target);
+        }
+
+        @Override
+        public void close() {
+            // no op
+        }
+
+        @Override
+        public void gossip(List<Digest> digests) {
+            sendDigests(digests, GOSSIP, target);
+        }
+
+        @Override
+        public void ping(int nonce) {
+            sendProbe(PING, nonce, null, target);
+        }
+
+        @Override
+        public void pingRequest(InetSocketAddress suspect, int nonce) {
+            sendProbe(PING_REQUEST, nonce, suspect, target);
+        }
+
+        @Override
+        public void reply(List<Digest> digests, List<HeartbeatState> states) {
+            sendDigests(digests, REPLY, target);
+            update(states);
+        }
+
+        @Override
+        public void requestConnection(Identity node) {
+            boolean compact = isCompact(target);
+            ByteBuffer buffer = bufferPool.allocate(MAX_SEG_SIZE);
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            if (compact) {
+                buffer.putInt(COMPACT_MAGIC_NUMBER);
+                buffer.put(CONNECT_TO);
+                new CompactEncoding(buffer).putIdentity(node);
+            } else {
+                buffer.putInt(MAGIC_NUMBER);
+                buffer.put(CONNECT_TO);
+                node.writeTo(buffer);
+            }
+            send(buffer, target);
+            bufferPool.free(buffer);
+            if (!compact) {
+                advertise(target);
+            }
+        }
+
+        @Override
+        public void summarize(DigestSummary summary, List<Digest> digests) {
+            if (!isCompact(target)) {
+                // only peers of the compact encoding understand the summary
+                sendDigests(digests, GOSSIP, target);
+                return;
+            }
+            ByteBuffer buffer = bufferPool.allocate(MAX_SEG_SIZE);
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            buffer.putInt(COMPACT_MAGIC_NUMBER);
+            buffer.put(SUMMARY);
+            summary.writeTo(buffer);
+            send(buffer, target);
+            bufferPool.free(buffer);
+        }
+
+        @Override
+        public void update(List<HeartbeatState> deltaState) {
+            sendStates(deltaState, target);
+        }
+    }
+
+    /**
+     * The magic number of the compact encoding
+     */
+    protected static final int                  COMPACT_MAGIC_NUMBER           = 24051968;
+    /**
+     * The wire version of the compact encoding
+     */
+    protected static final byte                 COMPACT_VERSION                = 2;
+    @SuppressWarnings("unchecked")
+    protected static final List<HeartbeatState> EMPTY_HEATBEAT_LIST            = Collections.EMPTY_LIST;
+    private static final Logger                 log                            = LoggerFactory.getLogger(AbstractUdpCommunications.class);
+    /**
+     * The magic number of the original, fixed size encoding
+     */
+    protected static final int                  MAGIC_NUMBER                   = 24051967;
+    /**
+     * The flag marking the final fragment of a compact digest round
+     */
+    protected static final byte                 LAST_FRAGMENT                  = (byte) 0x80;
+    protected static final int                  MAX_DIGESTS;
+    /**
+     * The number of unanswered advertisements of the compact encoding after
+     * which a peer is no longer sent them
+     */
+    protected static final int                  MAX_VERSION_ADVERTISEMENTS     = 5;
+    /**
+     * MAX_SEG_SIZE is a default maximum packet size. This may be small, but any
+     * network will be capable of handling this size so the packet transfer
+     * semantics are atomic (no fragmentation in the network).
+     */
+    protected static final int                  MAX_SEG_SIZE                   = 1500;
+    /**
+     * The minimum interval between advertisements of the compact encoding to a
+     * peer which has not yet been heard to use it
+     */
+    protected static final long                 VERSION_ADVERTISEMENT_INTERVAL = 10 * 1000L;
+
+    static {
+        MAX_DIGESTS = (MAX_SEG_SIZE - 4 - 1 - 4) / DIGEST_BYTE_SIZE;
+    }
+
+    protected static String prettyPrint(SocketAddress sender,
+                                        SocketAddress target, ByteBuffer bytes) {
+        ByteBuffer contents = bytes.duplicate();
+        contents.rewind();
+        byte[] data = new byte[contents.remaining()];
+        contents.get(data);
+        final StringBuilder sb = new StringBuilder(data.length * 2);
+        sb.append('\n');
+        sb.append(new SimpleDateFormat().format(new Date()));
+        sb.append(" sender: ");
+        sb.append(sender);
+        sb.append(" target: ");
+        sb.append(target);
+        sb.append('\n');
+        sb.append(toHex(data, 0, data.length));
+        return sb.toString();
+    }
+
+    private static String toHex(byte[] data, int offset, int length) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
+        PrintStream stream = new PrintStream(baos);
+        HexDump.hexdump(stream, data, offset, length);
+        stream.close();
+        return baos.toString();
+    }
+
+    private final ConcurrentMap<SocketAddress, Advertisement> advertised        = new ConcurrentHashMap<SocketAddress, Advertisement>();
+    private final AtomicLong                                  bytesReceived     = new AtomicLong();
+    private final AtomicLong                                  bytesSent         = new AtomicLong();
+    private volatile boolean                                  compact           = true;
+    private final Set<SocketAddress>                          compactPeers      = Collections.newSetFromMap(new ConcurrentHashMap<SocketAddress, Boolean>());
+    private final AtomicLong                                  datagramsReceived = new AtomicLong();
+    private final AtomicLong                                  datagramsSent     = new AtomicLong();
+    private final AtomicInteger                               rounds            = new AtomicInteger();
+    protected final BufferPool                                bufferPool;
+    protected Gossip                                          gossip;
+
+    public AbstractUdpCommunications() {
+        this(new StripedByteBufferPool("UDP Comms", 100));
+    }
+
+    /**
+     * @param bufferPool
+     *            - the pool supplying the datagram buffers
+     */
+    protected AbstractUdpCommunications(BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    @Override
+    public void connect(InetSocketAddress address, Endpoint endpoint,
+                        Runnable connectAction) throws IOException {
+        endpoint.setCommunications(new GossipHandler(address));
+        connectAction.run();
+    }
+
+    @Override
+    public void forget(InetSocketAddress address) {
+        advertised.remove(address);
+        compactPeers.remove(address);
+    }
+
+    /**
+     * @return the number of datagram bytes received, including the magic
+     *         header
+     */
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    /**
+     * @return the number of datagram bytes sent, including the magic header
+     */
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    /**
+     * @return the number of datagrams received
+     */
+    public long getDatagramsReceived() {
+        return datagramsReceived.get();
+    }
+
+    /**
+     * @return the number of datagrams sent
+     */
+    public long getDatagramsSent() {
+        return datagramsSent.get();
+    }
+
+    @Override
+    public void send(HeartbeatState state, InetSocketAddress left) {
+        if (!gossip.isIgnoring(left)) {
+            sendStates(Collections.singletonList(state), left);
+        }
+    }
+
+    /**
+     * Configure the use of the compact encoding. When enabled, the compact
+     * encoding is advertised to peers and used with the peers which advertise
+     * it in turn; the original encoding is used with all others. When
+     * disabled, the original encoding is always sent. Both encodings are
+     * always accepted.
+     * 
+     * @param compact
+     */
+    public void setCompact(boolean compact) {
+        this.compact = compact;
+    }
+
+    @Override
+    public void setGossip(Gossip gossip) {
+        this.gossip = gossip;
+    }
+
+    /**
+     * @return the interned addresses of the members, answered when decoding
+     *         their addresses
+     */
+    private AddressTable addresses() {
+        Gossip g = gossip;
+        return g == null ? null : g.getAddressTable();
+    }
+
+    /**
+     * Advertise the compact encoding to the target, at most once per
+     * advertisement interval, until the target has left unanswered the maximum
+     * number of advertisements
+     * 
+     * @param target
+     */
+    private void advertise(InetSocketAddress target) {
+        if (!compact) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Advertisement last = advertised.get(target);
+        if (last != null) {
+            if (last.attempts >= MAX_VERSION_ADVERTISEMENTS) {
+                // the target predates the compact encoding
+                return;
+            }
+            if (now - last.time < VERSION_ADVERTISEMENT_INTERVAL) {
+                return;
+            }
+        }
+        int attempts = last == null ? 1 : last.attempts + 1;
+        advertised.put(target, new Advertisement(now, attempts));
+        ByteBuffer buffer = bufferPool.allocate(MAX_SEG_SIZE);
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        buffer.putInt(MAGIC_NUMBER);
+        buffer.put(VERSION);
+        buffer.put(COMPACT_VERSION);
+        send(buffer, target);
+        bufferPool.free(buffer);
+    }
+
+    private void handleGossip(final InetSocketAddress target,
+                              List<Digest> digests) {
+        if (digests.isEmpty()) {
+            return;
+        }
+        if (log.isTraceEnabled()) {
+            log.trace(format("Gossip digests from %s are : %s", this, digests));
+        }
+        gossip.gossip(digests, new GossipHandler(target));
+    }
+
+    /**
+     * Handle the ping, ping request or acknowledgement of a probe
+     * 
+     * @param msgType
+     * @param target
+     *            - the sender of the probe message
+     * @param buffer
+     * @param compactEncoding
+     *            - true if the message is in the compact encoding
+     */
+    private void handleProbe(byte msgType, InetSocketAddress target,
+                             ByteBuffer buffer, boolean compactEncoding) {
+        int nonce = buffer.getInt();
+        switch (msgType) {
+            case PING: {
+                gossip.ping(nonce, new GossipHandler(target));
+                break;
+            }
+            case ACK: {
+                gossip.ack(nonce, target);
+                break;
+            }
+            default: {
+                InetSocketAddress suspect;
+                AddressTable addresses = addresses();
+                try {
+                    suspect = compactEncoding ? new CompactEncoding(buffer,
+                                                                    addresses).getAddress()
+                                             : HeartbeatState.readInetAddress(buffer,
+                                                                              addresses);
+                } catch (Throwable e) {
+                    if (log.isWarnEnabled()) {
+                        log.warn("Cannot deserialize the suspect address. Ignoring the ping request.",
+                                 e);
+                    }
+                    return;
+                }
+                if (suspect == null) {
+                    return;
+                }
+                gossip.pingRequest(suspect, nonce, new GossipHandler(target));
+            }
+        }
+    }
+
+    private void handleReply(final InetSocketAddress target,
+                             List<Digest> digests) {
+        if (digests.isEmpty()) {
+            return;
+        }
+        gossip.reply(digests, EMPTY_HEATBEAT_LIST, new GossipHandler(target));
+    }
+
+    private void handleSummary(final InetSocketAddress target,
+                               ByteBuffer buffer) {
+        DigestSummary summary;
+        try {
+            summary = new DigestSummary(buffer);
+        } catch (Throwable e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Cannot deserialize digest summary. Ignoring the summary.",
+                         e);
+            }
+            return;
+        }
+        if (log.isTraceEnabled()) {
+            log.trace(format("Digest summary from %s is : %s", target, summary));
+        }
+        gossip.summarize(summary, new GossipHandler(target));
+    }
+
+    /**
+     * Apply the batch of heartbeat states of a compact update
+     * 
+     * @param msg
+     */
+    private void handleCompactUpdate(ByteBuffer msg) {
+        int count = msg.getShort() & 0xFFFF;
+        CompactEncoding encoding = new CompactEncoding(msg, addresses());
+        final List<HeartbeatState> states = new ArrayList<HeartbeatState>(
+                                                                          count);
+        for (int i = 0; i < count; i++) {
+            try {
+                states.add(new HeartbeatState(encoding));
+            } catch (Throwable e) {
+                // the remaining states are relative to this one
+                if (log.isWarnEnabled()) {
+                    log.warn("Cannot deserialize heartbeat state. Ignoring the remaining states.",
+                             e);
+                }
+                break;
+            }
+        }
+        if (states.isEmpty()) {
+            return;
+        }
+        if (log.isTraceEnabled()) {
+            log.trace(format("Heartbeat states from %s are : %s", this, states));
+        }
+        gossip.update(states);
+    }
+
+    private void handleUpdate(ByteBuffer msg) {
+        final HeartbeatState state;
+        try {
+            state = new HeartbeatState(msg, addresses());
+        } catch (Throwable e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Cannot deserialize heartbeat state. Ignoring the state.",
+                         e);
+            }
+            return;
+        }
+        if (log.isTraceEnabled()) {
+            log.trace(format("Heartbeat state from %s is : %s", this, state));
+        }
+        gossip.update(asList(state));
+    }
+
+    private void handleVersion(InetSocketAddress sender, ByteBuffer msg) {
+        byte version = msg.get();
+        if (version >= COMPACT_VERSION) {
+            if (compactPeers.add(sender)) {
+                if (log.isTraceEnabled()) {
+                    log.trace(format("Using the compact encoding with %s",
+                                     sender));
+                }
+            }
+            advertised.remove(sender);
+        }
+    }
+
+    private boolean isCompact(InetSocketAddress target) {
+        return compact && compactPeers.contains(target);
+    }
+
+    private boolean isIgnoring(InetSocketAddress sender) {
+        if (gossip.isIgnoring(sender)) {
+            if (log.isTraceEnabled()) {
+                log.trace(String.format("Ignoring inbound msg from: %s", sender));
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private List<Digest> readCompactDigests(InetSocketAddress sender,
+                                            ByteBuffer buffer) {
+        int round = buffer.getShort() & 0xFFFF;
+        byte fragment = buffer.get();
+        int count = buffer.getShort() & 0xFFFF;
+        if (log.isTraceEnabled()) {
+            log.trace(format("Handling compact digests from %s, round: %s, fragment: %s%s, count: %s",
+                             sender, round, fragment & ~LAST_FRAGMENT,
+                             (fragment & LAST_FRAGMENT) != 0 ? " (last)" : "",
+                             count));
+        }
+        CompactEncoding msg = new CompactEncoding(buffer, addresses());
+        final DigestList digests = new DigestList(count);
+        for (int i = 0; i < count; i++) {
+            try {
+                InetSocketAddress address = msg.getAddress();
+                assert address != null : "Null digest address";
+                digests.add(address, msg.getTime());
+            } catch (Throwable e) {
+                // the remaining digests are relative to this one
+                if (log.isWarnEnabled()) {
+                    log.warn("Cannot deserialize digest. Ignoring the remaining digests.",
+                             e);
+                }
+                break;
+            }
+        }
+        return digests;
+    }
+
+    private List<Digest> readDigests(ByteBuffer msg) {
+        int count = msg.getInt();
+        if (log.isTraceEnabled()) {
+            log.trace("Handling digests, count: " + count);
+        }
+        final DigestList digests = new DigestList(count);
+        AddressTable addresses = addresses();
+        for (int i = 0; i < count; i++) {
+            InetSocketAddress address;
+            long time;
+            try {
+                address = HeartbeatState.readInetAddress(msg, addresses);
+                assert address != null : "Null digest address";
+                time = msg.getLong();
+            } catch (Throwable e) {
+                if (log.isWarnEnabled()) {
+                    log.warn("Cannot deserialize digest. Ignoring the digest.",
+                             e);
+                }
+                continue;
+            }
+            digests.add(address, time);
+        }
+        return digests;
+    }
+
+    /**
+     * Send the digests, packing as many into each datagram as will fit. In the
+     * compact encoding, the datagrams of the round are marked with the round
+     * and fragment sequence; each fragment is self contained, so the receiver
+     * processes the digests of each fragment as it arrives.
+     * 
+     * @param digests
+     * @param messageType
+     * @param target
+     */
+    private void sendDigests(List<Digest> digestList, byte messageType,
+                             InetSocketAddress target) {
+        DigestList digests = DigestList.of(digestList);
+        boolean compactEncoding = isCompact(target);
+        ByteBuffer buffer = bufferPool.allocate(MAX_SEG_SIZE);
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        int round = rounds.incrementAndGet() & 0xFFFF;
+        int fragment = 0;
+        for (int i = 0; i < digests.size();) {
+            if (compactEncoding) {
+                buffer.putInt(COMPACT_MAGIC_NUMBER);
+                buffer.put(messageType);
+                buffer.putShort((short) round);
+                int fragmentIndex = buffer.position();
+                buffer.put((byte) (fragment++ & ~LAST_FRAGMENT));
+                int countIndex = buffer.position();
+                buffer.putShort((short) 0);
+                CompactEncoding msg = new CompactEncoding(buffer);
+                int count = 0;
+                while (i < digests.size()) {
+                    msg.mark();
+                    try {
+                        digests.writeTo(i, msg);
+                    } catch (BufferOverflowException e) {
+                        msg.reset();
+                        break;
+                    }
+                    i++;
+                    count++;
+                }
+                buffer.putShort(countIndex, (short) count);
+                if (i == digests.size()) {
+                    buffer.put(fragmentIndex,
+                               (byte) (buffer.get(fragmentIndex) | LAST_FRAGMENT));
+                }
+            } else {
+                int count = min(MAX_DIGESTS, digests.size() - i);
+                buffer.putInt(MAGIC_NUMBER);
+                buffer.put(messageType);
+                buffer.putInt(count);
+                for (int j = i; j < i + count; j++) {
+                    digests.writeTo(j, buffer);
+                }
+                i += count;
+            }
+            send(buffer, target);
+            buffer.clear();
+            buffer.limit(MAX_SEG_SIZE);
+        }
+        bufferPool.free(buffer);
+        if (!compactEncoding) {
+            advertise(target);
+        }
+    }
+
+    /**
+     * Send the ping, ping request or acknowledgement of a probe, in a single
+     * datagram
+     * 
+     * @param messageType
+     * @param nonce
+     *            - the nonce of the probe
+     * @param suspect
+     *            - the suspect of a ping request, or null
+     * @param target
+     */
+    private void sendProbe(byte messageType, int nonce,
+                           InetSocketAddress suspect, InetSocketAddress target) {
+        boolean compactEncoding = isCompact(target);
+        ByteBuffer buffer = bufferPool.allocate(MAX_SEG_SIZE);
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        buffer.putInt(compactEncoding ? COMPACT_MAGIC_NUMBER : MAGIC_NUMBER);
+        buffer.put(messageType);
+        buffer.putInt(nonce);
+        if (suspect != null) {
+            if (compactEncoding) {
+                new CompactEncoding(buffer).putAddress(suspect);
+            } else {
+                HeartbeatState.writeInetAddress(suspect, buffer);
+            }
+        }
+        send(buffer, target);
+        bufferPool.free(buffer);
+        if (!compactEncoding) {
+            advertise(target);
+        }
+    }
+
+    /**
+     * Send the heartbeat states. The compact encoding packs as many states into
+     * each datagram as will fit; the original encoding carries a single state
+     * per datagram, as that is all its decoders read.
+     * 
+     * @param states
+     * @param target
+     */
+    private void sendStates(List<HeartbeatState> states,
+                            InetSocketAddress target) {
+        if (states.isEmpty()) {
+            return;
+        }
+        boolean compactEncoding = isCompact(target);
+        ByteBuffer buffer = bufferPool.allocate(MAX_SEG_SIZE);
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if (compactEncoding) {
+            for (int i = 0; i < states.size();) {
+                buffer.putInt(COMPACT_MAGIC_NUMBER);
+                buffer.put(UPDATE);
+                int countIndex = buffer.position();
+                buffer.putShort((short) 0);
+                CompactEncoding msg = new CompactEncoding(buffer);
+                int count = 0;
+                while (i < states.size()) {
+                    msg.mark();
+                    try {
+                        states.get(i).writeTo(msg);
+                    } catch (BufferOverflowException e) {
+                        msg.reset();
+                        break;
+                    }
+                    i++;
+                    count++;
+                }
+                buffer.putShort(countIndex, (short) count);
+                send(buffer, target);
+                buffer.clear();
+                buffer.limit(MAX_SEG_SIZE);
+            }
+        } else {
+            for (HeartbeatState state : states) {
+                buffer.putInt(MAGIC_NUMBER);
+                buffer.put(UPDATE);
+                state.writeTo(buffer);
+                send(buffer, target);
+                buffer.clear();
+                buffer.limit(MAX_SEG_SIZE);
+            }
+        }
+        bufferPool.free(buffer);
+        if (!compactEncoding) {
+            advertise(target);
+        }
+    }
+
+    /**
+     * Handle a request from a peer to connect. Subclasses which decode on their
+     * i/o thread should override this to dispatch the request, as it enters
+     * the connection set.
+     * 
+     * @param peer
+     *            - the identity of the requesting peer
+     */
+    protected void connectTo(Identity peer) {
+        gossip.connectTo(peer);
+    }
+
+    /**
+     * Validate and process the inbound datagram
+     * 
+     * @param sender
+     *            - the sender of the datagram
+     * @param buffer
+     *            - the datagram bytes, positioned at the magic header and
+     *            limited to the length of the datagram
+     */
+    protected void deliver(InetSocketAddress sender, ByteBuffer buffer) {
+        datagramsReceived.incrementAndGet();
+        bytesReceived.addAndGet(buffer.remaining());
+        int magic = buffer.getInt();
+        if (MAGIC_NUMBER == magic || COMPACT_MAGIC_NUMBER == magic) {
+            try {
+                if (MAGIC_NUMBER == magic) {
+                    if (buffer.get(buffer.position()) == VERSION) {
+                        buffer.get();
+                        handleVersion(sender, buffer);
+                    } else {
+                        // the peer has not, or no longer, heard us advertise
+                        compactPeers.remove(sender);
+                        processInbound(sender, buffer);
+                    }
+                } else {
+                    if (!compactPeers.contains(sender)) {
+                        compactPeers.add(sender);
+                    }
+                    processCompactInbound(sender, buffer);
+                }
+            } catch (Throwable e) {
+                if (log.isWarnEnabled()) {
+                    log.warn(format("Invalid message: %s",
+                                    prettyPrint(sender, getLocalAddress(),
+                                                buffer)), e);
+                }
+            }
+        } else {
+            if (log.isWarnEnabled()) {
+                log.warn(format("Msg with invalid MAGIC header [%s] discarded %s",
+                                magic,
+                                prettyPrint(sender, getLocalAddress(), buffer)));
+            }
+        }
+    }
+
+    protected void handleConnectTo(ByteBuffer buffer) {
+        Identity peer;
+        try {
+            peer = new Identity(buffer);
+        } catch (Throwable e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Cannot deserialize identity. Ignoring the connection request.",
+                         e);
+            }
+            return;
+        }
+        connectTo(peer);
+    }
+
+    /**
+     * Process the inbound message in the compact encoding
+     * 
+     * @param buffer
+     *            - the message bytes
+     */
+    protected void processCompactInbound(InetSocketAddress sender,
+                                         ByteBuffer buffer) {
+        if (isIgnoring(sender)) {
+            return;
+        }
+        byte msgType = buffer.get();
+        switch (msgType) {
+            case GOSSIP: {
+                handleGossip(sender, readCompactDigests(sender, buffer));
+                break;
+            }
+            case REPLY: {
+                handleReply(sender, readCompactDigests(sender, buffer));
+                break;
+            }
+            case UPDATE: {
+                handleCompactUpdate(buffer);
+                break;
+            }
+            case SUMMARY: {
+                handleSummary(sender, buffer);
+                break;
+            }
+            case PING:
+            case PING_REQUEST:
+            case ACK: {
+                handleProbe(msgType, sender, buffer, true);
+                break;
+            }
+            case CONNECT_TO: {
+                Identity peer;
+                try {
+                    peer = new CompactEncoding(buffer).getIdentity();
+                } catch (Throwable e) {
+                    if (log.isWarnEnabled()) {
+                        log.warn("Cannot deserialize identity. Ignoring the connection request.",
+                                 e);
+                    }
+                    return;
+                }
+                connectTo(peer);
+                break;
+            }
+            default: {
+                if (log.isInfoEnabled()) {
+                    log.info(format("invalid message type: %s from: %s",
+                                    msgType, this));
+                }
+            }
+        }
+    }
+
+    /**
+     * Process the inbound message in the original encoding
+     * 
+     * @param buffer
+     *            - the message bytes
+     */
+    protected void processInbound(InetSocketAddress sender, ByteBuffer buffer) {
+        if (isIgnoring(sender)) {
+            return;
+        }
+        byte msgType = buffer.get();
+        switch (msgType) {
+            case GOSSIP: {
+                handleGossip(sender, readDigests(buffer));
+                break;
+            }
+            case REPLY: {
+                handleReply(sender, readDigests(buffer));
+                break;
+            }
+            case UPDATE: {
+                handleUpdate(buffer);
+                break;
+            }
+            case PING:
+            case PING_REQUEST:
+            case ACK: {
+                handleProbe(msgType, sender, buffer, false);
+                break;
+            }
+            case CONNECT_TO: {
+                handleConnectTo(buffer);
+                break;
+            }
+            default: {
+                if (log.isInfoEnabled()) {
+                    log.info(format("invalid message type: %s from: %s",
+                                    msgType, this));
+                }
+            }
+        }
+    }
+
+    /**
+     * Record the successful transmission of a datagram
+     * 
+     * @param bytes
+     *            - the length of the datagram
+     */
+    protected void sent(int bytes) {
+        datagramsSent.incrementAndGet();
+        bytesSent.addAndGet(bytes);
+    }
+
+    /**
+     * Send the datagram across the net. Only the bytes written to the buffer
+     * are sent.
+     * 
+     * @param buffer
+     *            - the datagram, starting with the magic header and
+     *            positioned after the last byte of the message
+     * @param target
+     *            - the destination of the datagram
+     */
+    abstract protected void send(ByteBuffer buffer, SocketAddress target);
+}
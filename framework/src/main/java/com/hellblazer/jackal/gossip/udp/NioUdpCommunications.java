@@ -0,0 +1,257 @@
+/** (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.gossip.udp;
+
+import static java.lang.String.format;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smartfrog.services.anubis.partition.util.Identity;
+
+import com.hellblazer.jackal.util.StripedByteBufferPool;
+
+/**
+ * A non blocking UDP implementation of the gossip communications. A single
+ * thread services the datagram channel's selector, receiving each datagram into
+ * a reused direct buffer and decoding it inline. Only requests which must enter
+ * the connection set are handed off to the dispatching executor. Outbound
+ * datagrams are encoded into pooled direct buffers, so the channel writes them
+ * without an intermediate copy.
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public class NioUdpCommunications extends AbstractUdpCommunications {
+    private static final int      DEFAULT_RECEIVE_BUFFER_MULTIPLIER = 4;
+    private static final int      DEFAULT_SEND_BUFFER_MULTIPLIER    = 4;
+    private static final Logger   log                               = LoggerFactory.getLogger(NioUdpCommunications.class);
+
+    private final DatagramChannel channel;
+    private final ExecutorService dispatcher;
+    private final ByteBuffer      readBuffer                        = ByteBuffer.allocateDirect(MAX_SEG_SIZE);
+    private final AtomicBoolean   running                           = new AtomicBoolean();
+    private final Selector        selector;
+
+    public NioUdpCommunications(InetSocketAddress endpoint,
+                                ExecutorService executor) {
+        this(endpoint, executor, DEFAULT_RECEIVE_BUFFER_MULTIPLIER,
+             DEFAULT_SEND_BUFFER_MULTIPLIER);
+    }
+
+    public NioUdpCommunications(InetSocketAddress endpoint,
+                                ExecutorService executor,
+                                int receiveBufferMultiplier,
+                                int sendBufferMultiplier) {
+        super(new StripedByteBufferPool("NIO UDP Comms", 100, true));
+        dispatcher = executor;
+        readBuffer.order(ByteOrder.BIG_ENDIAN);
+        try {
+            channel = DatagramChannel.open();
+            DatagramSocket socket = channel.socket();
+            socket.setReceiveBufferSize(MAX_SEG_SIZE * receiveBufferMultiplier);
+            socket.setSendBufferSize(MAX_SEG_SIZE * sendBufferMultiplier);
+            socket.bind(endpoint);
+            channel.configureBlocking(false);
+            selector = Selector.open();
+            channel.register(selector, SelectionKey.OP_READ);
+        } catch (IOException e) {
+            log.error(format("Unable to bind to: %s", endpoint));
+            throw new IllegalStateException(format("Unable to bind to: %s",
+                                                   endpoint), e);
+        }
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        DatagramSocket socket = channel.socket();
+        return new InetSocketAddress(socket.getLocalAddress(),
+                                     socket.getLocalPort());
+    }
+
+    /**
+     * Start the service
+     */
+    @Override
+    public void start() {
+        if (running.compareAndSet(false, true)) {
+            dispatcher.execute(serviceTask());
+        }
+    }
+
+    /**
+     * Stop the service
+     */
+    @Override
+    public void terminate() {
+        if (running.compareAndSet(true, false)) {
+            if (log.isInfoEnabled()) {
+                log.info(String.format("Terminating NIO UDP Communications on %s",
+                                       channel.socket().getLocalSocketAddress()));
+            }
+            selector.wakeup();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                if (log.isTraceEnabled()) {
+                    log.trace("Error closing channel", e);
+                }
+            }
+            log.info(bufferPool.toString());
+        }
+    }
+
+    /**
+     * Requests to connect enter the connection set, so they are not processed
+     * on the selector thread.
+     */
+    @Override
+    protected void connectTo(final Identity peer) {
+        dispatcher.execute(new Runnable() {
+            @Override
+            public void run() {
+                NioUdpCommunications.super.connectTo(peer);
+            }
+        });
+    }
+
+    /**
+     * Send the datagram across the net. The channel is non blocking, so if the
+     * socket's send buffer is full the datagram is dropped, as it would be by
+     * the network.
+     * 
+     * @param buffer
+     * @param target
+     */
+    @Override
+    protected void send(ByteBuffer buffer, SocketAddress target) {
+        buffer.flip();
+        try {
+            if (log.isTraceEnabled()) {
+                log.trace(String.format("sending packet %s",
+                                        prettyPrint(getLocalAddress(), target,
+                                                    buffer)));
+            }
+            int length = channel.send(buffer, target);
+            if (length == 0) {
+                if (log.isTraceEnabled()) {
+                    log.trace(format("Send buffer full, dropped datagram to %s",
+                                     target));
+                }
+            } else {
+                sent(length);
+            }
+        } catch (ClosedChannelException e) {
+            if (log.isTraceEnabled()) {
+                log.trace("Channel closed, dropped datagram", e);
+            }
+        } catch (IOException e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Error sending packet", e);
+            }
+        }
+    }
+
+    /**
+     * Drain the datagrams currently available on the channel
+     * 
+     * @throws IOException
+     */
+    private void receive() throws IOException {
+        while (true) {
+            readBuffer.clear();
+            SocketAddress sender = channel.receive(readBuffer);
+            if (sender == null) {
+                return;
+            }
+            readBuffer.flip();
+            if (log.isTraceEnabled()) {
+                log.trace(String.format("Received packet %s",
+                                        prettyPrint(sender, getLocalAddress(),
+                                                    readBuffer)));
+            }
+            deliver((InetSocketAddress) sender, readBuffer);
+        }
+    }
+
+    /**
+     * The selector loop.
+     * 
+     * @return the Runnable action implementing the selector loop.
+     */
+    private Runnable serviceTask() {
+        return new Runnable() {
+            @Override
+            public void run() {
+                if (log.isInfoEnabled()) {
+                    log.info(String.format("NIO UDP Gossip communications started on %s",
+                                           channel.socket().getLocalSocketAddress()));
+                }
+                try {
+                    while (running.get()) {
+                        try {
+                            selector.select();
+                            Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                            while (selected.hasNext()) {
+                                SelectionKey key = selected.next();
+                                selected.remove();
+                                if (key.isValid() && key.isReadable()) {
+                                    receive();
+                                }
+                            }
+                        } catch (ClosedChannelException e) {
+                            if (log.isTraceEnabled()) {
+                                log.trace("Channel closed, shutting down");
+                            }
+                            terminate();
+                            return;
+                        } catch (ClosedSelectorException e) {
+                            return;
+                        } catch (Throwable e) {
+                            if (log.isWarnEnabled()) {
+                                log.warn("Exception processing inbound message",
+                                         e);
+                            }
+                        }
+                    }
+                } finally {
+                    try {
+                        selector.close();
+                    } catch (IOException e) {
+                        if (log.isTraceEnabled()) {
+                            log.trace("Error closing selector", e);
+                        }
+                    }
+                }
+            }
+        };
+    }
+}
@@ -27,17 +27,26 @@ import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.NotYetConnectedException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
+import org.smartfrog.services.anubis.partition.comms.OverflowPolicy;
+import org.smartfrog.services.anubis.partition.comms.SendCompletion;
+import org.smartfrog.services.anubis.partition.wire.WireFormException;
+import org.smartfrog.services.anubis.partition.wire.security.SharedWireForm;
 import org.smartfrog.services.anubis.partition.wire.security.WireSecurity;
 
-import com.hellblazer.jackal.util.ByteBufferPool;
+import com.hellblazer.jackal.util.BufferPool;
 import com.hellblazer.jackal.util.HexDump;
+import com.hellblazer.jackal.util.StripedByteBufferPool;
 import com.hellblazer.pinkie.CommunicationsHandler;
 import com.hellblazer.pinkie.SocketChannelHandler;
 
@@ -52,35 +61,91 @@ public abstract class AbstractMessageHandler implements CommunicationsHandler {
         BODY, CLOSED, ERROR, HEADER, INITIAL;
     }
 
-    protected static final int READ_BUFFER_SIZE = 64 * 1024;
-    protected static final int HEADER_BYTE_SIZE = 16;
+    public static final long   DEFAULT_MAX_QUEUED_BYTES = 16 * 1024 * 1024;
+    protected static final int READ_BUFFER_SIZE         = 64 * 1024;
+    protected static final int HEADER_BYTE_SIZE         = 16;
 
-    protected static String toHex(byte[] data, int length) {
+    /**
+     * The read buffers, shared by the handlers. A handler only holds a read
+     * buffer while it has a partial frame to read.
+     */
+    private static final BufferPool READ_BUFFERS = new StripedByteBufferPool(
+                                                                             "Message handler read buffers",
+                                                                             256);
+
+    /**
+     * Answer the hex dump of the remaining bytes of the buffer, which may be a
+     * slice of a larger buffer
+     * 
+     * @param buffer
+     * @return the hex dump
+     */
+    protected static String toHex(ByteBuffer buffer) {
+        int length = buffer.remaining();
+        byte[] data;
+        int offset;
+        if (buffer.hasArray()) {
+            data = buffer.array();
+            offset = buffer.arrayOffset() + buffer.position();
+        } else {
+            data = new byte[length];
+            buffer.duplicate().get(data);
+            offset = 0;
+        }
         ByteArrayOutputStream baos = new ByteArrayOutputStream(length * 4);
         PrintStream stream = new PrintStream(baos);
-        HexDump.hexdump(stream, data, 0, length);
+        HexDump.hexdump(stream, data, offset, length);
         stream.close();
         return baos.toString();
     }
 
-    private final AtomicBoolean               closed     = new AtomicBoolean();
-    private volatile ByteBuffer[]             currentWrite;
-    private final List<ByteBuffer>            drain      = new ArrayList<ByteBuffer>();
-    private volatile ByteBuffer               readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
-    private final ReentrantLock               writeLock  = new ReentrantLock();
-    protected final ByteBufferPool            bufferPool = new ByteBufferPool(
-                                                                              "Abstract Message Handler",
-                                                                              100);
-    protected volatile SocketChannelHandler   handler;
-    protected volatile State                  readState  = State.INITIAL;
-    protected final WireSecurity              wireSecurity;
-    protected final BlockingDeque<ByteBuffer> writes     = new LinkedBlockingDeque<ByteBuffer>();
-    protected volatile State                  writeState = State.INITIAL;
+    private final AtomicBoolean                   closed         = new AtomicBoolean();
+    private final Map<ByteBuffer, SendCompletion> completions    = new IdentityHashMap<ByteBuffer, SendCompletion>();
+    private final List<ByteBuffer>                drain          = new ArrayList<ByteBuffer>();
+    private final Object                          drained        = new Object();
+    private ByteBuffer[]                          gather         = new ByteBuffer[0];
+    private int                                   gathered;
+    private ByteBuffer[]                          headers        = new ByteBuffer[0];
+    private final AtomicLong                      highWaterMark  = new AtomicLong();
+    private volatile long                         maxQueuedBytes = DEFAULT_MAX_QUEUED_BYTES;
+    private volatile OverflowPolicy               overflowPolicy = OverflowPolicy.FAIL;
+    private final AtomicLong                      queuedBytes    = new AtomicLong();
+    private volatile ByteBuffer                   readBuffer;
+    private final ReentrantLock                   writeLock      = new ReentrantLock();
+    protected final BufferPool                    bufferPool     = new StripedByteBufferPool(
+                                                                                             "Abstract Message Handler",
+                                                                                             100);
+    protected volatile SocketChannelHandler       handler;
+    protected volatile State                      readState      = State.INITIAL;
+    protected final WireSecurity                  wireSecurity;
+    protected final BlockingDeque<ByteBuffer>     writes         = new LinkedBlockingDeque<ByteBuffer>();
+    protected volatile State                      writeState     = State.INITIAL;
 
     public AbstractMessageHandler(WireSecurity wireSecurity) {
         this.wireSecurity = wireSecurity;
     }
 
+    /**
+     * @return the largest number of bytes queued for writing
+     */
+    public long getHighWaterMark() {
+        return highWaterMark.get();
+    }
+
+    /**
+     * @return the number of messages queued for writing
+     */
+    public int getQueueDepth() {
+        return writes.size();
+    }
+
+    /**
+     * @return the number of bytes queued for writing
+     */
+    public long getQueuedBytes() {
+        return queuedBytes.get();
+    }
+
     @Override
     public void readReady() {
         if (getLog().isTraceEnabled()) {
@@ -90,9 +155,14 @@ public abstract class AbstractMessageHandler implements CommunicationsHandler {
             switch (readState) {
                 case ERROR:
                 case CLOSED:
+                    releaseReadBuffer();
                     return;
                 case INITIAL: {
+                    if (readBuffer == null) {
+                        readBuffer = READ_BUFFERS.allocate(READ_BUFFER_SIZE);
+                    }
                     if (!read(readBuffer)) {
+                        releaseReadBuffer();
                         return;
                     }
                     if (readBuffer.position() < HEADER_BYTE_SIZE) {
@@ -105,65 +175,19 @@ public abstract class AbstractMessageHandler implements CommunicationsHandler {
                     if (getLog().isTraceEnabled()) {
                         getLog().trace(format("enough bytes for a header"));
                     }
-                    readBuffer.flip();
                     readState = State.HEADER;
                     // Fall through to HEADER state intended.
                 }
                 case HEADER: {
-                    int magic = readBuffer.getInt(0);
-                    if (magic == MAGIC_NUMBER) {
-                        int objectSize = readBuffer.getInt(4);
-                        if (readBuffer.remaining() >= objectSize
-                                                      + HEADER_BYTE_SIZE) {
-                            if (getLog().isTraceEnabled()) {
-                                getLog().trace(format("enough bytes for the object"));
-                            }
-                            long order = readBuffer.getLong(8);
-                            readBuffer.position(HEADER_BYTE_SIZE);
-                            ByteBuffer msgBuffer = readBuffer.slice();
-                            msgBuffer.limit(objectSize);
-                            readBuffer.position(objectSize + HEADER_BYTE_SIZE);
-                            deliverObject(order, msgBuffer);
-                            readBuffer.compact();
-                            readBuffer.flip();
-                            if (readBuffer.remaining() >= HEADER_BYTE_SIZE) {
-                                if (getLog().isTraceEnabled()) {
-                                    getLog().trace(format("enough bytes for another header"));
-                                }
-                                break;
-                            }
-                            readBuffer.compact();
-                        } else {
-                            if (objectSize > readBuffer.capacity()) {
-                                if (getLog().isTraceEnabled()) {
-                                    getLog().trace(format("Growing read buffer to %s",
-                                                          objectSize
-                                                                  + HEADER_BYTE_SIZE));
-                                }
-                                ByteBuffer grow = ByteBuffer.allocate(objectSize
-                                                                      + HEADER_BYTE_SIZE);
-                                grow.put(readBuffer);
-                                readBuffer = grow;
-                            } else {
-                                readBuffer.compact();
-                            }
-                            if (getLog().isTraceEnabled()) {
-                                getLog().trace(format("not enough bytes for the object"));
-                            }
-                        }
-                        readState = State.BODY;
-                        handler.selectForRead();
-                        return;
-                    } else {
-                        getLog().error(String.format("invalid magic number %s, required %s",
-                                                     magic, MAGIC_NUMBER));
-                        readState = State.ERROR;
-                        shutdown();
+                    if (!deliverFrames()) {
                         return;
                     }
+                    handler.selectForRead();
+                    return;
                 }
                 case BODY: {
                     if (!read(readBuffer)) {
+                        releaseReadBuffer();
                         return;
                     }
                     if (readBuffer.position() >= readBuffer.getInt(4)
@@ -172,7 +196,6 @@ public abstract class AbstractMessageHandler implements CommunicationsHandler {
                             getLog().trace(format("now enough bytes for the object"));
                         }
                         readState = State.HEADER;
-                        readBuffer.flip();
                         break;
                     }
                     handler.selectForRead();
@@ -186,9 +209,39 @@ public abstract class AbstractMessageHandler implements CommunicationsHandler {
         }
     }
 
+    /**
+     * Set the bound on the bytes of the messages queued for writing. A message
+     * which would exceed the bound is handled according to the overflow policy,
+     * unless the queue is empty.
+     * 
+     * @param maxQueuedBytes
+     */
+    public void setMaxQueuedBytes(long maxQueuedBytes) {
+        if (maxQueuedBytes <= 0) {
+            throw new IllegalArgumentException(
+                                               "The maximum queued bytes must be positive");
+        }
+        this.maxQueuedBytes = maxQueuedBytes;
+    }
+
+    /**
+     * Set the handling of the messages which overflow the write queue
+     * 
+     * @param overflowPolicy
+     */
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        if (overflowPolicy == null) {
+            throw new IllegalArgumentException("Overflow policy is required");
+        }
+        this.overflowPolicy = overflowPolicy;
+        synchronized (drained) {
+            drained.notifyAll();
+        }
+    }
+
     public void shutdown() {
         closed.set(true);
-        writes.clear();
+        clearWrites();
         writeState = readState = State.CLOSED;
         handler.close();
         getLog().info(bufferPool.toString());
@@ -217,39 +270,50 @@ public abstract class AbstractMessageHandler implements CommunicationsHandler {
                     if (drain.isEmpty()) {
                         return;
                     }
-                    ArrayList<ByteBuffer> buffers = new ArrayList<ByteBuffer>(
-                                                                              drain.size() * 2);
-                    int totalBytes = 0;
-                    for (ByteBuffer msg : drain) {
-                        ByteBuffer header = bufferPool.allocate(HEADER_BYTE_SIZE);
+                    int count = drain.size();
+                    ensureGatherCapacity(count);
+                    long bodyBytes = 0;
+                    for (int i = 0; i < count; i++) {
+                        ByteBuffer msg = drain.get(i);
+                        ByteBuffer header = headers[i];
+                        header.clear();
                         header.putInt(MAGIC_NUMBER);
                         header.putInt(msg.remaining());
                         header.putLong(nextSequence());
                         header.flip();
-                        buffers.add(header);
-                        buffers.add(msg);
-                        totalBytes += header.remaining() + msg.remaining();
+                        gather[2 * i] = header;
+                        gather[2 * i + 1] = msg;
+                        bodyBytes += msg.remaining();
+                    }
+                    queuedBytes.addAndGet(-bodyBytes);
+                    synchronized (drained) {
+                        drained.notifyAll();
                     }
                     if (getLog().isTraceEnabled()) {
                         getLog().trace(format("Writing %s objects, total bytes: %s",
-                                              drain.size(), totalBytes));
+                                              count, bodyBytes + count
+                                                     * HEADER_BYTE_SIZE));
                     }
                     drain.clear();
-                    currentWrite = buffers.toArray(new ByteBuffer[buffers.size()]);
+                    gathered = 2 * count;
                     writeState = State.BODY;
                     // fallthrough to body intentional
                 }
                 case BODY: {
-                    if (!write(currentWrite)) {
+                    if (!write(gather, gathered)) {
                         return;
                     }
-                    if (!currentWrite[currentWrite.length - 1].hasRemaining()) {
+                    if (!gather[gathered - 1].hasRemaining()) {
                         if (getLog().isTraceEnabled()) {
                             getLog().trace(format("All objects written"));
                         }
                         writeState = State.INITIAL;
-                        for (ByteBuffer b : currentWrite) {
+                        // the headers are reused, only the messages are freed
+                        for (int i = 1; i < gathered; i += 2) {
+                            ByteBuffer b = gather[i];
+                            complete(b, true);
                             bufferPool.free(b);
+                            gather[i] = null;
                         }
                     } else {
                         if (getLog().isTraceEnabled()) {
@@ -269,11 +333,208 @@ public abstract class AbstractMessageHandler implements CommunicationsHandler {
         }
     }
 
+    private void complete(ByteBuffer buffer, boolean written) {
+        SendCompletion completion;
+        synchronized (completions) {
+            if (completions.isEmpty()) {
+                return;
+            }
+            completion = completions.remove(buffer);
+        }
+        if (completion != null) {
+            completion.complete(written);
+        }
+    }
+
+    /**
+     * Deliver the complete frames in the read buffer, each as a slice of the
+     * buffer, so the buffer is compacted at most once for the frame left
+     * incomplete. The read buffer is returned to the pool once it is empty. A
+     * buffer grown for a frame larger than the default is limited to the
+     * frame, so it is always empty, and returned, once the frame is delivered.
+     * 
+     * @return false if the connection has been closed
+     */
+    private boolean deliverFrames() {
+        ByteBuffer buffer = readBuffer;
+        int end = buffer.position();
+        int limit = buffer.limit();
+        int start = 0;
+        int frameSize = HEADER_BYTE_SIZE;
+        while (end - start >= HEADER_BYTE_SIZE) {
+            int magic = buffer.getInt(start);
+            int objectSize = buffer.getInt(start + 4);
+            if (magic != MAGIC_NUMBER || objectSize < 0) {
+                if (magic != MAGIC_NUMBER) {
+                    getLog().error(String.format("invalid magic number %s, required %s",
+                                                 magic, MAGIC_NUMBER));
+                } else {
+                    getLog().error(String.format("invalid object size %s",
+                                                 objectSize));
+                }
+                readState = State.ERROR;
+                shutdown();
+                releaseReadBuffer();
+                return false;
+            }
+            frameSize = HEADER_BYTE_SIZE + objectSize;
+            if (end - start < frameSize) {
+                break;
+            }
+            if (getLog().isTraceEnabled()) {
+                getLog().trace(format("enough bytes for the object"));
+            }
+            long order = buffer.getLong(start + 8);
+            buffer.limit(start + frameSize);
+            buffer.position(start + HEADER_BYTE_SIZE);
+            ByteBuffer msgBuffer = buffer.slice();
+            buffer.limit(limit);
+            start += frameSize;
+            frameSize = HEADER_BYTE_SIZE;
+            deliverObject(order, msgBuffer);
+            if (readState != State.HEADER) {
+                releaseReadBuffer();
+                return false;
+            }
+        }
+        int remaining = end - start;
+        if (remaining == 0) {
+            releaseReadBuffer();
+            readState = State.INITIAL;
+            return true;
+        }
+        if (frameSize > buffer.capacity()) {
+            if (getLog().isTraceEnabled()) {
+                getLog().trace(format("Growing read buffer to %s", frameSize));
+            }
+            resizeReadBuffer(frameSize, start, end);
+        } else {
+            buffer.position(start);
+            buffer.limit(end);
+            buffer.compact();
+        }
+        readState = remaining < HEADER_BYTE_SIZE ? State.INITIAL : State.BODY;
+        if (getLog().isTraceEnabled()) {
+            getLog().trace(format("not enough bytes for the object"));
+        }
+        return true;
+    }
+
+    /**
+     * Ensure the scatter/gather array and the frame headers can hold the
+     * messages
+     * 
+     * @param count
+     *            - the number of messages
+     */
+    private void ensureGatherCapacity(int count) {
+        if (gather.length < 2 * count) {
+            gather = new ByteBuffer[Math.max(2 * count, 2 * gather.length)];
+        }
+        if (headers.length < count) {
+            int existing = headers.length;
+            headers = Arrays.copyOf(headers, gather.length / 2);
+            for (int i = existing; i < headers.length; i++) {
+                headers[i] = ByteBuffer.allocate(HEADER_BYTE_SIZE);
+            }
+        }
+    }
+
     private boolean isClose(IOException ioe) {
         return "Broken pipe".equals(ioe.getMessage())
                || "Connection reset by peer".equals(ioe.getMessage());
     }
 
+    private boolean isFull(int size) {
+        long queued = queuedBytes.get();
+        return queued > 0 && queued + size > maxQueuedBytes;
+    }
+
+    /**
+     * Make room in the write queue for the message, according to the overflow
+     * policy. Under the BLOCK policy, a sender which may block waits until it
+     * has reserved the bytes of its message in the queue, so that no other
+     * sender may take the room it waited for.
+     * 
+     * @param size
+     *            - the bytes of the message
+     * @param mayBlock
+     *            - true if the sender may wait for the queue to drain
+     * @return true if the bytes of the message have been reserved
+     */
+    private boolean makeRoom(int size, boolean mayBlock) {
+        switch (overflowPolicy) {
+            case BLOCK: {
+                if (!mayBlock) {
+                    return false;
+                }
+                boolean interrupted = false;
+                try {
+                    synchronized (drained) {
+                        while (overflowPolicy == OverflowPolicy.BLOCK
+                               && !closed.get()) {
+                            if (reserve(size)) {
+                                return true;
+                            }
+                            try {
+                                drained.wait();
+                            } catch (InterruptedException e) {
+                                interrupted = true;
+                            }
+                        }
+                    }
+                } finally {
+                    if (interrupted) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return false;
+            }
+            case DROP_OLDEST: {
+                while (isFull(size)) {
+                    ByteBuffer oldest = writes.pollFirst();
+                    if (oldest == null) {
+                        return false;
+                    }
+                    queuedBytes.addAndGet(-oldest.remaining());
+                    if (getLog().isInfoEnabled()) {
+                        getLog().info(format("Dropping %s bytes queued for writing [%s]",
+                                             oldest.remaining(), this));
+                    }
+                    complete(oldest, false);
+                    bufferPool.free(oldest);
+                }
+                return false;
+            }
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Reserve the bytes of the message in the write queue, if they fit
+     * 
+     * @param size
+     *            - the bytes of the message
+     * @return true if the bytes were reserved
+     */
+    private boolean reserve(int size) {
+        while (true) {
+            long queued = queuedBytes.get();
+            if (queued > 0 && queued + size > maxQueuedBytes) {
+                return false;
+            }
+            if (queuedBytes.compareAndSet(queued, queued + size)) {
+                long mark = highWaterMark.get();
+                while (queued + size > mark
+                       && !highWaterMark.compareAndSet(mark, queued + size)) {
+                    mark = highWaterMark.get();
+                }
+                return true;
+            }
+        }
+    }
+
     private boolean read(ByteBuffer buffer) {
         try {
             int read = handler.getChannel().read(buffer);
@@ -316,17 +577,40 @@ public abstract class AbstractMessageHandler implements CommunicationsHandler {
         return true;
     }
 
-    private boolean write(ByteBuffer[] buffers) {
+    private void releaseReadBuffer() {
+        ByteBuffer buffer = readBuffer;
+        if (buffer != null) {
+            readBuffer = null;
+            READ_BUFFERS.free(buffer);
+        }
+    }
+
+    /**
+     * Replace the read buffer with a buffer of the capacity, holding the bytes
+     * of the frame being read
+     */
+    private void resizeReadBuffer(int capacity, int start, int end) {
+        ByteBuffer buffer = readBuffer;
+        ByteBuffer resized = READ_BUFFERS.allocate(capacity);
+        buffer.position(start);
+        buffer.limit(end);
+        resized.put(buffer);
+        readBuffer = resized;
+        READ_BUFFERS.free(buffer);
+    }
+
+    private boolean write(ByteBuffer[] buffers, int length) {
         try {
-            long written = handler.getChannel().write(buffers);
+            long written = handler.getChannel().write(buffers, 0, length);
             if (getLog().isTraceEnabled()) {
                 getLog().trace(format("%s bytes written", written));
             }
             if (written < 0) {
                 close();
                 return false;
-            } else if (buffers[buffers.length - 1].hasRemaining()) {
-                long plusWritten = handler.getChannel().write(buffers);
+            } else if (buffers[length - 1].hasRemaining()) {
+                long plusWritten = handler.getChannel().write(buffers, 0,
+                                                              length);
                 if (plusWritten < 0) {
                     close();
                     return false;
@@ -352,13 +636,41 @@ public abstract class AbstractMessageHandler implements CommunicationsHandler {
         return true;
     }
 
+    /**
+     * Discard the queued writes, completing their sends as not written
+     */
+    protected void clearWrites() {
+        writes.clear();
+        queuedBytes.set(0);
+        SendCompletion[] abandoned;
+        synchronized (completions) {
+            abandoned = completions.values().toArray(new SendCompletion[completions.size()]);
+            completions.clear();
+        }
+        for (SendCompletion completion : abandoned) {
+            completion.complete(false);
+        }
+        synchronized (drained) {
+            drained.notifyAll();
+        }
+    }
+
     protected void close() {
         closed.set(true);
-        writes.clear();
+        clearWrites();
         writeState = readState = State.CLOSED;
         handler.close();
     }
 
+    /**
+     * Deliver the wire form of a message. The buffer is a slice of the read
+     * buffer, and is only valid for the duration of the call.
+     * 
+     * @param order
+     *            - the sequence number of the message
+     * @param readBuffer
+     *            - the wire form of the message
+     */
     abstract protected void deliverObject(long order, ByteBuffer readBuffer);
 
     protected void error() {
@@ -375,7 +687,51 @@ public abstract class AbstractMessageHandler implements CommunicationsHandler {
         return 0L; // default
     }
 
+    /**
+     * The write queue has overflowed under the FAIL policy, and the message has
+     * been rejected. By default the connection, which is not keeping up with
+     * its peer, is shut down.
+     * 
+     * @param queued
+     *            - the bytes queued, including the rejected message
+     */
+    protected void overflow(long queued) {
+        getLog().warn(format("%s bytes queued for writing exceeds the maximum of %s bytes, shutting down [%s]",
+                             queued, maxQueuedBytes, this));
+        error();
+    }
+
     protected void sendObject(ByteBuffer buffer) {
+        sendObject(buffer, null);
+    }
+
+    /**
+     * Queue the buffer for writing, without waiting for the queue to drain
+     * 
+     * @param buffer
+     * @param completion
+     *            - completed when the buffer has been written or discarded,
+     *            may be null
+     */
+    protected void sendObject(ByteBuffer buffer, SendCompletion completion) {
+        sendObject(buffer, completion, false);
+    }
+
+    /**
+     * Queue the buffer for writing. Under the BLOCK policy, a sender which may
+     * block waits until its message fits in the queue, while a sender which may
+     * not block has its message dropped when the queue is full.
+     * 
+     * @param buffer
+     * @param completion
+     *            - completed when the buffer has been written or discarded,
+     *            may be null
+     * @param mayBlock
+     *            - true if the sender may wait for the queue to drain under
+     *            the BLOCK policy
+     */
+    protected void sendObject(ByteBuffer buffer, SendCompletion completion,
+                              boolean mayBlock) {
         if (getLog().isTraceEnabled()) {
             getLog().trace(format("sending buffer"));
         }
@@ -384,17 +740,70 @@ public abstract class AbstractMessageHandler implements CommunicationsHandler {
                 getLog().trace(format("handler is closed, ignoring send on [%s]",
                                       this));
             }
+            if (completion != null) {
+                completion.complete(false);
+            }
             return;
         }
         if (getLog().isTraceEnabled()) {
             getLog().trace(format("sendObject being called [%s]", this));
         }
+        int size = buffer.remaining();
+        boolean reserved = makeRoom(size, mayBlock);
+        if (closed.get()) {
+            // closed while waiting for the queue to drain, which discarded
+            // the queued bytes
+            if (completion != null) {
+                completion.complete(false);
+            }
+            return;
+        }
+        if (!reserved && !reserve(size)) {
+            long queued = queuedBytes.get() + size;
+            if (completion != null) {
+                completion.complete(false);
+            }
+            if (overflowPolicy == OverflowPolicy.FAIL) {
+                overflow(queued);
+            } else if (getLog().isInfoEnabled()) {
+                getLog().info(format("Write queue is full, dropping %s bytes [%s]",
+                                     size, this));
+            }
+            return;
+        }
+        if (completion != null) {
+            synchronized (completions) {
+                completions.put(buffer, completion);
+            }
+        }
         try {
             writes.put(buffer);
         } catch (InterruptedException e) {
+            queuedBytes.addAndGet(-size);
+            complete(buffer, false);
             return;
         }
         handler.selectForWrite();
     }
 
-}
\ No newline at end of file
+    /**
+     * Send the shared wire form, releasing this handler's reference once it
+     * has been written or discarded
+     * 
+     * @param wireForm
+     * @throws WireFormException
+     * @throws IOException
+     */
+    protected void sendShared(final SharedWireForm wireForm)
+                                                            throws WireFormException,
+                                                            IOException {
+        sendObject(wireForm.retain(wireSecurity, bufferPool),
+                   new SendCompletion() {
+                       @Override
+                       protected void completed(boolean written) {
+                           wireForm.release();
+                       }
+                   });
+    }
+
+}
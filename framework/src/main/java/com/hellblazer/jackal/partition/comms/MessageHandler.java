@@ -29,6 +29,8 @@ import org.slf4j.LoggerFactory;
 import org.smartfrog.services.anubis.partition.comms.Connection;
 import org.smartfrog.services.anubis.partition.comms.IOConnection;
 import org.smartfrog.services.anubis.partition.comms.MessageConnection;
+import org.smartfrog.services.anubis.partition.comms.OverflowPolicy;
+import org.smartfrog.services.anubis.partition.comms.SendCompletion;
 import org.smartfrog.services.anubis.partition.comms.multicast.HeartbeatConnection;
 import org.smartfrog.services.anubis.partition.protocols.partitionmanager.ConnectionSet;
 import org.smartfrog.services.anubis.partition.util.Identity;
@@ -36,6 +38,7 @@ import org.smartfrog.services.anubis.partition.wire.WireMsg;
 import org.smartfrog.services.anubis.partition.wire.msg.Heartbeat;
 import org.smartfrog.services.anubis.partition.wire.msg.HeartbeatMsg;
 import org.smartfrog.services.anubis.partition.wire.msg.TimedMsg;
+import org.smartfrog.services.anubis.partition.wire.security.SharedWireForm;
 import org.smartfrog.services.anubis.partition.wire.security.WireSecurity;
 import org.smartfrog.services.anubis.partition.wire.security.WireSecurityException;
 
@@ -91,7 +94,7 @@ public class MessageHandler extends AbstractMessageHandler implements
 
     @Override
     public void closing() {
-        writes.clear();
+        clearWrites();
         writeState = readState = State.CLOSED;
         if (log.isTraceEnabled()) {
             log.trace(String.format("closing is being called [%s]",
@@ -123,9 +126,44 @@ public class MessageHandler extends AbstractMessageHandler implements
     }
 
     @Override
-    public synchronized void sendTimed(TimedMsg tm) {
+    public void send(SharedWireForm wireForm) {
         try {
-            sendObject(wireSecurity.toWireForm(tm, bufferPool));
+            sendShared(wireForm);
+        } catch (Exception e) {
+            throw new IllegalStateException(
+                                            String.format("Unable to serialize shared message %s",
+                                                          wireForm.getMsg()),
+                                            e);
+        }
+    }
+
+    /**
+     * Send the message, waiting for the write queue to drain under the BLOCK
+     * overflow policy. The monitor of the handler is not held while waiting,
+     * so the heartbeats are not held up behind the blocked sender.
+     */
+    @Override
+    public void sendBlocking(TimedMsg tm, SendCompletion completion) {
+        ByteBuffer buffer;
+        try {
+            buffer = wireSecurity.toWireForm(tm, bufferPool);
+        } catch (Exception e) {
+            throw new IllegalStateException(
+                                            String.format("Unable to serialize timed message %s",
+                                                          tm), e);
+        }
+        sendObject(buffer, completion, true);
+    }
+
+    @Override
+    public void sendTimed(TimedMsg tm) {
+        sendTimed(tm, null);
+    }
+
+    @Override
+    public synchronized void sendTimed(TimedMsg tm, SendCompletion completion) {
+        try {
+            sendObject(wireSecurity.toWireForm(tm, bufferPool), completion);
         } catch (Exception e) {
             throw new IllegalStateException(
                                             String.format("Unable to serialize timed message %s",
@@ -142,6 +180,12 @@ public class MessageHandler extends AbstractMessageHandler implements
         this.ignoring = ignoring;
     }
 
+    @Override
+    public void setOverflowPolicy(OverflowPolicy policy, long maxQueuedBytes) {
+        setMaxQueuedBytes(maxQueuedBytes);
+        setOverflowPolicy(policy);
+    }
+
     @Override
     public void silent() {
         if (log.isTraceEnabled()) {
@@ -312,8 +356,7 @@ public class MessageHandler extends AbstractMessageHandler implements
             if (log.isTraceEnabled()) {
                 log.trace(format("Delivering bytes [%s]: \n%s",
                                  messageConnection,
-                                 toHex(fullRxBuffer.array(),
-                                       fullRxBuffer.limit())));
+                                 toHex(fullRxBuffer)));
             }
             msg = wireSecurity.fromWireForm(fullRxBuffer);
 
@@ -0,0 +1,48 @@
+/** 
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A thread safe pool of byte buffers. The buffers allocated by a pool may have
+ * a larger capacity than requested; the buffer's limit is set to the requested
+ * capacity.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public interface BufferPool {
+
+    /**
+     * Allocate a buffer
+     * 
+     * @param capacity
+     *            - the number of bytes required
+     * @return a cleared buffer, limited to the requested capacity
+     */
+    ByteBuffer allocate(int capacity);
+
+    /**
+     * Return the buffer to the pool. The buffer must not be used by the caller
+     * after it is freed.
+     * 
+     * @param free
+     */
+    void free(ByteBuffer free);
+}
@@ -27,20 +27,20 @@ import java.nio.ByteBuffer;
  */
 public class ByteBufferOutputStream extends OutputStream {
 
-    private final ByteBufferPool bufferPool;
+    private final BufferPool bufferPool;
     private ByteBuffer           buffer;
 
     /**
      * @param bp
      */
-    public ByteBufferOutputStream(ByteBufferPool bp) {
+    public ByteBufferOutputStream(BufferPool bp) {
         this(bp, 32);
     }
 
     /**
      * @param bp
      */
-    public ByteBufferOutputStream(ByteBufferPool bp, int initialSize) {
+    public ByteBufferOutputStream(BufferPool bp, int initialSize) {
         bufferPool = bp;
         buffer = bufferPool.allocate(initialSize);
     }
@@ -26,7 +26,7 @@ import java.util.concurrent.locks.ReentrantLock;
  * @author hhildebrand
  * 
  */
-public class ByteBufferPool {
+public class ByteBufferPool implements BufferPool {
 
     private int                          bytesAllocated = 0;
     private int                          created        = 0;
@@ -42,6 +42,7 @@ public class ByteBufferPool {
         pool = new RingBuffer<ByteBuffer>(limit);
     }
 
+    @Override
     public ByteBuffer allocate(int capacity) {
         final ReentrantLock myLock = lock;
         myLock.lock();
@@ -71,6 +72,7 @@ public class ByteBufferPool {
         }
     }
 
+    @Override
     public void free(ByteBuffer free) {
         final ReentrantLock myLock = lock;
         myLock.lock();
@@ -45,6 +45,6 @@ public class RunningMedian extends Window implements SampledWindow {
             throw new IllegalStateException(
                                             "Must have at least one sample to calculate the median");
         }
-        return sorted.get(sorted.size() / 2);
+        return sorted.quantile(0.5);
     }
 }
@@ -39,17 +39,17 @@ public final class SkipList {
 
     private static final int MAX_LEVEL = 32;
     private Node             head;
+    private final int[]      index     = new int[MAX_LEVEL];
     private int              level;
     private Random           random    = new Random();
     private int              size;
+    private final Node[]     update    = new Node[MAX_LEVEL];
 
     public SkipList() {
         reset();
     }
 
     public boolean add(double e) {
-        Node[] update = new Node[MAX_LEVEL];
-        int[] index = new int[MAX_LEVEL];
         final int newLevel = randomLevel();
         Node x = head;
         Node y = head;
@@ -68,6 +68,7 @@ public final class SkipList {
             for (i = level; i < newLevel; i++) {
                 head.dist[i] = size + 1;
                 update[i] = head;
+                index[i] = 0;
             }
             level = newLevel;
         }
@@ -100,23 +101,7 @@ public final class SkipList {
      * @return
      */
     public int countLessThanEqualTo(double value) {
-        Node node = head.next();
-        Node last = null;
-        int offset = 0;
-        int index = 0;
-        int count = 0;
-
-        while (index + offset < size()) {
-            index++;
-            last = node;
-            node = node.next();
-            if (last.element <= value) {
-                count++;
-            } else {
-                return count;
-            }
-        }
-        return count;
+        return rank(value);
     }
 
     public double get(int index) {
@@ -124,8 +109,45 @@ public final class SkipList {
         return search(index).element;
     }
 
+    /**
+     * Answer the element at the quantile, the element at the index q * size of
+     * the sorted elements
+     * 
+     * @param q
+     *            - the quantile, in [0, 1]
+     * @return the element at the quantile
+     */
+    public double quantile(double q) {
+        if (size == 0) {
+            throw new IllegalStateException("No elements");
+        }
+        if (q < 0.0 || q > 1.0) {
+            throw new IllegalArgumentException("Invalid quantile: " + q);
+        }
+        return search(Math.min(size - 1, (int) (q * size))).element;
+    }
+
+    /**
+     * Answer the rank of the value: the number of elements that are <= the
+     * value. The spans of the links are summed on the way down the levels, so
+     * the rank is found in the expected O(log n) steps of a search.
+     * 
+     * @param value
+     * @return the number of elements <= value
+     */
+    public int rank(double value) {
+        Node curr = head;
+        int rank = 0;
+        for (int i = level - 1; i >= 0; i--) {
+            while (curr.next[i] != head && curr.next[i].element <= value) {
+                rank += curr.dist[i];
+                curr = curr.next[i];
+            }
+        }
+        return rank;
+    }
+
     public boolean remove(double o) {
-        Node[] update = new Node[MAX_LEVEL];
         Node curr = head;
         for (int i = level - 1; i >= 0; i--) {
             while (curr.next[i] != head && curr.next[i].element < o) {
@@ -175,8 +197,13 @@ public final class SkipList {
         size--;
     }
 
+    /**
+     * Answer a level with the geometric distribution of p = 1/2, so that each
+     * level holds half the nodes of the level below
+     */
     private int randomLevel() {
-        return Math.max(1, (int) ((MAX_LEVEL - 1) * random.nextDouble()));
+        return Math.min(MAX_LEVEL,
+                        Integer.numberOfTrailingZeros(random.nextInt()) + 1);
     }
 
     private Node search(final double element) {
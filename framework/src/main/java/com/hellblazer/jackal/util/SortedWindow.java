@@ -0,0 +1,123 @@
+/** 
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.util;
+
+import java.util.Arrays;
+
+/**
+ * A ring buffer of samples which also keeps the samples of the window in a
+ * sorted primitive array, as well as their running sum. Sampling does not
+ * allocate: the sorted array is maintained by a binary search and an array
+ * copy. The value of the window is the average of the samples.
+ * <p>
+ * This class is not thread safe.
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public class SortedWindow extends Window implements SampledWindow {
+    private final double[] sorted;
+    private double         sum = 0.0D;
+
+    public SortedWindow(int windowSize) {
+        super(windowSize);
+        sorted = new double[windowSize];
+    }
+
+    /**
+     * Answer the sample of the given rank in the sorted order of the window
+     * 
+     * @param index
+     *            - the rank, in [0, size)
+     * @return the sample of the given rank
+     */
+    public double get(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Invalid index: " + index);
+        }
+        return sorted[index];
+    }
+
+    /**
+     * Answer the median of the samples, the sample at the rank size / 2
+     */
+    public double median() {
+        if (count == 0) {
+            throw new IllegalStateException(
+                                            "Must have at least one sample to calculate the median");
+        }
+        return sorted[count / 2];
+    }
+
+    /**
+     * Answer the number of samples that are <= the value
+     */
+    public int rank(double value) {
+        return rank(value, count);
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        Arrays.fill(sorted, 0.0D);
+        sum = 0.0D;
+    }
+
+    @Override
+    public void sample(double sample) {
+        if (count == samples.length) {
+            double first = removeFirst();
+            sum -= first;
+            // the last of the samples <= first is an occurrence of first
+            int index = rank(first, count + 1) - 1;
+            System.arraycopy(sorted, index + 1, sorted, index, count - index);
+        }
+        int index = rank(sample);
+        System.arraycopy(sorted, index, sorted, index + 1, count - index);
+        sorted[index] = sample;
+        sum += sample;
+        addLast(sample);
+    }
+
+    public double sum() {
+        return sum;
+    }
+
+    @Override
+    public double value() {
+        if (count == 0) {
+            throw new IllegalStateException(
+                                            "Must have at least one sample to calculate the average");
+        }
+        return sum / count;
+    }
+
+    private int rank(double value, int length) {
+        int low = 0;
+        int high = length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
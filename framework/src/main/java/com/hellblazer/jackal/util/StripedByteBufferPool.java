@@ -0,0 +1,303 @@
+/** 
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A lock free pool of byte buffers, organized by power of two size classes.
+ * Each size class is a fixed array of slots, divided into stripes of at most
+ * {@link #MAX_STRIPE_SLOTS} slots; a thread looks for a pooled buffer, or a
+ * free slot, in its own stripe and then in the first slot of at most
+ * {@link #MAX_PROBE} of the following stripes. The cost of an allocation or a
+ * free therefore does not grow with the limit of the pool, which is instead
+ * shared among the stripes of the threads using it. Buffers are handed off
+ * through the slots by compare and set, so neither allocation nor free ever
+ * blocks.
+ * <p>
+ * Allocations larger than the maximum size class are not pooled. Buffers freed
+ * into a full size class, of the wrong kind (heap or direct), smaller than the
+ * minimum size class, or which would exceed the bound on the bytes retained by
+ * the pool are discarded.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public class StripedByteBufferPool implements BufferPool {
+    public static final long DEFAULT_MAX_RETAINED_BYTES = 4 * 1024 * 1024;
+    public static final int  MAX_PROBE                  = 8;
+    public static final int  MAX_SIZE_CLASS             = 20; // 1 MB
+    public static final int  MAX_STRIPE_SLOTS           = 16;
+    public static final int  MIN_SIZE_CLASS             = 6; // 64 bytes
+
+    /**
+     * @param capacity
+     * @return the size class of the smallest buffer able to hold the capacity
+     */
+    public static int sizeClassOf(int capacity) {
+        if (capacity <= 1 << MIN_SIZE_CLASS) {
+            return MIN_SIZE_CLASS;
+        }
+        return 32 - Integer.numberOfLeadingZeros(capacity - 1);
+    }
+
+    private final AtomicLong                       bytesAllocated = new AtomicLong();
+    private final boolean                          direct;
+    private final AtomicLong                       discards       = new AtomicLong();
+    private final AtomicLong                       hits           = new AtomicLong();
+    private final long                             maxRetainedBytes;
+    private final AtomicLong                       misses         = new AtomicLong();
+    private final String                           name;
+    private final int                              probes;
+    private final AtomicLong                       retainedBytes  = new AtomicLong();
+    private final AtomicReferenceArray<ByteBuffer> slots;
+    private final int                              slotsPerClass;
+    private final int                              slotsPerStripe;
+    private final int                              stripeMask;
+
+    /**
+     * Construct a pool of heap buffers
+     * 
+     * @param name
+     *            - the name of the pool
+     * @param limit
+     *            - the maximum number of pooled buffers in each size class
+     */
+    public StripedByteBufferPool(String name, int limit) {
+        this(name, limit, false);
+    }
+
+    /**
+     * @param name
+     *            - the name of the pool
+     * @param limit
+     *            - the maximum number of pooled buffers in each size class
+     * @param direct
+     *            - true if the pool allocates direct buffers
+     */
+    public StripedByteBufferPool(String name, int limit, boolean direct) {
+        this(name, limit, direct, DEFAULT_MAX_RETAINED_BYTES);
+    }
+
+    /**
+     * @param name
+     *            - the name of the pool
+     * @param limit
+     *            - the maximum number of pooled buffers in each size class
+     * @param direct
+     *            - true if the pool allocates direct buffers
+     * @param maxRetainedBytes
+     *            - the maximum number of bytes of the pooled buffers
+     */
+    public StripedByteBufferPool(String name, int limit, boolean direct,
+                                 long maxRetainedBytes) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be positive: "
+                                               + limit);
+        }
+        if (maxRetainedBytes < 0) {
+            throw new IllegalArgumentException(
+                                               "Maximum retained bytes must not be negative: "
+                                                       + maxRetainedBytes);
+        }
+        this.name = name;
+        this.direct = direct;
+        this.maxRetainedBytes = maxRetainedBytes;
+        int stripes = nextPowerOfTwo(Math.max(Runtime.getRuntime().availableProcessors(),
+                                              (limit + MAX_STRIPE_SLOTS - 1)
+                                                      / MAX_STRIPE_SLOTS));
+        stripes = Math.min(stripes, Integer.highestOneBit(limit));
+        stripeMask = stripes - 1;
+        slotsPerStripe = (limit + stripes - 1) / stripes;
+        slotsPerClass = slotsPerStripe * stripes;
+        probes = Math.min(stripeMask, MAX_PROBE);
+        slots = new AtomicReferenceArray<ByteBuffer>(
+                                                     slotsPerClass
+                                                             * (MAX_SIZE_CLASS
+                                                                - MIN_SIZE_CLASS + 1));
+    }
+
+    @Override
+    public ByteBuffer allocate(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Negative capacity: "
+                                               + capacity);
+        }
+        int sizeClass = sizeClassOf(capacity);
+        if (sizeClass > MAX_SIZE_CLASS) {
+            misses.incrementAndGet();
+            bytesAllocated.addAndGet(capacity);
+            return newBuffer(capacity);
+        }
+        ByteBuffer buffer = take(sizeClass);
+        if (buffer == null) {
+            misses.incrementAndGet();
+            bytesAllocated.addAndGet(1 << sizeClass);
+            buffer = newBuffer(1 << sizeClass);
+        } else {
+            hits.incrementAndGet();
+            buffer.clear();
+        }
+        buffer.limit(capacity);
+        return buffer;
+    }
+
+    @Override
+    public void free(ByteBuffer free) {
+        if (free.isDirect() != direct || free.isReadOnly()) {
+            discards.incrementAndGet();
+            return;
+        }
+        // the largest size class the buffer can serve
+        int sizeClass = 31 - Integer.numberOfLeadingZeros(free.capacity());
+        if (sizeClass < MIN_SIZE_CLASS || sizeClass > MAX_SIZE_CLASS) {
+            discards.incrementAndGet();
+            return;
+        }
+        free.clear();
+        if (!offer(sizeClass, free)) {
+            discards.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return the number of bytes allocated by the pool
+     */
+    public long getBytesAllocated() {
+        return bytesAllocated.get();
+    }
+
+    /**
+     * @return the number of freed buffers which were not pooled
+     */
+    public long getDiscards() {
+        return discards.get();
+    }
+
+    /**
+     * @return the number of allocations satisfied by a pooled buffer
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of allocations which required a new buffer
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of bytes of the buffers currently pooled
+     */
+    public long getRetainedBytes() {
+        return retainedBytes.get();
+    }
+
+    /**
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * @return the number of buffers currently pooled
+     */
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < slots.length(); i++) {
+            if (slots.get(i) != null) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Pool[%s] bytes allocated: %s size: %s bytes retained: %s hits: %s misses: %s discards: %s",
+                             name, bytesAllocated, size(), retainedBytes,
+                             hits, misses, discards);
+    }
+
+    private ByteBuffer newBuffer(int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity)
+                     : ByteBuffer.allocate(capacity);
+    }
+
+    private int nextPowerOfTwo(int n) {
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    private boolean offer(int sizeClass, ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        if (retainedBytes.addAndGet(capacity) > maxRetainedBytes) {
+            retainedBytes.addAndGet(-capacity);
+            return false;
+        }
+        int base = (sizeClass - MIN_SIZE_CLASS) * slotsPerClass;
+        int stripe = stripe();
+        for (int i = 0; i < slotsPerStripe + probes; i++) {
+            int index = slot(base, stripe, i);
+            if (slots.get(index) == null
+                && slots.compareAndSet(index, null, buffer)) {
+                return true;
+            }
+        }
+        retainedBytes.addAndGet(-capacity);
+        return false;
+    }
+
+    /**
+     * Answer the index of the ith slot probed by the stripe: the slots of the
+     * stripe, followed by the first slot of each of the following stripes
+     */
+    private int slot(int base, int stripe, int i) {
+        if (i < slotsPerStripe) {
+            return base + stripe * slotsPerStripe + i;
+        }
+        return base + ((stripe + i - slotsPerStripe + 1) & stripeMask)
+               * slotsPerStripe;
+    }
+
+    private int stripe() {
+        return (int) Thread.currentThread().getId() & stripeMask;
+    }
+
+    private ByteBuffer take(int sizeClass) {
+        int base = (sizeClass - MIN_SIZE_CLASS) * slotsPerClass;
+        int stripe = stripe();
+        for (int i = 0; i < slotsPerStripe + probes; i++) {
+            int index = slot(base, stripe, i);
+            ByteBuffer buffer = slots.get(index);
+            if (buffer != null && slots.compareAndSet(index, buffer, null)) {
+                retainedBytes.addAndGet(-buffer.capacity());
+                return buffer;
+            }
+        }
+        return null;
+    }
+}
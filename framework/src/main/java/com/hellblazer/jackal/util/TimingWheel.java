@@ -0,0 +1,155 @@
+/** 
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * A hashed timing wheel. Items are scheduled with a deadline, and hashed into
+ * the slot of the tick of their deadline. Advancing the wheel to a time only
+ * examines the slots of the ticks which have passed since the last advance,
+ * and expires the items of those slots whose deadlines have passed. Items
+ * which are scheduled more than a revolution of the wheel ahead remain in
+ * their slot, and are examined once per revolution.
+ * <p>
+ * This class is not thread safe.
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public class TimingWheel<T> {
+    private static class Timer<T> {
+        private final long deadline;
+        private final T    item;
+
+        private Timer(T item, long deadline) {
+            this.item = item;
+            this.deadline = deadline;
+        }
+    }
+
+    private long                       current;
+    private final int                  mask;
+    private int                        size;
+    private final long                 tickDuration;
+    private final ArrayList<Timer<T>>[] wheel;
+
+    /**
+     * 
+     * @param slots
+     *            - the number of slots of the wheel, rounded up to a power of
+     *            two
+     * @param tickDuration
+     *            - the duration of a tick, and a slot, of the wheel
+     * @param now
+     *            - the current time
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public TimingWheel(int slots, long tickDuration, long now) {
+        if (slots <= 0) {
+            throw new IllegalArgumentException("Invalid number of slots: "
+                                               + slots);
+        }
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("Invalid tick duration: "
+                                               + tickDuration);
+        }
+        int length = Integer.highestOneBit(slots);
+        if (length < slots) {
+            length <<= 1;
+        }
+        wheel = new ArrayList[length];
+        for (int i = 0; i < length; i++) {
+            wheel[i] = new ArrayList<Timer<T>>();
+        }
+        mask = length - 1;
+        this.tickDuration = tickDuration;
+        current = tick(now);
+    }
+
+    /**
+     * Advance the wheel to the time, expiring the items whose deadlines are <=
+     * the time
+     * 
+     * @param now
+     *            - the current time
+     * @param expired
+     *            - the collection to add the expired items to
+     * @return the number of expired items
+     */
+    public int advance(long now, Collection<? super T> expired) {
+        long target = tick(now);
+        int expiredCount = 0;
+        // the current tick is examined again, as items may have been scheduled
+        // into it since the last advance
+        long ticks = Math.max(0, Math.min(target - current, mask));
+        for (long t = target - ticks; t <= target; t++) {
+            expiredCount += expire(wheel[(int) t & mask], now, expired);
+        }
+        if (target > current) {
+            current = target;
+        }
+        size -= expiredCount;
+        return expiredCount;
+    }
+
+    /**
+     * Schedule the item. Items whose deadline has passed are expired by the
+     * next advance of the wheel.
+     * 
+     * @param item
+     * @param deadline
+     */
+    public void schedule(T item, long deadline) {
+        long t = Math.max(tick(deadline), current);
+        wheel[(int) t & mask].add(new Timer<T>(item, deadline));
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int expire(ArrayList<Timer<T>> slot, long now,
+                       Collection<? super T> expired) {
+        int kept = 0;
+        int count = slot.size();
+        for (int i = 0; i < count; i++) {
+            Timer<T> timer = slot.get(i);
+            if (timer.deadline <= now) {
+                expired.add(timer.item);
+            } else {
+                slot.set(kept++, timer);
+            }
+        }
+        for (int i = count - 1; i >= kept; i--) {
+            slot.remove(i);
+        }
+        return count - kept;
+    }
+
+    private long tick(long time) {
+        // deadlines may be negative, or Long.MIN_VALUE
+        long t = time / tickDuration;
+        if (time < 0 && t * tickDuration != time) {
+            t--;
+        }
+        return t;
+    }
+}
@@ -29,7 +29,8 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.hellblazer.jackal.util.ByteBufferPool;
+import com.hellblazer.jackal.util.BufferPool;
+import com.hellblazer.jackal.util.StripedByteBufferPool;
 
 /**
  * MulticastComms is an abstract class representing an end point for multicast
@@ -57,9 +58,9 @@ public class MulticastComms extends Thread {
     private MulticastAddress       groupAddress;
     private MulticastSocket        sock;
     private final AtomicBoolean    terminating  = new AtomicBoolean();
-    protected final ByteBufferPool bufferPool   = new ByteBufferPool(
-                                                                     "Multicast Comms",
-                                                                     100);
+    protected final BufferPool     bufferPool   = new StripedByteBufferPool(
+                                                                            "Multicast Comms",
+                                                                            100);
 
     /**
      * Constructor - uses MulticastAddress to define the multicast group etc.
@@ -172,7 +173,7 @@ public class MulticastComms extends Thread {
     private DatagramPacket bytesToPacket(ByteBuffer msg, InetAddress address,
                                          int port) {
         byte[] bytes = msg.array();
-        return new DatagramPacket(bytes, msg.capacity(), address, port);
+        return new DatagramPacket(bytes, msg.limit(), address, port);
     }
 
     /**
@@ -59,11 +59,18 @@ public class ValueData implements Serializable {
 
     private Object  value;
 
-    private ValueData(boolean marshalled, Object value) {
+    ValueData(boolean marshalled, Object value) {
         this.marshalled = marshalled;
         this.value = value;
     }
 
+    /**
+     * @return the value as held, marshalled or not
+     */
+    Object getRawValue() {
+        return value;
+    }
+
     public Object getValue() {
         if (marshalled) {
             try {
@@ -84,6 +91,10 @@ public class ValueData implements Serializable {
         return value;
     }
 
+    boolean isMarshalled() {
+        return marshalled;
+    }
+
     @Override
     public String toString() {
         if (marshalled) {
@@ -0,0 +1,62 @@
+/**
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.smartfrog.services.anubis.locator;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.smartfrog.services.anubis.partition.wire.msg.MessageCodec;
+import org.smartfrog.services.anubis.partition.wire.msg.MessageCodecs;
+
+/**
+ * The codec of provider values. The value is written by its own codec, if it
+ * has one; marshalled values are carried as they are.
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public class ValueDataCodec implements MessageCodec<ValueData> {
+    public static final int ID = 6;
+
+    @Override
+    public ValueData decode(DataInput in) throws IOException {
+        boolean marshalled = in.readBoolean();
+        try {
+            return new ValueData(marshalled, MessageCodecs.readObject(in));
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unable to decode value", e);
+        }
+    }
+
+    @Override
+    public void encode(ValueData object, DataOutput out) throws IOException {
+        out.writeBoolean(object.isMarshalled());
+        MessageCodecs.writeObject(object.getRawValue(), out);
+    }
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public Class<ValueData> getType() {
+        return ValueData.class;
+    }
+}
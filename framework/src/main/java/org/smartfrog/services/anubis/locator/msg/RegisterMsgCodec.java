@@ -0,0 +1,66 @@
+/**
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.smartfrog.services.anubis.locator.msg;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.smartfrog.services.anubis.locator.names.NameData;
+import org.smartfrog.services.anubis.partition.wire.msg.MessageCodec;
+import org.smartfrog.services.anubis.partition.wire.msg.MessageCodecs;
+
+/**
+ * The codec of the register messages exchanged by the locators
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public class RegisterMsgCodec implements MessageCodec<RegisterMsg> {
+    public static final int ID = 2;
+
+    @Override
+    public RegisterMsg decode(DataInput in) throws IOException {
+        int type = in.readInt();
+        int register = in.readInt();
+        NameData data;
+        try {
+            data = (NameData) MessageCodecs.readObject(in);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unable to decode register message data", e);
+        }
+        return new RegisterMsg(type, data, register);
+    }
+
+    @Override
+    public void encode(RegisterMsg object, DataOutput out) throws IOException {
+        out.writeInt(object.type);
+        out.writeInt(object.register);
+        MessageCodecs.writeObject(object.data, out);
+    }
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public Class<RegisterMsg> getType() {
+        return RegisterMsg.class;
+    }
+}
@@ -49,6 +49,10 @@ public class ListenerProxy extends NameData implements Serializable {
         return super.equals(obj);
     }
 
+    public long getUniqueRegId() {
+        return uniqueRegId;
+    }
+
     @Override
     public int hashCode() {
         return super.hashCode();
@@ -0,0 +1,57 @@
+/**
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.smartfrog.services.anubis.locator.names;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.smartfrog.services.anubis.partition.wire.msg.MessageCodec;
+import org.smartfrog.services.anubis.partition.wire.msg.MessageCodecs;
+
+/**
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public class ListenerProxyCodec implements MessageCodec<ListenerProxy> {
+    public static final int ID = 4;
+
+    @Override
+    public ListenerProxy decode(DataInput in) throws IOException {
+        String name = MessageCodecs.readString(in);
+        int node = in.readInt();
+        return new ListenerProxy(name, node, in.readLong());
+    }
+
+    @Override
+    public void encode(ListenerProxy object, DataOutput out) throws IOException {
+        MessageCodecs.writeString(object.name, out);
+        out.writeInt(object.node);
+        out.writeLong(object.getUniqueRegId());
+    }
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public Class<ListenerProxy> getType() {
+        return ListenerProxy.class;
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.smartfrog.services.anubis.locator.names;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.smartfrog.services.anubis.locator.ValueData;
+import org.smartfrog.services.anubis.partition.wire.msg.MessageCodec;
+import org.smartfrog.services.anubis.partition.wire.msg.MessageCodecs;
+
+/**
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public class ProviderInstanceCodec implements MessageCodec<ProviderInstance> {
+    public static final int ID = 5;
+
+    @Override
+    public ProviderInstance decode(DataInput in) throws IOException {
+        String name = MessageCodecs.readString(in);
+        String instance = MessageCodecs.readString(in);
+        int node = in.readInt();
+        long time = in.readLong();
+        ValueData value;
+        try {
+            value = (ValueData) MessageCodecs.readObject(in);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unable to decode provider value", e);
+        }
+        return new ProviderInstance(name, instance, node, time, value);
+    }
+
+    @Override
+    public void encode(ProviderInstance object, DataOutput out)
+                                                               throws IOException {
+        MessageCodecs.writeString(object.name, out);
+        MessageCodecs.writeString(object.instance, out);
+        out.writeInt(object.node);
+        out.writeLong(object.time);
+        MessageCodecs.writeObject(object.value, out);
+    }
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public Class<ProviderInstance> getType() {
+        return ProviderInstance.class;
+    }
+}
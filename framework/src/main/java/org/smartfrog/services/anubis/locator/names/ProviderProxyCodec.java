@@ -0,0 +1,54 @@
+/**
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.smartfrog.services.anubis.locator.names;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.smartfrog.services.anubis.partition.wire.msg.MessageCodec;
+import org.smartfrog.services.anubis.partition.wire.msg.MessageCodecs;
+
+/**
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public class ProviderProxyCodec implements MessageCodec<ProviderProxy> {
+    public static final int ID = 3;
+
+    @Override
+    public ProviderProxy decode(DataInput in) throws IOException {
+        return new ProviderProxy(MessageCodecs.readString(in), in.readInt());
+    }
+
+    @Override
+    public void encode(ProviderProxy object, DataOutput out) throws IOException {
+        MessageCodecs.writeString(object.name, out);
+        out.writeInt(object.node);
+    }
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public Class<ProviderProxy> getType() {
+        return ProviderProxy.class;
+    }
+}
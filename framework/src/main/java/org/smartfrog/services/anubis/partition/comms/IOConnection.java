@@ -22,6 +22,7 @@ package org.smartfrog.services.anubis.partition.comms;
 import org.smartfrog.services.anubis.partition.wire.WireFormException;
 import org.smartfrog.services.anubis.partition.wire.msg.Heartbeat;
 import org.smartfrog.services.anubis.partition.wire.msg.TimedMsg;
+import org.smartfrog.services.anubis.partition.wire.security.SharedWireForm;
 
 public interface IOConnection {
 
@@ -29,12 +30,26 @@ public interface IOConnection {
 
     boolean connected();
 
+    long getHighWaterMark();
+
+    int getQueueDepth();
+
+    long getQueuedBytes();
+
     void send(Heartbeat heartbeat) throws WireFormException;
 
+    void send(SharedWireForm wireForm);
+
+    void sendBlocking(TimedMsg msg, SendCompletion completion);
+
     void sendTimed(TimedMsg msg);
 
+    void sendTimed(TimedMsg msg, SendCompletion completion);
+
     void setIgnoring(boolean ignoring);
 
+    void setOverflowPolicy(OverflowPolicy policy, long maxQueuedBytes);
+
     void silent();
 
     void terminate();
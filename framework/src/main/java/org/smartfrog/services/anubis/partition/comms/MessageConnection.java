@@ -33,6 +33,7 @@ import org.smartfrog.services.anubis.partition.wire.msg.Heartbeat;
 import org.smartfrog.services.anubis.partition.wire.msg.HeartbeatMsg;
 import org.smartfrog.services.anubis.partition.wire.msg.MessageMsg;
 import org.smartfrog.services.anubis.partition.wire.msg.TimedMsg;
+import org.smartfrog.services.anubis.partition.wire.security.SharedWireForm;
 
 public class MessageConnection extends HeartbeatProtocolAdapter implements
         Connection, HeartbeatProtocol, Candidate {
@@ -53,13 +54,30 @@ public class MessageConnection extends HeartbeatProtocolAdapter implements
         public void disconnect() {
         }
 
+        @Override
+        public int getQueueDepth() {
+            return 0;
+        }
+
         @Override
         public boolean hasPending() {
             return false;
         }
 
         @Override
-        public void send(TimedMsg msg) {
+        public void send(SharedWireForm wireForm) {
+        }
+
+        @Override
+        public void send(TimedMsg msg, SendCompletion completion) {
+            if (completion != null) {
+                completion.complete(false);
+            }
+        }
+
+        @Override
+        public void sendBlocking(TimedMsg msg, SendCompletion completion) {
+            send(msg, completion);
         }
 
         @Override
@@ -92,13 +110,30 @@ public class MessageConnection extends HeartbeatProtocolAdapter implements
             connectionSet.disconnect(getSender());
         }
 
+        @Override
+        public int getQueueDepth() {
+            return connectionImpl.getQueueDepth();
+        }
+
         @Override
         public boolean hasPending() {
             return false;
         }
 
         @Override
-        public void send(TimedMsg msg) {
+        public void send(SharedWireForm wireForm) {
+            if (!connectionImpl.connected()) {
+                if (log.isTraceEnabled()) {
+                    log.trace(String.format("Message dropped due to closed connection: %s",
+                                            this));
+                }
+                return;
+            }
+            connectionImpl.send(wireForm);
+        }
+
+        @Override
+        public void send(TimedMsg msg, SendCompletion completion) {
             /**
              * If the connection has been terminated then just return. In time
              * the User will be notified that the connection, and therefore the
@@ -109,6 +144,9 @@ public class MessageConnection extends HeartbeatProtocolAdapter implements
                     log.trace(String.format("Message dropped due to closed connection: %s",
                                             this));
                 }
+                if (completion != null) {
+                    completion.complete(false);
+                }
                 return;
             }
 
@@ -117,7 +155,22 @@ public class MessageConnection extends HeartbeatProtocolAdapter implements
                     log.trace(String.format("Sending msg on: %s", this));
                 }
             }
-            connectionImpl.sendTimed(msg);
+            connectionImpl.sendTimed(msg, completion);
+        }
+
+        @Override
+        public void sendBlocking(TimedMsg msg, SendCompletion completion) {
+            if (!connectionImpl.connected()) {
+                if (log.isTraceEnabled()) {
+                    log.trace(String.format("Message dropped due to closed connection: %s",
+                                            this));
+                }
+                if (completion != null) {
+                    completion.complete(false);
+                }
+                return;
+            }
+            connectionImpl.sendBlocking(msg, completion);
         }
 
         @Override
@@ -133,8 +186,9 @@ public class MessageConnection extends HeartbeatProtocolAdapter implements
     }
 
     private class Pending implements SendBehavior {
-        private Established                established;
-        private final LinkedList<TimedMsg> msgQ = new LinkedList<TimedMsg>();
+        private final LinkedList<SendCompletion> completions = new LinkedList<SendCompletion>();
+        private Established                      established;
+        private final LinkedList<TimedMsg>       msgQ        = new LinkedList<TimedMsg>();
 
         @Override
         public boolean assignImpl(IOConnection impl) {
@@ -143,14 +197,18 @@ public class MessageConnection extends HeartbeatProtocolAdapter implements
             }
             connectionImpl = impl;
             connectionImpl.setIgnoring(ignoring); // indicate if it should ignore messages
+            if (overflowPolicy != null) {
+                connectionImpl.setOverflowPolicy(overflowPolicy, maxQueuedBytes);
+            }
             return true;
         }
 
         @Override
         public synchronized SendBehavior connect() {
             established = new Established();
-            for (TimedMsg msg : msgQ) {
-                connectionImpl.sendTimed(msg);
+            while (!msgQ.isEmpty()) {
+                connectionImpl.sendTimed(msgQ.removeFirst(),
+                                         completions.removeFirst());
             }
             return established;
         }
@@ -162,30 +220,100 @@ public class MessageConnection extends HeartbeatProtocolAdapter implements
             }
         }
 
+        @Override
+        public synchronized int getQueueDepth() {
+            return msgQ.size();
+        }
+
         @Override
         public boolean hasPending() {
             return !msgQ.isEmpty();
         }
 
         @Override
-        public synchronized void send(TimedMsg msg) {
+        public synchronized void send(SharedWireForm wireForm) {
             if (established == null) {
-                if (log.isTraceEnabled()) {
-                    log.trace(String.format("Queueing msg on: %s", this));
-                }
-                msgQ.addLast(msg);
+                queue((TimedMsg) wireForm.getMsg(), null);
             } else {
-                established.send(msg);
+                established.send(wireForm);
             }
         }
 
+        @Override
+        public synchronized void send(TimedMsg msg, SendCompletion completion) {
+            if (established == null) {
+                queue(msg, completion);
+            } else {
+                established.send(msg, completion);
+            }
+        }
+
+        /**
+         * The monitor of the pending behavior is not held while the sender
+         * waits, as the heartbeats are sent through it
+         */
+        @Override
+        public void sendBlocking(TimedMsg msg, SendCompletion completion) {
+            Established target;
+            synchronized (this) {
+                if (established == null) {
+                    queue(msg, completion);
+                    return;
+                }
+                target = established;
+            }
+            target.sendBlocking(msg, completion);
+        }
+
         @Override
         public void setIgnoring(boolean ignoring) {
             // can't do anything
         }
 
         @Override
-        public void terminate() {
+        public synchronized void terminate() {
+            for (SendCompletion completion : completions) {
+                if (completion != null) {
+                    completion.complete(false);
+                }
+            }
+            completions.clear();
+            msgQ.clear();
+        }
+
+        /**
+         * Queue the message until the connection is established. The queue is
+         * bounded by the number of messages, as the messages have yet to be
+         * converted to their wire form: under the FAIL policy the message is
+         * rejected when the queue is full, otherwise the oldest message is
+         * dropped, as a sender must not block while the connection is being
+         * established.
+         */
+        private void queue(TimedMsg msg, SendCompletion completion) {
+            if (msgQ.size() >= MAX_PENDING_MSGS) {
+                if (overflowPolicy == OverflowPolicy.FAIL) {
+                    log.warn(String.format("Pending message queue is full, rejecting msg on: %s",
+                                           this));
+                    if (completion != null) {
+                        completion.complete(false);
+                    }
+                    return;
+                }
+                if (log.isInfoEnabled()) {
+                    log.info(String.format("Pending message queue is full, dropping oldest msg on: %s",
+                                           this));
+                }
+                msgQ.removeFirst();
+                SendCompletion dropped = completions.removeFirst();
+                if (dropped != null) {
+                    dropped.complete(false);
+                }
+            }
+            if (log.isTraceEnabled()) {
+                log.trace(String.format("Queueing msg on: %s", this));
+            }
+            msgQ.addLast(msg);
+            completions.addLast(completion);
         }
     }
 
@@ -197,9 +325,15 @@ public class MessageConnection extends HeartbeatProtocolAdapter implements
 
         void disconnect();
 
+        int getQueueDepth();
+
         boolean hasPending();
 
-        void send(TimedMsg msg);
+        void send(SharedWireForm wireForm);
+
+        void send(TimedMsg msg, SendCompletion completion);
+
+        void sendBlocking(TimedMsg msg, SendCompletion completion);
 
         void setIgnoring(boolean ignoring);
 
@@ -207,19 +341,28 @@ public class MessageConnection extends HeartbeatProtocolAdapter implements
 
     }
 
-    private static final Logger   log               = LoggerFactory.getLogger(MessageConnection.class.getCanonicalName());
-    private volatile IOConnection closingImpl       = null;
-    private volatile IOConnection connectionImpl    = null;
-    private final ConnectionSet   connectionSet;
-    private volatile boolean      disconnectPending = false;
+    /**
+     * The maximum number of messages queued while the connection is being
+     * established
+     */
+    public static final int         MAX_PENDING_MSGS  = 1024;
+    private static final Logger     log               = LoggerFactory.getLogger(MessageConnection.class.getCanonicalName());
+    private volatile IOConnection   closingImpl       = null;
+    private volatile IOConnection   connectionImpl    = null;
+    private final ConnectionSet     connectionSet;
+    private volatile boolean        disconnectPending = false;
+
+    private boolean                 ignoring          = false;
 
-    private boolean               ignoring          = false;
+    private volatile long           maxQueuedBytes;
 
-    private final Identity        me;
+    private final Identity          me;
 
-    private volatile SendBehavior send              = new Pending();
+    private volatile OverflowPolicy overflowPolicy    = null;
 
-    private volatile boolean      terminated        = false;
+    private volatile SendBehavior   send              = new Pending();
+
+    private volatile boolean        terminated        = false;
 
     /**
      * Constructor used to create a MessageConnection when the implementation is
@@ -372,6 +515,32 @@ public class MessageConnection extends HeartbeatProtocolAdapter implements
         send.disconnect();
     }
 
+    /**
+     * @return the high water mark of the bytes queued for writing, 0 if the
+     *         connection has yet to be established
+     */
+    public long getHighWaterMark() {
+        IOConnection impl = connectionImpl;
+        return impl == null ? 0 : impl.getHighWaterMark();
+    }
+
+    /**
+     * @return the number of messages queued for writing, or queued until the
+     *         connection is established
+     */
+    public int getQueueDepth() {
+        return send.getQueueDepth();
+    }
+
+    /**
+     * @return the number of bytes queued for writing, 0 if the connection has
+     *         yet to be established
+     */
+    public long getQueuedBytes() {
+        IOConnection impl = connectionImpl;
+        return impl == null ? 0 : impl.getQueuedBytes();
+    }
+
     @Override
     public boolean isNotTimely(long timenow, long timebound) {
         return super.isNotTimelyMsgConnection(timenow, timebound);
@@ -414,23 +583,47 @@ public class MessageConnection extends HeartbeatProtocolAdapter implements
         sendMsg((TimedMsg) HeartbeatMsg.toHeartbeatMsg(heartbeat));
     }
 
+    /**
+     * Send the wire form shared with the other message connections
+     * 
+     * @param wireForm
+     */
+    public void sendMsg(SharedWireForm wireForm) {
+        send.send(wireForm);
+    }
+
     public void sendMsg(TimedMsg msg) {
+        sendMsg(msg, null);
+    }
+
+    /**
+     * Send the message, completing the completion once the message has been
+     * written, or has been dropped or rejected
+     * 
+     * @param msg
+     * @param completion
+     *            - the completion, or null
+     */
+    public void sendMsg(TimedMsg msg, SendCompletion completion) {
 
         if (msg == null) {
             Exception e = new Exception();
             e.fillInStackTrace();
             log.error(String.format("SendBytes(WireMsg) called with null parameter on: %s",
                                     this), e);
+            if (completion != null) {
+                completion.complete(false);
+            }
             return;
         }
-        send.send(msg);
+        send.send(msg, completion);
 
     }
 
     /**
-     * sendObject() creates a message to transport an object and calls sendMsg()
-     * to send it. It also time-stamps the message. The object must be
-     * serializable.
+     * sendObject() creates a message to transport an object and sends it. It
+     * also time-stamps the message. The object must be serializable. Under the
+     * BLOCK overflow policy, the sender waits for the outbound queue to drain.
      * 
      * @param obj
      *            - the object to transport
@@ -438,7 +631,26 @@ public class MessageConnection extends HeartbeatProtocolAdapter implements
     public void sendObject(Object obj) {
         MessageMsg msg = new MessageMsg(me, obj);
         msg.setTime(System.currentTimeMillis());
-        sendMsg(msg);
+        send.sendBlocking(msg, null);
+    }
+
+    /**
+     * Send the object asynchronously, answering the handle of the completion of
+     * the send. The completion answers true once the message has been written,
+     * and false if the message was dropped or rejected by the overflow policy
+     * of the connection, or the connection was closed. Under the BLOCK
+     * overflow policy, the sender waits for the outbound queue to drain.
+     * 
+     * @param obj
+     *            - the object to transport
+     * @return the completion of the send
+     */
+    public SendCompletion sendObjectAsync(Object obj) {
+        MessageMsg msg = new MessageMsg(me, obj);
+        msg.setTime(System.currentTimeMillis());
+        SendCompletion completion = new SendCompletion();
+        send.sendBlocking(msg, completion);
+        return completion;
     }
 
     /**
@@ -452,6 +664,30 @@ public class MessageConnection extends HeartbeatProtocolAdapter implements
         send.setIgnoring(ignoring);
     }
 
+    /**
+     * Bound the bytes queued for writing on the connection
+     * 
+     * @param policy
+     *            - the policy applied when the queue is full
+     * @param maxQueuedBytes
+     *            - the maximum number of bytes queued
+     */
+    public void setOverflowPolicy(OverflowPolicy policy, long maxQueuedBytes) {
+        if (policy == null) {
+            throw new IllegalArgumentException("Overflow policy is required");
+        }
+        if (maxQueuedBytes <= 0) {
+            throw new IllegalArgumentException(
+                                               "The maximum queued bytes must be positive");
+        }
+        this.maxQueuedBytes = maxQueuedBytes;
+        overflowPolicy = policy;
+        IOConnection impl = connectionImpl;
+        if (impl != null) {
+            impl.setOverflowPolicy(policy, maxQueuedBytes);
+        }
+    }
+
     /**
      * Connection interface - to terminate (kill as opposed to close) the
      * connection. There will be no callback to closing() as a result of
@@ -0,0 +1,43 @@
+/**
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.smartfrog.services.anubis.partition.comms;
+
+/**
+ * What a connection does with a message sent when its outbound queue is full
+ *
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ *
+ */
+public enum OverflowPolicy {
+    /**
+     * The sender of an object waits until the queue has drained enough to hold
+     * the message. The heartbeats and the other messages of the protocol are
+     * sent while holding the monitor of the connection set, so they never
+     * wait; they are dropped instead.
+     */
+    BLOCK,
+    /**
+     * The oldest queued messages are discarded to make room for the message
+     */
+    DROP_OLDEST,
+    /**
+     * The message is rejected and the connection is notified of the overflow,
+     * which by default shuts the connection down
+     */
+    FAIL;
+}
@@ -0,0 +1,99 @@
+/**
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.smartfrog.services.anubis.partition.comms;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The completion of an asynchronous send. The send completes with true once
+ * the message has been written to the socket, and with false if the message
+ * was discarded: dropped or rejected on the overflow of the outbound queue, or
+ * abandoned by the closing of the connection. A send cannot be cancelled.
+ *
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ *
+ */
+public class SendCompletion implements Future<Boolean> {
+    private final AtomicBoolean  completed = new AtomicBoolean();
+    private final CountDownLatch done      = new CountDownLatch(1);
+    private volatile boolean     written;
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    /**
+     * Complete the send. Only the first completion has any effect.
+     *
+     * @param written
+     *            - true if the message was written, false if it was discarded
+     */
+    public void complete(boolean written) {
+        if (!completed.compareAndSet(false, true)) {
+            return;
+        }
+        this.written = written;
+        try {
+            completed(written);
+        } finally {
+            done.countDown();
+        }
+    }
+
+    @Override
+    public Boolean get() throws InterruptedException, ExecutionException {
+        done.await();
+        return written;
+    }
+
+    @Override
+    public Boolean get(long timeout, TimeUnit unit)
+                                                   throws InterruptedException,
+                                                   ExecutionException,
+                                                   TimeoutException {
+        if (!done.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return written;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    @Override
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    /**
+     * Called once, when the send completes
+     *
+     * @param written
+     *            - true if the message was written, false if it was discarded
+     */
+    protected void completed(boolean written) {
+    }
+}
@@ -54,6 +54,8 @@ import org.smartfrog.services.anubis.partition.views.BitView;
 import org.smartfrog.services.anubis.partition.views.View;
 import org.smartfrog.services.anubis.partition.views.ViewListener;
 import org.smartfrog.services.anubis.partition.wire.msg.Heartbeat;
+import org.smartfrog.services.anubis.partition.wire.msg.HeartbeatMsg;
+import org.smartfrog.services.anubis.partition.wire.security.SharedWireForm;
 
 import com.hellblazer.jackal.partition.test.node.ControllerAgent;
 
@@ -668,10 +670,19 @@ public class ConnectionSet implements ViewListener, ConnectionManager {
         heartbeatComms.sendHeartbeat(prepareHeartbeat(timenow));
 
         /**
-         * send the heartbeat on message connections.
+         * send the heartbeat on message connections. The heartbeat is
+         * converted to its wire form once, and shared by the connections.
          */
-        for (MessageConnection mcon : msgConnections) {
-            mcon.sendMsg(heartbeat);
+        if (!msgConnections.isEmpty()) {
+            SharedWireForm wireForm = new SharedWireForm(
+                                                         HeartbeatMsg.toHeartbeatMsg(heartbeat));
+            try {
+                for (MessageConnection mcon : msgConnections) {
+                    mcon.sendMsg(wireForm);
+                }
+            } finally {
+                wireForm.release();
+            }
         }
 
         /**
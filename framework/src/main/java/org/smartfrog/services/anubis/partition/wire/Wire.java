@@ -60,6 +60,7 @@ public class Wire {
                 return new PingHeartbeatMsg(wireForm);
 
             case MessageMsg.MESSAGE_MSG_WIRE_TYPE:
+            case MessageMsg.CODEC_MESSAGE_MSG_WIRE_TYPE:
                 return new MessageMsg(wireForm);
 
             case CloseMsg.CLOSE_MSG_WIRE_TYPE:
@@ -22,7 +22,7 @@ package org.smartfrog.services.anubis.partition.wire;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
-import com.hellblazer.jackal.util.ByteBufferPool;
+import com.hellblazer.jackal.util.BufferPool;
 
 abstract public class WireMsg implements WireSizes {
 
@@ -91,7 +91,7 @@ abstract public class WireMsg implements WireSizes {
      * @throws WireFormException
      * @throws IOException
      */
-    abstract public ByteBuffer toWire(ByteBufferPool bufferPool)
+    abstract public ByteBuffer toWire(BufferPool bufferPool)
                                                                 throws WireFormException,
                                                                 IOException;
 
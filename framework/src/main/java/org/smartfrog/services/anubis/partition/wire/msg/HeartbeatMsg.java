@@ -29,7 +29,7 @@ import org.smartfrog.services.anubis.partition.views.BitView;
 import org.smartfrog.services.anubis.partition.views.View;
 import org.smartfrog.services.anubis.partition.wire.WireFormException;
 
-import com.hellblazer.jackal.util.ByteBufferPool;
+import com.hellblazer.jackal.util.BufferPool;
 
 public class HeartbeatMsg extends TimedMsg implements Heartbeat {
 
@@ -272,7 +272,7 @@ public class HeartbeatMsg extends TimedMsg implements Heartbeat {
      * 
      * @throws IOException
      */
-    protected ByteBuffer writeWireForm(ByteBufferPool bufferPool)
+    protected ByteBuffer writeWireForm(BufferPool bufferPool)
                                                                  throws WireFormException,
                                                                  IOException {
         ByteBuffer wireForm = bufferPool.allocate(getSize());
@@ -317,10 +317,10 @@ public class HeartbeatMsg extends TimedMsg implements Heartbeat {
     }
 
     /* (non-Javadoc)
-     * @see org.smartfrog.services.anubis.partition.wire.WireMsg#toWire(com.hellblazer.jackal.util.ByteBufferPool)
+     * @see org.smartfrog.services.anubis.partition.wire.WireMsg#toWire(com.hellblazer.jackal.util.BufferPool)
      */
     @Override
-    public ByteBuffer toWire(ByteBufferPool bufferPool)
+    public ByteBuffer toWire(BufferPool bufferPool)
                                                        throws WireFormException,
                                                        IOException {
         ByteBuffer wireForm = writeWireForm(bufferPool);
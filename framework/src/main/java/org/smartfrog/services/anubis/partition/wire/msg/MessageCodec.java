@@ -0,0 +1,69 @@
+/**
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.smartfrog.services.anubis.partition.wire.msg;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The service provider interface of the codecs of the objects carried by
+ * message messages. A codec encodes the objects of exactly one class, and is
+ * identified on the wire by its id. Objects without a codec are carried by Java
+ * serialization.
+ * <p>
+ * Codecs are registered with {@link MessageCodecs}, either explicitly or by
+ * listing the implementation class in
+ * <code>META-INF/services/org.smartfrog.services.anubis.partition.wire.msg.MessageCodec</code>
+ * . The ids of the framework's codecs are below 100.
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public interface MessageCodec<T> {
+
+    /**
+     * Decode an object encoded by this codec
+     * 
+     * @param in
+     * @return the decoded object
+     * @throws IOException
+     */
+    T decode(DataInput in) throws IOException;
+
+    /**
+     * Encode the object
+     * 
+     * @param object
+     * @param out
+     * @throws IOException
+     */
+    void encode(T object, DataOutput out) throws IOException;
+
+    /**
+     * @return the id of the codec on the wire, which must be positive and
+     *         unique
+     */
+    int getId();
+
+    /**
+     * @return the class of the objects encoded by this codec. Instances of
+     *         subclasses are not encoded by this codec.
+     */
+    Class<T> getType();
+}
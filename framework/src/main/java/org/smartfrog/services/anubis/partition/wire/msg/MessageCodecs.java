@@ -0,0 +1,259 @@
+/**
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.smartfrog.services.anubis.partition.wire.msg;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The registry of the message codecs, by the class of the objects they encode
+ * and by their id. The codecs listed as services of {@link MessageCodec} are
+ * registered when the registry is loaded.
+ * <p>
+ * Messages encoded by their codecs are carried under their own wire type,
+ * which members that predate the codecs do not understand. The encoding of
+ * messages by their codecs is therefore disabled until it is enabled, once
+ * every member of the partition is able to decode them; until then, messages
+ * are carried by Java serialization. Messages encoded by their codecs are
+ * always decoded.
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public final class MessageCodecs {
+    /**
+     * The id of a null object
+     */
+    public static final int                                       NULL       = -1;
+    /**
+     * The id of an object carried by Java serialization
+     */
+    public static final int                                       SERIALIZED = 0;
+
+    private static final ConcurrentMap<Integer, MessageCodec<?>>  byId       = new ConcurrentHashMap<Integer, MessageCodec<?>>();
+    private static final ConcurrentMap<Class<?>, MessageCodec<?>> byType     = new ConcurrentHashMap<Class<?>, MessageCodec<?>>();
+    private static final Logger                                   log        = LoggerFactory.getLogger(MessageCodecs.class);
+    private static final Charset                                  UTF_8      = Charset.forName("UTF-8");
+    private static volatile boolean                               enabled;
+
+    static {
+        Iterator<?> codecs = ServiceLoader.load(MessageCodec.class,
+                                                MessageCodecs.class.getClassLoader()).iterator();
+        while (true) {
+            try {
+                if (!codecs.hasNext()) {
+                    break;
+                }
+                register((MessageCodec<?>) codecs.next());
+            } catch (ServiceConfigurationError e) {
+                log.warn("Unable to load message codec", e);
+            } catch (IllegalArgumentException e) {
+                log.warn("Unable to register message codec", e);
+            }
+        }
+    }
+
+    /**
+     * Decode an object encoded by the codec
+     * 
+     * @param id
+     *            - the id of the codec
+     * @param in
+     * @return the decoded object
+     * @throws IOException
+     *             - if there is no codec with the id
+     */
+    public static Object decode(int id, DataInput in) throws IOException {
+        MessageCodec<?> codec = byId.get(id);
+        if (codec == null) {
+            throw new IOException("No message codec with id: " + id);
+        }
+        return codec.decode(in);
+    }
+
+    /**
+     * Answer the codec of the object
+     * 
+     * @param object
+     * @return the codec, or null if the object has no codec
+     */
+    @SuppressWarnings("unchecked")
+    public static MessageCodec<Object> forObject(Object object) {
+        if (object == null) {
+            return null;
+        }
+        return (MessageCodec<Object>) byType.get(object.getClass());
+    }
+
+    /**
+     * @return true if messages are encoded by their codecs
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Read an object written by {@link #writeObject(Object, DataOutput)}
+     * 
+     * @param in
+     * @return the object
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    public static Object readObject(DataInput in) throws IOException,
+                                                 ClassNotFoundException {
+        int id = in.readInt();
+        switch (id) {
+            case NULL:
+                return null;
+            case SERIALIZED: {
+                byte[] serialized = new byte[in.readInt()];
+                in.readFully(serialized);
+                ObjectInputStream ois = new ObjectInputStream(
+                                                              new ByteArrayInputStream(
+                                                                                       serialized));
+                return ois.readObject();
+            }
+            default:
+                return decode(id, in);
+        }
+    }
+
+    /**
+     * Read a string written by {@link #writeString(String, DataOutput)}
+     * 
+     * @param in
+     * @return the string, which may be null
+     * @throws IOException
+     */
+    public static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Register the codec
+     * 
+     * @param codec
+     * @throws IllegalArgumentException
+     *             - if the id of the codec is not positive, or another codec
+     *             is registered with the same id
+     */
+    public static void register(MessageCodec<?> codec) {
+        if (codec.getId() <= SERIALIZED) {
+            throw new IllegalArgumentException(
+                                               String.format("Message codec %s id must be positive: %s",
+                                                             codec,
+                                                             codec.getId()));
+        }
+        MessageCodec<?> existing = byId.putIfAbsent(codec.getId(), codec);
+        if (existing != null && existing.getClass() != codec.getClass()) {
+            throw new IllegalArgumentException(
+                                               String.format("Message codec %s id %s is registered to %s",
+                                                             codec,
+                                                             codec.getId(),
+                                                             existing));
+        }
+        byType.put(codec.getType(), existing == null ? codec : existing);
+    }
+
+    /**
+     * Enable the encoding of messages by their codecs. This must only be
+     * enabled once every member of the partition decodes the messages encoded
+     * by their codecs.
+     * 
+     * @param encode
+     *            - true to encode messages by their codecs, false to carry
+     *            all messages by Java serialization
+     */
+    public static void setEnabled(boolean encode) {
+        enabled = encode;
+    }
+
+    /**
+     * Write the object, prefixed by the id of its codec. An object without a
+     * codec is written by Java serialization, and so must be serializable.
+     * This is used by codecs to write the objects they refer to.
+     * 
+     * @param object
+     * @param out
+     * @throws IOException
+     */
+    public static void writeObject(Object object, DataOutput out)
+                                                                 throws IOException {
+        if (object == null) {
+            out.writeInt(NULL);
+            return;
+        }
+        MessageCodec<Object> codec = forObject(object);
+        if (codec == null) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(baos);
+            oos.writeObject(object);
+            oos.close();
+            out.writeInt(SERIALIZED);
+            out.writeInt(baos.size());
+            out.write(baos.toByteArray());
+            return;
+        }
+        out.writeInt(codec.getId());
+        codec.encode(object, out);
+    }
+
+    /**
+     * Write the string, which may be null, as its length and UTF-8 bytes. Unlike
+     * {@link DataOutput#writeUTF(String)}, the length of the string is not
+     * limited.
+     * 
+     * @param string
+     * @param out
+     * @throws IOException
+     */
+    public static void writeString(String string, DataOutput out)
+                                                                 throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = string.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private MessageCodecs() {
+    }
+}
@@ -20,6 +20,8 @@ For more information: www.smartfrog.org
 package org.smartfrog.services.anubis.partition.wire.msg;
 
 import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
@@ -28,16 +30,25 @@ import java.nio.ByteBuffer;
 import org.smartfrog.services.anubis.partition.util.Identity;
 import org.smartfrog.services.anubis.partition.wire.WireFormException;
 
+import com.hellblazer.jackal.util.BufferPool;
 import com.hellblazer.jackal.util.ByteBufferOutputStream;
-import com.hellblazer.jackal.util.ByteBufferPool;
 
+/**
+ * The message carrying an application object. The object is carried by Java
+ * serialization under the original wire type of the message. When the
+ * encoding by the message codecs is enabled, an object which has a
+ * {@link MessageCodec} is instead encoded by its codec, prefixed by the id of
+ * the codec, under a wire type of its own.
+ */
 public final class MessageMsg extends TimedMsg {
 
-    public static final int     MESSAGE_MSG_WIRE_SIZE = UNDEFINED_SIZE;
-    public static final int     MESSAGE_MSG_WIRE_TYPE = 400;
-    private static final byte[] headerPadding         = new byte[TIMED_MSG_WIRE_SIZE];
+    public static final int     CODEC_MESSAGE_MSG_WIRE_TYPE = 401;
+    public static final int     MESSAGE_MSG_WIRE_SIZE       = UNDEFINED_SIZE;
+    public static final int     MESSAGE_MSG_WIRE_TYPE       = 400;
+    private static final byte[] headerPadding               = new byte[TIMED_MSG_WIRE_SIZE];
 
-    private Object              message               = null;
+    private boolean             encoded                     = false;
+    private Object              message                     = null;
 
     public MessageMsg(ByteBuffer wireForm) throws ClassNotFoundException,
                                           WireFormException, IOException {
@@ -72,7 +83,7 @@ public final class MessageMsg extends TimedMsg {
 
     @Override
     protected int getType() {
-        return MESSAGE_MSG_WIRE_TYPE;
+        return encoded ? CODEC_MESSAGE_MSG_WIRE_TYPE : MESSAGE_MSG_WIRE_TYPE;
     }
 
     /**
@@ -93,8 +104,14 @@ public final class MessageMsg extends TimedMsg {
                                                              buf.arrayOffset(),
                                                              buf.limit());
         bais.skip(TIMED_MSG_WIRE_SIZE);
-        ObjectInputStream ois = new ObjectInputStream(bais);
-        message = ois.readObject();
+        encoded = buf.getInt(0) == CODEC_MESSAGE_MSG_WIRE_TYPE;
+        if (encoded) {
+            DataInputStream in = new DataInputStream(bais);
+            message = MessageCodecs.decode(in.readInt(), in);
+        } else {
+            ObjectInputStream ois = new ObjectInputStream(bais);
+            message = ois.readObject();
+        }
     }
 
     /**
@@ -104,14 +121,24 @@ public final class MessageMsg extends TimedMsg {
      * 
      * @throws IOException
      */
-    protected ByteBuffer writeWireForm(ByteBufferPool bufferPool)
+    protected ByteBuffer writeWireForm(BufferPool bufferPool)
                                                                  throws WireFormException,
                                                                  IOException {
         ByteBufferOutputStream bbos = new ByteBufferOutputStream(bufferPool);
         bbos.write(headerPadding);
-        ObjectOutputStream objectOS = new ObjectOutputStream(bbos);
-        objectOS.writeObject(message);
-        objectOS.flush();
+        MessageCodec<Object> codec = MessageCodecs.isEnabled() ? MessageCodecs.forObject(message)
+                                                              : null;
+        encoded = codec != null;
+        if (encoded) {
+            DataOutputStream out = new DataOutputStream(bbos);
+            out.writeInt(codec.getId());
+            codec.encode(message, out);
+            out.flush();
+        } else {
+            ObjectOutputStream objectOS = new ObjectOutputStream(bbos);
+            objectOS.writeObject(message);
+            objectOS.flush();
+        }
         bbos.write(new byte[trailerSize]);
         ByteBuffer wireForm = bbos.toByteBuffer();
         writeWireForm(wireForm);
@@ -119,10 +146,10 @@ public final class MessageMsg extends TimedMsg {
     }
 
     /* (non-Javadoc)
-     * @see org.smartfrog.services.anubis.partition.wire.WireMsg#toWire(com.hellblazer.jackal.util.ByteBufferPool)
+     * @see org.smartfrog.services.anubis.partition.wire.WireMsg#toWire(com.hellblazer.jackal.util.BufferPool)
      */
     @Override
-    public ByteBuffer toWire(ByteBufferPool bufferPool)
+    public ByteBuffer toWire(BufferPool bufferPool)
                                                        throws WireFormException,
                                                        IOException {
         ByteBuffer wireForm = writeWireForm(bufferPool);
@@ -27,7 +27,7 @@ import org.smartfrog.services.anubis.partition.util.Identity;
 import org.smartfrog.services.anubis.partition.util.NodeIdSet;
 import org.smartfrog.services.anubis.partition.wire.WireFormException;
 
-import com.hellblazer.jackal.util.ByteBufferPool;
+import com.hellblazer.jackal.util.BufferPool;
 
 public class PingHeartbeatMsg extends HeartbeatMsg {
 
@@ -133,10 +133,10 @@ public class PingHeartbeatMsg extends HeartbeatMsg {
     }
 
     /* (non-Javadoc)
-     * @see org.smartfrog.services.anubis.partition.wire.msg.HeartbeatMsg#writeWireForm(com.hellblazer.jackal.util.ByteBufferPool)
+     * @see org.smartfrog.services.anubis.partition.wire.msg.HeartbeatMsg#writeWireForm(com.hellblazer.jackal.util.BufferPool)
      */
     @Override
-    protected ByteBuffer writeWireForm(ByteBufferPool bufferPool)
+    protected ByteBuffer writeWireForm(BufferPool bufferPool)
                                                                  throws WireFormException,
                                                                  IOException {
         ByteBuffer wireForm = super.writeWireForm(bufferPool);
@@ -28,8 +28,8 @@ import java.nio.ByteBuffer;
 import org.smartfrog.services.anubis.partition.wire.WireFormException;
 import org.smartfrog.services.anubis.partition.wire.WireMsg;
 
+import com.hellblazer.jackal.util.BufferPool;
 import com.hellblazer.jackal.util.ByteBufferOutputStream;
-import com.hellblazer.jackal.util.ByteBufferPool;
 
 public final class SerializedMsg extends WireMsg {
     public static final int SERIALIZED_MSG_WIRE_TYPE = 999;
@@ -100,10 +100,10 @@ public final class SerializedMsg extends WireMsg {
     }
 
     /* (non-Javadoc)
-     * @see org.smartfrog.services.anubis.partition.wire.WireMsg#toWire(com.hellblazer.jackal.util.ByteBufferPool)
+     * @see org.smartfrog.services.anubis.partition.wire.WireMsg#toWire(com.hellblazer.jackal.util.BufferPool)
      */
     @Override
-    public ByteBuffer toWire(ByteBufferPool bufferPool)
+    public ByteBuffer toWire(BufferPool bufferPool)
                                                        throws WireFormException,
                                                        IOException {
 
@@ -9,7 +9,7 @@ import org.smartfrog.services.anubis.partition.wire.Wire;
 import org.smartfrog.services.anubis.partition.wire.WireFormException;
 import org.smartfrog.services.anubis.partition.wire.WireMsg;
 
-import com.hellblazer.jackal.util.ByteBufferPool;
+import com.hellblazer.jackal.util.BufferPool;
 
 public class MACSecurityImpl implements WireSecurity {
 
@@ -22,8 +22,9 @@ public class MACSecurityImpl implements WireSecurity {
         try {
 
             WireMsg msg = Wire.fromWire(wireForm);
-            macData.checkMAC(wireForm.array(), 0,
-                             wireForm.capacity() - macData.getMacSize() - 1);
+            macData.checkMAC(wireForm.array(), wireForm.arrayOffset(),
+                             wireForm.arrayOffset() + wireForm.limit()
+                                     - macData.getMacSize() - 1);
 
             return msg;
         } catch (ClassNotFoundException e) {
@@ -46,16 +47,16 @@ public class MACSecurityImpl implements WireSecurity {
     }
 
     /* (non-Javadoc)
-     * @see org.smartfrog.services.anubis.partition.wire.security.WireSecurity#toWireForm(org.smartfrog.services.anubis.partition.wire.WireMsg, com.hellblazer.jackal.util.ByteBufferPool)
+     * @see org.smartfrog.services.anubis.partition.wire.security.WireSecurity#toWireForm(org.smartfrog.services.anubis.partition.wire.WireMsg, com.hellblazer.jackal.util.BufferPool)
      */
     @Override
-    public ByteBuffer toWireForm(WireMsg msg, ByteBufferPool bufferPool)
+    public ByteBuffer toWireForm(WireMsg msg, BufferPool bufferPool)
                                                                         throws WireFormException {
         try {
             msg.setTrailerSize(macData.getMacSize());
             ByteBuffer wireForm = msg.toWire(bufferPool);
             macData.addMAC(wireForm.array(), 0,
-                           wireForm.capacity() - macData.getMacSize() - 1);
+                           wireForm.limit() - macData.getMacSize() - 1);
             return wireForm;
 
         } catch (IOException e) {
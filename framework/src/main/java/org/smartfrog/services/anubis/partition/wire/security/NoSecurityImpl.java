@@ -7,7 +7,7 @@ import org.smartfrog.services.anubis.partition.wire.Wire;
 import org.smartfrog.services.anubis.partition.wire.WireFormException;
 import org.smartfrog.services.anubis.partition.wire.WireMsg;
 
-import com.hellblazer.jackal.util.ByteBufferPool;
+import com.hellblazer.jackal.util.BufferPool;
 
 public class NoSecurityImpl implements WireSecurity {
 
@@ -23,10 +23,10 @@ public class NoSecurityImpl implements WireSecurity {
     }
 
     /* (non-Javadoc)
-     * @see org.smartfrog.services.anubis.partition.wire.security.WireSecurity#toWireForm(org.smartfrog.services.anubis.partition.wire.WireMsg, com.hellblazer.jackal.util.ByteBufferPool)
+     * @see org.smartfrog.services.anubis.partition.wire.security.WireSecurity#toWireForm(org.smartfrog.services.anubis.partition.wire.WireMsg, com.hellblazer.jackal.util.BufferPool)
      */
     @Override
-    public ByteBuffer toWireForm(WireMsg msg, ByteBufferPool bufferPool)
+    public ByteBuffer toWireForm(WireMsg msg, BufferPool bufferPool)
                                                                         throws WireFormException, IOException {
         return msg.toWire(bufferPool);
     }
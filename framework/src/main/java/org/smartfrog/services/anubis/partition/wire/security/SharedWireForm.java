@@ -0,0 +1,116 @@
+/**
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.smartfrog.services.anubis.partition.wire.security;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.smartfrog.services.anubis.partition.wire.WireFormException;
+import org.smartfrog.services.anubis.partition.wire.WireMsg;
+
+import com.hellblazer.jackal.util.BufferPool;
+
+/**
+ * The wire form of a message sent on several connections, such as the
+ * heartbeat sent on every message connection. The message is converted to its
+ * wire form, and secured, once by the first connection to send it; every
+ * connection then writes a read only duplicate of the same buffer.
+ * <p>
+ * The wire form is reference counted. The creator holds the first reference,
+ * each connection takes a reference when it queues the wire form and releases
+ * it once written, and the buffer is returned to the pool it was allocated from
+ * when the last reference is released. References which are never released,
+ * such as those of connections closed with writes outstanding, simply leave the
+ * buffer to the garbage collector.
+ *
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ *
+ */
+public class SharedWireForm {
+    private BufferPool          bufferPool;
+    private final WireMsg       msg;
+    private final AtomicInteger references = new AtomicInteger(1);
+    private WireSecurity        wireSecurity;
+    private ByteBuffer          wireForm;
+
+    /**
+     * @param msg
+     *            - the message, which must not change while the wire form is
+     *            being shared
+     */
+    public SharedWireForm(WireMsg msg) {
+        this.msg = msg;
+    }
+
+    public WireMsg getMsg() {
+        return msg;
+    }
+
+    /**
+     * Release a reference to the wire form
+     */
+    public void release() {
+        int remaining = references.decrementAndGet();
+        if (remaining == 0) {
+            ByteBuffer free;
+            BufferPool pool;
+            synchronized (this) {
+                free = wireForm;
+                pool = bufferPool;
+                wireForm = null;
+            }
+            if (free != null) {
+                pool.free(free);
+            }
+        } else if (remaining < 0) {
+            throw new IllegalStateException("Wire form over released");
+        }
+    }
+
+    /**
+     * Take a reference to the wire form, converting the message to its wire
+     * form if it has not been already.
+     *
+     * @param security
+     *            - the wire security of the connection
+     * @param pool
+     *            - the pool of the connection, used to allocate the wire form
+     * @return a read only duplicate of the wire form
+     * @throws WireFormException
+     * @throws IOException
+     */
+    public synchronized ByteBuffer retain(WireSecurity security,
+                                          BufferPool pool)
+                                                          throws WireFormException,
+                                                          IOException {
+        if (references.get() <= 0) {
+            throw new IllegalStateException("Wire form has been released");
+        }
+        if (wireForm == null) {
+            wireForm = security.toWireForm(msg, pool);
+            wireSecurity = security;
+            bufferPool = pool;
+        } else if (security != wireSecurity) {
+            throw new IllegalArgumentException(
+                                               "Wire form shared by connections with different wire security");
+        }
+        references.incrementAndGet();
+        return wireForm.asReadOnlyBuffer();
+    }
+}
@@ -6,14 +6,14 @@ import java.nio.ByteBuffer;
 import org.smartfrog.services.anubis.partition.wire.WireFormException;
 import org.smartfrog.services.anubis.partition.wire.WireMsg;
 
-import com.hellblazer.jackal.util.ByteBufferPool;
+import com.hellblazer.jackal.util.BufferPool;
 
 public interface WireSecurity {
 
     public WireMsg fromWireForm(ByteBuffer bytes) throws WireSecurityException,
                                                  WireFormException;
 
-    public ByteBuffer toWireForm(WireMsg msg, ByteBufferPool bufferPool)
+    public ByteBuffer toWireForm(WireMsg msg, BufferPool bufferPool)
                                                                         throws WireFormException,
                                                                         IOException;
 
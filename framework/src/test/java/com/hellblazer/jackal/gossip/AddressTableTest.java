@@ -0,0 +1,137 @@
+/**
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.gossip;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+/**
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public class AddressTableTest extends TestCase {
+
+    public void testIntern() throws Exception {
+        AddressTable table = new AddressTable();
+        InetSocketAddress address = new InetSocketAddress(
+                                                          InetAddress.getByName("10.0.1.2"),
+                                                          5001);
+        InetSocketAddress canonical = table.intern(address);
+        assertSame(address, canonical);
+        assertSame(canonical,
+                   table.intern(new InetSocketAddress(
+                                                      InetAddress.getByName("10.0.1.2"),
+                                                      5001)));
+        assertSame(canonical, table.get(0x0A000102, 5001));
+        assertNotSame(canonical, table.get(0x0A000102, 5002));
+        assertEquals(new InetSocketAddress(
+                                           InetAddress.getByName("10.0.1.2"),
+                                           5002), table.get(0x0A000102, 5002));
+        assertEquals(1, table.size());
+    }
+
+    public void testGetDoesNotIntern() throws Exception {
+        AddressTable table = new AddressTable();
+        InetSocketAddress address = table.get(0x0A000102, 5001);
+        assertEquals(new InetSocketAddress(InetAddress.getByName("10.0.1.2"),
+                                           5001), address);
+        assertNotSame(address, table.get(0x0A000102, 5001));
+        assertEquals(0, table.size());
+    }
+
+    public void testManyAddresses() throws Exception {
+        AddressTable table = new AddressTable();
+        InetSocketAddress[] addresses = new InetSocketAddress[1000];
+        for (int i = 0; i < addresses.length; i++) {
+            addresses[i] = table.intern(AddressTable.address(0x0A010000 + i,
+                                                             1000 + i));
+        }
+        assertEquals(addresses.length, table.size());
+        for (int i = 0; i < addresses.length; i++) {
+            assertSame(addresses[i], table.get(0x0A010000 + i, 1000 + i));
+            assertEquals(1000 + i, addresses[i].getPort());
+        }
+    }
+
+    public void testRemove() throws Exception {
+        AddressTable table = new AddressTable();
+        InetSocketAddress[] addresses = new InetSocketAddress[1000];
+        for (int i = 0; i < addresses.length; i++) {
+            addresses[i] = table.intern(AddressTable.address(0x0A010000 + i,
+                                                             1000 + i));
+        }
+        for (int i = 0; i < addresses.length; i += 2) {
+            assertTrue(table.remove(addresses[i]));
+        }
+        assertFalse(table.remove(addresses[0]));
+        assertEquals(addresses.length / 2, table.size());
+        for (int i = 0; i < addresses.length; i++) {
+            InetSocketAddress address = table.get(0x0A010000 + i, 1000 + i);
+            assertEquals(addresses[i], address);
+            if (i % 2 == 0) {
+                assertNotSame(addresses[i], address);
+            } else {
+                assertSame(addresses[i], address);
+            }
+        }
+
+        // the removed entries are dropped as the table is refilled
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < addresses.length; i += 2) {
+                addresses[i] = table.intern(AddressTable.address(0x0A010000 + i,
+                                                                 1000 + i));
+            }
+            for (int i = 0; i < addresses.length; i += 2) {
+                assertTrue(table.remove(addresses[i]));
+            }
+        }
+        assertEquals(addresses.length / 2, table.size());
+        for (int i = 1; i < addresses.length; i += 2) {
+            assertSame(addresses[i], table.get(0x0A010000 + i, 1000 + i));
+        }
+    }
+
+    public void testReadInetAddress() throws Exception {
+        AddressTable table = new AddressTable();
+        InetSocketAddress address = table.intern(new InetSocketAddress(
+                                                                       InetAddress.getByName("10.0.2.3"),
+                                                                       6001));
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        HeartbeatState.writeInetAddress(address, buffer);
+        HeartbeatState.writeInetAddress(address, buffer);
+        buffer.flip();
+        assertSame(address, HeartbeatState.readInetAddress(buffer, table));
+        InetSocketAddress uninterned = HeartbeatState.readInetAddress(buffer);
+        assertEquals(address, uninterned);
+        assertNotSame(address, uninterned);
+
+        buffer.clear();
+        CompactEncoding encoding = new CompactEncoding(buffer);
+        encoding.putAddress(address);
+        encoding.putAddress(new InetSocketAddress(address.getAddress(), 6002));
+        buffer.flip();
+        CompactEncoding decoding = new CompactEncoding(buffer, table);
+        assertSame(address, decoding.getAddress());
+        assertEquals(new InetSocketAddress(address.getAddress(), 6002),
+                     decoding.getAddress());
+        assertEquals(1, table.size());
+    }
+}
@@ -0,0 +1,199 @@
+/** 
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.gossip;
+
+import java.net.InetSocketAddress;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.smartfrog.services.anubis.partition.util.Identity;
+import org.smartfrog.services.anubis.partition.util.NodeIdSet;
+import org.smartfrog.services.anubis.partition.views.View;
+
+/**
+ * Testing of the compact encoding of the gossip state
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public class CompactEncodingTest extends TestCase {
+    public void testDigests() throws Exception {
+        List<Digest> digests = new ArrayList<Digest>();
+        long time = System.currentTimeMillis();
+        for (int i = 0; i < 100; i++) {
+            digests.add(new Digest(new InetSocketAddress("127.0.0." + i % 4,
+                                                         1000 + i), time - i
+                                                                    * 7));
+        }
+        digests.add(new Digest(new InetSocketAddress("127.0.0.1", 65535), -1));
+        ByteBuffer buffer = ByteBuffer.allocate(1500);
+        CompactEncoding msg = new CompactEncoding(buffer);
+        for (Digest digest : digests) {
+            digest.writeTo(msg);
+        }
+        assertTrue("encoding not compact: " + buffer.position(),
+                   buffer.position() < digests.size() * 8);
+        buffer.flip();
+        msg = new CompactEncoding(buffer);
+        for (Digest digest : digests) {
+            assertEquals(digest, new Digest(msg));
+        }
+        assertFalse(buffer.hasRemaining());
+    }
+
+    public void testHeartbeatState() throws Exception {
+        NodeIdSet msgLinks = new NodeIdSet();
+        Identity candidate = new Identity(0x1638, Identity.MAX_ID, 667);
+        Identity sender = new Identity(0x1638, 23, 22);
+        InetSocketAddress heartbeatAddress = new InetSocketAddress("localhost",
+                                                                   80);
+        InetSocketAddress senderAddress = new InetSocketAddress("localhost", 81);
+        InetSocketAddress testInterface = new InetSocketAddress("localhost",
+                                                                443);
+        NodeIdSet v = new NodeIdSet();
+        for (int i = 0; i < 100; i++) {
+            v.add(i);
+        }
+        msgLinks.add(candidate.id);
+        msgLinks.add(sender.id);
+        HeartbeatState state = new HeartbeatState(candidate, true,
+                                                  heartbeatAddress, msgLinks,
+                                                  true, sender, senderAddress,
+                                                  true, testInterface, v, 128L,
+                                                  990876L);
+        state.setTime(564567L);
+
+        ByteBuffer buffer = ByteBuffer.allocate(GossipMessages.HEARTBEAT_STATE_BYTE_SIZE);
+        state.writeTo(new CompactEncoding(buffer));
+        assertTrue("encoding not compact: " + buffer.position(),
+                   buffer.position() < 80);
+        buffer.flip();
+
+        HeartbeatState dState = new HeartbeatState(new CompactEncoding(buffer));
+        assertFalse(buffer.hasRemaining());
+        assertEquals(candidate, dState.getCandidate());
+        assertTrue(dState.isDiscoveryOnly());
+        assertEquals(heartbeatAddress, dState.getHeartbeatAddress());
+        assertEquals(msgLinks, dState.getMsgLinks());
+        assertTrue(dState.isPreferred());
+        assertEquals(sender, dState.getSender());
+        assertEquals(senderAddress, dState.getSenderAddress());
+        assertEquals(testInterface, dState.getControllerInterface());
+        assertEquals(564567L, dState.getTime());
+        assertEquals(128L, dState.getViewNumber());
+        View view = dState.getView();
+        assertEquals(v, view.toBitSet());
+        assertEquals(990876L, view.getTimeStamp());
+        assertTrue(view.isStable());
+    }
+
+    public void testIdentity() throws Exception {
+        Identity[] identities = new Identity[] {
+                new Identity(Integer.MIN_VALUE, 0, Long.MIN_VALUE),
+                new Identity(Integer.MAX_VALUE, Identity.MAX_ID, Long.MAX_VALUE),
+                new Identity(-1, -1, -1), new Identity(0x1638, 7, 22) };
+        ByteBuffer buffer = ByteBuffer.allocate(1500);
+        CompactEncoding msg = new CompactEncoding(buffer);
+        for (Identity identity : identities) {
+            msg.putIdentity(identity);
+        }
+        buffer.flip();
+        msg = new CompactEncoding(buffer);
+        for (Identity identity : identities) {
+            Identity decoded = msg.getIdentity();
+            assertEquals(identity, decoded);
+            assertEquals(identity.epoch, decoded.epoch);
+        }
+    }
+
+    public void testMarkAndReset() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(12);
+        CompactEncoding msg = new CompactEncoding(buffer);
+        Digest first = new Digest(new InetSocketAddress("127.0.0.1", 1), 1);
+        first.writeTo(msg);
+        msg.mark();
+        try {
+            new Digest(new InetSocketAddress("127.0.0.2", 2), 2).writeTo(msg);
+            fail("Expected overflow");
+        } catch (BufferOverflowException e) {
+            msg.reset();
+        }
+        Digest second = new Digest(new InetSocketAddress("127.0.0.1", 2), 3);
+        second.writeTo(msg);
+        buffer.flip();
+        msg = new CompactEncoding(buffer);
+        assertEquals(first, new Digest(msg));
+        assertEquals(second, new Digest(msg));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    public void testNodeIdSets() throws Exception {
+        NodeIdSet empty = new NodeIdSet();
+        NodeIdSet sparse = new NodeIdSet();
+        sparse.add(3);
+        sparse.add(Identity.MAX_ID);
+        NodeIdSet dense = new NodeIdSet();
+        for (int i = 0; i < 256; i++) {
+            dense.add(i);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(1500);
+        CompactEncoding msg = new CompactEncoding(buffer);
+        msg.putNodeIdSet(empty);
+        assertEquals(1, buffer.position());
+        msg.putNodeIdSet(sparse);
+        assertEquals(1 + 1 + 1 + 2, buffer.position());
+        msg.putNodeIdSet(dense);
+        assertEquals(1 + 1 + 1 + 2 + 1 + 32, buffer.position());
+        buffer.flip();
+        msg = new CompactEncoding(buffer);
+        assertEquals(empty, msg.getNodeIdSet());
+        assertEquals(sparse, msg.getNodeIdSet());
+        assertEquals(dense, msg.getNodeIdSet());
+    }
+
+    public void testVarInts() throws Exception {
+        int[] ints = new int[] { 0, 1, 127, 128, 16383, 16384,
+                Integer.MAX_VALUE, -1, Integer.MIN_VALUE };
+        long[] longs = new long[] { 0, 1, 127, 128, Long.MAX_VALUE, -1,
+                Long.MIN_VALUE };
+        ByteBuffer buffer = ByteBuffer.allocate(1500);
+        CompactEncoding msg = new CompactEncoding(buffer);
+        for (int i : ints) {
+            msg.putVarInt(i);
+        }
+        for (long l : longs) {
+            msg.putVarLong(l);
+            msg.putTime(l);
+        }
+        buffer.flip();
+        msg = new CompactEncoding(buffer);
+        for (int i : ints) {
+            assertEquals(i, msg.getVarInt());
+        }
+        for (long l : longs) {
+            assertEquals(l, msg.getVarLong());
+            assertEquals(l, msg.getTime());
+        }
+        assertFalse(buffer.hasRemaining());
+    }
+}
@@ -0,0 +1,143 @@
+/** 
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.gossip;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Basic testing of the digest list
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public class DigestListTest extends TestCase {
+
+    private static InetSocketAddress address(int i) throws Exception {
+        return new InetSocketAddress(
+                                     InetAddress.getByAddress(new byte[] { 10,
+                                             0, (byte) (i >>> 8), (byte) i }),
+                                     1000 + i);
+    }
+
+    public void testAddAndClear() throws Exception {
+        DigestList digests = new DigestList(1);
+        for (int i = 0; i < 100; i++) {
+            digests.add(address(i), i * 10);
+        }
+        assertEquals(100, digests.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(address(i), digests.getAddress(i));
+            assertEquals(i * 10, digests.getTime(i));
+            assertEquals(new Digest(address(i), i * 10), digests.get(i));
+        }
+        digests.clear();
+        assertEquals(0, digests.size());
+        assertTrue(digests.isEmpty());
+        try {
+            digests.getAddress(0);
+            fail("Expected index out of bounds");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+        digests.add(new Digest(address(1), 666));
+        assertEquals(Arrays.asList(new Digest(address(1), 666)), digests);
+    }
+
+    public void testCopy() throws Exception {
+        List<Digest> original = new ArrayList<Digest>();
+        for (int i = 0; i < 10; i++) {
+            original.add(new Digest(address(i), i));
+        }
+        DigestList copy = DigestList.of(original);
+        assertNotSame(original, copy);
+        assertEquals(original, copy);
+        assertSame(copy, DigestList.of(copy));
+
+        DigestList extended = new DigestList(copy);
+        extended.add(address(10), -1);
+        assertEquals(10, copy.size());
+        assertEquals(11, extended.size());
+        assertEquals(copy, extended.subList(0, 10));
+        assertEquals(-1, extended.getTime(10));
+    }
+
+    public void testShuffle() throws Exception {
+        List<Digest> expected = new ArrayList<Digest>();
+        DigestList digests = new DigestList();
+        for (int i = 0; i < 50; i++) {
+            expected.add(new Digest(address(i), i));
+            digests.add(address(i), i);
+        }
+        Collections.shuffle(expected, new Random(666));
+        digests.shuffle(new Random(666));
+        assertEquals(expected, digests);
+    }
+
+    public void testSortDescending() throws Exception {
+        DigestList digests = new DigestList();
+        long[] keys = new long[] { 3, 7, 3, 0, 7, Long.MAX_VALUE, 1 };
+        for (int i = 0; i < keys.length; i++) {
+            digests.add(address(i), i);
+        }
+        digests.sortDescending(keys);
+        long[] expectedTimes = new long[] { 5, 1, 4, 0, 2, 6, 3 };
+        long[] expectedKeys = new long[] { Long.MAX_VALUE, 7, 7, 3, 3, 1, 0 };
+        for (int i = 0; i < expectedTimes.length; i++) {
+            assertEquals(expectedTimes[i], digests.getTime(i));
+            assertEquals(address((int) expectedTimes[i]),
+                         digests.getAddress(i));
+            assertEquals(expectedKeys[i], keys[i]);
+        }
+        try {
+            digests.sortDescending(new long[3]);
+            fail("Expected illegal argument");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testWriteTo() throws Exception {
+        DigestList digests = new DigestList();
+        digests.add(address(1), 666);
+        digests.add(address(2), Long.MAX_VALUE);
+        ByteBuffer buffer = ByteBuffer.allocate(2 * GossipMessages.DIGEST_BYTE_SIZE);
+        digests.writeTo(0, buffer);
+        digests.writeTo(1, buffer);
+        buffer.flip();
+        assertEquals(digests.get(0), new Digest(buffer));
+        assertEquals(digests.get(1), new Digest(buffer));
+
+        buffer = ByteBuffer.allocate(1024);
+        CompactEncoding msg = new CompactEncoding(buffer);
+        digests.writeTo(0, msg);
+        digests.writeTo(1, msg);
+        buffer.flip();
+        msg = new CompactEncoding(buffer);
+        assertEquals(digests.get(0), new Digest(msg));
+        assertEquals(digests.get(1), new Digest(msg));
+    }
+}
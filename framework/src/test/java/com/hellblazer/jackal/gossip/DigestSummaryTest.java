@@ -0,0 +1,96 @@
+/** (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.gossip;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Basic testing of the digest summary
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public class DigestSummaryTest extends TestCase {
+
+    private static InetSocketAddress address(int i) throws Exception {
+        return new InetSocketAddress(
+                                     InetAddress.getByAddress(new byte[] { 10,
+                                             0, (byte) (i >>> 8), (byte) i }),
+                                     1000 + i % 7);
+    }
+
+    private static DigestList digests(int count) throws Exception {
+        DigestList digests = new DigestList();
+        for (int i = 0; i < count; i++) {
+            digests.add(address(i), 1000 + i);
+        }
+        return digests;
+    }
+
+    public void testDifference() throws Exception {
+        DigestList local = digests(1000);
+        DigestList remote = digests(1000);
+        remote.set(10, new Digest(address(10), 666));
+        remote.add(address(1000), 0);
+
+        DigestSummary localSummary = new DigestSummary(local);
+        DigestSummary remoteSummary = new DigestSummary(remote);
+        assertFalse(localSummary.equals(remoteSummary));
+
+        DigestList difference = localSummary.difference(local, remoteSummary);
+        assertTrue(difference.size() < local.size() / 10);
+        assertTrue(difference.contains(local.get(10)));
+        int changed = DigestSummary.bucket(address(10));
+        int added = DigestSummary.bucket(address(1000));
+        for (Digest digest : local) {
+            int bucket = DigestSummary.bucket(digest.getAddress());
+            assertEquals(bucket == changed || bucket == added,
+                         difference.contains(digest));
+        }
+
+        difference = remoteSummary.difference(remote, localSummary);
+        assertTrue(difference.contains(remote.get(10)));
+        assertTrue(difference.contains(remote.get(1000)));
+    }
+
+    public void testOrderIndependence() throws Exception {
+        DigestList digests = digests(500);
+        DigestSummary summary = new DigestSummary(digests);
+        DigestList shuffled = new DigestList(digests);
+        shuffled.shuffle(new Random(666));
+        DigestSummary shuffledSummary = new DigestSummary(shuffled);
+        assertEquals(summary, shuffledSummary);
+        assertTrue(summary.difference(digests, shuffledSummary).isEmpty());
+        assertFalse(summary.equals(new DigestSummary(new DigestList())));
+    }
+
+    public void testWriteTo() throws Exception {
+        for (int count : new int[] { 0, 1, 10, 5000 }) {
+            DigestSummary summary = new DigestSummary(digests(count));
+            ByteBuffer buffer = ByteBuffer.allocate(DigestSummary.MAX_BYTE_SIZE);
+            summary.writeTo(buffer);
+            buffer.flip();
+            assertEquals(summary, new DigestSummary(buffer));
+            assertFalse(buffer.hasRemaining());
+        }
+    }
+}
@@ -51,4 +51,17 @@ public class DigestTest extends TestCase {
         Digest g2 = new Digest(address, 668);
         assertEquals(1, comparator.compare(g2, d));
     }
+
+    public void testComparatorDoesNotOverflow() throws Exception {
+        InetSocketAddress address = new InetSocketAddress("localhost", 80);
+        DigestComparator comparator = new DigestComparator();
+        Digest early = new Digest(address, 0);
+        Digest late = new Digest(address, Integer.MAX_VALUE + 1L);
+        assertTrue(comparator.compare(early, late) < 0);
+        assertTrue(comparator.compare(late, early) > 0);
+        Digest unknown = new Digest(address, -1);
+        Digest latest = new Digest(address, Long.MAX_VALUE);
+        assertTrue(comparator.compare(unknown, latest) < 0);
+        assertTrue(comparator.compare(latest, unknown) > 0);
+    }
 }
@@ -0,0 +1,117 @@
+/** 
+ * (C) Copyright 2010 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.gossip;
+
+import java.net.InetSocketAddress;
+
+import junit.framework.TestCase;
+
+import org.smartfrog.services.anubis.partition.util.Identity;
+import org.smartfrog.services.anubis.partition.util.NodeIdSet;
+
+/**
+ * Basic testing of the gossip policies
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public class GossipPolicyTest extends TestCase {
+
+    private static HeartbeatState state(boolean stable) {
+        return new HeartbeatState(new Identity(666, 0, 0), false,
+                                  new InetSocketAddress("127.0.0.1", 1),
+                                  new NodeIdSet(), true, new Identity(666, 1,
+                                                                      1), null,
+                                  stable, null, new NodeIdSet(), 0, 0);
+    }
+
+    public void testBackOff() {
+        AdaptiveGossipPolicy policy = new AdaptiveGossipPolicy(100, 1000, 4);
+        assertEquals(1, policy.fanout());
+        assertEquals(100, policy.interval());
+        assertEquals(200, policy.interval());
+        assertEquals(400, policy.interval());
+        assertEquals(800, policy.interval());
+        assertEquals(1000, policy.interval());
+        assertEquals(1000, policy.interval());
+        assertEquals(1, policy.fanout());
+    }
+
+    public void testChurn() {
+        AdaptiveGossipPolicy policy = new AdaptiveGossipPolicy(100, 1000, 4);
+        policy.interval();
+        policy.interval();
+        policy.membershipChanged();
+        assertEquals(100, policy.interval());
+        assertEquals(2, policy.fanout());
+
+        for (int i = 0; i < 10; i++) {
+            policy.membershipChanged();
+        }
+        assertEquals(100, policy.interval());
+        assertEquals(4, policy.fanout());
+
+        // the churn halves with each quiet round
+        assertEquals(200, policy.interval());
+        assertEquals(3, policy.fanout());
+        assertEquals(400, policy.interval());
+        assertEquals(2, policy.fanout());
+        assertEquals(800, policy.interval());
+        assertEquals(1, policy.fanout());
+    }
+
+    public void testFixed() {
+        FixedGossipPolicy policy = new FixedGossipPolicy(500);
+        policy.membershipChanged();
+        policy.updated(state(false));
+        assertEquals(1, policy.fanout());
+        assertEquals(500, policy.interval());
+    }
+
+    public void testInvalid() {
+        try {
+            new AdaptiveGossipPolicy(0, 1000, 4);
+            fail("Expected illegal argument");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            new AdaptiveGossipPolicy(1000, 100, 4);
+            fail("Expected illegal argument");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            new AdaptiveGossipPolicy(100, 1000, 0);
+            fail("Expected illegal argument");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testUnstableUpdates() {
+        AdaptiveGossipPolicy policy = new AdaptiveGossipPolicy(100, 1000, 4);
+        policy.interval();
+        policy.updated(state(true));
+        assertEquals(200, policy.interval());
+        assertEquals(1, policy.fanout());
+        policy.updated(state(false));
+        assertEquals(100, policy.interval());
+        assertEquals(2, policy.fanout());
+    }
+}
@@ -1,9 +1,12 @@
 package com.hellblazer.jackal.gossip;
 
 import static java.util.Arrays.asList;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isA;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -11,16 +14,20 @@ import static org.mockito.Mockito.when;
 import java.lang.reflect.Field;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.Queue;
 import java.util.Random;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 
 import junit.framework.TestCase;
 
+import org.mockito.ArgumentCaptor;
 import org.mockito.internal.verification.Times;
 import org.smartfrog.services.anubis.partition.protocols.partitionmanager.ConnectionManager;
 import org.smartfrog.services.anubis.partition.util.Identity;
 
+import com.hellblazer.jackal.gossip.fd.TimedFailureDetectorFactory;
+
 public class GossipTest extends TestCase {
 
     public void testApplyDiscover() throws Exception {
@@ -265,4 +272,174 @@ public class GossipTest extends TestCase {
                                     asList(state2, state4));
         verifyNoMoreInteractions(gossipHandler);
     }
+
+    public void testConvictSilentPeer() throws Exception {
+        GossipCommunications communications = mock(GossipCommunications.class);
+        SystemView view = mock(SystemView.class);
+        Random random = mock(Random.class);
+        InetSocketAddress localAddress = new InetSocketAddress("127.0.0.1", 0);
+        when(view.getLocalAddress()).thenReturn(localAddress);
+        when(communications.getLocalAddress()).thenReturn(localAddress);
+
+        InetSocketAddress address1 = new InetSocketAddress("127.0.0.1", 1);
+        HeartbeatState state1 = new HeartbeatState(null,
+                                                   new Identity(666, 1, 0),
+                                                   address1);
+        state1.setTime(1);
+
+        FailureDetectorFactory fdFactory = new TimedFailureDetectorFactory(100);
+        Gossip gossip = new Gossip(view, random, communications, 4,
+                                   TimeUnit.DAYS, fdFactory, new Identity(0, 0,
+                                                                          0));
+
+        Field ep = Gossip.class.getDeclaredField("endpoints");
+        ep.setAccessible(true);
+        @SuppressWarnings("unchecked")
+        ConcurrentMap<InetSocketAddress, Endpoint> endpoints = (ConcurrentMap<InetSocketAddress, Endpoint>) ep.get(gossip);
+        Field c = Gossip.class.getDeclaredField("connected");
+        c.setAccessible(true);
+        @SuppressWarnings("unchecked")
+        Queue<InetSocketAddress> connected = (Queue<InetSocketAddress>) c.get(gossip);
+
+        // the new endpoint is examined before its detector has a sample
+        Endpoint endpoint = new Endpoint(state1, fdFactory.create());
+        endpoints.put(address1, endpoint);
+        connected.add(address1);
+        gossip.checkStatus();
+        assertTrue(endpoint.isAlive());
+
+        // a single heartbeat, then silence
+        HeartbeatState state2 = new HeartbeatState(null,
+                                                   new Identity(666, 1, 0),
+                                                   address1);
+        state2.setTime(System.currentTimeMillis());
+        endpoint.record(state2);
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (endpoint.isAlive() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            gossip.checkStatus();
+        }
+        assertFalse("silent peer not convicted", endpoint.isAlive());
+        verify(view).markDead(eq(address1), anyLong());
+        verify(communications).forget(address1);
+    }
+
+    public void testProbeAcknowledgedByRespondersOnly() throws Exception {
+        ProbeFixture fixture = new ProbeFixture();
+        int nonce = fixture.probe();
+        verify(fixture.intermediary).pingRequest(fixture.suspectAddress, nonce);
+
+        // neither a stranger nor the intermediary of another probe may
+        // acknowledge the probe
+        fixture.gossip.ack(nonce, new InetSocketAddress("127.0.0.1", 666));
+        fixture.gossip.ack(nonce + 1, fixture.suspectAddress);
+        fixture.expire();
+        assertFalse("probe acknowledged by a stranger", fixture.suspect.isAlive());
+    }
+
+    public void testAcknowledgedProbeRequiresFreshHeartbeat() throws Exception {
+        ProbeFixture fixture = new ProbeFixture();
+        int nonce = fixture.probe();
+
+        // acknowledged through the intermediary, with a fresh heartbeat
+        fixture.gossip.ack(nonce, fixture.intermediaryAddress);
+        HeartbeatState fresh = new HeartbeatState(null,
+                                                  new Identity(666, 1, 0),
+                                                  fixture.suspectAddress);
+        fresh.setTime(2);
+        fixture.suspect.record(fresh);
+        fixture.expire();
+        assertTrue("acknowledged suspect convicted", fixture.suspect.isAlive());
+        ArgumentCaptor<Integer> reprobe = ArgumentCaptor.forClass(Integer.class);
+        verify(fixture.handler, times(2)).ping(reprobe.capture());
+
+        // acknowledged by the suspect itself, but without a heartbeat since
+        fixture.gossip.ack(reprobe.getValue(), fixture.suspectAddress);
+        fixture.expire();
+        assertFalse("suspect without fresh heartbeats not convicted",
+                    fixture.suspect.isAlive());
+    }
+
+    /**
+     * A suspect, an intermediary to probe it, and a gossip which probes the
+     * suspect
+     */
+    private static class ProbeFixture {
+        final Gossip            gossip;
+        final GossipMessages    handler             = mock(GossipMessages.class);
+        final GossipMessages    intermediary        = mock(GossipMessages.class);
+        final InetSocketAddress intermediaryAddress = new InetSocketAddress(
+                                                                            "127.0.0.1",
+                                                                            2);
+        final Endpoint          suspect;
+        final InetSocketAddress suspectAddress      = new InetSocketAddress(
+                                                                            "127.0.0.1",
+                                                                            1);
+
+        ProbeFixture() throws Exception {
+            GossipCommunications communications = mock(GossipCommunications.class);
+            SystemView view = mock(SystemView.class);
+            InetSocketAddress localAddress = new InetSocketAddress(
+                                                                   "127.0.0.1",
+                                                                   0);
+            when(view.getLocalAddress()).thenReturn(localAddress);
+            when(view.getLiveMembers()).thenReturn(asList(suspectAddress,
+                                                          intermediaryAddress));
+            when(communications.getLocalAddress()).thenReturn(localAddress);
+            gossip = new Gossip(view, new Random(), communications, 4,
+                                TimeUnit.DAYS,
+                                mock(FailureDetectorFactory.class),
+                                new Identity(0, 0, 0));
+            gossip.setIndirectProbes(1, 50);
+
+            FailureDetector suspicious = mock(FailureDetector.class);
+            when(suspicious.shouldConvict(anyLong())).thenReturn(true);
+            HeartbeatState state1 = new HeartbeatState(null,
+                                                       new Identity(666, 1, 0),
+                                                       suspectAddress);
+            state1.setTime(1);
+            suspect = new Endpoint(state1, suspicious);
+            suspect.setCommunications(handler);
+            HeartbeatState state2 = new HeartbeatState(null,
+                                                       new Identity(666, 2, 0),
+                                                       intermediaryAddress);
+            state2.setTime(1);
+            Endpoint endpoint2 = new Endpoint(state2,
+                                              mock(FailureDetector.class));
+            endpoint2.setCommunications(intermediary);
+
+            Field ep = Gossip.class.getDeclaredField("endpoints");
+            ep.setAccessible(true);
+            @SuppressWarnings("unchecked")
+            ConcurrentMap<InetSocketAddress, Endpoint> endpoints = (ConcurrentMap<InetSocketAddress, Endpoint>) ep.get(gossip);
+            endpoints.put(suspectAddress, suspect);
+            endpoints.put(intermediaryAddress, endpoint2);
+            Field c = Gossip.class.getDeclaredField("connected");
+            c.setAccessible(true);
+            @SuppressWarnings("unchecked")
+            Queue<InetSocketAddress> connected = (Queue<InetSocketAddress>) c.get(gossip);
+            connected.add(suspectAddress);
+        }
+
+        /**
+         * Let the pending probe expire, and check the status of the suspect
+         */
+        void expire() throws InterruptedException {
+            Thread.sleep(100);
+            gossip.checkStatus();
+        }
+
+        /**
+         * Suspect the endpoint, and answer the nonce of its probe
+         */
+        int probe() {
+            gossip.checkStatus();
+            assertTrue("suspect convicted before probing", suspect.isAlive());
+            ArgumentCaptor<Integer> nonce = ArgumentCaptor.forClass(Integer.class);
+            verify(handler).ping(nonce.capture());
+            verify(intermediary).pingRequest(eq(suspectAddress), anyInt());
+            return nonce.getValue();
+        }
+    }
 }
@@ -0,0 +1,130 @@
+package com.hellblazer.jackal.gossip;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * Basic testing of the heartbeat capture
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public class HeartbeatCaptureTest extends TestCase {
+    private File directory;
+
+    public void testCapture() throws Exception {
+        HeartbeatCapture capture = new HeartbeatCapture(directory, "test",
+                                                        4096, 0);
+        for (int i = 0; i < 100; i++) {
+            capture.capture(i % 7, 1000L * i, 1000L * i + i % 13);
+        }
+        capture.close();
+        assertEquals(0, capture.getDropped());
+
+        HeartbeatCaptureReader reader = new HeartbeatCaptureReader(directory,
+                                                                   "test");
+        for (int i = 0; i < 100; i++) {
+            assertTrue(reader.next());
+            assertEquals(i % 7, reader.getId());
+            assertEquals(1000L * i, reader.getHeartbeatTime());
+            assertEquals(1000L * i + i % 13, reader.getArrivalTime());
+            assertEquals(i % 13, reader.getDelay());
+        }
+        assertFalse(reader.next());
+    }
+
+    public void testConcurrentCapture() throws Exception {
+        final HeartbeatCapture capture = new HeartbeatCapture(directory,
+                                                              "test", 1 << 16,
+                                                              0);
+        final int threads = 4;
+        final int heartbeats = 20000;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < heartbeats; i++) {
+                        capture.capture(id, i, i);
+                        if (i % 1000 == 0) {
+                            // give the rotation thread a chance to map
+                            Thread.yield();
+                        }
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        capture.close();
+
+        int count = 0;
+        HeartbeatCaptureReader reader = new HeartbeatCaptureReader(directory,
+                                                                   "test");
+        while (reader.next()) {
+            int id = reader.getId();
+            assertTrue(id >= 0 && id < threads);
+            assertEquals(reader.getHeartbeatTime(), reader.getArrivalTime());
+            assertEquals(0, reader.getDelay());
+            count++;
+        }
+        assertEquals(threads * heartbeats - capture.getDropped(), count);
+        assertTrue(count > 0);
+    }
+
+    public void testRotation() throws Exception {
+        int perSegment = 10;
+        HeartbeatCapture capture = new HeartbeatCapture(
+                                                        directory,
+                                                        "test",
+                                                        HeartbeatCapture.HEADER_SIZE
+                                                                + perSegment
+                                                                * HeartbeatCapture.RECORD_SIZE,
+                                                        3);
+        for (int i = 0; i < 100; i++) {
+            capture.capture(1, i, i);
+            // let the rotation thread map the next segment
+            Thread.sleep(1);
+        }
+        capture.close();
+        assertTrue(HeartbeatCapture.segments(directory, "test").length <= 3);
+
+        // only the most recent heartbeats are retained, in order
+        HeartbeatCaptureReader reader = new HeartbeatCaptureReader(directory,
+                                                                   "test");
+        long previous = -1;
+        int count = 0;
+        while (reader.next()) {
+            assertTrue(reader.getHeartbeatTime() > previous);
+            previous = reader.getHeartbeatTime();
+            count++;
+        }
+        assertTrue(count > 0);
+        assertTrue(count <= 3 * perSegment);
+        if (capture.getDropped() == 0) {
+            assertEquals(99L, previous);
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = File.createTempFile("capture", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdirs());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.gossip;
+
+import static java.util.Arrays.asList;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import junit.framework.TestCase;
+
+import org.smartfrog.services.anubis.partition.protocols.partitionmanager.ConnectionManager;
+import org.smartfrog.services.anubis.partition.util.Identity;
+import org.smartfrog.services.anubis.partition.wire.msg.Heartbeat;
+
+/**
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ *
+ */
+public class HeartbeatDeliveryTest extends TestCase {
+
+    private static class Receiver implements ConnectionManager {
+        final List<Heartbeat> received = new ArrayList<Heartbeat>();
+
+        @Override
+        public void connectTo(Identity peer) {
+        }
+
+        @Override
+        public boolean receiveHeartbeat(Heartbeat hb) {
+            assertTrue(Thread.holdsLock(this));
+            received.add(hb);
+            return true;
+        }
+    }
+
+    private static class Tasks implements Executor {
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+    }
+
+    private static HeartbeatState state(int port, long time) {
+        HeartbeatState state = new HeartbeatState(
+                                                  new InetSocketAddress(
+                                                                        "127.0.0.1",
+                                                                        port));
+        state.setTime(time);
+        return state;
+    }
+
+    public void testCoalescing() {
+        Receiver receiver = new Receiver();
+        Tasks tasks = new Tasks();
+        HeartbeatDelivery delivery = new HeartbeatDelivery(receiver, tasks);
+        HeartbeatState a1 = state(1, 1);
+        HeartbeatState a2 = state(1, 2);
+        HeartbeatState a0 = state(1, 0);
+        HeartbeatState b1 = state(2, 1);
+        delivery.offer(a1);
+        delivery.offer(a2);
+        delivery.offer(b1);
+        delivery.offer(a0);
+        assertEquals(1, tasks.tasks.size());
+
+        tasks.tasks.get(0).run();
+        assertEquals(2, receiver.received.size());
+        assertEquals(new HashSet<Heartbeat>(receiver.received),
+                     new HashSet<Heartbeat>(asList(a2, b1)));
+
+        HeartbeatState a3 = state(1, 3);
+        delivery.offer(a3);
+        assertEquals(2, tasks.tasks.size());
+        tasks.tasks.get(1).run();
+        assertEquals(3, receiver.received.size());
+        assertSame(a3, receiver.received.get(2));
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.gossip;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.net.InetSocketAddress;
+
+import junit.framework.TestCase;
+
+import org.mockito.ArgumentCaptor;
+
+/**
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ *
+ */
+public class LocalHealthTest extends TestCase {
+
+    public void testMissedTicks() {
+        LocalHealth health = new LocalHealth(100, 8);
+        assertEquals(1, health.multiplier());
+        health.tick(1000, 500, 1050);
+        assertEquals(0, health.getScore());
+        health.tick(1000, 500, 2600);
+        assertEquals(3, health.getScore());
+        assertEquals(4, health.multiplier());
+        health.tick(1000, 500, 1000 + 60000);
+        assertEquals(8, health.getScore());
+        health.reset();
+        assertEquals(1, health.multiplier());
+    }
+
+    public void testRecovery() {
+        LocalHealth health = new LocalHealth(100, 8);
+        health.delayed(1500, 500);
+        assertEquals(3, health.getScore());
+        health.delayed(101, 500);
+        assertEquals(4, health.getScore());
+        health.delayed(0, 500);
+        health.delayed(100, 500);
+        assertEquals(2, health.getScore());
+        health.delayed(0, 500);
+        health.delayed(0, 500);
+        health.delayed(0, 500);
+        assertEquals(0, health.getScore());
+    }
+
+    public void testScaledConviction() {
+        FailureDetector fd = mock(FailureDetector.class);
+        long before = System.currentTimeMillis();
+        Endpoint endpoint = new Endpoint(
+                                         new HeartbeatState(
+                                                            new InetSocketAddress(
+                                                                                  "127.0.0.1",
+                                                                                  1)),
+                                         fd);
+        long after = System.currentTimeMillis();
+        endpoint.shouldConvict(before + 4000, 4);
+        ArgumentCaptor<Long> scaled = ArgumentCaptor.forClass(Long.class);
+        verify(fd).shouldConvict(scaled.capture());
+        assertTrue(scaled.getValue() >= before + 1000);
+        assertTrue(scaled.getValue() <= after + 1000);
+    }
+}
@@ -0,0 +1,156 @@
+/** 
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.gossip;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * Testing of the indexable member set
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public class MemberSetTest extends TestCase {
+    public void testAddressOrder() throws Exception {
+        MemberSet members = new MemberSet();
+        InetSocketAddress a = address(2, 1);
+        InetSocketAddress b = address(10, 1);
+        InetSocketAddress c = address(200, 1);
+        InetSocketAddress d = address(200, 2);
+        assertTrue(members.add(d));
+        assertTrue(members.add(b));
+        assertTrue(members.add(c));
+        assertTrue(members.add(a));
+        assertFalse(members.add(address(10, 1)));
+        assertEquals(4, members.size());
+        assertEquals(a, members.get(0));
+        assertEquals(b, members.get(1));
+        assertEquals(c, members.get(2));
+        assertEquals(d, members.get(3));
+
+        assertTrue(members.remove(b));
+        assertFalse(members.remove(b));
+        assertFalse(members.contains(b));
+        assertTrue(members.contains(c));
+        assertEquals(c, members.get(1));
+    }
+
+    public void testIPv6AfterIPv4() throws Exception {
+        MemberSet members = new MemberSet();
+        InetSocketAddress v4 = address(200, 1);
+        InetSocketAddress v6 = new InetSocketAddress(
+                                                     InetAddress.getByAddress(new byte[16]),
+                                                     1);
+        assertTrue(members.add(v6));
+        assertTrue(members.add(v4));
+        assertFalse(members.add(v6));
+        assertEquals(v4, members.get(0));
+        assertEquals(v6, members.get(1));
+        assertTrue(members.contains(v6));
+        assertTrue(members.remove(v4));
+        assertEquals(v6, members.get(0));
+    }
+
+    public void testIterationIsASnapshot() throws Exception {
+        MemberSet members = new MemberSet();
+        for (int i = 0; i < 10; i++) {
+            members.add(new InetSocketAddress("127.0.0.1", 100 + i));
+        }
+        Iterator<InetSocketAddress> iterator = members.iterator();
+        members.clear();
+        assertTrue(members.isEmpty());
+        int count = 0;
+        while (iterator.hasNext()) {
+            assertEquals(100 + count++, iterator.next().getPort());
+        }
+        assertEquals(10, count);
+    }
+
+    public void testRandom() throws Exception {
+        MemberSet members = new MemberSet();
+        Random entropy = new Random(666);
+        assertNull(members.random(entropy));
+        InetSocketAddress only = new InetSocketAddress("127.0.0.1", 1);
+        members.add(only);
+        assertSame(only, members.random(entropy));
+
+        List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+        for (int i = 0; i < 1000; i++) {
+            InetSocketAddress address = new InetSocketAddress("127.0.0.1",
+                                                              1000 + i);
+            addresses.add(address);
+            members.add(address);
+        }
+        members.remove(only);
+        int[] counts = new int[addresses.size()];
+        for (int i = 0; i < 100 * addresses.size(); i++) {
+            InetSocketAddress selected = members.random(entropy);
+            counts[selected.getPort() - 1000]++;
+        }
+        for (int count : counts) {
+            assertTrue(count > 0);
+        }
+    }
+
+    public void testRandomDistinct() throws Exception {
+        MemberSet members = new MemberSet();
+        Random entropy = new Random(666);
+        InetSocketAddress[] selected = new InetSocketAddress[3];
+        assertEquals(0, members.random(entropy, selected));
+        for (int i = 0; i < 5; i++) {
+            members.add(address(i, 1));
+        }
+        int[] counts = new int[5];
+        for (int round = 0; round < 1000; round++) {
+            assertEquals(3, members.random(entropy, selected));
+            Set<InetSocketAddress> distinct = new HashSet<InetSocketAddress>(
+                                                                             Arrays.asList(selected));
+            assertEquals(3, distinct.size());
+            for (InetSocketAddress member : selected) {
+                assertTrue(members.contains(member));
+                counts[member.getAddress().getAddress()[3]]++;
+            }
+        }
+        for (int count : counts) {
+            assertTrue(count > 0);
+        }
+
+        InetSocketAddress[] all = new InetSocketAddress[10];
+        assertEquals(5, members.random(entropy, all));
+        assertEquals(5,
+                     new HashSet<InetSocketAddress>(
+                                                    Arrays.asList(all).subList(0,
+                                                                               5)).size());
+    }
+
+    private InetSocketAddress address(int host, int port) throws Exception {
+        return new InetSocketAddress(
+                                     InetAddress.getByAddress(new byte[] { 10,
+                                             0, 0, (byte) host }), port);
+    }
+}
@@ -0,0 +1,102 @@
+/** 
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.gossip;
+
+import static java.util.Arrays.asList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.smartfrog.services.anubis.partition.util.NodeIdSet;
+
+/**
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public class RingTest extends TestCase {
+
+    private static InetSocketAddress address(int id) {
+        return new InetSocketAddress("127.0.0.1", 1024 + id);
+    }
+
+    private final Map<Integer, Endpoint> endpoints = new HashMap<Integer, Endpoint>();
+    private final NodeIdSet              members   = new NodeIdSet();
+
+    public void testFanout() {
+        Ring ring = new Ring(20, null);
+        ring.setFanout(4);
+        ring.update(members, endpoints);
+        assertEquals(asList(address(18), address(16), address(12), address(4)),
+                     asList(ring.getNeighbors()));
+
+        ring.setFanout(10);
+        ring.update(members, endpoints);
+        assertEquals(asList(address(18), address(16), address(12), address(4)),
+                     asList(ring.getNeighbors()));
+    }
+
+    public void testLeftNeighbor() {
+        Ring ring = new Ring(0, null);
+        ring.update(members, endpoints);
+        assertEquals(asList(address(30)), asList(ring.getNeighbors()));
+
+        members.remove(30);
+        ring.update(members, endpoints);
+        assertEquals(asList(address(28)), asList(ring.getNeighbors()));
+    }
+
+    public void testSend() {
+        GossipCommunications comms = mock(GossipCommunications.class);
+        HeartbeatState state = new HeartbeatState(address(20));
+        Ring ring = new Ring(20, comms);
+        ring.send(state);
+        ring.setFanout(2);
+        ring.update(members, endpoints);
+        ring.send(state);
+        verify(comms).send(state, address(18));
+        verify(comms).send(state, address(16));
+    }
+
+    public void testUnformed() {
+        Ring ring = new Ring(4, null);
+        ring.update(members, endpoints);
+        assertEquals(1, ring.getNeighbors().length);
+
+        endpoints.remove(2);
+        ring.update(members, endpoints);
+        assertEquals(0, ring.getNeighbors().length);
+
+        NodeIdSet alone = new NodeIdSet();
+        alone.add(4);
+        ring.update(alone, endpoints);
+        assertEquals(0, ring.getNeighbors().length);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        for (int i = 0; i < 32; i += 2) {
+            members.add(i);
+            endpoints.put(i, new Endpoint(new HeartbeatState(address(i)), null));
+        }
+    }
+}
@@ -107,6 +107,45 @@ public class SystemViewTest extends TestCase {
         assertFalse(view.isQuarantined(live1));
     }
 
+    public void testUnreachable() throws Exception {
+        Random random = mock(Random.class);
+
+        InetSocketAddress local = new InetSocketAddress("127.0.0.1", 1);
+        InetSocketAddress seed1 = new InetSocketAddress("127.0.0.1", 2);
+        InetSocketAddress live1 = new InetSocketAddress("127.0.0.1", 10);
+        InetSocketAddress live2 = new InetSocketAddress("127.0.0.1", 11);
+
+        Collection<InetSocketAddress> seedHosts = Arrays.asList(seed1);
+        int quarantineDelay = 30;
+        int unreachableDelay = 400;
+        SystemView view = new SystemView(random, local, seedHosts,
+                                         quarantineDelay, unreachableDelay);
+
+        view.markAlive(live1);
+        view.markAlive(live2);
+        view.markDead(live1, 0);
+        view.markDead(live2, 100);
+
+        assertTrue(view.cullUnreachable(unreachableDelay + 10).isEmpty());
+        assertTrue(view.isQuarantined(live1));
+        assertTrue(view.getUnreachableMembers().isEmpty());
+
+        view.cullQuarantined(quarantineDelay + 110);
+        assertFalse(view.isQuarantined(live1));
+        assertFalse(view.isQuarantined(live2));
+        assertEquals(2, view.getUnreachableMembers().size());
+
+        assertEquals(Arrays.asList(live1),
+                     view.cullUnreachable(unreachableDelay + 10));
+        assertEquals(1, view.getUnreachableMembers().size());
+        assertTrue(view.getUnreachableMembers().contains(live2));
+        assertEquals(0, view.getEndpointDowntime(live1));
+
+        assertEquals(Arrays.asList(live2),
+                     view.cullUnreachable(unreachableDelay + 110));
+        assertTrue(view.getUnreachableMembers().isEmpty());
+    }
+
     public void testSeedMembers() throws Exception {
         Random random = mock(Random.class);
         when(random.nextInt(4)).thenReturn(2);
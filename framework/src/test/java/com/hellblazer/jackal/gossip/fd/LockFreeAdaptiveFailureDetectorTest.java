@@ -0,0 +1,98 @@
+package com.hellblazer.jackal.gossip.fd;
+
+import java.lang.reflect.Field;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import junit.framework.TestCase;
+
+import com.hellblazer.jackal.gossip.FailureDetector;
+
+public class LockFreeAdaptiveFailureDetectorTest extends TestCase {
+
+    public void testAgreesWithAdaptiveDetector() throws Exception {
+        FailureDetector expected = new AdaptiveFailureDetector(0.9, 100, 0.9,
+                                                               500, 0, 1.0);
+        FailureDetector detector = new LockFreeAdaptiveFailureDetector(0.9,
+                                                                       100,
+                                                                       0.9,
+                                                                       500, 0,
+                                                                       1.0);
+        Random random = new Random(666);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 1000; i++) {
+            now += 500 + random.nextInt(200) - 100;
+            long delay = random.nextInt(10);
+            expected.record(now, delay);
+            detector.record(now, delay);
+            assertFalse(expected.shouldConvict(expected.earliestConviction()
+                                               - 1));
+            assertFalse(detector.shouldConvict(detector.earliestConviction()
+                                               - 1));
+            for (int j = 0; j < 10; j++) {
+                long probe = now + random.nextInt(1000);
+                assertEquals(expected.shouldConvict(probe),
+                             detector.shouldConvict(probe));
+            }
+        }
+    }
+
+    public void testDetector() throws Exception {
+
+        FailureDetector detector = new LockFreeAdaptiveFailureDetectorFactory(
+                                                                              0.95,
+                                                                              1000,
+                                                                              0.95,
+                                                                              500,
+                                                                              0,
+                                                                              0.0).create();
+        Random random = new Random(666);
+
+        long average = 500;
+        int variance = 100;
+        long now = System.currentTimeMillis();
+
+        for (int i = 0; i < 950; i++) {
+            now += average;
+            now += variance / 2 - random.nextInt(variance);
+            detector.record(now, 0L);
+        }
+
+        assertEquals(false, detector.shouldConvict(now + variance));
+
+        now += 573;
+        assertFalse(detector.shouldConvict(now));
+
+        assertTrue(detector.shouldConvict(now + 30000));
+    }
+
+    public void testDrops() throws Exception {
+        LockFreeAdaptiveFailureDetector detector = new LockFreeAdaptiveFailureDetector(
+                                                                                       0.9,
+                                                                                       100,
+                                                                                       1.0,
+                                                                                       500,
+                                                                                       0,
+                                                                                       1.0);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 5; i++) {
+            detector.record(now, 0L);
+            now += 500;
+        }
+        long earliest = detector.earliestConviction();
+
+        // a heartbeat recorded while another is being recorded is dropped
+        Field field = LockFreeAdaptiveFailureDetector.class.getDeclaredField("recording");
+        field.setAccessible(true);
+        AtomicBoolean recording = (AtomicBoolean) field.get(detector);
+        recording.set(true);
+        detector.record(now, 0L);
+        assertEquals(1, detector.getDrops());
+        assertEquals(earliest, detector.earliestConviction());
+
+        recording.set(false);
+        detector.record(now, 0L);
+        assertEquals(1, detector.getDrops());
+        assertTrue(earliest < detector.earliestConviction());
+    }
+}
@@ -0,0 +1,107 @@
+package com.hellblazer.jackal.gossip.fd;
+
+import java.lang.reflect.Field;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import junit.framework.TestCase;
+
+import com.hellblazer.jackal.gossip.FailureDetector;
+
+/**
+ * Basic testing of the lock free phi accrual failure detector
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public class LockFreePhiAccrualFailureDetectorTest extends TestCase {
+
+    public void testAgreesWithPhiAccrualDetector() throws Exception {
+        for (boolean useMedian : new boolean[] { false, true }) {
+            FailureDetector expected = new PhiAccrualFailureDetector(
+                                                                     3,
+                                                                     useMedian,
+                                                                     100, 500,
+                                                                     0, 1.0);
+            FailureDetector detector = new LockFreePhiAccrualFailureDetector(
+                                                                             3,
+                                                                             useMedian,
+                                                                             100,
+                                                                             500,
+                                                                             0,
+                                                                             1.0);
+            Random random = new Random(666);
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < 1000; i++) {
+                now += 500 + random.nextInt(200) - 100;
+                expected.record(now, 0L);
+                detector.record(now, 0L);
+                assertFalse(expected.shouldConvict(expected.earliestConviction()
+                                                   - 1));
+                assertFalse(detector.shouldConvict(detector.earliestConviction()
+                                                   - 1));
+                for (int j = 0; j < 10; j++) {
+                    // stay clear of the boundary, where rounding may differ
+                    long probe = now + random.nextInt(5000);
+                    boolean before = expected.shouldConvict(probe - 1);
+                    if (before == expected.shouldConvict(probe + 1)) {
+                        assertEquals(expected.shouldConvict(probe),
+                                     detector.shouldConvict(probe));
+                    }
+                }
+            }
+        }
+    }
+
+    public void testDetector() throws Exception {
+
+        FailureDetector detector = new LockFreePhiFailureDetectorFactory(11,
+                                                                         1000,
+                                                                         500,
+                                                                         0,
+                                                                         1.0,
+                                                                         false).create();
+        long inc = 500;
+
+        long now = System.currentTimeMillis();
+
+        for (int i = 0; i < 5; i++) {
+            detector.record(now, 0L);
+            now += inc;
+        }
+
+        assertFalse(detector.shouldConvict(now));
+
+        assertTrue(detector.shouldConvict(now + 30000));
+    }
+
+    public void testDrops() throws Exception {
+        LockFreePhiAccrualFailureDetector detector = new LockFreePhiAccrualFailureDetector(
+                                                                                           3,
+                                                                                           false,
+                                                                                           100,
+                                                                                           500,
+                                                                                           0,
+                                                                                           1.0);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 5; i++) {
+            detector.record(now, 0L);
+            now += 500;
+        }
+        long earliest = detector.earliestConviction();
+
+        // a heartbeat recorded while another is being recorded is dropped
+        Field field = LockFreePhiAccrualFailureDetector.class.getDeclaredField("recording");
+        field.setAccessible(true);
+        AtomicBoolean recording = (AtomicBoolean) field.get(detector);
+        recording.set(true);
+        detector.record(now, 0L);
+        assertEquals(1, detector.getDrops());
+        assertEquals(earliest, detector.earliestConviction());
+
+        recording.set(false);
+        detector.record(now, 0L);
+        assertEquals(1, detector.getDrops());
+        assertTrue(earliest < detector.earliestConviction());
+    }
+}
@@ -0,0 +1,640 @@
+/** 
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.gossip.udp;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.smartfrog.services.anubis.partition.util.Identity;
+import org.smartfrog.services.anubis.partition.util.NodeIdSet;
+
+import com.hellblazer.jackal.gossip.CompactEncoding;
+import com.hellblazer.jackal.gossip.Digest;
+import com.hellblazer.jackal.gossip.DigestList;
+import com.hellblazer.jackal.gossip.DigestSummary;
+import com.hellblazer.jackal.gossip.Endpoint;
+import com.hellblazer.jackal.gossip.GossipMessages;
+import com.hellblazer.jackal.gossip.HeartbeatState;
+
+/**
+ * Test that the gossip datagrams carry only the encoded bytes of the messages
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public class DatagramSizeTest extends TestCase {
+    private static final int DIGEST_SIZE = 1 + 4 + 4 + 8; // IPv4 address, port, time
+    private static final int HEADER_SIZE = 4 + 1;        // magic, message type
+
+    public void testBatchedRoundPackets() throws Exception {
+        UdpCommunications communications = new UdpCommunications(
+                                                                  new InetSocketAddress(
+                                                                                        "127.0.0.1",
+                                                                                        0),
+                                                                  Executors.newCachedThreadPool());
+        DatagramSocket target = new DatagramSocket(
+                                                   0,
+                                                   communications.getLocalAddress().getAddress());
+        target.setSoTimeout(10000);
+        InetSocketAddress targetAddress = new InetSocketAddress(
+                                                                target.getLocalAddress(),
+                                                                target.getLocalPort());
+        try {
+            Endpoint endpoint = new Endpoint();
+            communications.connect(targetAddress, endpoint, new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+            List<Digest> digests = new ArrayList<Digest>();
+            long time = System.currentTimeMillis();
+            for (int i = 0; i < 200; i++) {
+                digests.add(new Digest(new InetSocketAddress("127.0.0.1",
+                                                             20000 + i),
+                                       time + i * 10));
+            }
+
+            communications.setCompact(false);
+            endpoint.getHandler().gossip(digests);
+            assertEquals(4, communications.getDatagramsSent());
+            int received = 0;
+            for (int i = 0; i < 4; i++) {
+                ByteBuffer datagram = receiveDatagram(target);
+                assertEquals(AbstractUdpCommunications.MAGIC_NUMBER,
+                             datagram.getInt());
+                assertEquals(GossipMessages.GOSSIP, datagram.get());
+                int count = datagram.getInt();
+                assertEquals(count * DIGEST_SIZE, datagram.remaining());
+                for (int j = 0; j < count; j++) {
+                    assertEquals(digests.get(received++), new Digest(datagram));
+                }
+            }
+            assertEquals(digests.size(), received);
+
+            communications.setCompact(true);
+            communications.deliver(targetAddress, advertisement());
+            endpoint.getHandler().gossip(digests);
+            assertEquals(5, communications.getDatagramsSent());
+            ByteBuffer datagram = receiveDatagram(target);
+            assertEquals(AbstractUdpCommunications.COMPACT_MAGIC_NUMBER,
+                         datagram.getInt());
+            assertEquals(GossipMessages.GOSSIP, datagram.get());
+            datagram.getShort();
+            assertEquals(AbstractUdpCommunications.LAST_FRAGMENT,
+                         datagram.get());
+            assertEquals(digests.size(), datagram.getShort());
+            CompactEncoding msg = new CompactEncoding(datagram);
+            for (Digest digest : digests) {
+                assertEquals(digest, new Digest(msg));
+            }
+            assertFalse(datagram.hasRemaining());
+        } finally {
+            target.close();
+        }
+    }
+
+    public void testBatchedUpdates() throws Exception {
+        UdpCommunications communications = new UdpCommunications(
+                                                                  new InetSocketAddress(
+                                                                                        "127.0.0.1",
+                                                                                        0),
+                                                                  Executors.newCachedThreadPool());
+        DatagramSocket target = new DatagramSocket(
+                                                   0,
+                                                   communications.getLocalAddress().getAddress());
+        target.setSoTimeout(10000);
+        InetSocketAddress targetAddress = new InetSocketAddress(
+                                                                target.getLocalAddress(),
+                                                                target.getLocalPort());
+        try {
+            Endpoint endpoint = new Endpoint();
+            communications.connect(targetAddress, endpoint, new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+            List<HeartbeatState> states = new ArrayList<HeartbeatState>();
+            for (int i = 0; i < 100; i++) {
+                HeartbeatState state = new HeartbeatState(
+                                                          new Identity(666, 0,
+                                                                       0),
+                                                          false,
+                                                          new InetSocketAddress(
+                                                                                "127.0.0.1",
+                                                                                20000 + i),
+                                                          new NodeIdSet(),
+                                                          true,
+                                                          new Identity(666, i,
+                                                                       1),
+                                                          null, false, null,
+                                                          new NodeIdSet(), 0,
+                                                          0);
+                state.setTime(i);
+                states.add(state);
+            }
+
+            communications.setCompact(false);
+            endpoint.getHandler().update(states);
+            assertEquals(states.size(), communications.getDatagramsSent());
+            for (int i = 0; i < states.size(); i++) {
+                receive(target);
+            }
+
+            communications.setCompact(true);
+            communications.deliver(targetAddress, advertisement());
+            endpoint.getHandler().update(states);
+            long datagrams = communications.getDatagramsSent() - states.size();
+            assertTrue("states not batched: " + datagrams, datagrams <= 3);
+            int received = 0;
+            for (int i = 0; i < datagrams; i++) {
+                ByteBuffer datagram = receiveDatagram(target);
+                assertEquals(AbstractUdpCommunications.COMPACT_MAGIC_NUMBER,
+                             datagram.getInt());
+                assertEquals(GossipMessages.UPDATE, datagram.get());
+                int count = datagram.getShort();
+                CompactEncoding msg = new CompactEncoding(datagram);
+                for (int j = 0; j < count; j++) {
+                    HeartbeatState expected = states.get(received++);
+                    HeartbeatState state = new HeartbeatState(msg);
+                    assertEquals(expected.getSender(), state.getSender());
+                    assertEquals(expected.getHeartbeatAddress(),
+                                 state.getHeartbeatAddress());
+                    assertEquals(expected.getTime(), state.getTime());
+                }
+                assertFalse(datagram.hasRemaining());
+            }
+            assertEquals(states.size(), received);
+        } finally {
+            target.close();
+        }
+    }
+
+    public void testMultipleBatchUpdates() throws Exception {
+        UdpCommunications communications = new UdpCommunications(
+                                                                  new InetSocketAddress(
+                                                                                        "127.0.0.1",
+                                                                                        0),
+                                                                  Executors.newCachedThreadPool());
+        DatagramSocket target = new DatagramSocket(
+                                                   0,
+                                                   communications.getLocalAddress().getAddress());
+        target.setSoTimeout(10000);
+        InetSocketAddress targetAddress = new InetSocketAddress(
+                                                                target.getLocalAddress(),
+                                                                target.getLocalPort());
+        try {
+            Endpoint endpoint = new Endpoint();
+            communications.connect(targetAddress, endpoint, new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+            List<HeartbeatState> states = new ArrayList<HeartbeatState>();
+            for (int i = 0; i < 300; i++) {
+                HeartbeatState state = new HeartbeatState(
+                                                          new Identity(666, i,
+                                                                       0),
+                                                          false,
+                                                          new InetSocketAddress(
+                                                                                InetAddress.getByAddress(new byte[] {
+                                                                                        10,
+                                                                                        0,
+                                                                                        (byte) (i >> 8),
+                                                                                        (byte) i }),
+                                                                                20000 + i),
+                                                          new NodeIdSet(),
+                                                          true,
+                                                          new Identity(666, i,
+                                                                       1),
+                                                          null, false, null,
+                                                          new NodeIdSet(), 0,
+                                                          0);
+                state.setTime(i);
+                states.add(state);
+            }
+
+            communications.setCompact(true);
+            communications.deliver(targetAddress, advertisement());
+            endpoint.getHandler().update(states);
+            long datagrams = communications.getDatagramsSent();
+            assertTrue("updates not split: " + datagrams, datagrams > 2);
+            int received = 0;
+            for (int i = 0; i < datagrams; i++) {
+                ByteBuffer datagram = receiveDatagram(target);
+                assertTrue("datagram too large: " + datagram.remaining(),
+                           datagram.remaining() <= AbstractUdpCommunications.MAX_SEG_SIZE);
+                assertEquals(AbstractUdpCommunications.COMPACT_MAGIC_NUMBER,
+                             datagram.getInt());
+                assertEquals(GossipMessages.UPDATE, datagram.get());
+                int count = datagram.getShort();
+                CompactEncoding msg = new CompactEncoding(datagram);
+                for (int j = 0; j < count; j++) {
+                    HeartbeatState expected = states.get(received++);
+                    HeartbeatState state = new HeartbeatState(msg);
+                    assertEquals(expected.getHeartbeatAddress(),
+                                 state.getHeartbeatAddress());
+                    assertEquals(expected.getTime(), state.getTime());
+                }
+                assertFalse(datagram.hasRemaining());
+            }
+            assertEquals(states.size(), received);
+        } finally {
+            target.close();
+        }
+    }
+
+    public void testBlockingDatagramSizes() throws Exception {
+        verifyDatagramSizes(new UdpCommunications(
+                                                  new InetSocketAddress(
+                                                                        "127.0.0.1",
+                                                                        0),
+                                                  Executors.newCachedThreadPool()));
+    }
+
+    public void testCompactDatagramSizes() throws Exception {
+        UdpCommunications communications = new UdpCommunications(
+                                                                  new InetSocketAddress(
+                                                                                        "127.0.0.1",
+                                                                                        0),
+                                                                  Executors.newCachedThreadPool());
+        DatagramSocket target = new DatagramSocket(
+                                                   0,
+                                                   communications.getLocalAddress().getAddress());
+        target.setSoTimeout(10000);
+        InetSocketAddress targetAddress = new InetSocketAddress(
+                                                                target.getLocalAddress(),
+                                                                target.getLocalPort());
+        try {
+            Endpoint endpoint = new Endpoint();
+            communications.connect(targetAddress, endpoint, new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+            communications.deliver(targetAddress, advertisement());
+            GossipMessages handler = endpoint.getHandler();
+
+            List<Digest> digests = new ArrayList<Digest>();
+            for (int i = 1; i <= 3; i++) {
+                digests.add(new Digest(new InetSocketAddress("127.0.0.1", i),
+                                       i));
+            }
+            handler.gossip(digests);
+            // round, fragment and count, first digest with its host, then
+            // host index, port and time delta
+            assertEquals(HEADER_SIZE + 2 + 1 + 2 + 8 + 3 + 3, receive(target));
+
+            handler.requestConnection(new Identity(666, 1, 1));
+            assertEquals(HEADER_SIZE + 2 + 1 + 1, receive(target));
+
+            HeartbeatState state = new HeartbeatState(
+                                                      new Identity(666, 0, 0),
+                                                      false,
+                                                      targetAddress,
+                                                      new NodeIdSet(), true,
+                                                      new Identity(666, 1, 1),
+                                                      null, false, null,
+                                                      new NodeIdSet(), 0, 0);
+            handler.update(Arrays.asList(state));
+            int length = receive(target);
+            assertTrue("compact heartbeat state not smaller: " + length,
+                       length < 40);
+            assertEquals(3, communications.getDatagramsSent());
+        } finally {
+            target.close();
+        }
+    }
+
+    public void testFragmentedRoundPackets() throws Exception {
+        UdpCommunications communications = new UdpCommunications(
+                                                                  new InetSocketAddress(
+                                                                                        "127.0.0.1",
+                                                                                        0),
+                                                                  Executors.newCachedThreadPool());
+        DatagramSocket target = new DatagramSocket(
+                                                   0,
+                                                   communications.getLocalAddress().getAddress());
+        target.setSoTimeout(10000);
+        InetSocketAddress targetAddress = new InetSocketAddress(
+                                                                target.getLocalAddress(),
+                                                                target.getLocalPort());
+        try {
+            Endpoint endpoint = new Endpoint();
+            communications.connect(targetAddress, endpoint, new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+            List<Digest> digests = new ArrayList<Digest>();
+            long time = System.currentTimeMillis();
+            for (int i = 0; i < 600; i++) {
+                digests.add(new Digest(
+                                       new InetSocketAddress(
+                                                             InetAddress.getByAddress(new byte[] {
+                                                                     10,
+                                                                     0,
+                                                                     (byte) (i >> 8),
+                                                                     (byte) i }),
+                                                             20000 + i),
+                                       time + i * 10));
+            }
+
+            communications.setCompact(true);
+            communications.deliver(targetAddress, advertisement());
+            endpoint.getHandler().gossip(digests);
+            long datagrams = communications.getDatagramsSent();
+            assertTrue("round not fragmented: " + datagrams, datagrams > 2);
+            int received = 0;
+            for (int i = 0; i < datagrams; i++) {
+                ByteBuffer datagram = receiveDatagram(target);
+                assertTrue("datagram too large: " + datagram.remaining(),
+                           datagram.remaining() <= AbstractUdpCommunications.MAX_SEG_SIZE);
+                assertEquals(AbstractUdpCommunications.COMPACT_MAGIC_NUMBER,
+                             datagram.getInt());
+                assertEquals(GossipMessages.GOSSIP, datagram.get());
+                datagram.getShort();
+                byte fragment = datagram.get();
+                assertEquals(i, fragment & ~AbstractUdpCommunications.LAST_FRAGMENT);
+                assertEquals(i == datagrams - 1,
+                             (fragment & AbstractUdpCommunications.LAST_FRAGMENT) != 0);
+                int count = datagram.getShort();
+                CompactEncoding msg = new CompactEncoding(datagram);
+                for (int j = 0; j < count; j++) {
+                    assertEquals(digests.get(received++), new Digest(msg));
+                }
+                assertFalse(datagram.hasRemaining());
+            }
+            assertEquals(digests.size(), received);
+        } finally {
+            target.close();
+        }
+    }
+
+    public void testForget() throws Exception {
+        UdpCommunications communications = new UdpCommunications(
+                                                                  new InetSocketAddress(
+                                                                                        "127.0.0.1",
+                                                                                        0),
+                                                                  Executors.newCachedThreadPool());
+        DatagramSocket target = new DatagramSocket(
+                                                   0,
+                                                   communications.getLocalAddress().getAddress());
+        target.setSoTimeout(10000);
+        InetSocketAddress targetAddress = new InetSocketAddress(
+                                                                target.getLocalAddress(),
+                                                                target.getLocalPort());
+        try {
+            Endpoint endpoint = new Endpoint();
+            communications.connect(targetAddress, endpoint, new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+            List<Digest> digests = Arrays.asList(new Digest(
+                                                            new InetSocketAddress(
+                                                                                  "127.0.0.1",
+                                                                                  20000),
+                                                            1));
+            communications.deliver(targetAddress, advertisement());
+            endpoint.getHandler().gossip(digests);
+            assertEquals(1, communications.getDatagramsSent());
+            assertEquals(AbstractUdpCommunications.COMPACT_MAGIC_NUMBER,
+                         receiveDatagram(target).getInt());
+
+            // a forgotten peer is sent the original encoding, and is
+            // advertised the compact encoding anew
+            communications.forget(targetAddress);
+            endpoint.getHandler().gossip(digests);
+            assertEquals(3, communications.getDatagramsSent());
+            ByteBuffer datagram = receiveDatagram(target);
+            assertEquals(AbstractUdpCommunications.MAGIC_NUMBER,
+                         datagram.getInt());
+            assertEquals(GossipMessages.GOSSIP, datagram.get());
+            datagram = receiveDatagram(target);
+            assertEquals(AbstractUdpCommunications.MAGIC_NUMBER,
+                         datagram.getInt());
+            assertEquals(GossipMessages.VERSION, datagram.get());
+        } finally {
+            target.close();
+        }
+    }
+
+    public void testNonBlockingDatagramSizes() throws Exception {
+        verifyDatagramSizes(new NioUdpCommunications(
+                                                     new InetSocketAddress(
+                                                                           "127.0.0.1",
+                                                                           0),
+                                                     Executors.newCachedThreadPool()));
+    }
+
+    public void testReceivedLength() throws Exception {
+        final int[] received = new int[1];
+        final CountDownLatch latch = new CountDownLatch(1);
+        UdpCommunications receiver = new UdpCommunications(
+                                                           new InetSocketAddress(
+                                                                                 "127.0.0.1",
+                                                                                 0),
+                                                           Executors.newCachedThreadPool()) {
+            @Override
+            protected void processInbound(InetSocketAddress sender,
+                                          ByteBuffer buffer) {
+                received[0] = buffer.remaining();
+                latch.countDown();
+            }
+        };
+        UdpCommunications sender = new UdpCommunications(
+                                                         new InetSocketAddress(
+                                                                               "127.0.0.1",
+                                                                               0),
+                                                         Executors.newCachedThreadPool());
+        sender.setCompact(false);
+        receiver.start();
+        try {
+            Endpoint endpoint = new Endpoint();
+            sender.connect(receiver.getLocalAddress(), endpoint,
+                           new Runnable() {
+                               @Override
+                               public void run() {
+                               }
+                           });
+            endpoint.getHandler().gossip(Arrays.asList(new Digest(
+                                                                  new InetSocketAddress(
+                                                                                        "127.0.0.1",
+                                                                                        1),
+                                                                  1)));
+            assertTrue("datagram not received",
+                       latch.await(10, TimeUnit.SECONDS));
+            int length = HEADER_SIZE + 4 + DIGEST_SIZE;
+            assertEquals(length - 4, received[0]);
+            assertEquals(1, receiver.getDatagramsReceived());
+            assertEquals(length, receiver.getBytesReceived());
+            assertEquals(sender.getBytesSent(), receiver.getBytesReceived());
+        } finally {
+            receiver.terminate();
+        }
+    }
+
+    public void testSummary() throws Exception {
+        UdpCommunications communications = new UdpCommunications(
+                                                                  new InetSocketAddress(
+                                                                                        "127.0.0.1",
+                                                                                        0),
+                                                                  Executors.newCachedThreadPool());
+        DatagramSocket target = new DatagramSocket(
+                                                   0,
+                                                   communications.getLocalAddress().getAddress());
+        target.setSoTimeout(10000);
+        InetSocketAddress targetAddress = new InetSocketAddress(
+                                                                target.getLocalAddress(),
+                                                                target.getLocalPort());
+        try {
+            Endpoint endpoint = new Endpoint();
+            communications.connect(targetAddress, endpoint, new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+            DigestList digests = new DigestList();
+            long time = System.currentTimeMillis();
+            for (int i = 0; i < 2000; i++) {
+                digests.add(new InetSocketAddress("127.0.0.1", 20000 + i),
+                            time + i * 10);
+            }
+            DigestSummary summary = new DigestSummary(digests);
+
+            // the original encoding falls back to the digests
+            communications.setCompact(false);
+            endpoint.getHandler().summarize(summary, digests);
+            long datagrams = communications.getDatagramsSent();
+            assertTrue("digests not sent: " + datagrams, datagrams > 1);
+            for (int i = 0; i < datagrams; i++) {
+                ByteBuffer datagram = receiveDatagram(target);
+                assertEquals(AbstractUdpCommunications.MAGIC_NUMBER,
+                             datagram.getInt());
+                assertEquals(GossipMessages.GOSSIP, datagram.get());
+            }
+
+            communications.setCompact(true);
+            communications.deliver(targetAddress, advertisement());
+            endpoint.getHandler().summarize(summary, digests);
+            assertEquals(datagrams + 1, communications.getDatagramsSent());
+            ByteBuffer datagram = receiveDatagram(target);
+            assertTrue("summary too large: " + datagram.remaining(),
+                       datagram.remaining() <= HEADER_SIZE
+                                               + DigestSummary.MAX_BYTE_SIZE);
+            assertEquals(AbstractUdpCommunications.COMPACT_MAGIC_NUMBER,
+                         datagram.getInt());
+            assertEquals(GossipMessages.SUMMARY, datagram.get());
+            assertEquals(summary, new DigestSummary(datagram));
+            assertFalse(datagram.hasRemaining());
+        } finally {
+            target.close();
+        }
+    }
+
+    private ByteBuffer advertisement() {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 1);
+        buffer.putInt(AbstractUdpCommunications.MAGIC_NUMBER);
+        buffer.put(GossipMessages.VERSION);
+        buffer.put(AbstractUdpCommunications.COMPACT_VERSION);
+        buffer.flip();
+        return buffer;
+    }
+
+    private ByteBuffer receiveDatagram(DatagramSocket target) throws Exception {
+        byte[] bytes = new byte[64 * 1024];
+        DatagramPacket packet = new DatagramPacket(bytes, bytes.length);
+        target.receive(packet);
+        return ByteBuffer.wrap(bytes, 0, packet.getLength());
+    }
+
+    private int receive(DatagramSocket target) throws Exception {
+        byte[] bytes = new byte[64 * 1024];
+        DatagramPacket packet = new DatagramPacket(bytes, bytes.length);
+        target.receive(packet);
+        return packet.getLength();
+    }
+
+    private void verifyDatagramSizes(AbstractUdpCommunications communications)
+                                                                              throws Exception {
+        DatagramSocket target = new DatagramSocket(
+                                                   0,
+                                                   communications.getLocalAddress().getAddress());
+        target.setSoTimeout(10000);
+        InetSocketAddress targetAddress = new InetSocketAddress(
+                                                                target.getLocalAddress(),
+                                                                target.getLocalPort());
+        try {
+            communications.setCompact(false);
+            Endpoint endpoint = new Endpoint();
+            communications.connect(targetAddress, endpoint, new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+            GossipMessages handler = endpoint.getHandler();
+            int expectedBytes = 0;
+
+            List<Digest> digests = new ArrayList<Digest>();
+            for (int i = 1; i <= 3; i++) {
+                digests.add(new Digest(new InetSocketAddress("127.0.0.1", i),
+                                       i));
+            }
+            handler.gossip(digests);
+            int length = receive(target);
+            assertEquals(HEADER_SIZE + 4 + 3 * DIGEST_SIZE, length);
+            expectedBytes += length;
+
+            handler.requestConnection(new Identity(666, 1, 1));
+            length = receive(target);
+            assertEquals(HEADER_SIZE + GossipMessages.IDENTITY_BYTE_SIZE,
+                         length);
+            expectedBytes += length;
+
+            HeartbeatState state = new HeartbeatState(
+                                                      new Identity(666, 0, 0),
+                                                      false,
+                                                      targetAddress,
+                                                      new NodeIdSet(), true,
+                                                      new Identity(666, 1, 1),
+                                                      null, false, null,
+                                                      new NodeIdSet(), 0, 0);
+            handler.update(Arrays.asList(state));
+            length = receive(target);
+            assertEquals(HEADER_SIZE + GossipMessages.HEARTBEAT_STATE_BYTE_SIZE,
+                         length);
+            expectedBytes += length;
+
+            assertEquals(3, communications.getDatagramsSent());
+            assertEquals(expectedBytes, communications.getBytesSent());
+        } finally {
+            target.close();
+        }
+    }
+}
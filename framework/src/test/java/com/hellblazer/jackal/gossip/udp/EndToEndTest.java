@@ -24,6 +24,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
@@ -38,6 +39,7 @@ import org.smartfrog.services.anubis.partition.wire.msg.Heartbeat;
 
 import com.hellblazer.jackal.gossip.FailureDetectorFactory;
 import com.hellblazer.jackal.gossip.Gossip;
+import com.hellblazer.jackal.gossip.GossipCommunications;
 import com.hellblazer.jackal.gossip.HeartbeatState;
 import com.hellblazer.jackal.gossip.SystemView;
 import com.hellblazer.jackal.gossip.fd.PhiFailureDetectorFactory;
@@ -172,11 +174,7 @@ public class EndToEndTest extends TestCase {
                 return t;
             }
         };
-        UdpCommunications communications = new UdpCommunications(
-                                                                 new InetSocketAddress(
-                                                                                       "127.0.0.1",
-                                                                                       0),
-                                                                 Executors.newCachedThreadPool(threadFactory));
+        GossipCommunications communications = createTransport(Executors.newCachedThreadPool(threadFactory));
 
         SystemView view = new SystemView(new Random(),
                                          communications.getLocalAddress(),
@@ -195,6 +193,11 @@ public class EndToEndTest extends TestCase {
         return gossip;
     }
 
+    protected GossipCommunications createTransport(ExecutorService executor) {
+        return new UdpCommunications(new InetSocketAddress("127.0.0.1", 0),
+                                     executor);
+    }
+
     protected void updateAndAwait(int iteration, int membership,
                                   Receiver[] receivers, List<Gossip> members)
                                                                              throws InterruptedException {
@@ -0,0 +1,232 @@
+/**
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.gossip.udp;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import junit.framework.TestCase;
+
+import org.smartfrog.services.anubis.partition.protocols.partitionmanager.ConnectionManager;
+import org.smartfrog.services.anubis.partition.util.Identity;
+import org.smartfrog.services.anubis.partition.util.NodeIdSet;
+import org.smartfrog.services.anubis.partition.wire.msg.Heartbeat;
+
+import com.hellblazer.jackal.gossip.FailureDetector;
+import com.hellblazer.jackal.gossip.FailureDetectorFactory;
+import com.hellblazer.jackal.gossip.Gossip;
+import com.hellblazer.jackal.gossip.HeartbeatState;
+import com.hellblazer.jackal.gossip.SystemView;
+
+/**
+ * Test the indirect probing of suspected endpoints over the loopback, with the
+ * loss of the datagrams of a single link
+ *
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ *
+ */
+public class IndirectProbeTest extends TestCase {
+
+    /**
+     * UDP communications which drop the datagrams of the blocked senders
+     */
+    private static class LossyCommunications extends UdpCommunications {
+        private final Set<InetSocketAddress> blocked = Collections.newSetFromMap(new ConcurrentHashMap<InetSocketAddress, Boolean>());
+
+        LossyCommunications() {
+            super(new InetSocketAddress("127.0.0.1", 0),
+                  Executors.newCachedThreadPool());
+        }
+
+        @Override
+        protected void deliver(InetSocketAddress sender, ByteBuffer buffer) {
+            if (!blocked.contains(sender)) {
+                super.deliver(sender, buffer);
+            }
+        }
+    }
+
+    /**
+     * Failure detectors which convict every endpoint when told to
+     */
+    private static class SuspiciousFactory implements FailureDetectorFactory {
+        private final AtomicBoolean convicting = new AtomicBoolean();
+
+        @Override
+        public FailureDetector create() {
+            return new FailureDetector() {
+                @Override
+                public long earliestConviction() {
+                    return Long.MIN_VALUE;
+                }
+
+                @Override
+                public void record(long now, long delay) {
+                }
+
+                @Override
+                public boolean shouldConvict(long now) {
+                    return convicting.get();
+                }
+            };
+        }
+    }
+
+    private static class Receiver implements ConnectionManager {
+        @Override
+        public void connectTo(Identity peer) {
+        }
+
+        @Override
+        public boolean receiveHeartbeat(Heartbeat hb) {
+            return false;
+        }
+    }
+
+    private final ScheduledExecutorService  beats          = Executors.newSingleThreadScheduledExecutor();
+    private final List<LossyCommunications> communications = new ArrayList<LossyCommunications>();
+    private final List<SuspiciousFactory>   factories      = new ArrayList<SuspiciousFactory>();
+    private final List<Gossip>              members        = new ArrayList<Gossip>();
+    private final Set<Gossip>               silent         = Collections.newSetFromMap(new ConcurrentHashMap<Gossip, Boolean>());
+    private final List<SystemView>          views          = new ArrayList<SystemView>();
+
+    public void testOneWayLoss() throws Exception {
+        InetSocketAddress b = communications.get(1).getLocalAddress();
+        InetSocketAddress c = communications.get(2).getLocalAddress();
+        communications.get(0).blocked.add(c);
+        factories.get(0).convicting.set(true);
+        Thread.sleep(3000);
+        assertTrue("B was convicted",
+                   views.get(0).getLiveMembers().contains(b));
+        assertTrue("C was convicted despite the indirect probe",
+                   views.get(0).getLiveMembers().contains(c));
+    }
+
+    public void testAcknowledgedWithoutHeartbeats() throws Exception {
+        InetSocketAddress b = communications.get(1).getLocalAddress();
+        InetSocketAddress c = communications.get(2).getLocalAddress();
+        // C answers its probes, but its heartbeats have stopped
+        silent.add(members.get(2));
+        factories.get(0).convicting.set(true);
+        for (int i = 0; i < 50
+                        && views.get(0).getLiveMembers().contains(c); i++) {
+            Thread.sleep(100);
+        }
+        assertFalse("C was not convicted",
+                    views.get(0).getLiveMembers().contains(c));
+        assertTrue("B was convicted",
+                   views.get(0).getLiveMembers().contains(b));
+    }
+
+    public void testFailure() throws Exception {
+        InetSocketAddress b = communications.get(1).getLocalAddress();
+        InetSocketAddress c = communications.get(2).getLocalAddress();
+        silent.add(members.get(2));
+        members.get(2).terminate();
+        factories.get(0).convicting.set(true);
+        for (int i = 0; i < 50
+                        && views.get(0).getLiveMembers().contains(c); i++) {
+            Thread.sleep(100);
+        }
+        assertFalse("C was not convicted",
+                    views.get(0).getLiveMembers().contains(c));
+        assertTrue("B was convicted",
+                   views.get(0).getLiveMembers().contains(b));
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        List<InetSocketAddress> seeds = new ArrayList<InetSocketAddress>();
+        for (int i = 0; i < 3; i++) {
+            LossyCommunications comms = new LossyCommunications();
+            if (i == 0) {
+                seeds.add(comms.getLocalAddress());
+            }
+            SystemView view = new SystemView(new Random(),
+                                             comms.getLocalAddress(), seeds,
+                                             5000, 500000);
+            SuspiciousFactory factory = new SuspiciousFactory();
+            Gossip gossip = new Gossip(view, new Random(), comms, 100,
+                                       TimeUnit.MILLISECONDS, factory,
+                                       new Identity(666, i, 1));
+            gossip.create(new Receiver());
+            gossip.setIndirectProbes(1, 1000);
+            communications.add(comms);
+            views.add(view);
+            factories.add(factory);
+            members.add(gossip);
+        }
+        for (int i = 0; i < members.size(); i++) {
+            HeartbeatState heartbeat = heartbeat(i);
+            heartbeat.setTime(0);
+            members.get(i).start(heartbeat);
+        }
+        // the acknowledgement of a probe only defers the conviction of a
+        // suspect whose heartbeats are fresh
+        beats.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < members.size(); i++) {
+                    Gossip member = members.get(i);
+                    if (!silent.contains(member)) {
+                        HeartbeatState heartbeat = heartbeat(i);
+                        heartbeat.setTime(System.currentTimeMillis());
+                        member.sendHeartbeat(heartbeat);
+                    }
+                }
+            }
+        }, 50, 50, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 100; i++) {
+            boolean converged = true;
+            for (SystemView view : views) {
+                converged &= view.getLiveMembers().size() == 2;
+            }
+            if (converged) {
+                return;
+            }
+            Thread.sleep(100);
+        }
+        fail("The members did not discover each other");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        beats.shutdownNow();
+        for (Gossip member : members) {
+            member.terminate();
+        }
+    }
+
+    private HeartbeatState heartbeat(int i) {
+        return new HeartbeatState(new Identity(666, 0, 0), false,
+                                  members.get(i).getLocalAddress(),
+                                  new NodeIdSet(), true, new Identity(666, i,
+                                                                      1), null,
+                                  false, null, new NodeIdSet(), 0, 0);
+    }
+}
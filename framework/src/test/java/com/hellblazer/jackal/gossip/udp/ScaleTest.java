@@ -0,0 +1,204 @@
+/** 
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.gossip.udp;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smartfrog.services.anubis.partition.protocols.partitionmanager.ConnectionManager;
+import org.smartfrog.services.anubis.partition.util.Identity;
+import org.smartfrog.services.anubis.partition.util.NodeIdSet;
+import org.smartfrog.services.anubis.partition.wire.msg.Heartbeat;
+
+import com.hellblazer.jackal.gossip.FailureDetectorFactory;
+import com.hellblazer.jackal.gossip.Gossip;
+import com.hellblazer.jackal.gossip.HeartbeatState;
+import com.hellblazer.jackal.gossip.SystemView;
+import com.hellblazer.jackal.gossip.fd.PhiFailureDetectorFactory;
+
+/**
+ * Test that the gossip rounds of clusters much larger than a single datagram
+ * of digests converge, and that the convergence time grows logarithmically
+ * with the size of the cluster
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public class ScaleTest extends TestCase {
+
+    private static class Receiver implements ConnectionManager {
+        private final List<Identity> connections = new ArrayList<Identity>();
+        private final CountDownLatch latch;
+        private final boolean[]      seen;
+
+        Receiver(int members, int id) {
+            seen = new boolean[members];
+            seen[id] = true;
+            latch = new CountDownLatch(members - 1);
+        }
+
+        public boolean await(long timeout, TimeUnit unit)
+                                                         throws InterruptedException {
+            return latch.await(timeout, unit);
+        }
+
+        @Override
+        public void connectTo(Identity peer) {
+            synchronized (connections) {
+                connections.add(peer);
+            }
+        }
+
+        @Override
+        public boolean receiveHeartbeat(Heartbeat hb) {
+            int id = hb.getSender().id;
+            synchronized (seen) {
+                if (!seen[id]) {
+                    seen[id] = true;
+                    latch.countDown();
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final int    GOSSIP_INTERVAL = 500;
+    private static final Logger log             = LoggerFactory.getLogger(ScaleTest.class);
+
+    private final AtomicLong    rounds          = new AtomicLong();
+
+    private static double log2(int n) {
+        return Math.log(n) / Math.log(2);
+    }
+
+    public void testLogarithmicConvergence() throws Exception {
+        // the larger clusters need more than the 51 digests of a datagram
+        int[] sizes = { 16, 64, 256 };
+        for (int membership : sizes) {
+            long rounds = converge(membership);
+            log.info(String.format("Convergence: %s members in %s rounds",
+                                   membership, rounds));
+            // Push pull gossip spreads a heartbeat in about log2(n) + ln(n)
+            // rounds; the bound of 4 log2(n) leaves room for the startup
+            // through the single seed and the scheduling of the members on a
+            // loaded machine, while linear growth would exceed it well
+            // before 256 members
+            double bound = 4.0 * log2(membership);
+            assertTrue(String.format("Convergence of %s members in %s rounds exceeds the logarithmic bound of %s rounds",
+                                     membership, rounds, bound),
+                       rounds <= bound);
+        }
+    }
+
+    /**
+     * Start a cluster of the given size and answer the mean number of gossip
+     * rounds of its members until every member has received the heartbeat of
+     * every other member. The rounds are counted, rather than timed, as the
+     * rounds of the larger clusters run late on a loaded machine.
+     */
+    private long converge(int membership) throws Exception {
+        rounds.set(0);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        Receiver[] receivers = new Receiver[membership];
+        List<Gossip> members = new ArrayList<Gossip>();
+        Collection<InetSocketAddress> seedHosts = new ArrayList<InetSocketAddress>();
+        for (int i = 0; i < membership; i++) {
+            receivers[i] = new Receiver(membership, i);
+            members.add(createMember(receivers[i], seedHosts, i, executor));
+            if (i == 0) {
+                seedHosts.add(members.get(0).getLocalAddress());
+            }
+        }
+        try {
+            int id = 0;
+            for (Gossip member : members) {
+                HeartbeatState heartbeat = new HeartbeatState(
+                                                              new Identity(666,
+                                                                           0, 0),
+                                                              false,
+                                                              member.getLocalAddress(),
+                                                              new NodeIdSet(),
+                                                              true,
+                                                              new Identity(666,
+                                                                           id++,
+                                                                           1),
+                                                              null, false,
+                                                              null,
+                                                              new NodeIdSet(),
+                                                              0, 0);
+                heartbeat.setTime(0);
+                member.start(heartbeat);
+            }
+            for (int i = 0; i < membership; i++) {
+                assertTrue(String.format("Member %s of %s did not converge",
+                                         i, membership),
+                           receivers[i].await(120, TimeUnit.SECONDS));
+            }
+            return rounds.get() / membership;
+        } finally {
+            for (Gossip member : members) {
+                member.terminate();
+            }
+            executor.shutdownNow();
+        }
+    }
+
+    private Gossip createMember(ConnectionManager receiver,
+                                Collection<InetSocketAddress> seedHosts, int i,
+                                ExecutorService executor) {
+        // the receive buffers hold the burst of update datagrams which the
+        // members of the largest cluster exchange as they first converge
+        UdpCommunications communications = new UdpCommunications(
+                                                                 new InetSocketAddress(
+                                                                                       "127.0.0.1",
+                                                                                       0),
+                                                                 executor, 200, 4);
+        SystemView view = new SystemView(new Random(),
+                                         communications.getLocalAddress(),
+                                         seedHosts, 5000, 500000);
+        FailureDetectorFactory fdFactory = new PhiFailureDetectorFactory(11,
+                                                                         1000,
+                                                                         3000,
+                                                                         1,
+                                                                         1.0,
+                                                                         true);
+        Gossip gossip = new Gossip(view, new Random(), communications,
+                                   GOSSIP_INTERVAL, TimeUnit.MILLISECONDS,
+                                   fdFactory, new Identity(0, i, 0)) {
+            @Override
+            public void gossip() {
+                rounds.incrementAndGet();
+                super.gossip();
+            }
+        };
+        gossip.create(receiver);
+        return gossip;
+    }
+}
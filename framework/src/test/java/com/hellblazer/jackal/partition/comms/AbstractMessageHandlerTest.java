@@ -18,8 +18,10 @@
 package com.hellblazer.jackal.partition.comms;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Mockito.mock;
@@ -31,17 +33,25 @@ import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.smartfrog.services.anubis.partition.comms.OverflowPolicy;
+import org.smartfrog.services.anubis.partition.comms.SendCompletion;
 import org.smartfrog.services.anubis.partition.wire.WireFormException;
 import org.smartfrog.services.anubis.partition.wire.WireMsg;
 import org.smartfrog.services.anubis.partition.wire.WireSizes;
 import org.smartfrog.services.anubis.partition.wire.msg.SerializedMsg;
+import org.smartfrog.services.anubis.partition.wire.security.MACData;
+import org.smartfrog.services.anubis.partition.wire.security.MACSecurityImpl;
 import org.smartfrog.services.anubis.partition.wire.security.NoSecurityImpl;
 import org.smartfrog.services.anubis.partition.wire.security.WireSecurity;
 
@@ -66,8 +76,9 @@ public class AbstractMessageHandlerTest {
     }
 
     private static class MsgHandler extends AbstractMessageHandler {
-        long             sequence = 0;
-        List<InboundMsg> msgs     = new ArrayList<InboundMsg>();
+        long             sequence   = 0;
+        List<InboundMsg> msgs       = new ArrayList<InboundMsg>();
+        volatile long    overflowed = -1;
 
         /**
          * @param wireSecurity
@@ -124,6 +135,14 @@ public class AbstractMessageHandlerTest {
             sendObject(wireSecurity.toWireForm(msg, bufferPool));
         }
 
+        /* (non-Javadoc)
+         * @see com.hellblazer.jackal.partition.comms.AbstractMessageHandler#overflow(long)
+         */
+        @Override
+        protected void overflow(long queued) {
+            overflowed = queued;
+        }
+
         /* (non-Javadoc)
          * @see com.hellblazer.jackal.partition.comms.AbstractMessageHandler#nextSequence()
          */
@@ -555,6 +574,479 @@ public class AbstractMessageHandlerTest {
         assertEquals("Wrong order", 1, msgHandler.msgs.get(1).order);
     }
 
+    @Test
+    public void testQueueDepthAndHighWaterMark() throws Exception {
+        MsgHandler msgHandler = new MsgHandler(new NoSecurityImpl());
+        connectDraining(msgHandler);
+
+        SendCompletion completion1 = new SendCompletion();
+        SendCompletion completion2 = new SendCompletion();
+        SendCompletion completion3 = new SendCompletion();
+        msgHandler.sendObject(ByteBuffer.allocate(100), completion1);
+        msgHandler.sendObject(ByteBuffer.allocate(100), completion2);
+        msgHandler.sendObject(ByteBuffer.allocate(100), completion3);
+
+        assertEquals("Wrong queue depth", 3, msgHandler.getQueueDepth());
+        assertEquals("Wrong queued bytes", 300, msgHandler.getQueuedBytes());
+        assertEquals("Wrong high water mark", 300,
+                     msgHandler.getHighWaterMark());
+        assertFalse("Send completed before written", completion1.isDone());
+
+        msgHandler.writeReady();
+
+        assertEquals("Wrong queue depth", 0, msgHandler.getQueueDepth());
+        assertEquals("Wrong queued bytes", 0, msgHandler.getQueuedBytes());
+        assertEquals("High water mark was reset", 300,
+                     msgHandler.getHighWaterMark());
+        assertTrue("Send not completed", completion1.get(0, TimeUnit.SECONDS));
+        assertTrue("Send not completed", completion2.get(0, TimeUnit.SECONDS));
+        assertTrue("Send not completed", completion3.get(0, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        MsgHandler msgHandler = new MsgHandler(new NoSecurityImpl());
+        connectDraining(msgHandler);
+        msgHandler.setOverflowPolicy(OverflowPolicy.DROP_OLDEST);
+        msgHandler.setMaxQueuedBytes(250);
+
+        SendCompletion completion1 = new SendCompletion();
+        SendCompletion completion2 = new SendCompletion();
+        SendCompletion completion3 = new SendCompletion();
+        msgHandler.sendObject(ByteBuffer.allocate(100), completion1);
+        msgHandler.sendObject(ByteBuffer.allocate(100), completion2);
+        msgHandler.sendObject(ByteBuffer.allocate(100), completion3);
+
+        assertTrue("Oldest send not completed", completion1.isDone());
+        assertFalse("Oldest send not dropped",
+                    completion1.get(0, TimeUnit.SECONDS));
+        assertFalse("Send completed before written", completion2.isDone());
+        assertEquals("Wrong queue depth", 2, msgHandler.getQueueDepth());
+        assertEquals("Wrong queued bytes", 200, msgHandler.getQueuedBytes());
+        assertEquals("Overflow notified", -1, msgHandler.overflowed);
+
+        msgHandler.writeReady();
+
+        assertTrue("Send not completed", completion2.get(0, TimeUnit.SECONDS));
+        assertTrue("Send not completed", completion3.get(0, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFail() throws Exception {
+        MsgHandler msgHandler = new MsgHandler(new NoSecurityImpl());
+        connectDraining(msgHandler);
+        msgHandler.setOverflowPolicy(OverflowPolicy.FAIL);
+        msgHandler.setMaxQueuedBytes(250);
+
+        SendCompletion completion1 = new SendCompletion();
+        SendCompletion completion2 = new SendCompletion();
+        SendCompletion completion3 = new SendCompletion();
+        msgHandler.sendObject(ByteBuffer.allocate(100), completion1);
+        msgHandler.sendObject(ByteBuffer.allocate(100), completion2);
+        msgHandler.sendObject(ByteBuffer.allocate(100), completion3);
+
+        assertEquals("Overflow not notified", 300, msgHandler.overflowed);
+        assertFalse("Rejected send not failed",
+                    completion3.get(0, TimeUnit.SECONDS));
+        assertFalse("Queued send completed", completion1.isDone());
+        assertEquals("Wrong queue depth", 2, msgHandler.getQueueDepth());
+        assertEquals("Wrong queued bytes", 200, msgHandler.getQueuedBytes());
+
+        msgHandler.writeReady();
+
+        assertTrue("Send not completed", completion1.get(0, TimeUnit.SECONDS));
+        assertTrue("Send not completed", completion2.get(0, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testBlockWakesOnDrain() throws Exception {
+        final MsgHandler msgHandler = new MsgHandler(new NoSecurityImpl());
+        connectDraining(msgHandler);
+        msgHandler.setOverflowPolicy(OverflowPolicy.BLOCK);
+        msgHandler.setMaxQueuedBytes(250);
+
+        SendCompletion completion1 = new SendCompletion();
+        SendCompletion completion2 = new SendCompletion();
+        final SendCompletion completion3 = new SendCompletion();
+        msgHandler.sendObject(ByteBuffer.allocate(100), completion1);
+        msgHandler.sendObject(ByteBuffer.allocate(100), completion2);
+
+        Thread sender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                msgHandler.sendObject(ByteBuffer.allocate(100), completion3,
+                                      true);
+            }
+        }, "Blocked sender");
+        sender.start();
+        awaitWaiting(sender);
+        assertEquals("Blocked send was queued", 2, msgHandler.getQueueDepth());
+
+        msgHandler.writeReady();
+
+        sender.join(1000);
+        assertFalse("Sender still blocked", sender.isAlive());
+        assertTrue("Send not completed", completion1.get(0, TimeUnit.SECONDS));
+        assertTrue("Send not completed", completion2.get(0, TimeUnit.SECONDS));
+        assertEquals("Blocked send not queued", 1, msgHandler.getQueueDepth());
+
+        msgHandler.writeReady();
+
+        assertTrue("Send not completed", completion3.get(0, TimeUnit.SECONDS));
+        assertEquals("Overflow notified", -1, msgHandler.overflowed);
+    }
+
+    @Test
+    public void testBlockWakesOnClose() throws Exception {
+        final MsgHandler msgHandler = new MsgHandler(new NoSecurityImpl());
+        connectDraining(msgHandler);
+        msgHandler.setOverflowPolicy(OverflowPolicy.BLOCK);
+        msgHandler.setMaxQueuedBytes(250);
+
+        SendCompletion completion1 = new SendCompletion();
+        final SendCompletion completion2 = new SendCompletion();
+        msgHandler.sendObject(ByteBuffer.allocate(200), completion1);
+
+        Thread sender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                msgHandler.sendObject(ByteBuffer.allocate(100), completion2,
+                                      true);
+            }
+        }, "Blocked sender");
+        sender.start();
+        awaitWaiting(sender);
+
+        msgHandler.shutdown();
+
+        sender.join(1000);
+        assertFalse("Sender still blocked", sender.isAlive());
+        assertFalse("Abandoned send not failed",
+                    completion1.get(0, TimeUnit.SECONDS));
+        assertFalse("Blocked send not failed",
+                    completion2.get(0, TimeUnit.SECONDS));
+        assertEquals("Wrong queue depth", 0, msgHandler.getQueueDepth());
+    }
+
+    @Test
+    public void testBlockedSendersAreNotDropped() throws Exception {
+        final MsgHandler msgHandler = new MsgHandler(new NoSecurityImpl());
+        connectDraining(msgHandler);
+        msgHandler.setOverflowPolicy(OverflowPolicy.BLOCK);
+        msgHandler.setMaxQueuedBytes(250);
+
+        SendCompletion completion1 = new SendCompletion();
+        msgHandler.sendObject(ByteBuffer.allocate(200), completion1);
+
+        final SendCompletion completion2 = new SendCompletion();
+        final SendCompletion completion3 = new SendCompletion();
+        Thread sender1 = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                msgHandler.sendObject(ByteBuffer.allocate(200), completion2,
+                                      true);
+            }
+        }, "Blocked sender 1");
+        Thread sender2 = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                msgHandler.sendObject(ByteBuffer.allocate(200), completion3,
+                                      true);
+            }
+        }, "Blocked sender 2");
+        sender1.start();
+        sender2.start();
+        awaitWaiting(sender1);
+        awaitWaiting(sender2);
+
+        msgHandler.writeReady();
+
+        assertTrue("Send not completed", completion1.get(0, TimeUnit.SECONDS));
+        long deadline = System.currentTimeMillis() + 1000;
+        while (sender1.isAlive() && sender2.isAlive()) {
+            assertTrue("Senders still blocked",
+                       System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+        Thread waiting = sender1.isAlive() ? sender1 : sender2;
+        awaitWaiting(waiting);
+        assertEquals("Wrong queue depth", 1, msgHandler.getQueueDepth());
+        assertEquals("Wrong queued bytes", 200, msgHandler.getQueuedBytes());
+
+        msgHandler.sendObject(ByteBuffer.allocate(100), null);
+        assertEquals("Non blocking send took the reserved room", 1,
+                     msgHandler.getQueueDepth());
+
+        msgHandler.writeReady();
+
+        waiting.join(1000);
+        assertFalse("Sender still blocked", waiting.isAlive());
+        assertEquals("Blocked send not queued", 1, msgHandler.getQueueDepth());
+
+        msgHandler.writeReady();
+
+        assertTrue("Blocked send dropped", completion2.get(0, TimeUnit.SECONDS));
+        assertTrue("Blocked send dropped", completion3.get(0, TimeUnit.SECONDS));
+        assertEquals("Overflow notified", -1, msgHandler.overflowed);
+    }
+
+    @Test
+    public void testBlockDropsNonBlockingSend() throws Exception {
+        MsgHandler msgHandler = new MsgHandler(new NoSecurityImpl());
+        connectDraining(msgHandler);
+        msgHandler.setOverflowPolicy(OverflowPolicy.BLOCK);
+        msgHandler.setMaxQueuedBytes(250);
+
+        SendCompletion completion1 = new SendCompletion();
+        SendCompletion completion2 = new SendCompletion();
+        msgHandler.sendObject(ByteBuffer.allocate(200), completion1);
+        msgHandler.sendObject(ByteBuffer.allocate(100), completion2);
+
+        assertFalse("Non blocking send not dropped",
+                    completion2.get(0, TimeUnit.SECONDS));
+        assertEquals("Overflow notified", -1, msgHandler.overflowed);
+        assertEquals("Wrong queue depth", 1, msgHandler.getQueueDepth());
+        assertFalse("Queued send completed", completion1.isDone());
+    }
+
+    @Test
+    public void testSendCompletion() throws Exception {
+        final AtomicInteger completed = new AtomicInteger();
+        SendCompletion completion = new SendCompletion() {
+            @Override
+            protected void completed(boolean written) {
+                assertTrue(written);
+                completed.incrementAndGet();
+            }
+        };
+        assertFalse(completion.isDone());
+        try {
+            completion.get(10, TimeUnit.MILLISECONDS);
+            fail("Incomplete send answered");
+        } catch (TimeoutException e) {
+            // expected
+        }
+        assertFalse("Send cancelled", completion.cancel(true));
+        assertFalse(completion.isCancelled());
+
+        completion.complete(true);
+        completion.complete(false);
+
+        assertTrue(completion.isDone());
+        assertTrue("Only the first completion counts", completion.get());
+        assertEquals("Completed more than once", 1, completed.get());
+    }
+
+    @Test
+    public void testFramesInOneRead() throws Exception {
+        NoSecurityImpl wireSecurity = new NoSecurityImpl();
+        MsgHandler msgHandler = new MsgHandler(wireSecurity);
+        SerializedMsg msg1 = new SerializedMsg("Give me Slack");
+        SerializedMsg msg2 = new SerializedMsg("Or give me Food");
+        SerializedMsg msg3 = new SerializedMsg("Or kill me");
+        ByteBuffer frame1 = frame(wireSecurity, msgHandler, msg1);
+        ByteBuffer frame2 = frame(wireSecurity, msgHandler, msg2);
+        ByteBuffer frame3 = frame(wireSecurity, msgHandler, msg3);
+        int split = AbstractMessageHandler.HEADER_BYTE_SIZE + 5;
+
+        LinkedList<ByteBuffer> available = new LinkedList<ByteBuffer>();
+        connectReading(msgHandler, available, new ArrayList<Integer>());
+        available.add(concat(frame1, frame2, slice(frame3, 0, split)));
+        msgHandler.readReady();
+        assertEquals("Complete frames were not delivered", 2,
+                     msgHandler.msgs.size());
+        assertEquals("Wrong message", msg1.getObject(),
+                     ((SerializedMsg) msgHandler.msgs.get(0).msg).getObject());
+        assertEquals("Wrong order", 0, msgHandler.msgs.get(0).order);
+        assertEquals("Wrong message", msg2.getObject(),
+                     ((SerializedMsg) msgHandler.msgs.get(1).msg).getObject());
+        assertEquals("Wrong order", 1, msgHandler.msgs.get(1).order);
+
+        available.add(slice(frame3, split, frame3.limit()));
+        msgHandler.readReady();
+        assertEquals("Partial frame was not delivered", 3,
+                     msgHandler.msgs.size());
+        assertEquals("Wrong message", msg3.getObject(),
+                     ((SerializedMsg) msgHandler.msgs.get(2).msg).getObject());
+        assertEquals("Wrong order", 2, msgHandler.msgs.get(2).order);
+    }
+
+    @Test
+    public void testLargeReadFollowedByPartialFrame() throws Exception {
+        NoSecurityImpl wireSecurity = new NoSecurityImpl();
+        MsgHandler msgHandler = new MsgHandler(wireSecurity);
+        byte[] large = new byte[AbstractMessageHandler.READ_BUFFER_SIZE];
+        Arrays.fill(large, (byte) 42);
+        SerializedMsg msg = new SerializedMsg("Give me Slack");
+        ByteBuffer largeFrame = frame(wireSecurity, msgHandler,
+                                      new SerializedMsg(large));
+        ByteBuffer smallFrame = frame(wireSecurity, msgHandler, msg);
+        int split = AbstractMessageHandler.HEADER_BYTE_SIZE + 4;
+
+        LinkedList<ByteBuffer> available = new LinkedList<ByteBuffer>();
+        List<Integer> capacities = new ArrayList<Integer>();
+        connectReading(msgHandler, available, capacities);
+        available.add(concat(largeFrame, slice(smallFrame, 0, split)));
+
+        msgHandler.readReady();
+        assertEquals("Large frame was delivered", 0, msgHandler.msgs.size());
+        msgHandler.readReady();
+        assertEquals("Large frame was not delivered", 1,
+                     msgHandler.msgs.size());
+        assertTrue("Read buffer was not grown",
+                   capacities.get(capacities.size() - 1) > AbstractMessageHandler.READ_BUFFER_SIZE);
+        assertTrue("Wrong message",
+                   Arrays.equals(large,
+                                 (byte[]) ((SerializedMsg) msgHandler.msgs.get(0).msg).getObject()));
+
+        // the partial frame is read into a buffer of the default size
+        msgHandler.readReady();
+        assertEquals("Partial frame was delivered", 1, msgHandler.msgs.size());
+        assertEquals("Read buffer was not shrunk",
+                     AbstractMessageHandler.READ_BUFFER_SIZE,
+                     (int) capacities.get(capacities.size() - 1));
+
+        available.add(slice(smallFrame, split, smallFrame.limit()));
+        msgHandler.readReady();
+        assertEquals("Partial frame was not delivered", 2,
+                     msgHandler.msgs.size());
+        assertEquals("Wrong message", msg.getObject(),
+                     ((SerializedMsg) msgHandler.msgs.get(1).msg).getObject());
+        assertEquals("Wrong order", 1, msgHandler.msgs.get(1).order);
+    }
+
+    @Test
+    public void testMacSecuredFramesInOneRead() throws Exception {
+        MACSecurityImpl wireSecurity = new MACSecurityImpl();
+        wireSecurity.setMacData(new MACData());
+        final List<Integer> offsets = new ArrayList<Integer>();
+        MsgHandler msgHandler = new MsgHandler(wireSecurity) {
+            @Override
+            protected void deliverObject(long order, ByteBuffer readBuffer) {
+                offsets.add(readBuffer.arrayOffset());
+                super.deliverObject(order, readBuffer);
+            }
+        };
+        SerializedMsg msg1 = new SerializedMsg("Give me Slack");
+        SerializedMsg msg2 = new SerializedMsg("Or give me Food");
+
+        LinkedList<ByteBuffer> available = new LinkedList<ByteBuffer>();
+        connectReading(msgHandler, available, new ArrayList<Integer>());
+        available.add(concat(frame(wireSecurity, msgHandler, msg1),
+                             frame(wireSecurity, msgHandler, msg2)));
+        msgHandler.readReady();
+        assertEquals("Messages were not read", 2, msgHandler.msgs.size());
+        assertTrue("Second frame was not sliced", offsets.get(1) > 0);
+        assertEquals("Wrong message", msg1.getObject(),
+                     ((SerializedMsg) msgHandler.msgs.get(0).msg).getObject());
+        assertEquals("Wrong message", msg2.getObject(),
+                     ((SerializedMsg) msgHandler.msgs.get(1).msg).getObject());
+    }
+
+    private static void awaitWaiting(Thread thread) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (thread.getState() != Thread.State.WAITING) {
+            assertTrue("Sender did not block",
+                       System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private static ByteBuffer concat(ByteBuffer... buffers) {
+        int size = 0;
+        for (ByteBuffer buffer : buffers) {
+            size += buffer.remaining();
+        }
+        ByteBuffer concat = ByteBuffer.allocate(size);
+        for (ByteBuffer buffer : buffers) {
+            concat.put(buffer);
+        }
+        concat.flip();
+        return concat;
+    }
+
+    /**
+     * Connect the handler to a channel which accepts all the bytes written
+     */
+    private static void connectDraining(MsgHandler msgHandler)
+                                                               throws IOException {
+        SocketChannelHandler handler = mock(SocketChannelHandler.class);
+        SocketChannel channel = mock(SocketChannel.class);
+        Answer<Long> drain = new Answer<Long>() {
+            @Override
+            public Long answer(InvocationOnMock invocation) throws Throwable {
+                ByteBuffer[] buffers = (ByteBuffer[]) invocation.getArguments()[0];
+                int offset = (Integer) invocation.getArguments()[1];
+                int length = (Integer) invocation.getArguments()[2];
+                long bytes = 0;
+                for (int i = offset; i < offset + length; i++) {
+                    bytes += buffers[i].remaining();
+                    buffers[i].position(buffers[i].limit());
+                }
+                return bytes;
+            }
+        };
+        when(handler.getChannel()).thenReturn(channel);
+        when(channel.write(any(ByteBuffer[].class), anyInt(), anyInt())).thenAnswer(drain);
+        msgHandler.connect(handler);
+    }
+
+    /**
+     * Connect the handler to a channel which reads the bytes available. The
+     * reads never block, and the capacities of the buffers read into are
+     * recorded.
+     */
+    private static void connectReading(MsgHandler msgHandler,
+                                       final LinkedList<ByteBuffer> available,
+                                       final List<Integer> capacities)
+                                                                      throws IOException {
+        SocketChannelHandler handler = mock(SocketChannelHandler.class);
+        SocketChannel channel = mock(SocketChannel.class);
+        Answer<Long> read = new Answer<Long>() {
+            @Override
+            public Long answer(InvocationOnMock invocation) throws Throwable {
+                ByteBuffer buffer = (ByteBuffer) invocation.getArguments()[0];
+                capacities.add(buffer.capacity());
+                ByteBuffer next = available.peek();
+                if (next == null) {
+                    return 0L;
+                }
+                int length = Math.min(buffer.remaining(), next.remaining());
+                buffer.put(next.array(), next.position(), length);
+                next.position(next.position() + length);
+                if (!next.hasRemaining()) {
+                    available.poll();
+                }
+                return (long) length;
+            }
+        };
+        when(handler.getChannel()).thenReturn(channel);
+        when(channel.read(any(ByteBuffer.class))).thenAnswer(read);
+        msgHandler.connect(handler);
+    }
+
+    /**
+     * @return the framed wire form of the message
+     */
+    private static ByteBuffer frame(WireSecurity wireSecurity,
+                                    MsgHandler msgHandler, WireMsg msg)
+                                                                       throws Exception {
+        ByteBuffer wireForm = wireSecurity.toWireForm(msg,
+                                                      msgHandler.bufferPool);
+        ByteBuffer frame = ByteBuffer.allocate(AbstractMessageHandler.HEADER_BYTE_SIZE
+                                               + wireForm.remaining());
+        frame.putInt(WireSizes.MAGIC_NUMBER);
+        frame.putInt(wireForm.remaining());
+        frame.putLong(msgHandler.nextSequence());
+        frame.put(wireForm);
+        frame.flip();
+        return frame;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int from, int to) {
+        return ByteBuffer.wrap(Arrays.copyOfRange(buffer.array(), from, to));
+    }
+
     private static long transfer(int count, ByteBuffer[] input,
                                  ByteBuffer output) throws IOException {
         int read = 0;
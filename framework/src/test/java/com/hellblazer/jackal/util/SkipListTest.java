@@ -79,4 +79,62 @@ public class SkipListTest extends TestCase {
             assertEquals(count - (i + 1), list.size());
         }
     }
+
+    public void testQuantile() {
+        SkipList list = new SkipList();
+        for (int i = 99; i >= 0; i--) {
+            list.add(i);
+        }
+        assertEquals(0.0, list.quantile(0.0));
+        assertEquals(50.0, list.quantile(0.5));
+        assertEquals(90.0, list.quantile(0.9));
+        assertEquals(99.0, list.quantile(1.0));
+        try {
+            list.quantile(1.5);
+            fail("Expected illegal argument");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            new SkipList().quantile(0.5);
+            fail("Expected illegal state");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    public void testRank() {
+        Random r = new Random(666);
+        SkipList list = new SkipList();
+        int count = 5000;
+        double[] sorted = new double[count];
+        for (int i = 0; i < count; i++) {
+            double data = r.nextInt(1000);
+            sorted[i] = data;
+            list.add(data);
+        }
+        Arrays.sort(sorted);
+        assertEquals(0, list.rank(-1.0));
+        assertEquals(count, list.rank(1000.0));
+        assertEquals(0, list.rank(Double.NaN));
+        for (int i = 0; i < 1000; i++) {
+            double value = r.nextDouble() * 1000.0;
+            int expected = 0;
+            while (expected < count && sorted[expected] <= value) {
+                expected++;
+            }
+            assertEquals(expected, list.rank(value));
+            assertEquals(expected, list.rank(Math.floor(value)));
+        }
+        for (int i = 0; i < count; i += 2) {
+            assertTrue(list.remove(sorted[i]));
+        }
+        assertEquals(count / 2, list.size());
+        assertEquals(count / 2, list.rank(1000.0));
+        for (int i = 0; i < list.size(); i++) {
+            double value = list.get(i);
+            assertTrue(list.rank(value) > i);
+            assertTrue(list.rank(Math.nextAfter(value, -1.0)) <= i);
+        }
+    }
 }
@@ -0,0 +1,42 @@
+package com.hellblazer.jackal.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class SortedWindowTest extends TestCase {
+    public void testWindow() {
+        Random random = new Random(666);
+        SortedWindow window = new SortedWindow(100);
+        List<Double> input = new ArrayList<Double>();
+
+        for (int i = 0; i < 1000; i++) {
+            double sample = random.nextInt(50);
+            input.add(sample);
+            window.sample(sample);
+            List<Double> expected = new ArrayList<Double>(
+                                                          input.subList(Math.max(0,
+                                                                                 input.size() - 100),
+                                                                        input.size()));
+            Collections.sort(expected);
+            assertEquals(expected.size(), window.size());
+            double sum = 0.0;
+            for (int j = 0; j < expected.size(); j++) {
+                assertEquals(expected.get(j), window.get(j));
+                sum += expected.get(j);
+            }
+            assertEquals(sum, window.sum(), 0.0001);
+            assertEquals(sum / expected.size(), window.value(), 0.0001);
+            assertEquals(expected.get(expected.size() / 2), window.median());
+            double value = random.nextInt(52) - 1;
+            int rank = 0;
+            while (rank < expected.size() && expected.get(rank) <= value) {
+                rank++;
+            }
+            assertEquals(rank, window.rank(value));
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/** 
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.jackal.util;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * @author hhildebrand
+ * 
+ */
+public class StripedByteBufferPoolTest {
+
+    @Test
+    public void testConcurrentUse() throws Exception {
+        final StripedByteBufferPool test = new StripedByteBufferPool("test",
+                                                                     16);
+        final int threads = 4;
+        final int iterations = 10000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(threads);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        for (int t = 0; t < threads; t++) {
+            final byte mark = (byte) t;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < iterations; i++) {
+                            ByteBuffer buffer = test.allocate(64 + i % 1000);
+                            while (buffer.hasRemaining()) {
+                                buffer.put(mark);
+                            }
+                            Thread.yield();
+                            buffer.flip();
+                            while (buffer.hasRemaining()) {
+                                if (buffer.get() != mark) {
+                                    throw new IllegalStateException(
+                                                                    "Buffer shared between threads");
+                                }
+                            }
+                            test.free(buffer);
+                        }
+                    } catch (Throwable e) {
+                        error.set(e);
+                    } finally {
+                        finished.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+        finished.await();
+        if (error.get() != null) {
+            throw new AssertionError(error.get());
+        }
+        assertEquals(threads * iterations, test.getHits() + test.getMisses());
+        assertTrue(test.getHits() > test.getMisses());
+        assertTrue(test.size() <= 16 * 6);
+    }
+
+    @Test
+    public void testDirect() {
+        StripedByteBufferPool test = new StripedByteBufferPool("test", 10,
+                                                               true);
+        ByteBuffer buffer = test.allocate(1500);
+        assertTrue(buffer.isDirect());
+        test.free(ByteBuffer.allocate(2048));
+        assertEquals(1, test.getDiscards());
+        assertEquals(0, test.size());
+        test.free(buffer);
+        assertEquals(1, test.size());
+        assertSame(buffer, test.allocate(1500));
+    }
+
+    @Test
+    public void testDiscards() {
+        StripedByteBufferPool test = new StripedByteBufferPool("test", 4);
+        for (int i = 0; i < 6; i++) {
+            test.free(ByteBuffer.allocate(128));
+        }
+        assertEquals(4, test.size());
+        assertEquals(2, test.getDiscards());
+
+        test.free(ByteBuffer.allocate(10));
+        test.free(ByteBuffer.allocateDirect(128));
+        test.free(ByteBuffer.allocate(128).asReadOnlyBuffer());
+        assertEquals(4, test.size());
+        assertEquals(5, test.getDiscards());
+    }
+
+    @Test
+    public void testOversized() {
+        StripedByteBufferPool test = new StripedByteBufferPool("test", 4);
+        int capacity = (1 << StripedByteBufferPool.MAX_SIZE_CLASS) + 1;
+        ByteBuffer buffer = test.allocate(capacity);
+        assertEquals(capacity, buffer.capacity());
+        test.free(ByteBuffer.allocate(2 << StripedByteBufferPool.MAX_SIZE_CLASS));
+        assertEquals(0, test.size());
+        assertEquals(1, test.getDiscards());
+        // an oversized buffer may still serve the largest size class
+        test.free(buffer);
+        assertEquals(1, test.size());
+        assertNotSame(buffer, test.allocate(capacity));
+        assertEquals(2, test.getMisses());
+        assertSame(buffer, test.allocate(capacity - 1));
+    }
+
+    @Test
+    public void testRetainedBytes() {
+        StripedByteBufferPool test = new StripedByteBufferPool("test", 100,
+                                                               false,
+                                                               2 * 1024 * 1024);
+        for (int i = 0; i < 4; i++) {
+            test.free(ByteBuffer.allocate(1024 * 1024));
+        }
+        assertEquals(2, test.size());
+        assertEquals(2, test.getDiscards());
+        assertEquals(2 * 1024 * 1024, test.getRetainedBytes());
+
+        test.allocate(1024 * 1024);
+        assertEquals(1024 * 1024, test.getRetainedBytes());
+        test.free(ByteBuffer.allocate(1024));
+        assertEquals(1024 * 1024 + 1024, test.getRetainedBytes());
+        // the bound is in bytes, not in buffers
+        test.free(ByteBuffer.allocate(1024 * 1024));
+        assertEquals(3, test.getDiscards());
+        assertEquals(2, test.size());
+    }
+
+    @Test
+    public void testReuse() {
+        // a single thread is bounded to its stripe and the probe of the
+        // others, which hold at least this many buffers
+        int count = 8;
+        StripedByteBufferPool test = new StripedByteBufferPool("test", 100);
+        List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+        for (int i = 0; i < count; i++) {
+            buffers.add(test.allocate(1000));
+        }
+        assertEquals(count, test.getMisses());
+        assertEquals(count * 1024, test.getBytesAllocated());
+        for (ByteBuffer buffer : buffers) {
+            buffer.position(10);
+            test.free(buffer);
+        }
+        assertEquals(count, test.size());
+        assertEquals(0, test.getDiscards());
+        assertEquals(count * 1024, test.getRetainedBytes());
+
+        for (int i = 0; i < count; i++) {
+            ByteBuffer buffer = test.allocate(513 + i);
+            assertTrue(buffers.contains(buffer));
+            assertEquals(0, buffer.position());
+            assertEquals(513 + i, buffer.limit());
+            assertEquals(1024, buffer.capacity());
+        }
+        assertEquals(count, test.getHits());
+        assertEquals(0, test.size());
+        assertEquals(0, test.getRetainedBytes());
+        assertFalse(test.allocate(1000).isDirect());
+        assertEquals(count + 1, test.getMisses());
+    }
+
+    @Test
+    public void testScanIsBounded() {
+        StripedByteBufferPool test = new StripedByteBufferPool("test", 256);
+        for (int i = 0; i < 256; i++) {
+            test.free(ByteBuffer.allocate(128));
+        }
+        // a single thread only reaches its own stripe and the probe of the
+        // following stripes, however large the limit
+        assertTrue(test.size() > 0);
+        assertTrue(test.size() <= StripedByteBufferPool.MAX_STRIPE_SLOTS
+                                  + StripedByteBufferPool.MAX_PROBE);
+        assertEquals(256 - test.size(), test.getDiscards());
+    }
+
+    @Test
+    public void testSizeClasses() {
+        assertEquals(StripedByteBufferPool.MIN_SIZE_CLASS,
+                     StripedByteBufferPool.sizeClassOf(0));
+        assertEquals(StripedByteBufferPool.MIN_SIZE_CLASS,
+                     StripedByteBufferPool.sizeClassOf(64));
+        assertEquals(7, StripedByteBufferPool.sizeClassOf(65));
+        assertEquals(11, StripedByteBufferPool.sizeClassOf(1500));
+        assertEquals(11, StripedByteBufferPool.sizeClassOf(2048));
+        assertEquals(12, StripedByteBufferPool.sizeClassOf(2049));
+
+        StripedByteBufferPool test = new StripedByteBufferPool("test", 10);
+        // a buffer only serves the size classes it can fully hold
+        test.free(ByteBuffer.allocate(1500));
+        assertEquals(1, test.size());
+        assertEquals(2048, test.allocate(1500).capacity());
+        assertEquals(1500, test.allocate(1000).capacity());
+        assertEquals(1, test.getHits());
+    }
+}
@@ -0,0 +1,68 @@
+package com.hellblazer.jackal.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class TimingWheelTest extends TestCase {
+
+    public void testExpiration() {
+        TimingWheel<String> wheel = new TimingWheel<String>(8, 10, 1000);
+        List<String> expired = new ArrayList<String>();
+
+        wheel.schedule("past", 0);
+        wheel.schedule("now", 1000);
+        wheel.schedule("soon", 1015);
+        wheel.schedule("later", 1500);
+        wheel.schedule("never", Long.MAX_VALUE);
+        assertEquals(5, wheel.size());
+
+        assertEquals(2, wheel.advance(1000, expired));
+        assertTrue(expired.contains("past"));
+        assertTrue(expired.contains("now"));
+        expired.clear();
+
+        assertEquals(0, wheel.advance(1014, expired));
+        assertEquals(1, wheel.advance(1015, expired));
+        assertEquals("soon", expired.get(0));
+        expired.clear();
+
+        // more than a revolution of the wheel
+        assertEquals(0, wheel.advance(1499, expired));
+        assertEquals(1, wheel.advance(1500, expired));
+        assertEquals("later", expired.get(0));
+        assertEquals(1, wheel.size());
+
+        wheel.schedule("late", 1400);
+        assertEquals(1, wheel.advance(1501, expired));
+        assertEquals("late", expired.get(1));
+    }
+
+    public void testRandom() {
+        Random random = new Random(666);
+        TimingWheel<Long> wheel = new TimingWheel<Long>(16, 7, 0);
+        List<Long> expired = new ArrayList<Long>();
+        List<Long> pending = new ArrayList<Long>();
+        long now = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (random.nextBoolean()) {
+                long deadline = now + random.nextInt(500) - 50;
+                wheel.schedule(deadline, deadline);
+                pending.add(deadline);
+            }
+            now += random.nextInt(20);
+            expired.clear();
+            wheel.advance(now, expired);
+            for (Long deadline : expired) {
+                assertTrue(deadline <= now);
+                assertTrue(pending.remove(deadline));
+            }
+            for (Long deadline : pending) {
+                assertTrue(deadline > now);
+            }
+            assertEquals(pending.size(), wheel.size());
+        }
+    }
+}
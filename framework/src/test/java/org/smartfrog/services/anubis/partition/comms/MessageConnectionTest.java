@@ -0,0 +1,179 @@
+/**
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.smartfrog.services.anubis.partition.comms;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.smartfrog.services.anubis.partition.protocols.heartbeat.HeartbeatProtocol;
+import org.smartfrog.services.anubis.partition.protocols.leader.Candidate;
+import org.smartfrog.services.anubis.partition.protocols.partitionmanager.ConnectionSet;
+import org.smartfrog.services.anubis.partition.util.Identity;
+import org.smartfrog.services.anubis.partition.wire.msg.MessageMsg;
+import org.smartfrog.services.anubis.partition.wire.msg.TimedMsg;
+
+/**
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public class MessageConnectionTest {
+
+    @Test
+    public void testSendObjectAsyncEstablished() throws Exception {
+        MessageConnection connection = connection();
+        IOConnection impl = mock(IOConnection.class);
+        when(impl.connected()).thenReturn(true);
+        when(impl.getQueueDepth()).thenReturn(3);
+        when(impl.getQueuedBytes()).thenReturn(300L);
+        when(impl.getHighWaterMark()).thenReturn(400L);
+        assertTrue(connection.assignImpl(impl));
+
+        SendCompletion completion = connection.sendObjectAsync("Hello World");
+        assertFalse("Send completed before written", completion.isDone());
+        verify(impl).sendBlocking(isA(MessageMsg.class), same(completion));
+
+        // the messages of the protocol never block
+        TimedMsg msg = mock(TimedMsg.class);
+        connection.sendMsg(msg);
+        verify(impl).sendTimed(same(msg), any(SendCompletion.class));
+        verify(impl, never()).sendBlocking(same(msg), any(SendCompletion.class));
+
+        assertEquals(3, connection.getQueueDepth());
+        assertEquals(300L, connection.getQueuedBytes());
+        assertEquals(400L, connection.getHighWaterMark());
+    }
+
+    @Test
+    public void testSendObjectAsyncClosed() throws Exception {
+        MessageConnection connection = connection();
+        IOConnection impl = mock(IOConnection.class);
+        when(impl.connected()).thenReturn(false);
+        assertTrue(connection.assignImpl(impl));
+
+        SendCompletion completion = connection.sendObjectAsync("Hello World");
+        assertFalse("Send on a closed connection not failed",
+                    completion.get(0, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testPendingSendsFlushed() throws Exception {
+        MessageConnection connection = connection();
+        SendCompletion completion1 = connection.sendObjectAsync("Give me Slack");
+        SendCompletion completion2 = connection.sendObjectAsync("Or give me Food");
+        assertEquals("Wrong pending queue depth", 2,
+                     connection.getQueueDepth());
+        assertEquals(0L, connection.getQueuedBytes());
+
+        IOConnection impl = mock(IOConnection.class);
+        when(impl.connected()).thenReturn(true);
+        assertTrue(connection.assignImpl(impl));
+
+        // the pending messages are sent while connecting, so never block
+        verify(impl).sendTimed(isA(MessageMsg.class), same(completion1));
+        verify(impl).sendTimed(isA(MessageMsg.class), same(completion2));
+        verify(impl, never()).sendBlocking(any(TimedMsg.class),
+                                           any(SendCompletion.class));
+    }
+
+    @Test
+    public void testPendingOverflowDropsOldest() throws Exception {
+        MessageConnection connection = connection();
+        connection.setOverflowPolicy(OverflowPolicy.DROP_OLDEST, 1024);
+        SendCompletion oldest = connection.sendObjectAsync(0);
+        for (int i = 1; i < MessageConnection.MAX_PENDING_MSGS; i++) {
+            connection.sendObjectAsync(i);
+        }
+        assertFalse(oldest.isDone());
+
+        SendCompletion newest = connection.sendObjectAsync(-1);
+        assertFalse("Oldest pending send not dropped",
+                    oldest.get(0, TimeUnit.SECONDS));
+        assertFalse(newest.isDone());
+        assertEquals(MessageConnection.MAX_PENDING_MSGS,
+                     connection.getQueueDepth());
+    }
+
+    @Test
+    public void testPendingOverflowFails() throws Exception {
+        MessageConnection connection = connection();
+        connection.setOverflowPolicy(OverflowPolicy.FAIL, 1024);
+        SendCompletion oldest = connection.sendObjectAsync(0);
+        for (int i = 1; i < MessageConnection.MAX_PENDING_MSGS; i++) {
+            connection.sendObjectAsync(i);
+        }
+
+        SendCompletion newest = connection.sendObjectAsync(-1);
+        assertFalse("Overflowing pending send not rejected",
+                    newest.get(0, TimeUnit.SECONDS));
+        assertFalse(oldest.isDone());
+        assertEquals(MessageConnection.MAX_PENDING_MSGS,
+                     connection.getQueueDepth());
+    }
+
+    @Test
+    public void testTerminateFailsPendingSends() throws Exception {
+        MessageConnection connection = connection();
+        SendCompletion completion = connection.sendObjectAsync("Hello World");
+
+        connection.terminate();
+
+        assertFalse("Pending send not failed",
+                    completion.get(0, TimeUnit.SECONDS));
+        assertEquals(0, connection.getQueueDepth());
+    }
+
+    @Test
+    public void testOverflowPolicyApplied() throws Exception {
+        MessageConnection connection = connection();
+        connection.setOverflowPolicy(OverflowPolicy.BLOCK, 4096);
+        IOConnection impl = mock(IOConnection.class);
+        assertTrue(connection.assignImpl(impl));
+        verify(impl).setOverflowPolicy(OverflowPolicy.BLOCK, 4096);
+
+        connection.setOverflowPolicy(OverflowPolicy.FAIL, 1024);
+        verify(impl).setOverflowPolicy(OverflowPolicy.FAIL, 1024);
+    }
+
+    private MessageConnection connection() {
+        Identity me = new Identity(666, 0, 0);
+        Identity peer = new Identity(666, 1, 0);
+        ConnectionSet connectionSet = mock(ConnectionSet.class);
+        HeartbeatProtocol protocol = mock(HeartbeatProtocol.class);
+        Candidate candidate = mock(Candidate.class);
+        when(protocol.getSender()).thenReturn(peer);
+        when(candidate.getId()).thenReturn(peer);
+        MessageConnection connection = new MessageConnection(me,
+                                                             connectionSet,
+                                                             protocol,
+                                                             candidate);
+        assertSame(peer, connection.getId());
+        return connection;
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.smartfrog.services.anubis.partition.wire.msg;
+
+import java.io.ByteArrayInputStream;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.smartfrog.services.anubis.locator.ValueData;
+import org.smartfrog.services.anubis.locator.msg.RegisterMsg;
+import org.smartfrog.services.anubis.locator.msg.RegisterMsgCodec;
+import org.smartfrog.services.anubis.locator.names.ListenerProxy;
+import org.smartfrog.services.anubis.locator.names.ProviderInstance;
+import org.smartfrog.services.anubis.locator.names.ProviderProxy;
+import org.smartfrog.services.anubis.partition.util.Identity;
+import org.smartfrog.services.anubis.partition.wire.Wire;
+
+import com.hellblazer.jackal.util.ByteBufferPool;
+
+/**
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public class MessageCodecsTest extends TestCase {
+
+    private static Object roundTrip(Object object) throws Exception {
+        MessageMsg msg = new MessageMsg(new Identity(0x1638, 3, 0), object);
+        ByteBuffer wireForm = msg.toWire(new ByteBufferPool("test", 10));
+        assertEquals(MessageCodecs.forObject(object) == null ? MessageMsg.MESSAGE_MSG_WIRE_TYPE
+                                                            : MessageMsg.CODEC_MESSAGE_MSG_WIRE_TYPE,
+                     Wire.getWireType(wireForm));
+        return ((MessageMsg) Wire.fromWire(wireForm)).getMessageObject();
+    }
+
+    public void testDisabled() throws Exception {
+        MessageCodecs.setEnabled(false);
+        RegisterMsg register = RegisterMsg.registerProvider(new ProviderProxy(
+                                                                              "provider",
+                                                                              1));
+        ByteBuffer wireForm = new MessageMsg(new Identity(0x1638, 3, 0),
+                                             register).toWire(new ByteBufferPool(
+                                                                                 "test",
+                                                                                 10));
+        assertEquals(MessageMsg.MESSAGE_MSG_WIRE_TYPE,
+                     Wire.getWireType(wireForm));
+        ObjectInputStream ois = new ObjectInputStream(
+                                                      new ByteArrayInputStream(
+                                                                               wireForm.array(),
+                                                                               TimedMsg.TIMED_MSG_WIRE_SIZE,
+                                                                               wireForm.limit()
+                                                                                       - TimedMsg.TIMED_MSG_WIRE_SIZE));
+        RegisterMsg msg = (RegisterMsg) ois.readObject();
+        assertEquals(new ProviderProxy("provider", 1), msg.data);
+
+        wireForm.rewind();
+        msg = (RegisterMsg) ((MessageMsg) Wire.fromWire(wireForm)).getMessageObject();
+        assertEquals(new ProviderProxy("provider", 1), msg.data);
+    }
+
+    public void testFallback() throws Exception {
+        ArrayList<Object> list = new ArrayList<Object>(Arrays.asList("a", 1,
+                                                                     2L));
+        assertNull(MessageCodecs.forObject(list));
+        assertEquals(list, roundTrip(list));
+        assertNull(roundTrip(null));
+    }
+
+    public void testRegister() throws Exception {
+        try {
+            MessageCodecs.register(new StringCodec() {
+                @Override
+                public int getId() {
+                    return RegisterMsgCodec.ID;
+                }
+            });
+            fail("Duplicate codec id registered");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(StringCodec.class,
+                     MessageCodecs.forObject("string").getClass());
+    }
+
+    public void testRegisterMsg() throws Exception {
+        assertNotNull(MessageCodecs.forObject(RegisterMsg.registerProvider(new ProviderProxy(
+                                                                                             "provider",
+                                                                                             1))));
+
+        RegisterMsg msg = (RegisterMsg) roundTrip(RegisterMsg.registerProvider(new ProviderProxy(
+                                                                                                 "provider",
+                                                                                                 1)));
+        assertEquals(RegisterMsg.RegisterProvider, msg.type);
+        assertEquals(RegisterMsg.GlobalRegister, msg.register);
+        assertEquals(ProviderProxy.class, msg.data.getClass());
+        assertEquals(new ProviderProxy("provider", 1), msg.data);
+
+        ListenerProxy listener = new ListenerProxy("listener", 2, 42L);
+        msg = (RegisterMsg) roundTrip(RegisterMsg.addListener(listener));
+        assertEquals(RegisterMsg.AddListener, msg.type);
+        assertEquals(RegisterMsg.LocalRegister, msg.register);
+        assertEquals(listener, msg.data);
+        assertTrue(listener.uridEquals((ListenerProxy) msg.data));
+
+        ProviderInstance instance = new ProviderInstance(
+                                                         "provider",
+                                                         "instance",
+                                                         3,
+                                                         99L,
+                                                         ValueData.newValue("value"));
+        msg = (RegisterMsg) roundTrip(RegisterMsg.providerValue(instance));
+        ProviderInstance decoded = (ProviderInstance) msg.data;
+        assertEquals(instance, decoded);
+        assertEquals(99L, decoded.time);
+        assertEquals("value", decoded.value.getValue());
+
+        instance = new ProviderInstance("provider", "instance", 3, 100L,
+                                        ValueData.newMarshalledValue(Integer.valueOf(7)));
+        decoded = (ProviderInstance) ((RegisterMsg) roundTrip(RegisterMsg.providerValue(instance))).data;
+        assertEquals(7, decoded.value.getValue());
+
+        instance = new ProviderInstance("provider", null, 3, 101L,
+                                        ValueData.nullValue());
+        decoded = (ProviderInstance) ((RegisterMsg) roundTrip(RegisterMsg.providerNotPresent(instance))).data;
+        assertNull(decoded.instance);
+        assertNull(decoded.value.getValue());
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        MessageCodecs.setEnabled(true);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        MessageCodecs.setEnabled(false);
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * (C) Copyright 2011 Hal Hildebrand, All Rights Reserved
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.smartfrog.services.anubis.partition.wire.security;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.smartfrog.services.anubis.partition.wire.WireFormException;
+import org.smartfrog.services.anubis.partition.wire.WireMsg;
+import org.smartfrog.services.anubis.partition.wire.msg.SerializedMsg;
+
+import com.hellblazer.jackal.util.BufferPool;
+
+/**
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public class SharedWireFormTest extends TestCase {
+
+    private static class CountingSecurity extends NoSecurityImpl {
+        int encodes;
+
+        @Override
+        public ByteBuffer toWireForm(WireMsg msg, BufferPool bufferPool)
+                                                                        throws WireFormException,
+                                                                        IOException {
+            encodes++;
+            return super.toWireForm(msg, bufferPool);
+        }
+    }
+
+    private static class RecordingPool implements BufferPool {
+        final List<ByteBuffer> freed = new ArrayList<ByteBuffer>();
+
+        @Override
+        public ByteBuffer allocate(int capacity) {
+            return ByteBuffer.allocate(capacity);
+        }
+
+        @Override
+        public void free(ByteBuffer free) {
+            freed.add(free);
+        }
+    }
+
+    public void testSharing() throws Exception {
+        CountingSecurity security = new CountingSecurity();
+        RecordingPool pool = new RecordingPool();
+        SerializedMsg msg = new SerializedMsg("Give me Slack");
+        SharedWireForm wireForm = new SharedWireForm(msg);
+
+        ByteBuffer first = wireForm.retain(security, pool);
+        ByteBuffer second = wireForm.retain(security, pool);
+        assertEquals(1, security.encodes);
+        assertTrue(first.isReadOnly());
+        assertTrue(second.isReadOnly());
+        assertNotSame(first, second);
+        assertEquals(first, second);
+
+        first.position(first.limit());
+        assertTrue(second.hasRemaining());
+        ByteBuffer received = ByteBuffer.allocate(second.remaining());
+        received.put(second);
+        received.flip();
+        assertEquals(msg.getObject(),
+                     ((SerializedMsg) security.fromWireForm(received)).getObject());
+
+        wireForm.release();
+        wireForm.release();
+        assertTrue(pool.freed.isEmpty());
+        wireForm.release();
+        assertEquals(1, pool.freed.size());
+        assertFalse(pool.freed.get(0).isReadOnly());
+
+        try {
+            wireForm.retain(security, pool);
+            fail("retained a released wire form");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/** (C) Copyright 2010 Hal Hildebrand, All Rights Reserved
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.hellblazer.slp.anubis;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.smartfrog.services.anubis.partition.wire.msg.MessageCodec;
+import org.smartfrog.services.anubis.partition.wire.msg.MessageCodecs;
+
+import com.hellblazer.slp.ServiceURL;
+import com.hellblazer.slp.anubis.AnubisScope.Message;
+import com.hellblazer.slp.anubis.AnubisScope.MessageType;
+
+/**
+ * The codec of the messages exchanged by the members of an
+ * <link>AnubisScope</link>. The service references are written field by
+ * field; the values of their properties are written by their own codecs, if
+ * they have them.
+ * 
+ * @author <a href="mailto:hal.hildebrand@gmail.com">Hal Hildebrand</a>
+ * 
+ */
+public class ScopeMessageCodec implements MessageCodec<Message> {
+    public static final int            ID    = 100;
+    private static final MessageType[] TYPES = MessageType.values();
+
+    @Override
+    public Message decode(DataInput in) throws IOException {
+        MessageType type = TYPES[in.readByte()];
+        switch (type) {
+            case REGISTER:
+            case MODIFY:
+                return new Message(type, readReference(in));
+            case UNREGISTER:
+                return new Message(type, readUuid(in));
+            case SYNC: {
+                int count = in.readInt();
+                ArrayList<ServiceReferenceImpl> references = new ArrayList<ServiceReferenceImpl>(
+                                                                                                  count);
+                for (int i = 0; i < count; i++) {
+                    references.add(readReference(in));
+                }
+                return new Message(type, references);
+            }
+            default:
+                throw new IOException("Illegal message type: " + type);
+        }
+    }
+
+    @Override
+    public void encode(Message object, DataOutput out) throws IOException {
+        out.writeByte(object.type.ordinal());
+        switch (object.type) {
+            case REGISTER:
+            case MODIFY:
+                writeReference((ServiceReferenceImpl) object.body, out);
+                break;
+            case UNREGISTER:
+                writeUuid((UUID) object.body, out);
+                break;
+            case SYNC: {
+                @SuppressWarnings("unchecked")
+                List<ServiceReferenceImpl> references = (List<ServiceReferenceImpl>) object.body;
+                out.writeInt(references.size());
+                for (ServiceReferenceImpl reference : references) {
+                    writeReference(reference, out);
+                }
+                break;
+            }
+            default:
+                throw new IOException("Illegal message type: " + object.type);
+        }
+    }
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public Class<Message> getType() {
+        return Message.class;
+    }
+
+    private ServiceReferenceImpl readReference(DataInput in) throws IOException {
+        ServiceURL url = new ServiceURL(MessageCodecs.readString(in),
+                                        in.readInt());
+        int size = in.readInt();
+        Map<String, Object> properties = new HashMap<String, Object>();
+        for (int i = 0; i < size; i++) {
+            String key = MessageCodecs.readString(in);
+            try {
+                properties.put(key, MessageCodecs.readObject(in));
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Unable to decode service property "
+                                      + key, e);
+            }
+        }
+        UUID registration = readUuid(in);
+        return new ServiceReferenceImpl(url, properties, registration,
+                                        in.readInt());
+    }
+
+    private UUID readUuid(DataInput in) throws IOException {
+        return new UUID(in.readLong(), in.readLong());
+    }
+
+    private void writeReference(ServiceReferenceImpl reference, DataOutput out)
+                                                                               throws IOException {
+        MessageCodecs.writeString(reference.getUrl().toString(), out);
+        out.writeInt(reference.getUrl().getLifetime());
+        Map<String, Object> properties = reference.currentProperties();
+        out.writeInt(properties.size());
+        for (Map.Entry<String, Object> entry : properties.entrySet()) {
+            MessageCodecs.writeString(entry.getKey(), out);
+            MessageCodecs.writeObject(entry.getValue(), out);
+        }
+        writeUuid(reference.getRegistration(), out);
+        out.writeInt(reference.getMember());
+    }
+
+    private void writeUuid(UUID uuid, DataOutput out) throws IOException {
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+    }
+}